@@ -1,12 +1,401 @@
 package com.example.bitbucketstats.configuration;
 
+import java.time.Duration;
+import java.time.Period;
+import java.util.List;
+import java.util.Map;
 import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.bind.DefaultValue;
+import org.springframework.util.unit.DataSize;
 
+/**
+ * Upstream Bitbucket settings.
+ *
+ * @param apiBase         base URL of the Bitbucket REST API
+ * @param pageConcurrency how many pages of a paginated listing are fetched in parallel once the first page reports
+ *                        its total size; {@code 1} keeps the sequential {@code next}-link walk
+ * @param streamingPages  decode page bodies incrementally, emitting elements while a page is still arriving and
+ *                        requesting the next page as soon as its link is parsed
+ * @param conditionalGet  revalidation cache for repeat GETs (ETag / Last-Modified)
+ * @param concurrency     process-wide adaptive limit on in-flight upstream calls
+ * @param rateLimit       per-credential hourly request budget and throttling behaviour
+ * @param http2           opt-in HTTP/2 transport for upstream calls
+ * @param circuitBreaker  per-repository circuit breaker
+ * @param bulkhead        per-workspace cap on concurrent upstream calls
+ * @param hedging         duplicate requests for GETs that are slower than usual for their endpoint
+ * @param deadline        overall time budget of a stats request
+ * @param warmup          connections kept open to the API from startup on
+ * @param listing         how an author's pull requests are listed
+ * @param searchCache     per-day cache of pull request search results
+ * @param diffstatCache   diffstat totals kept on disk per PR and commits
+ * @param diskCache       disk tier kept under the in-memory caches, across restarts
+ * @param cacheWarmup     dashboards precomputed into the caches off-peak
+ * @param resultCache     last stats responses, served to requests that allow stale data
+ * @param tenantCache     per-tenant shares of the caches holding credential-scoped entries
+ * @param cacheBudget     heap budget of the in-memory caches, split between them
+ */
 @ConfigurationProperties(prefix = "bitbucket")
 public record BitbucketHttpProperties(
-    String apiBase
+    String apiBase,
+    @DefaultValue("4") int pageConcurrency,
+    @DefaultValue("false") boolean streamingPages,
+    @DefaultValue ConditionalGet conditionalGet,
+    @DefaultValue ConcurrencyLimit concurrency,
+    @DefaultValue RateLimit rateLimit,
+    @DefaultValue Http2 http2,
+    @DefaultValue CircuitBreaker circuitBreaker,
+    @DefaultValue Bulkhead bulkhead,
+    @DefaultValue Hedging hedging,
+    @DefaultValue RequestDeadline deadline,
+    @DefaultValue Warmup warmup,
+    @DefaultValue Listing listing,
+    @DefaultValue SearchCache searchCache,
+    @DefaultValue DiffStatCache diffstatCache,
+    @DefaultValue DiskCache diskCache,
+    @DefaultValue CacheWarmup cacheWarmup,
+    @DefaultValue ResultCache resultCache,
+    @DefaultValue TenantCache tenantCache,
+    @DefaultValue CacheBudget cacheBudget
     // Optional: String username, String appPassword,
     // Optional: Duration connectTimeout, responseTimeout, etc.
 ) {
 
+  /**
+   * @param enabled whether validators are stored and sent on repeat calls
+   * @param maxSize memory budget for stored response bodies
+   */
+  public record ConditionalGet(
+      @DefaultValue("true") boolean enabled,
+      @DefaultValue("64MB") DataSize maxSize
+  ) {
+
+  }
+
+  /**
+   * @param initialLimit     in-flight limit at startup
+   * @param minLimit         floor the limit is never cut below
+   * @param maxLimit         ceiling, normally the connection pool size
+   * @param maxQueue         requests allowed to wait for a permit before new ones are rejected
+   * @param backoffRatio     multiplier applied to the limit on throttling, errors or rising latency
+   * @param latencyTolerance how far the short-term latency may exceed the long-term average before backing off
+   */
+  public record ConcurrencyLimit(
+      @DefaultValue("20") int initialLimit,
+      @DefaultValue("2") int minLimit,
+      @DefaultValue("200") int maxLimit,
+      @DefaultValue("1000") int maxQueue,
+      @DefaultValue("0.9") double backoffRatio,
+      @DefaultValue("2.0") double latencyTolerance
+  ) {
+
+  }
+
+  /**
+   * @param enabled           whether requests are scheduled against per-credential budgets
+   * @param requestsPerHour   hourly budget assumed until Bitbucket reports its own limit
+   * @param maxWait           longest a request is held for a paused credential before failing with 429
+   * @param defaultRetryAfter pause applied on a 429 that carries no Retry-After
+   */
+  public record RateLimit(
+      @DefaultValue("true") boolean enabled,
+      @DefaultValue("1000") int requestsPerHour,
+      @DefaultValue("30s") Duration maxWait,
+      @DefaultValue("60s") Duration defaultRetryAfter
+  ) {
+
+  }
+
+  /**
+   * @param enabled              negotiate HTTP/2 (ALPN over TLS, h2c upgrade over cleartext) and fall back to HTTP/1.1
+   *                             when the server does not offer it
+   * @param maxConcurrentStreams streams multiplexed on one connection before another one is opened
+   * @param minConnections       connections kept open even when idle
+   * @param maxLifeTime          lifetime of a pooled connection, longer than for HTTP/1.1 since few are opened
+   */
+  public record Http2(
+      @DefaultValue("false") boolean enabled,
+      @DefaultValue("100") int maxConcurrentStreams,
+      @DefaultValue("1") int minConnections,
+      @DefaultValue("30m") Duration maxLifeTime
+  ) {
+
+  }
+
+  /**
+   * @param enabled              whether repository circuits are tracked
+   * @param windowSize           number of recent calls the failure rate is computed over
+   * @param minimumCalls         calls needed in the window before the circuit may open
+   * @param failureRateThreshold failure share (0..1) that opens the circuit
+   * @param slowCallThreshold    calls slower than this count as failures
+   * @param openDuration         how long an open circuit rejects calls before probing
+   * @param halfOpenProbes       successful probes needed to close the circuit again
+   */
+  public record CircuitBreaker(
+      @DefaultValue("true") boolean enabled,
+      @DefaultValue("50") int windowSize,
+      @DefaultValue("20") int minimumCalls,
+      @DefaultValue("0.5") double failureRateThreshold,
+      @DefaultValue("10s") Duration slowCallThreshold,
+      @DefaultValue("30s") Duration openDuration,
+      @DefaultValue("3") int halfOpenProbes
+  ) {
+
+  }
+
+  /**
+   * @param maxConcurrentPerWorkspace upstream calls one workspace may have in flight
+   * @param maxQueuePerWorkspace      calls allowed to wait for a slot before new ones are rejected
+   */
+  public record Bulkhead(
+      @DefaultValue("50") int maxConcurrentPerWorkspace,
+      @DefaultValue("500") int maxQueuePerWorkspace
+  ) {
+
+  }
+
+  /**
+   * @param enabled      whether slow GETs are hedged
+   * @param percentile   latency percentile (0..1) of the endpoint after which a hedge is sent
+   * @param windowSize   recent latencies kept per endpoint type
+   * @param minSamples   latencies needed for an endpoint before it is hedged
+   * @param minDelay     shortest wait before a hedge, however fast the endpoint usually is
+   * @param maxHedgeRate share of requests (0..1) that may be duplicated
+   */
+  public record Hedging(
+      @DefaultValue("false") boolean enabled,
+      @DefaultValue("0.95") double percentile,
+      @DefaultValue("200") int windowSize,
+      @DefaultValue("20") int minSamples,
+      @DefaultValue("50ms") Duration minDelay,
+      @DefaultValue("0.05") double maxHedgeRate
+  ) {
+
+  }
+
+  /**
+   * @param defaultTimeout budget of a stats request that does not ask for one
+   * @param maxTimeout     largest budget a caller may ask for
+   * @param minRemaining   an upstream call (or retry) is not started with less time than this left
+   */
+  public record RequestDeadline(
+      @DefaultValue("60s") Duration defaultTimeout,
+      @DefaultValue("5m") Duration maxTimeout,
+      @DefaultValue("1s") Duration minRemaining
+  ) {
+
+  }
+
+  /**
+   * @param enabled           whether connections are opened at startup and kept alive; each round is
+   *                          {@code minConnections} anonymous requests to Bitbucket
+   * @param minConnections    connections opened (and kept) at once
+   * @param keepAliveInterval how often they are touched; keep it below the pool's 30s idle timeout
+   * @param timeout           how long a warm-up request may take
+   */
+  public record Warmup(
+      @DefaultValue("false") boolean enabled,
+      @DefaultValue("8") int minConnections,
+      @DefaultValue("25s") Duration keepAliveInterval,
+      @DefaultValue("10s") Duration timeout
+  ) {
+
+  }
+
+  /**
+   * @param userScoped whether an author's pull requests may be listed through the user-level endpoint
+   * @param minRepos   fewest requested repositories for which the user-level listing is considered
+   */
+  public record Listing(
+      @DefaultValue("true") boolean userScoped,
+      @DefaultValue("4") int minRepos
+  ) {
+
+  }
+
+  /**
+   * @param enabled     whether searches for closed pull requests are answered per {@code updated_on} day from cache
+   * @param mutableDays most recent UTC days, today included, that are always queried because they can still change
+   * @param ttl         how long a cached day is kept after it was fetched
+   * @param maxDays     cached days kept at most, across every search
+   */
+  public record SearchCache(
+      @DefaultValue("true") boolean enabled,
+      @DefaultValue("2") int mutableDays,
+      @DefaultValue("30d") Duration ttl,
+      @DefaultValue("200000") long maxDays
+  ) {
+
+  }
+
+  /**
+   * @param enabled    whether diffstat totals of PRs with known commits are stored and reused
+   * @param directory  where the store's file is kept; mount it as a volume for entries to survive redeploys
+   * @param maxEntries diffstats kept at most, in memory and on disk
+   */
+  public record DiffStatCache(
+      @DefaultValue("true") boolean enabled,
+      @DefaultValue("/tmp/bitbucket-stats-cache") String directory,
+      @DefaultValue("100000") long maxEntries
+  ) {
+
+  }
+
+  /**
+   * @param enabled   whether the caches listed in {@code caches} keep a copy of their entries on disk
+   * @param directory where the cache files are kept; mount it as a volume for entries to survive redeploys
+   * @param caches    the caches with a disk tier, by cache name
+   */
+  public record DiskCache(
+      @DefaultValue("false") boolean enabled,
+      @DefaultValue("/tmp/bitbucket-stats-cache") String directory,
+      Map<String, DiskTier> caches
+  ) {
+
+    public DiskCache {
+      caches = caches == null ? Map.of() : Map.copyOf(caches);
+    }
+  }
+
+  /**
+   * @param maxSize size of the cache's file; it is compacted when full
+   * @param ttl     how long an entry is served from disk after it was written
+   */
+  public record DiskTier(
+      @DefaultValue("64MB") DataSize maxSize,
+      @DefaultValue("7d") Duration ttl
+  ) {
+
+  }
+
+  /**
+   * @param enabled                whether the configured dashboards are precomputed on a schedule
+   * @param cron                   when to run, as a Spring cron expression in the server's time zone
+   * @param runAtStartup           also run once right after startup
+   * @param waitForReadiness       readiness reports {@code OUT_OF_SERVICE} until the startup run has finished
+   * @param username               user of the service credential the dashboards are computed with
+   * @param appPassword            app password of the service credential
+   * @param minRemainingBudget     a run stops when the credential's hourly forecast drops below this many calls
+   * @param maxInteractiveRequests a run stops when more stats requests than this are being answered
+   * @param requestTimeout         deadline of each precomputed request
+   * @param maxConcurrency         concurrency hint of each precomputed request
+   * @param targets                the dashboards to precompute
+   */
+  public record CacheWarmup(
+      @DefaultValue("false") boolean enabled,
+      @DefaultValue("0 0 5 * * MON-FRI") String cron,
+      @DefaultValue("true") boolean runAtStartup,
+      @DefaultValue("false") boolean waitForReadiness,
+      String username,
+      String appPassword,
+      @DefaultValue("500") int minRemainingBudget,
+      @DefaultValue("2") int maxInteractiveRequests,
+      @DefaultValue("2m") Duration requestTimeout,
+      @DefaultValue("2") int maxConcurrency,
+      List<WarmupTarget> targets
+  ) {
+
+    public CacheWarmup {
+      targets = targets == null ? List.of() : List.copyOf(targets);
+    }
+  }
+
+  /**
+   * One team dashboard: its author statistics per user and review statistics per reviewer, for each period ending
+   * today.
+   *
+   * @param workspace the Bitbucket workspace
+   * @param repos     the repository slugs
+   * @param users     author nicknames whose pull request statistics are precomputed
+   * @param reviewers reviewer UUIDs whose review statistics are precomputed
+   * @param periods   lengths of the windows, ending today
+   * @param states    pull request states, as in the stats requests
+   */
+  public record WarmupTarget(
+      String workspace,
+      List<String> repos,
+      List<String> users,
+      List<String> reviewers,
+      @DefaultValue("30d") List<Period> periods,
+      @DefaultValue("MERGED") List<String> states
+  ) {
+
+    public WarmupTarget {
+      repos = repos == null ? List.of() : List.copyOf(repos);
+      users = users == null ? List.of() : List.copyOf(users);
+      reviewers = reviewers == null ? List.of() : List.copyOf(reviewers);
+    }
+  }
+
+  /**
+   * @param enabled    whether stats responses are kept for requests with {@code allowStale=true}; when off those
+   *                   requests are computed fresh
+   * @param softTtl    a response older than this is still served, and refreshed in the background
+   * @param hardTtl    a response older than this is dropped and computed again while the caller waits
+   * @param maxEntries how many responses are kept
+   */
+  public record ResultCache(
+      @DefaultValue("true") boolean enabled,
+      @DefaultValue("5m") Duration softTtl,
+      @DefaultValue("1h") Duration hardTtl,
+      @DefaultValue("1000") long maxEntries
+  ) {
+
+  }
+
+  /**
+   * @param enabled     whether tenants' shares are enforced; when off only each cache's own policy applies
+   * @param partitionBy what a tenant is
+   * @param maxShare    largest fraction of a cache's budget one tenant may hold, even when the cache has room
+   */
+  public record TenantCache(
+      @DefaultValue("true") boolean enabled,
+      @DefaultValue("workspace") PartitionBy partitionBy,
+      @DefaultValue("0.5") double maxShare
+  ) {
+
+  }
+
+  public enum PartitionBy {
+    /** One tenant per workspace; entries without a workspace belong to their credential. */
+    WORKSPACE,
+    /** One tenant per credential. */
+    CREDENTIAL
+  }
+
+  /**
+   * @param enabled       whether caches are bounded by estimated bytes within one budget; when off each keeps its own
+   *                      entry-count bound
+   * @param maxHeap       memory all in-memory caches together may hold
+   * @param checkInterval how often the total is checked against {@code max-heap}
+   * @param caches        each cache's share and priority, by cache name; unlisted caches get the defaults of
+   *                      {@link CacheShare}
+   */
+  public record CacheBudget(
+      @DefaultValue("true") boolean enabled,
+      @DefaultValue("256MB") DataSize maxHeap,
+      @DefaultValue("2s") Duration checkInterval,
+      Map<String, CacheShare> caches
+  ) {
+
+    public CacheBudget {
+      caches = caches == null ? Map.of() : Map.copyOf(caches);
+    }
+
+    public CacheShare share(String cacheName) {
+      return caches.getOrDefault(cacheName, new CacheShare(0.25, 0, 0));
+    }
+  }
+
+  /**
+   * @param maxShare most of {@code max-heap} the cache may hold
+   * @param minShare the cache is not trimmed below this part of {@code max-heap} when the budget is exceeded
+   * @param priority when the budget is exceeded, caches with a lower priority are trimmed first
+   */
+  public record CacheShare(
+      @DefaultValue("0.25") double maxShare,
+      @DefaultValue("0") double minShare,
+      @DefaultValue("0") int priority
+  ) {
+
+  }
 }
@@ -0,0 +1,61 @@
+package com.example.bitbucketstats.configuration;
+
+import com.example.bitbucketstats.models.CacheScope;
+import java.util.Map;
+import lombok.RequiredArgsConstructor;
+import org.springframework.boot.actuate.endpoint.InvalidEndpointRequestException;
+import org.springframework.boot.actuate.endpoint.annotation.DeleteOperation;
+import org.springframework.boot.actuate.endpoint.annotation.Endpoint;
+import org.springframework.boot.actuate.endpoint.annotation.ReadOperation;
+import org.springframework.boot.actuate.endpoint.annotation.Selector;
+import org.springframework.lang.Nullable;
+
+/**
+ * {@code /actuator/cacheadmin}: statistics of every cache the backend owns, and invalidation without a restart.
+ */
+@Endpoint(id = "cacheadmin")
+@RequiredArgsConstructor
+public class CacheAdminEndpoint {
+
+  private final CacheAdministration cacheAdministration;
+
+  @ReadOperation
+  public Map<String, CacheAdministration.Report> caches() {
+    return cacheAdministration.reports();
+  }
+
+  /**
+   * @return the cache's report; 404 for an unknown cache
+   */
+  @ReadOperation
+  @Nullable
+  public CacheAdministration.Report cache(@Selector String name) {
+    return cacheAdministration.report(name);
+  }
+
+  /**
+   * Drop what was cached for a workspace, repository and/or user, from every cache.
+   *
+   * @return entries dropped from memory, by cache name
+   */
+  @DeleteOperation
+  public Map<String, Long> invalidate(@Nullable String workspace, @Nullable String repo, @Nullable String user) {
+    var scope = new CacheScope(workspace, repo, user);
+    if (scope.isEmpty()) {
+      throw new InvalidEndpointRequestException("Give a workspace, repo or user to invalidate",
+          "No workspace, repo or user given");
+    }
+    return cacheAdministration.invalidate(scope);
+  }
+
+  /**
+   * Drop every entry of one cache.
+   *
+   * @return the cache's report after clearing; 404 for an unknown cache
+   */
+  @DeleteOperation
+  @Nullable
+  public CacheAdministration.Report clear(@Selector String name) {
+    return cacheAdministration.clear(name) ? cacheAdministration.report(name) : null;
+  }
+}
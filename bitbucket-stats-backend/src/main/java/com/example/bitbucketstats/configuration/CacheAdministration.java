@@ -0,0 +1,413 @@
+package com.example.bitbucketstats.configuration;
+
+import static com.example.bitbucketstats.configuration.CachingConfig.BITBUCKET_USER_CACHE;
+import static com.example.bitbucketstats.configuration.CachingConfig.COMMENT_COUNT_CACHE;
+import static com.example.bitbucketstats.configuration.CachingConfig.PR_ACTIVITY_CACHE;
+
+import com.example.bitbucketstats.integration.CommentCountCache;
+import com.example.bitbucketstats.integration.ConditionalGetCache;
+import com.example.bitbucketstats.integration.DiffStatStore;
+import com.example.bitbucketstats.integration.PullRequestSearchCache;
+import com.example.bitbucketstats.models.CacheScope;
+import com.example.bitbucketstats.services.StatsResultCache;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.FunctionTimer;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BiPredicate;
+import java.util.function.LongSupplier;
+import java.util.function.Supplier;
+import java.util.function.ToLongFunction;
+import org.springframework.cache.Cache;
+import org.springframework.cache.CacheManager;
+import org.springframework.lang.Nullable;
+
+/**
+ * Every cache the backend owns, in one place: statistics and estimated size for the {@code cacheadmin} actuator
+ * endpoint and the {@code bitbucket.cache.*} metrics, and invalidation by workspace, repository or user.
+ * <p>
+ * Sizes are estimates: the serialized size of a sample of entries, scaled to the entry count (the weighed response
+ * sizes for the conditional-GET cache). Disk tiers are keyed by digests and cannot be searched, so a targeted
+ * invalidation removes the disk records of the entries it drops from memory; entries held only on disk stay there.
+ */
+public class CacheAdministration implements MeterBinder {
+
+  public static final String PULL_REQUEST_SEARCH_CACHE = "pull-request-search-cache";
+  public static final String DIFFSTAT_CACHE = "diffstat-cache";
+  public static final String CONDITIONAL_GET_CACHE = "conditional-get-cache";
+  public static final String STATS_RESULT_CACHE = "stats-result-cache";
+  /** Entries serialized to estimate a cache's size. */
+  private static final int SIZE_SAMPLE = 32;
+
+  private final ObjectMapper objectMapper;
+  private final Map<String, Managed> caches = new LinkedHashMap<>();
+
+  /**
+   * @param stats      hit, miss, load and eviction counts
+   * @param entries    entries held in memory
+   * @param bytes      estimated memory held
+   * @param invalidate drops the entries in scope and returns how many there were in memory
+   * @param clear      drops every entry
+   * @param disk       the disk tier, if any
+   * @param quota      the tenants' shares, if enforced
+   */
+  private record Managed(Supplier<CacheStats> stats, LongSupplier entries, LongSupplier bytes,
+      ToLongFunction<CacheScope> invalidate, Runnable clear, @Nullable DiskCacheStore disk,
+      @Nullable TenantQuota<?> quota) {
+
+  }
+
+  /**
+   * @param entries        entries held in memory
+   * @param estimatedBytes approximate memory they hold
+   * @param hits           lookups answered from the cache
+   * @param misses         lookups that went upstream
+   * @param hitRate        hits over lookups, 1 when there were none
+   * @param loads          values loaded on a miss, failed ones included
+   * @param averageLoadMs  average time a load took
+   * @param evictions      entries evicted for size or expiry
+   * @param disk           the disk tier, if the cache has one
+   * @param tenants        the tenants' shares, if enforced
+   */
+  public record Report(long entries, long estimatedBytes, long hits, long misses, double hitRate, long loads,
+      double averageLoadMs, long evictions, @Nullable DiskReport disk, @Nullable TenantReport tenants) {
+
+  }
+
+  /**
+   * @param tenants        tenants holding entries
+   * @param largestWeight  weight held by the heaviest tenant, in the cache's unit (entries, or bytes)
+   * @param quotaEvictions entries tenants gave up for being over their share
+   */
+  public record TenantReport(int tenants, long largestWeight, long quotaEvictions) {
+
+  }
+
+  /**
+   * @param ready     whether its index is built; until then every lookup misses
+   * @param entries   entries in its index
+   * @param bytesUsed bytes of its file in use
+   * @param capacity  size of its file
+   * @param hits      lookups answered from disk
+   * @param misses    lookups not found on disk
+   * @param corrupt   records that failed their checksum
+   */
+  public record DiskReport(boolean ready, long entries, long bytesUsed, long capacity, long hits, long misses,
+      long corrupt) {
+
+  }
+
+  public CacheAdministration(CacheManager cacheManager, CommentCountCache commentCountCache,
+      PullRequestSearchCache searchCache, DiffStatStore diffStatStore, ConditionalGetCache conditionalGetCache,
+      StatsResultCache statsResultCache, DiskCacheStores diskCacheStores, ObjectMapper objectMapper) {
+    this.objectMapper = objectMapper;
+    register(cacheManager, BITBUCKET_USER_CACHE, diskCacheStores, false,
+        (scope, key) -> scope.matches(key.toString(), null, null));
+    register(cacheManager, PR_ACTIVITY_CACHE, diskCacheStores, true, CacheAdministration::activityInScope);
+    caches.put(COMMENT_COUNT_CACHE, new Managed(
+        commentCountCache::stats,
+        commentCountCache::size,
+        () -> estimateBytes(commentCountCache.entries()),
+        scope -> commentCountCache.invalidate(key -> scope.matches(key.credential(), key.workspace(), key.repo())),
+        commentCountCache::clear,
+        diskCacheStores.forCache(COMMENT_COUNT_CACHE),
+        commentCountCache.quota()));
+    caches.put(PULL_REQUEST_SEARCH_CACHE, new Managed(
+        searchCache::stats,
+        searchCache::size,
+        () -> estimateBytes(searchCache.entries()),
+        scope -> searchCache.invalidate(key -> scope.matches(key.credential(), key.workspace(), key.repo())),
+        searchCache::clear,
+        null,
+        searchCache.quota()));
+    caches.put(DIFFSTAT_CACHE, new Managed(
+        diffStatStore::stats,
+        diffStatStore::size,
+        () -> estimateBytes(diffStatStore.entries()),
+        scope -> diffStatStore.invalidate(key -> diffStatInScope(scope, key)),
+        () -> diffStatStore.invalidate(key -> true),
+        null,
+        null));
+    caches.put(CONDITIONAL_GET_CACHE, new Managed(
+        () -> {
+          var stats = conditionalGetCache.stats();
+          return CacheStats.of(stats.hits(), stats.misses(), 0, 0, 0, 0, 0);
+        },
+        () -> conditionalGetCache.stats().entries(),
+        () -> conditionalGetCache.stats().weightedBytes(),
+        scope -> conditionalGetCache.invalidate(key -> conditionalGetInScope(scope, key)),
+        () -> conditionalGetCache.invalidate(key -> true),
+        null,
+        conditionalGetCache.quota()));
+    caches.put(STATS_RESULT_CACHE, new Managed(
+        statsResultCache::stats,
+        statsResultCache::size,
+        () -> estimateBytes(statsResultCache.entries()),
+        scope -> statsResultCache.invalidate(key -> key.repos().stream()
+            .anyMatch(repo -> scope.matches(key.credential(), key.workspace(), repo))),
+        statsResultCache::clear,
+        null,
+        statsResultCache.quota()));
+  }
+
+  /**
+   * @return a report per cache, by cache name
+   */
+  public Map<String, Report> reports() {
+    Map<String, Report> reports = new LinkedHashMap<>();
+    caches.forEach((name, cache) -> reports.put(name, report(cache)));
+    return reports;
+  }
+
+  /**
+   * @param name the cache name
+   * @return its report, or null for an unknown cache
+   */
+  @Nullable
+  public Report report(String name) {
+    var cache = caches.get(name);
+    return cache == null ? null : report(cache);
+  }
+
+  /**
+   * Drop the entries in scope from every cache.
+   *
+   * @param scope the entries to drop; must not be empty
+   * @return entries dropped from memory, by cache name
+   */
+  public Map<String, Long> invalidate(CacheScope scope) {
+    if (scope.isEmpty()) {
+      throw new IllegalArgumentException("Give a workspace, repo or user to invalidate");
+    }
+    Map<String, Long> dropped = new LinkedHashMap<>();
+    caches.forEach((name, cache) -> dropped.put(name, cache.invalidate().applyAsLong(scope)));
+    return dropped;
+  }
+
+  /**
+   * Drop every entry of a cache, on disk too.
+   *
+   * @param name the cache name
+   * @return whether the cache exists
+   */
+  public boolean clear(String name) {
+    var cache = caches.get(name);
+    if (cache == null) {
+      return false;
+    }
+    cache.clear().run();
+    return true;
+  }
+
+  @Override
+  public void bindTo(MeterRegistry registry) {
+    caches.forEach((name, cache) -> {
+      FunctionCounter.builder("bitbucket.cache.gets", cache, c -> c.stats().get().hitCount())
+          .tags("cache", name, "result", "hit")
+          .description("Cache lookups")
+          .register(registry);
+      FunctionCounter.builder("bitbucket.cache.gets", cache, c -> c.stats().get().missCount())
+          .tags("cache", name, "result", "miss")
+          .description("Cache lookups")
+          .register(registry);
+      FunctionCounter.builder("bitbucket.cache.evictions", cache, c -> c.stats().get().evictionCount())
+          .tag("cache", name)
+          .register(registry);
+      FunctionTimer.builder("bitbucket.cache.loads", cache,
+              c -> c.stats().get().loadCount(), c -> c.stats().get().totalLoadTime(), TimeUnit.NANOSECONDS)
+          .tag("cache", name)
+          .description("Values loaded on a cache miss")
+          .register(registry);
+      Gauge.builder("bitbucket.cache.size", cache, c -> c.entries().getAsLong())
+          .tag("cache", name)
+          .description("Entries held in memory")
+          .register(registry);
+      Gauge.builder("bitbucket.cache.bytes", cache, c -> c.bytes().getAsLong())
+          .tag("cache", name)
+          .description("Estimated memory held")
+          .baseUnit("bytes")
+          .register(registry);
+      if (cache.disk() != null) {
+        bindDisk(registry, name, cache.disk());
+      }
+      if (cache.quota() != null) {
+        bindQuota(registry, name, cache.quota());
+      }
+    });
+  }
+
+  private static void bindDisk(MeterRegistry registry, String name, DiskCacheStore disk) {
+    FunctionCounter.builder("bitbucket.cache.disk.gets", disk, DiskCacheStore::hits)
+        .tags("cache", name, "result", "hit")
+        .register(registry);
+    FunctionCounter.builder("bitbucket.cache.disk.gets", disk, DiskCacheStore::misses)
+        .tags("cache", name, "result", "miss")
+        .register(registry);
+    FunctionCounter.builder("bitbucket.cache.disk.corrupt", disk, DiskCacheStore::corrupt)
+        .tag("cache", name)
+        .register(registry);
+    Gauge.builder("bitbucket.cache.disk.size", disk, DiskCacheStore::size)
+        .tag("cache", name)
+        .register(registry);
+    Gauge.builder("bitbucket.cache.disk.bytes", disk, DiskCacheStore::bytesUsed)
+        .tag("cache", name)
+        .baseUnit("bytes")
+        .register(registry);
+  }
+
+  private static void bindQuota(MeterRegistry registry, String name, TenantQuota<?> quota) {
+    Gauge.builder("bitbucket.cache.tenants", quota, TenantQuota::tenants)
+        .tag("cache", name)
+        .description("Tenants holding entries")
+        .register(registry);
+    Gauge.builder("bitbucket.cache.tenant.largest", quota, TenantQuota::largestTenantWeight)
+        .tag("cache", name)
+        .description("Weight held by the heaviest tenant")
+        .register(registry);
+    FunctionCounter.builder("bitbucket.cache.tenant.evictions", quota, TenantQuota::evictions)
+        .tag("cache", name)
+        .description("Entries tenants gave up for being over their share")
+        .register(registry);
+  }
+
+  /**
+   * @param perRepository whether the cache's keys name a workspace and repository
+   * @param inScope       whether a key is in scope
+   */
+  private void register(CacheManager cacheManager, String name, DiskCacheStores diskCacheStores,
+      boolean perRepository, BiPredicate<CacheScope, Object> inScope) {
+    Cache cache = cacheManager.getCache(name);
+    if (cache == null
+        || !(cache.getNativeCache() instanceof com.github.benmanes.caffeine.cache.Cache<?, ?> entries)) {
+      return;
+    }
+    var disk = diskCacheStores.forCache(name);
+    caches.put(name, new Managed(
+        entries::stats,
+        entries::estimatedSize,
+        () -> estimateBytes(entries.asMap()),
+        scope -> {
+          if (!perRepository && (scope.workspace() != null || scope.repo() != null)) {
+            return 0;
+          }
+          long dropped = 0;
+          for (var key : entries.asMap().keySet()) {
+            if (inScope.test(scope, key) && entries.asMap().remove(key) != null) {
+              dropped++;
+              if (disk != null) {
+                disk.remove(key.toString());
+              }
+            }
+          }
+          return dropped;
+        },
+        cache::clear,
+        disk,
+        quotaOf(cache)));
+  }
+
+  @Nullable
+  private static TenantQuota<?> quotaOf(Cache cache) {
+    var memory = cache instanceof TieredCache tiered ? tiered.memory() : cache;
+    return memory instanceof TenantPartitionedCache partitioned ? partitioned.quota() : null;
+  }
+
+  private static Report report(Managed cache) {
+    var stats = cache.stats().get();
+    var disk = cache.disk();
+    var quota = cache.quota();
+    return new Report(
+        cache.entries().getAsLong(),
+        cache.bytes().getAsLong(),
+        stats.hitCount(),
+        stats.missCount(),
+        stats.hitRate(),
+        stats.loadCount(),
+        stats.averageLoadPenalty() / 1_000_000d,
+        stats.evictionCount(),
+        disk == null ? null : new DiskReport(disk.ready(), disk.size(), disk.bytesUsed(), disk.capacity(),
+            disk.hits(), disk.misses(), disk.corrupt()),
+        quota == null ? null : new TenantReport(quota.tenants(), quota.largestTenantWeight(), quota.evictions()));
+  }
+
+  private long estimateBytes(Map<?, ?> entries) {
+    int sampled = 0;
+    long bytes = 0;
+    for (var entry : entries.entrySet()) {
+      if (sampled == SIZE_SAMPLE) {
+        break;
+      }
+      try {
+        bytes += entry.getKey().toString().length() + objectMapper.writeValueAsBytes(entry.getValue()).length;
+        sampled++;
+      } catch (JsonProcessingException e) {
+        // not serializable: left out of the sample
+      }
+    }
+    return sampled == 0 ? 0 : bytes * entries.size() / sampled;
+  }
+
+  /**
+   * Keys of {@code fetchActivityDigest}: {@code credential:workspace/repo#id@updatedOn}.
+   */
+  static boolean activityInScope(CacheScope scope, Object key) {
+    String k = key.toString();
+    int colon = k.indexOf(':');
+    int slash = k.indexOf('/', colon + 1);
+    int hash = k.indexOf('#', slash + 1);
+    if (colon < 0 || slash < 0 || hash < 0) {
+      return false;
+    }
+    return scope.matches(k.substring(0, colon), k.substring(colon + 1, slash), k.substring(slash + 1, hash));
+  }
+
+  /**
+   * Keys of {@link DiffStatStore#key}: {@code workspace/repo#id@revision}.
+   */
+  static boolean diffStatInScope(CacheScope scope, String key) {
+    int slash = key.indexOf('/');
+    int hash = key.indexOf('#', slash + 1);
+    if (slash < 0 || hash < 0) {
+      return false;
+    }
+    return scope.matches(null, key.substring(0, slash), key.substring(slash + 1, hash));
+  }
+
+  /**
+   * Keys of {@link ConditionalGetCache#key}: the credential, a space and the URL. The workspace and repository are
+   * read from {@code /repositories/{workspace}/{repo}} or {@code /workspaces/{workspace}} paths.
+   */
+  static boolean conditionalGetInScope(CacheScope scope, String key) {
+    int space = key.indexOf(' ');
+    if (space < 0) {
+      return false;
+    }
+    String url = key.substring(space + 1);
+    String workspace = null;
+    String repo = null;
+    int repositories = url.indexOf("/repositories/");
+    int workspaces = url.indexOf("/workspaces/");
+    if (repositories >= 0) {
+      String[] path = pathSegments(url, repositories + "/repositories/".length());
+      workspace = path.length > 0 ? path[0] : null;
+      repo = path.length > 1 ? path[1] : null;
+    } else if (workspaces >= 0) {
+      String[] path = pathSegments(url, workspaces + "/workspaces/".length());
+      workspace = path.length > 0 ? path[0] : null;
+    }
+    return scope.matches(key.substring(0, space), workspace, repo);
+  }
+
+  private static String[] pathSegments(String url, int from) {
+    int query = url.indexOf('?', from);
+    String path = query < 0 ? url.substring(from) : url.substring(from, query);
+    return path.isEmpty() ? new String[0] : path.split("/");
+  }
+}
@@ -0,0 +1,233 @@
+package com.example.bitbucketstats.configuration;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Policy;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.context.SmartLifecycle;
+import reactor.core.Disposable;
+import reactor.core.publisher.Flux;
+
+/**
+ * One heap budget ({@code bitbucket.cache-budget.max-heap}) for the in-memory caches, which are bounded by the
+ * estimated bytes of their entries rather than by entry count.
+ * <p>
+ * Each cache may hold up to its {@code max-share} of the budget. Shares may add up to more than the whole, so a busy
+ * cache can use room the others leave free; every {@code check-interval} the total is compared with the budget, and
+ * when it is over, caches are trimmed in order of {@code priority}, lowest first, each down to its {@code min-share}
+ * at most, until the total fits. A cache is trimmed by its own eviction policy, so it loses its coldest entries.
+ * <p>
+ * Entry sizes are estimates: the JSON size of the value, doubled for object headers and references, plus the key and
+ * a fixed per-entry overhead. Values that cannot be serialized count as {@link #UNKNOWN_VALUE_BYTES}. A cache under a
+ * tenant quota weighs each value twice, once for Caffeine and once for the quota, so the value's estimate is kept per
+ * instance for a while and the value is serialized once.
+ */
+public class CacheMemoryBudget implements SmartLifecycle, MeterBinder {
+
+  private static final Logger log = LoggerFactory.getLogger(CacheMemoryBudget.class);
+  /** Caffeine node, key and value references, and the write/access order links. */
+  static final int ENTRY_OVERHEAD_BYTES = 96;
+  /** Heap bytes per byte of JSON: object headers, references and boxed numbers outweigh the field names. */
+  static final int HEAP_PER_JSON_BYTE = 2;
+  static final int UNKNOWN_VALUE_BYTES = 1024;
+  private static final int MEMOIZED_VALUES = 10_000;
+
+  private final BitbucketHttpProperties.CacheBudget settings;
+  private final ObjectMapper objectMapper;
+  private final Map<String, Policy.Eviction<?, ?>> caches = new LinkedHashMap<>();
+  private final LongAdder trimmedBytes = new LongAdder();
+  /** Estimated bytes per value instance; weak keys compare by identity and let the values go with their caches. */
+  private final Cache<Object, Integer> valueBytes = Caffeine.newBuilder()
+      .weakKeys()
+      .maximumSize(MEMOIZED_VALUES)
+      .build();
+  private volatile Disposable schedule;
+
+  public CacheMemoryBudget(BitbucketHttpProperties.CacheBudget settings, ObjectMapper objectMapper) {
+    this.settings = settings;
+    this.objectMapper = objectMapper;
+  }
+
+  /**
+   * @return whether caches are bounded by bytes within the budget
+   */
+  public boolean enabled() {
+    return settings.enabled();
+  }
+
+  /**
+   * @param cacheName the cache
+   * @return the most the cache may hold, in bytes
+   */
+  public long maxWeight(String cacheName) {
+    return (long) (settings.maxHeap().toBytes() * settings.share(cacheName).maxShare());
+  }
+
+  /**
+   * Estimated heap held by one entry.
+   *
+   * @param key   the entry's key
+   * @param value the entry's value
+   * @return the estimate in bytes, at least {@link #ENTRY_OVERHEAD_BYTES}
+   */
+  public int weigh(Object key, Object value) {
+    return entryBytes(key, valueBytes.get(value, this::estimate));
+  }
+
+  /**
+   * Estimated heap held by one entry whose value was decoded from JSON of a known size, without serializing it again.
+   *
+   * @param key       the entry's key
+   * @param jsonBytes the size of the JSON the value was decoded from
+   * @return the estimate in bytes, at least {@link #ENTRY_OVERHEAD_BYTES}
+   */
+  public int weighJson(Object key, long jsonBytes) {
+    return entryBytes(key, HEAP_PER_JSON_BYTE * jsonBytes);
+  }
+
+  private static int entryBytes(Object key, long valueBytes) {
+    long bytes = ENTRY_OVERHEAD_BYTES + 2L * key.toString().length() + valueBytes;
+    return (int) Math.min(bytes, Integer.MAX_VALUE);
+  }
+
+  private int estimate(Object value) {
+    try {
+      return (int) Math.min((long) HEAP_PER_JSON_BYTE * objectMapper.writeValueAsBytes(value).length,
+          Integer.MAX_VALUE);
+    } catch (JsonProcessingException | RuntimeException e) {
+      return UNKNOWN_VALUE_BYTES;
+    }
+  }
+
+  /**
+   * Put a weight-bounded cache under the budget.
+   *
+   * @param cacheName the cache
+   * @param cache     the cache; ignored unless it is bounded by weight
+   */
+  public synchronized void register(String cacheName, Cache<?, ?> cache) {
+    cache.policy().eviction()
+        .filter(eviction -> eviction.isWeighted())
+        .ifPresent(eviction -> caches.put(cacheName, eviction));
+  }
+
+  /**
+   * @return estimated bytes held by the registered caches
+   */
+  public synchronized long used() {
+    long used = 0;
+    for (var eviction : caches.values()) {
+      used += eviction.weightedSize().orElse(0);
+    }
+    return used;
+  }
+
+  /**
+   * @return estimated bytes held per registered cache
+   */
+  public synchronized Map<String, Long> usage() {
+    Map<String, Long> usage = new LinkedHashMap<>();
+    caches.forEach((name, eviction) -> usage.put(name, eviction.weightedSize().orElse(0)));
+    return usage;
+  }
+
+  /**
+   * @return bytes evicted to bring the total back within the budget
+   */
+  public long trimmedBytes() {
+    return trimmedBytes.sum();
+  }
+
+  public long maxHeap() {
+    return settings.maxHeap().toBytes();
+  }
+
+  /**
+   * Trim caches, lowest priority first, until the total is within the budget.
+   */
+  synchronized void enforce() {
+    long budget = settings.maxHeap().toBytes();
+    long excess = used() - budget;
+    if (excess <= 0) {
+      return;
+    }
+    List<String> byPriority = new ArrayList<>(caches.keySet());
+    byPriority.sort(Comparator.comparingInt(name -> settings.share(name).priority()));
+    for (String name : byPriority) {
+      if (excess <= 0) {
+        break;
+      }
+      var eviction = caches.get(name);
+      long size = eviction.weightedSize().orElse(0);
+      long floor = (long) (budget * settings.share(name).minShare());
+      long cut = Math.min(excess, size - floor);
+      if (cut <= 0) {
+        continue;
+      }
+      long maximum = eviction.getMaximum();
+      eviction.setMaximum(size - cut);
+      eviction.setMaximum(maximum);
+      long trimmed = size - eviction.weightedSize().orElse(0);
+      trimmedBytes.add(trimmed);
+      excess -= trimmed;
+      log.debug("Cache budget exceeded; trimmed {} bytes from {}", trimmed, name);
+    }
+  }
+
+  @Override
+  public void bindTo(MeterRegistry registry) {
+    Gauge.builder("bitbucket.cache.budget.used", this, CacheMemoryBudget::used)
+        .description("Estimated memory held by the caches under the budget")
+        .baseUnit("bytes")
+        .register(registry);
+    Gauge.builder("bitbucket.cache.budget.max", this, CacheMemoryBudget::maxHeap)
+        .baseUnit("bytes")
+        .register(registry);
+    FunctionCounter.builder("bitbucket.cache.budget.trimmed", this, CacheMemoryBudget::trimmedBytes)
+        .description("Memory evicted to bring the caches back within the budget")
+        .baseUnit("bytes")
+        .register(registry);
+  }
+
+  @Override
+  public void start() {
+    if (!settings.enabled() || schedule != null) {
+      return;
+    }
+    schedule = Flux.interval(settings.checkInterval())
+        .subscribe(tick -> {
+          try {
+            enforce();
+          } catch (RuntimeException e) {
+            log.warn("Cache budget check failed: {}", e.toString());
+          }
+        });
+  }
+
+  @Override
+  public void stop() {
+    var current = schedule;
+    if (current != null) {
+      current.dispose();
+      schedule = null;
+    }
+  }
+
+  @Override
+  public boolean isRunning() {
+    return schedule != null;
+  }
+}
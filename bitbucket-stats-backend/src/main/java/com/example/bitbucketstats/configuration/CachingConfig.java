@@ -1,21 +1,46 @@
 package com.example.bitbucketstats.configuration;
 
+import com.example.bitbucketstats.integration.CommentCountCache;
+import com.example.bitbucketstats.integration.ConditionalGetCache;
+import com.example.bitbucketstats.integration.DiffStatStore;
+import com.example.bitbucketstats.integration.PullRequestSearchCache;
+import com.example.bitbucketstats.integration.RateLimitScheduler;
+import com.example.bitbucketstats.integration.response.User;
+import com.example.bitbucketstats.models.ActivityDigest;
+import com.example.bitbucketstats.services.CacheWarmup;
+import com.example.bitbucketstats.services.MyPullRequestsService;
+import com.example.bitbucketstats.services.PullRequestsReviewService;
+import com.example.bitbucketstats.services.StatsResultCache;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.github.benmanes.caffeine.cache.AsyncCache;
 import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.RemovalCause;
 import com.github.benmanes.caffeine.cache.Ticker;
+import java.time.Clock;
+import java.util.Map;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.boot.autoconfigure.condition.ConditionalOnMissingBean;
+import org.springframework.cache.Cache;
 import org.springframework.cache.CacheManager;
 import org.springframework.cache.annotation.EnableCaching;
 import org.springframework.cache.caffeine.CaffeineCacheManager;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.lang.Nullable;
 
 @Configuration
 @EnableCaching
 public class CachingConfig {
 
   public static final String BITBUCKET_USER_CACHE = "bitbucket-user-cache";
+  /** Activity digests per PR; keyed by the PR's {@code updated_on}, so entries never go stale and can live long. */
+  public static final String PR_ACTIVITY_CACHE = "pr-activity-cache";
+  public static final String COMMENT_COUNT_CACHE = "comment-count-cache";
+  /** Value types of the caches that can have a disk tier. */
+  private static final Map<String, Class<?>> DISK_TIER_TYPES = Map.of(
+      BITBUCKET_USER_CACHE, User.class,
+      PR_ACTIVITY_CACHE, ActivityDigest.class);
   private static final Logger log = LoggerFactory.getLogger(CachingConfig.class);
 
   @Bean
@@ -24,19 +49,166 @@ public class CachingConfig {
     return Ticker.systemTicker();
   }
 
+  /**
+   * One heap budget for the in-memory caches ({@code bitbucket.cache-budget}).
+   */
   @Bean
-  public CacheManager cacheManager(Ticker ticker) {
-    var caffeine = Caffeine.newBuilder()
-        .maximumSize(1000)
+  public CacheMemoryBudget cacheMemoryBudget(BitbucketHttpProperties props, ObjectMapper objectMapper) {
+    return new CacheMemoryBudget(props.cacheBudget(), objectMapper);
+  }
+
+  /**
+   * Disk tiers of the caches listed under {@code bitbucket.disk-cache.caches}.
+   */
+  @Bean
+  public DiskCacheStores diskCacheStores(BitbucketHttpProperties props, ObjectMapper objectMapper) {
+    return new DiskCacheStores(props.diskCache(), objectMapper);
+  }
+
+  /**
+   * Reviewer comment counts per PR; replaced when the PR's {@code updated_on} moves, so they can live long.
+   */
+  @Bean
+  public CommentCountCache commentCountCache(Ticker ticker, DiskCacheStores diskCacheStores,
+      BitbucketHttpProperties props, CacheMemoryBudget budget) {
+    long maxEntries = 50_000;
+    TenantQuota<CommentCountCache.Key> quota = TenantQuota.forCache(COMMENT_COUNT_CACHE,
+        capacity(COMMENT_COUNT_CACHE, maxEntries, budget), props.tenantCache(), CommentCountCache.Key::credential,
+        CommentCountCache.Key::workspace);
+    if (quota != null && budget.enabled()) {
+      quota.weighWith(budget::weigh);
+    }
+    AsyncCache<CommentCountCache.Key, CommentCountCache.Counted> counts = bounded(Caffeine.newBuilder()
+        .expireAfterAccess(java.time.Duration.ofDays(7))
+        .recordStats()
+        .ticker(ticker)
+        .removalListener((CommentCountCache.Key key, CommentCountCache.Counted value, RemovalCause cause) -> {
+          if (quota != null) {
+            quota.recordRemoval(key, value);
+          }
+        }), COMMENT_COUNT_CACHE, maxEntries, budget)
+        .buildAsync();
+    budget.register(COMMENT_COUNT_CACHE, counts.synchronous());
+    return new CommentCountCache(counts, diskCacheStores.forCache(COMMENT_COUNT_CACHE), quota);
+  }
+
+  /**
+   * Caffeine caches in memory; those with a disk tier configured fall through to it on a miss. Writes to the activity
+   * cache count against their tenant's share ({@code bitbucket.tenant-cache}). Every cache the manager creates is
+   * bounded by its share of the memory budget; the user cache's share applies to each cache created on demand.
+   */
+  @Bean
+  public CacheManager cacheManager(Ticker ticker, DiskCacheStores diskCacheStores, BitbucketHttpProperties props,
+      CacheMemoryBudget budget) {
+    long activityEntries = 20_000;
+    TenantQuota<Object> activityQuota = TenantQuota.forCache(PR_ACTIVITY_CACHE,
+        capacity(PR_ACTIVITY_CACHE, activityEntries, budget), props.tenantCache(), key -> activityKeyPart(key, 0),
+        key -> activityKeyPart(key, 1));
+    if (activityQuota != null && budget.enabled()) {
+      activityQuota.weighWith(budget::weigh);
+    }
+    var caffeine = bounded(Caffeine.newBuilder()
         .expireAfterWrite(java.time.Duration.ofMinutes(30))
         .recordStats()
-        .ticker(ticker);
+        .ticker(ticker), BITBUCKET_USER_CACHE, 1000, budget);
 
-    var mgr = new CaffeineCacheManager();
+    var mgr = new CaffeineCacheManager() {
+      @Override
+      protected Cache adaptCaffeineCache(String name, AsyncCache<Object, Object> cache) {
+        budget.register(name, cache.synchronous());
+        Cache memory = super.adaptCaffeineCache(name, cache);
+        if (PR_ACTIVITY_CACHE.equals(name) && activityQuota != null) {
+          activityQuota.evictWith(key -> cache.synchronous().invalidate(key));
+          activityQuota.peekWith(key -> cache.synchronous().policy().getIfPresentQuietly(key));
+          memory = new TenantPartitionedCache(memory, activityQuota);
+        }
+        var disk = DISK_TIER_TYPES.containsKey(name) ? diskCacheStores.forCache(name) : null;
+        return disk == null ? memory : new TieredCache(memory, disk, DISK_TIER_TYPES.get(name));
+      }
+    };
     mgr.setCaffeine(caffeine);
     mgr.setCacheNames(java.util.List.of(BITBUCKET_USER_CACHE));
     mgr.setAsyncCacheMode(true);
+    mgr.registerCustomCache(PR_ACTIVITY_CACHE, bounded(Caffeine.newBuilder()
+        .expireAfterAccess(java.time.Duration.ofDays(7))
+        .recordStats()
+        .ticker(ticker)
+        .removalListener((key, value, cause) -> {
+          if (activityQuota != null) {
+            activityQuota.recordRemoval(key, value);
+          }
+        }), PR_ACTIVITY_CACHE, activityEntries, budget)
+        .buildAsync());
     log.debug("Caffeine cache manager initialized (caches={})", mgr.getCacheNames());
     return mgr;
   }
+
+  /**
+   * Bound a cache by its share of the memory budget, in estimated bytes, or by {@code maxEntries} without one.
+   */
+  static <K, V> Caffeine<K, V> bounded(Caffeine<K, V> builder, String name, long maxEntries,
+      CacheMemoryBudget budget) {
+    if (!budget.enabled()) {
+      return builder.maximumSize(maxEntries);
+    }
+    return builder.maximumWeight(budget.maxWeight(name)).weigher(budget::weigh);
+  }
+
+  /**
+   * The bound {@link #bounded} gives a cache, in the unit its tenant quota is weighed in.
+   */
+  private static long capacity(String name, long maxEntries, CacheMemoryBudget budget) {
+    return budget.enabled() ? budget.maxWeight(name) : maxEntries;
+  }
+
+  /**
+   * The credential (part 0) or workspace (part 1) of an activity digest key,
+   * {@code credential:workspace/repo#id@updatedOn}.
+   */
+  @Nullable
+  static String activityKeyPart(Object key, int part) {
+    String k = key.toString();
+    int colon = k.indexOf(':');
+    int slash = k.indexOf('/', colon + 1);
+    if (colon < 0 || slash < 0) {
+      return null;
+    }
+    return part == 0 ? k.substring(0, colon) : k.substring(colon + 1, slash);
+  }
+
+  /**
+   * Last stats responses, served to requests with {@code allowStale=true} while they are refreshed.
+   */
+  @Bean
+  public StatsResultCache statsResultCache(BitbucketHttpProperties props, CacheMemoryBudget budget) {
+    return new StatsResultCache(props.resultCache(), props.deadline().defaultTimeout(), props.tenantCache(), budget);
+  }
+
+  /**
+   * Statistics, metrics and invalidation across every cache the backend owns.
+   */
+  @Bean
+  public CacheAdministration cacheAdministration(CacheManager cacheManager, CommentCountCache commentCountCache,
+      PullRequestSearchCache pullRequestSearchCache, DiffStatStore diffStatStore,
+      ConditionalGetCache conditionalGetCache, StatsResultCache statsResultCache, DiskCacheStores diskCacheStores,
+      ObjectMapper objectMapper) {
+    return new CacheAdministration(cacheManager, commentCountCache, pullRequestSearchCache, diffStatStore,
+        conditionalGetCache, statsResultCache, diskCacheStores, objectMapper);
+  }
+
+  @Bean
+  public CacheAdminEndpoint cacheAdminEndpoint(CacheAdministration cacheAdministration) {
+    return new CacheAdminEndpoint(cacheAdministration);
+  }
+
+  /**
+   * Precomputes the dashboards listed under {@code bitbucket.cache-warmup.targets} into the caches.
+   */
+  @Bean
+  public CacheWarmup cacheWarmup(BitbucketHttpProperties props, MyPullRequestsService myPullRequestsService,
+      PullRequestsReviewService pullRequestsReviewService, RateLimitScheduler rateLimitScheduler,
+      RequestDeadlineFilter requestDeadlineFilter) {
+    return new CacheWarmup(props.cacheWarmup(), myPullRequestsService, pullRequestsReviewService,
+        rateLimitScheduler, requestDeadlineFilter, Clock.systemDefaultZone());
+  }
 }
@@ -0,0 +1,399 @@
+package com.example.bitbucketstats.configuration;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Clock;
+import java.time.Duration;
+import java.util.HexFormat;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.zip.CRC32;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.lang.Nullable;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Scheduler;
+import reactor.core.scheduler.Schedulers;
+
+/**
+ * Append-only, memory-mapped file of serialized cache entries: the second tier under a Caffeine cache, kept across
+ * restarts.
+ * <p>
+ * The file is mapped once at its full size ({@code max-size}) and filled front to back. Each record is
+ * {@code [int length][int crc32][long expiresAt][int keyLength][key][value]}, followed by a zero length that marks the
+ * end. The CRC covers everything after it, so a torn or corrupted record is detected: reading it is a miss, and the
+ * scan stops there. Keys are stored as SHA-256 digests, as cache keys name users; values are JSON.
+ * Removals append an already expired record, so they also hold after a restart.
+ * <p>
+ * The key index is built lazily: the first access schedules a scan of the file, and lookups miss until it is done, so
+ * startup time does not grow with the file. When the file is full, the live entries are copied to a fresh one,
+ * dropping superseded, removed and expired records. Appends, the scan and compaction run on one dedicated thread;
+ * lookups read the mapping from the caller's thread.
+ */
+public class DiskCacheStore implements Closeable {
+
+  private static final Logger log = LoggerFactory.getLogger(DiskCacheStore.class);
+  /** length, crc, expiresAt, key length. */
+  private static final int HEADER = 4 + 4 + 8 + 4;
+
+  private final String name;
+  private final Path file;
+  private final int capacity;
+  private final Duration ttl;
+  private final ObjectMapper objectMapper;
+  private final Clock clock;
+  private final Scheduler writer;
+  private final AtomicBoolean loadStarted = new AtomicBoolean();
+  private final LongAdder hits = new LongAdder();
+  private final LongAdder misses = new LongAdder();
+  private final LongAdder corrupt = new LongAdder();
+
+  /** Null until the index is built, and again if the file becomes unusable. */
+  private volatile Segment segment;
+  // written on the writer thread only
+  private volatile int writePosition;
+
+  private record Slot(int offset, int length, long expiresAt) {
+
+  }
+
+  private record Segment(FileChannel channel, MappedByteBuffer buffer, Map<String, Slot> index) {
+
+  }
+
+  public DiskCacheStore(String name, Path directory, BitbucketHttpProperties.DiskTier settings,
+      ObjectMapper objectMapper) {
+    this(name, directory, settings, objectMapper, Clock.systemUTC());
+  }
+
+  DiskCacheStore(String name, Path directory, BitbucketHttpProperties.DiskTier settings, ObjectMapper objectMapper,
+      Clock clock) {
+    this.name = name;
+    this.file = directory.resolve(name + ".cache");
+    this.capacity = (int) Math.min(Integer.MAX_VALUE - 8, settings.maxSize().toBytes());
+    this.ttl = settings.ttl();
+    this.objectMapper = objectMapper;
+    this.clock = clock;
+    this.writer = Schedulers.newSingle("disk-cache-" + name);
+  }
+
+  /**
+   * @param key  the cache key
+   * @param type the value type
+   * @param <T>  the value type
+   * @return the stored value, or null when absent, expired, unreadable or the index is still being built
+   */
+  @Nullable
+  public <T> T get(String key, Class<T> type) {
+    ensureLoaded();
+    var current = segment;
+    var slot = current == null ? null : current.index().get(digest(key));
+    if (slot == null || slot.expiresAt() <= clock.millis()) {
+      misses.increment();
+      return null;
+    }
+    var record = current.buffer().duplicate();
+    record.position(slot.offset()).limit(slot.offset() + slot.length());
+    var bytes = readValue(record.slice());
+    if (bytes == null) {
+      corrupt.increment();
+      misses.increment();
+      return null;
+    }
+    try {
+      T value = objectMapper.readValue(bytes, type);
+      hits.increment();
+      return value;
+    } catch (IOException e) {
+      log.debug("Disk cache {}: unreadable entry dropped: {}", name, e.toString());
+      misses.increment();
+      return null;
+    }
+  }
+
+  /**
+   * Queue a value for the file; it is readable once written.
+   */
+  public void put(String key, Object value) {
+    byte[] bytes;
+    try {
+      bytes = objectMapper.writeValueAsBytes(value);
+    } catch (IOException e) {
+      log.debug("Disk cache {}: value not serializable, kept in memory only: {}", name, e.toString());
+      return;
+    }
+    ensureLoaded();
+    long expiresAt = clock.millis() + ttl.toMillis();
+    writer.schedule(() -> append(digest(key), bytes, expiresAt));
+  }
+
+  public void remove(String key) {
+    ensureLoaded();
+    writer.schedule(() -> append(digest(key), new byte[0], 0));
+  }
+
+  public void clear() {
+    ensureLoaded();
+    writer.schedule(this::reset);
+  }
+
+  public long hits() {
+    return hits.sum();
+  }
+
+  public long misses() {
+    return misses.sum();
+  }
+
+  /**
+   * @return records whose checksum did not match
+   */
+  public long corrupt() {
+    return corrupt.sum();
+  }
+
+  /**
+   * @return entries in the index, expired ones included; 0 until it is built
+   */
+  public int size() {
+    var current = segment;
+    return current == null ? 0 : current.index().size();
+  }
+
+  public int capacity() {
+    return capacity;
+  }
+
+  /**
+   * @return bytes of the file in use, superseded and expired records included until the next compaction
+   */
+  public int bytesUsed() {
+    return segment == null ? 0 : writePosition;
+  }
+
+  /**
+   * @return whether the index is built and lookups can hit
+   */
+  public boolean ready() {
+    return segment != null;
+  }
+
+  /**
+   * Wait for queued writes, and the index scan once started, to finish.
+   */
+  void awaitPending() {
+    Mono.fromRunnable(() -> { }).subscribeOn(writer).block(Duration.ofSeconds(10));
+  }
+
+  /**
+   * Write pending entries out and release the file.
+   */
+  @Override
+  public void close() {
+    writer.schedule(() -> {
+      var current = segment;
+      segment = null;
+      if (current != null) {
+        current.buffer().force();
+        closeQuietly(current.channel());
+      }
+    });
+    writer.disposeGracefully().block(Duration.ofSeconds(10));
+  }
+
+  private void ensureLoaded() {
+    if (loadStarted.compareAndSet(false, true)) {
+      writer.schedule(this::load);
+    }
+  }
+
+  private void load() {
+    try {
+      Files.createDirectories(file.toAbsolutePath().getParent());
+      var channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ,
+          StandardOpenOption.WRITE);
+      var buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, capacity);
+      Map<String, Slot> index = new ConcurrentHashMap<>();
+      long now = clock.millis();
+      int position = 0;
+      while (position + HEADER <= capacity) {
+        int length = buffer.getInt(position);
+        if (length < HEADER || length > capacity - position) {
+          break;
+        }
+        var record = buffer.duplicate();
+        record.position(position).limit(position + length);
+        if (readValue(record.slice()) == null) {
+          corrupt.increment();
+          break;
+        }
+        long expiresAt = buffer.getLong(position + 8);
+        String key = readKey(buffer, position);
+        if (expiresAt <= now) {
+          index.remove(key);
+        } else {
+          index.put(key, new Slot(position, length, expiresAt));
+        }
+        position += length;
+      }
+      writePosition = position;
+      terminate(buffer, position);
+      segment = new Segment(channel, buffer, index);
+      log.info("Disk cache {}: {} entries indexed from {} ({} bytes used)", name, index.size(), file, position);
+    } catch (IOException | RuntimeException e) {
+      log.warn("Disk cache {} unusable at {}, keeping entries in memory only: {}", name, file, e.toString());
+    }
+  }
+
+  private void append(String key, byte[] value, long expiresAt) {
+    var current = segment;
+    if (current == null) {
+      return;
+    }
+    byte[] keyBytes = key.getBytes(StandardCharsets.US_ASCII);
+    int length = HEADER + keyBytes.length + value.length;
+    try {
+      if (writePosition + length + 4 > capacity) {
+        current = compact(current);
+        if (writePosition + length + 4 > capacity) {
+          log.debug("Disk cache {} full, entry kept in memory only", name);
+          return;
+        }
+      }
+      int offset = writePosition;
+      write(current.buffer(), offset, keyBytes, value, expiresAt);
+      writePosition += length;
+      terminate(current.buffer(), writePosition);
+      if (expiresAt <= clock.millis()) {
+        current.index().remove(key);
+      } else {
+        current.index().put(key, new Slot(offset, length, expiresAt));
+      }
+    } catch (IOException | RuntimeException e) {
+      log.warn("Disk cache {} write failed, keeping entries in memory only: {}", name, e.toString());
+      segment = null;
+      closeQuietly(current.channel());
+    }
+  }
+
+  /**
+   * Copy the live entries into a fresh file and swap it in. Readers still holding the old mapping keep reading it.
+   */
+  private Segment compact(Segment current) throws IOException {
+    var tmp = file.resolveSibling(file.getFileName() + ".tmp");
+    Files.deleteIfExists(tmp);
+    var channel = FileChannel.open(tmp, StandardOpenOption.CREATE_NEW, StandardOpenOption.READ,
+        StandardOpenOption.WRITE);
+    var buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, capacity);
+    Map<String, Slot> index = new ConcurrentHashMap<>();
+    long now = clock.millis();
+    int position = 0;
+    for (var entry : current.index().entrySet()) {
+      var slot = entry.getValue();
+      if (slot.expiresAt() <= now) {
+        continue;
+      }
+      buffer.put(position, current.buffer(), slot.offset(), slot.length());
+      index.put(entry.getKey(), new Slot(position, slot.length(), slot.expiresAt()));
+      position += slot.length();
+    }
+    terminate(buffer, position);
+    buffer.force();
+    Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    closeQuietly(current.channel());
+    log.debug("Disk cache {} compacted: {} of {} entries kept, {} bytes used", name, index.size(),
+        current.index().size(), position);
+    writePosition = position;
+    var compacted = new Segment(channel, buffer, index);
+    segment = compacted;
+    return compacted;
+  }
+
+  private void reset() {
+    var current = segment;
+    if (current == null) {
+      return;
+    }
+    writePosition = 0;
+    terminate(current.buffer(), 0);
+    segment = new Segment(current.channel(), current.buffer(), new ConcurrentHashMap<>());
+  }
+
+  private static void write(MappedByteBuffer buffer, int offset, byte[] key, byte[] value, long expiresAt) {
+    int length = HEADER + key.length + value.length;
+    buffer.putLong(offset + 8, expiresAt);
+    buffer.putInt(offset + 16, key.length);
+    buffer.put(offset + HEADER, key);
+    buffer.put(offset + HEADER + key.length, value);
+    var crc = new CRC32();
+    var covered = buffer.duplicate();
+    covered.position(offset + 8).limit(offset + length);
+    crc.update(covered);
+    buffer.putInt(offset + 4, (int) crc.getValue());
+    // the length goes last: until it is there, the record does not exist for a scan
+    buffer.putInt(offset, length);
+  }
+
+  /**
+   * @param record one record, positioned at its start
+   * @return its value, or null when the checksum does not match
+   */
+  @Nullable
+  private static byte[] readValue(ByteBuffer record) {
+    int length = record.getInt(0);
+    int crc = record.getInt(4);
+    var check = new CRC32();
+    var covered = record.duplicate();
+    covered.position(8).limit(length);
+    check.update(covered);
+    if ((int) check.getValue() != crc) {
+      return null;
+    }
+    int keyLength = record.getInt(16);
+    var value = new byte[length - HEADER - keyLength];
+    record.get(HEADER + keyLength, value);
+    return value;
+  }
+
+  private static String readKey(MappedByteBuffer buffer, int offset) {
+    var key = new byte[buffer.getInt(offset + 16)];
+    buffer.get(offset + HEADER, key);
+    return new String(key, StandardCharsets.US_ASCII);
+  }
+
+  private void terminate(MappedByteBuffer buffer, int position) {
+    if (position + 4 <= capacity) {
+      buffer.putInt(position, 0);
+    }
+  }
+
+  private static String digest(String key) {
+    try {
+      var sha = MessageDigest.getInstance("SHA-256");
+      return HexFormat.of().formatHex(sha.digest(key.getBytes(StandardCharsets.UTF_8)));
+    } catch (NoSuchAlgorithmException e) {
+      throw new IllegalStateException("SHA-256 not available", e);
+    }
+  }
+
+  private static void closeQuietly(FileChannel channel) {
+    try {
+      channel.close();
+    } catch (IOException e) {
+      log.debug("Closing disk cache file failed: {}", e.toString());
+    }
+  }
+}
@@ -0,0 +1,50 @@
+package com.example.bitbucketstats.configuration;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import java.io.Closeable;
+import java.nio.file.Path;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import org.springframework.lang.Nullable;
+
+/**
+ * The disk tiers of the caches listed under {@code bitbucket.disk-cache.caches}, one file each, opened on first use
+ * and closed with the application context.
+ */
+public class DiskCacheStores implements Closeable {
+
+  private final BitbucketHttpProperties.DiskCache settings;
+  private final ObjectMapper objectMapper;
+  private final Map<String, DiskCacheStore> stores = new ConcurrentHashMap<>();
+
+  public DiskCacheStores(BitbucketHttpProperties.DiskCache settings, ObjectMapper objectMapper) {
+    this.settings = settings;
+    this.objectMapper = objectMapper;
+  }
+
+  /**
+   * @param cacheName the cache name
+   * @return its disk tier, or null when it has none or the disk tier is disabled
+   */
+  @Nullable
+  public DiskCacheStore forCache(String cacheName) {
+    var tier = settings.caches().get(cacheName);
+    if (!settings.enabled() || tier == null) {
+      return null;
+    }
+    return stores.computeIfAbsent(cacheName,
+        name -> new DiskCacheStore(name, Path.of(settings.directory()), tier, objectMapper));
+  }
+
+  /**
+   * @return the disk tiers opened so far, by cache name
+   */
+  public Map<String, DiskCacheStore> opened() {
+    return Map.copyOf(stores);
+  }
+
+  @Override
+  public void close() {
+    stores.values().forEach(DiskCacheStore::close);
+  }
+}
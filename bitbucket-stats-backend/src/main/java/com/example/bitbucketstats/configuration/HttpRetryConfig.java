@@ -11,7 +11,8 @@ import reactor.util.retry.Retry;
 public class HttpRetryConfig {
 
   /**
-   * Backoff for idempotent GETs; retries only transient failures (429/5xx, I/O timeouts).
+   * Backoff for idempotent GETs; retries only transient failures (429/5xx, I/O timeouts). A retried 429 is held by
+   * the RateLimitScheduler until the credential's Retry-After has elapsed.
    */
   @Bean
   public Retry httpRetry() {
@@ -0,0 +1,83 @@
+package com.example.bitbucketstats.configuration;
+
+import com.example.bitbucketstats.models.Deadline;
+import java.time.Clock;
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.server.reactive.ServerHttpRequest;
+import org.springframework.util.StringUtils;
+import org.springframework.web.server.ResponseStatusException;
+import org.springframework.web.server.ServerWebExchange;
+import org.springframework.web.server.WebFilter;
+import org.springframework.web.server.WebFilterChain;
+import reactor.core.publisher.Mono;
+
+/**
+ * Attaches a {@link Deadline} to every stats request. The budget comes from the {@code timeoutSeconds} query parameter
+ * or the {@code X-Request-Timeout} header (seconds), is capped at {@code max-timeout} and defaults to
+ * {@code default-timeout}.
+ * <p>
+ * Also counts the stats requests in flight, so background work can yield to interactive load.
+ */
+public class RequestDeadlineFilter implements WebFilter {
+
+  public static final String TIMEOUT_PARAM = "timeoutSeconds";
+  public static final String TIMEOUT_HEADER = "X-Request-Timeout";
+
+  private final BitbucketHttpProperties.RequestDeadline settings;
+  private final Clock clock;
+  private final AtomicInteger inFlight = new AtomicInteger();
+
+  public RequestDeadlineFilter(BitbucketHttpProperties.RequestDeadline settings, Clock clock) {
+    this.settings = settings;
+    this.clock = clock;
+  }
+
+  @Override
+  public Mono<Void> filter(ServerWebExchange exchange, WebFilterChain chain) {
+    var request = exchange.getRequest();
+    if (!request.getPath().value().startsWith("/pull-requests")) {
+      return chain.filter(exchange);
+    }
+    Duration timeout;
+    try {
+      timeout = timeoutOf(request);
+    } catch (IllegalArgumentException e) {
+      return Mono.error(new ResponseStatusException(HttpStatus.BAD_REQUEST, e.getMessage()));
+    }
+    var deadline = Deadline.after(timeout, clock);
+    inFlight.incrementAndGet();
+    return chain.filter(exchange)
+        .contextWrite(deadline::attachTo)
+        .doFinally(signal -> inFlight.decrementAndGet());
+  }
+
+  /**
+   * @return stats requests being answered
+   */
+  public int inFlight() {
+    return inFlight.get();
+  }
+
+  private Duration timeoutOf(ServerHttpRequest request) {
+    String value = request.getQueryParams().getFirst(TIMEOUT_PARAM);
+    if (!StringUtils.hasText(value)) {
+      value = request.getHeaders().getFirst(TIMEOUT_HEADER);
+    }
+    if (!StringUtils.hasText(value)) {
+      return settings.defaultTimeout();
+    }
+    long seconds;
+    try {
+      seconds = Long.parseLong(value.trim());
+    } catch (NumberFormatException e) {
+      seconds = 0;
+    }
+    if (seconds <= 0) {
+      throw new IllegalArgumentException("Request timeout must be a positive number of seconds, got " + value);
+    }
+    Duration requested = Duration.ofSeconds(seconds);
+    return requested.compareTo(settings.maxTimeout()) > 0 ? settings.maxTimeout() : requested;
+  }
+}
@@ -0,0 +1,137 @@
+package com.example.bitbucketstats.configuration;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Supplier;
+import org.springframework.cache.Cache;
+import org.springframework.lang.Nullable;
+
+/**
+ * A cache whose writes are recorded against their tenant's {@link TenantQuota}, so a tenant over its share evicts
+ * its own entries. The underlying Caffeine cache reports removals to the quota through its removal listener, and the
+ * quota checks each write against the cache, so an entry gone before its load was recorded is not left behind.
+ * <p>
+ * Loaded values are recorded once the load has returned, outside Caffeine's compute, as enforcing a quota may evict
+ * other keys of the same map.
+ */
+public class TenantPartitionedCache implements Cache {
+
+  private final Cache delegate;
+  private final TenantQuota<Object> quota;
+
+  public TenantPartitionedCache(Cache delegate, TenantQuota<Object> quota) {
+    this.delegate = delegate;
+    this.quota = quota;
+  }
+
+  TenantQuota<Object> quota() {
+    return quota;
+  }
+
+  @Override
+  public String getName() {
+    return delegate.getName();
+  }
+
+  @Override
+  public Object getNativeCache() {
+    return delegate.getNativeCache();
+  }
+
+  @Override
+  @Nullable
+  public ValueWrapper get(Object key) {
+    return delegate.get(key);
+  }
+
+  @Override
+  @Nullable
+  public <T> T get(Object key, @Nullable Class<T> type) {
+    return delegate.get(key, type);
+  }
+
+  @Override
+  @Nullable
+  public <T> T get(Object key, Callable<T> valueLoader) {
+    var loaded = new AtomicBoolean();
+    T value = delegate.get(key, () -> {
+      loaded.set(true);
+      return valueLoader.call();
+    });
+    if (loaded.get()) {
+      record(key, value);
+    }
+    return value;
+  }
+
+  @Override
+  @Nullable
+  public CompletableFuture<?> retrieve(Object key) {
+    return delegate.retrieve(key);
+  }
+
+  @Override
+  public <T> CompletableFuture<T> retrieve(Object key, Supplier<CompletableFuture<T>> valueLoader) {
+    var loaded = new AtomicBoolean();
+    var future = delegate.retrieve(key, () -> {
+      loaded.set(true);
+      return valueLoader.get();
+    });
+    if (!loaded.get()) {
+      return future;
+    }
+    return future.thenApply(value -> {
+      record(key, value);
+      return value;
+    });
+  }
+
+  @Override
+  public void put(Object key, @Nullable Object value) {
+    delegate.put(key, value);
+    record(key, value);
+  }
+
+  @Override
+  @Nullable
+  public ValueWrapper putIfAbsent(Object key, @Nullable Object value) {
+    var existing = delegate.putIfAbsent(key, value);
+    if (existing == null) {
+      record(key, value);
+    }
+    return existing;
+  }
+
+  @Override
+  public void evict(Object key) {
+    delegate.evict(key);
+  }
+
+  @Override
+  public boolean evictIfPresent(Object key) {
+    return delegate.evictIfPresent(key);
+  }
+
+  @Override
+  public void clear() {
+    delegate.clear();
+    quota.clear();
+  }
+
+  @Override
+  public boolean invalidate() {
+    boolean present = delegate.invalidate();
+    quota.clear();
+    return present;
+  }
+
+  /**
+   * Null values are stored as a placeholder the removal listener would not match, so they are not recorded.
+   */
+  private void record(Object key, @Nullable Object value) {
+    if (value != null) {
+      quota.recordWrite(key, value);
+    }
+  }
+}
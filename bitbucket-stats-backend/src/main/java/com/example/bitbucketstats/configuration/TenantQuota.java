@@ -0,0 +1,254 @@
+package com.example.bitbucketstats.configuration;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.ToIntBiFunction;
+import org.springframework.lang.Nullable;
+
+/**
+ * Per-tenant shares of one cache's budget, so a heavy tenant evicts its own entries rather than everyone else's.
+ * <p>
+ * Every write is recorded against its tenant (a workspace, or a credential for entries without one; see
+ * {@code bitbucket.tenant-cache.partition-by}) with its weight. After a write, the writing tenant gives up its oldest
+ * entries while it holds more than {@code max-share} of the budget, or while the cache is nearly full and the tenant
+ * holds more than an equal share of it among the tenants present. Tenants within their share are only evicted by the
+ * cache's own policy, which still bounds the total.
+ * <p>
+ * Removals are reported by the cache's removal listener. A removal only counts when the removed value is the one
+ * recorded, so a late notification for a value that was replaced since is ignored. Writes are recorded after the
+ * cache has stored them, so an entry may already be gone, its removal reported with nothing to release; each write is
+ * checked against the cache before it is recorded and once more after, and released when the cache no longer holds it.
+ *
+ * @param <K> the cache's key type
+ */
+public class TenantQuota<K> {
+
+  /** Above this fraction of its budget, the cache counts as nearly full and shares are enforced. */
+  private static final double NEARLY_FULL = 0.9;
+
+  private final String cacheName;
+  private final long budget;
+  private final long maxTenantWeight;
+  private final Function<K, String> tenantOf;
+  private final Map<String, Partition<K>> partitions = new HashMap<>();
+  private final LongAdder evictions = new LongAdder();
+  private long total;
+  private volatile Consumer<K> evictor = key -> { };
+  private volatile ToIntBiFunction<K, Object> weigher = (key, value) -> 1;
+  @Nullable
+  private volatile Function<K, Object> peek;
+
+  private record Recorded(Object value, long weight) {
+
+  }
+
+  private static final class Partition<K> {
+
+    /** Recorded entries, oldest write first. */
+    private final LinkedHashMap<K, Recorded> entries = new LinkedHashMap<>();
+    private long weight;
+  }
+
+  /**
+   * @param cacheName the cache, for reports
+   * @param budget    the cache's total weight bound
+   * @param maxShare  largest fraction of the budget one tenant may hold
+   * @param tenantOf  the tenant an entry belongs to, by key
+   */
+  public TenantQuota(String cacheName, long budget, double maxShare, Function<K, String> tenantOf) {
+    this.cacheName = cacheName;
+    this.budget = budget;
+    this.maxTenantWeight = Math.max(1, (long) (budget * maxShare));
+    this.tenantOf = tenantOf;
+  }
+
+  /**
+   * @param cacheName    the cache, for reports
+   * @param budget       the cache's total weight bound
+   * @param settings     {@code bitbucket.tenant-cache}, or null to enforce no shares
+   * @param credentialOf the credential's cache key an entry was read with, if any
+   * @param workspaceOf  the entry's workspace, if any
+   * @return a quota for the cache, or null when shares are not enforced
+   */
+  @Nullable
+  public static <K> TenantQuota<K> forCache(String cacheName, long budget,
+      @Nullable BitbucketHttpProperties.TenantCache settings, Function<K, String> credentialOf,
+      Function<K, String> workspaceOf) {
+    if (settings == null || !settings.enabled()) {
+      return null;
+    }
+    return new TenantQuota<>(cacheName, budget, settings.maxShare(),
+        key -> tenant(settings.partitionBy(), credentialOf.apply(key), workspaceOf.apply(key)));
+  }
+
+  /**
+   * @param evictor removes an entry from the cache this quota applies to
+   */
+  public void evictWith(Consumer<K> evictor) {
+    this.evictor = evictor;
+  }
+
+  /**
+   * @param peek the value the cache holds for a key, read without counting as an access
+   */
+  public void peekWith(Function<K, Object> peek) {
+    this.peek = peek;
+  }
+
+  /**
+   * @param weigher the weight of an entry, in the unit of the budget; entries weigh 1 unless set
+   */
+  public void weighWith(ToIntBiFunction<K, Object> weigher) {
+    this.weigher = weigher;
+  }
+
+  /**
+   * Record a value written to the cache, weighed by {@link #weighWith}, and enforce its tenant's share.
+   *
+   * @param key   the entry's key
+   * @param value the value as stored in the cache
+   */
+  public void recordWrite(K key, Object value) {
+    recordWrite(key, value, weigher.applyAsInt(key, value));
+  }
+
+  /**
+   * Record a value written to the cache and enforce its tenant's share.
+   *
+   * @param key    the entry's key
+   * @param value  the value as stored in the cache
+   * @param weight its weight, in the unit of the budget
+   */
+  public void recordWrite(K key, Object value, long weight) {
+    if (!held(key, value)) {
+      return;
+    }
+    List<K> victims = new ArrayList<>();
+    synchronized (this) {
+      var tenant = tenantOf.apply(key);
+      var partition = partitions.computeIfAbsent(tenant, t -> new Partition<>());
+      var previous = partition.entries.remove(key);
+      if (previous != null) {
+        partition.weight -= previous.weight();
+        total -= previous.weight();
+      }
+      partition.entries.put(key, new Recorded(value, weight));
+      partition.weight += weight;
+      total += weight;
+
+      var oldest = partition.entries.entrySet().iterator();
+      while (oldest.hasNext() && partition.entries.size() > 1 && overShare(partition)) {
+        var victim = oldest.next();
+        if (victim.getKey().equals(key)) {
+          break;
+        }
+        oldest.remove();
+        partition.weight -= victim.getValue().weight();
+        total -= victim.getValue().weight();
+        victims.add(victim.getKey());
+      }
+    }
+    evictions.add(victims.size());
+    victims.forEach(evictor);
+    // the entry may have left between the check and the record, its removal finding nothing to release
+    if (!held(key, value)) {
+      recordRemoval(key, value);
+    }
+  }
+
+  private boolean held(K key, Object value) {
+    var current = peek;
+    return current == null || current.apply(key) == value;
+  }
+
+  /**
+   * Record a value leaving the cache, for whatever cause.
+   *
+   * @param key   the entry's key
+   * @param value the value removed
+   */
+  public synchronized void recordRemoval(@Nullable K key, @Nullable Object value) {
+    if (key == null) {
+      return;
+    }
+    var tenant = tenantOf.apply(key);
+    var partition = partitions.get(tenant);
+    var recorded = partition == null ? null : partition.entries.get(key);
+    if (recorded == null || recorded.value() != value) {
+      return;
+    }
+    partition.entries.remove(key);
+    partition.weight -= recorded.weight();
+    total -= recorded.weight();
+    if (partition.entries.isEmpty()) {
+      partitions.remove(tenant);
+    }
+  }
+
+  /**
+   * Forget every recorded entry, after the cache was cleared.
+   */
+  public synchronized void clear() {
+    partitions.clear();
+    total = 0;
+  }
+
+  private boolean overShare(Partition<K> partition) {
+    if (partition.weight > maxTenantWeight) {
+      return true;
+    }
+    long fairShare = budget / Math.max(1, partitions.size());
+    return total > budget * NEARLY_FULL && partition.weight > fairShare;
+  }
+
+  public String cacheName() {
+    return cacheName;
+  }
+
+  /**
+   * @return tenants holding entries
+   */
+  public synchronized int tenants() {
+    return partitions.size();
+  }
+
+  /**
+   * @return weight held by the heaviest tenant
+   */
+  public synchronized long largestTenantWeight() {
+    long largest = 0;
+    for (var partition : partitions.values()) {
+      largest = Math.max(largest, partition.weight);
+    }
+    return largest;
+  }
+
+  /**
+   * @return entries a tenant gave up for being over its share
+   */
+  public long evictions() {
+    return evictions.sum();
+  }
+
+  /**
+   * The tenant of an entry, as set by {@code bitbucket.tenant-cache.partition-by}.
+   *
+   * @param partitionBy what a tenant is
+   * @param credential  the credential's cache key the entry was read with, if any
+   * @param workspace   the entry's workspace, if any
+   * @return the tenant
+   */
+  public static String tenant(BitbucketHttpProperties.PartitionBy partitionBy, @Nullable String credential,
+      @Nullable String workspace) {
+    if (partitionBy == BitbucketHttpProperties.PartitionBy.WORKSPACE && workspace != null) {
+      return "workspace:" + workspace;
+    }
+    return credential == null ? "shared" : "credential:" + credential;
+  }
+}
@@ -0,0 +1,168 @@
+package com.example.bitbucketstats.configuration;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Supplier;
+import org.springframework.cache.Cache;
+import org.springframework.lang.Nullable;
+
+/**
+ * A cache whose misses fall through to a {@link DiskCacheStore} before the value is loaded.
+ * <p>
+ * Values found on disk are promoted to memory; values put or loaded are written to both. Eviction and clearing apply
+ * to both tiers. Keys are the string form of the cache key, values are stored as JSON of {@code type}.
+ */
+public class TieredCache implements Cache {
+
+  private final Cache memory;
+  private final DiskCacheStore disk;
+  private final Class<?> type;
+
+  public TieredCache(Cache memory, DiskCacheStore disk, Class<?> type) {
+    this.memory = memory;
+    this.disk = disk;
+    this.type = type;
+  }
+
+  Cache memory() {
+    return memory;
+  }
+
+  @Override
+  public String getName() {
+    return memory.getName();
+  }
+
+  @Override
+  public Object getNativeCache() {
+    return memory.getNativeCache();
+  }
+
+  @Override
+  @Nullable
+  public ValueWrapper get(Object key) {
+    var cached = memory.get(key);
+    if (cached != null || !promote(key)) {
+      return cached;
+    }
+    return memory.get(key);
+  }
+
+  @Override
+  @Nullable
+  public <T> T get(Object key, @Nullable Class<T> type) {
+    var cached = get(key);
+    if (cached == null) {
+      return null;
+    }
+    Object value = cached.get();
+    if (value != null && type != null && !type.isInstance(value)) {
+      throw new IllegalStateException("Cached value is not of required type [" + type.getName() + "]: " + value);
+    }
+    @SuppressWarnings("unchecked")
+    T typed = (T) value;
+    return typed;
+  }
+
+  @Override
+  @Nullable
+  public <T> T get(Object key, Callable<T> valueLoader) {
+    return memory.get(key, () -> {
+      T stored = fromDisk(key);
+      if (stored != null) {
+        return stored;
+      }
+      T loaded = valueLoader.call();
+      toDisk(key, loaded);
+      return loaded;
+    });
+  }
+
+  @Override
+  @Nullable
+  public CompletableFuture<?> retrieve(Object key) {
+    var cached = memory.retrieve(key);
+    if (cached != null || !promote(key)) {
+      return cached;
+    }
+    return memory.retrieve(key);
+  }
+
+  @Override
+  public <T> CompletableFuture<T> retrieve(Object key, Supplier<CompletableFuture<T>> valueLoader) {
+    return memory.retrieve(key, () -> {
+      T stored = fromDisk(key);
+      if (stored != null) {
+        return CompletableFuture.completedFuture(stored);
+      }
+      return valueLoader.get().thenApply(loaded -> {
+        toDisk(key, loaded);
+        return loaded;
+      });
+    });
+  }
+
+  @Override
+  public void put(Object key, @Nullable Object value) {
+    memory.put(key, value);
+    toDisk(key, value);
+  }
+
+  @Override
+  @Nullable
+  public ValueWrapper putIfAbsent(Object key, @Nullable Object value) {
+    var existing = memory.putIfAbsent(key, value);
+    if (existing == null) {
+      toDisk(key, value);
+    }
+    return existing;
+  }
+
+  @Override
+  public void evict(Object key) {
+    memory.evict(key);
+    disk.remove(key.toString());
+  }
+
+  @Override
+  public boolean evictIfPresent(Object key) {
+    boolean present = memory.evictIfPresent(key);
+    disk.remove(key.toString());
+    return present;
+  }
+
+  @Override
+  public void clear() {
+    memory.clear();
+    disk.clear();
+  }
+
+  @Override
+  public boolean invalidate() {
+    boolean present = memory.invalidate();
+    disk.clear();
+    return present;
+  }
+
+  private boolean promote(Object key) {
+    Object stored = fromDisk(key);
+    if (stored == null) {
+      return false;
+    }
+    memory.put(key, stored);
+    return true;
+  }
+
+  @Nullable
+  private <T> T fromDisk(Object key) {
+    @SuppressWarnings("unchecked")
+    T stored = (T) disk.get(key.toString(), type);
+    return stored;
+  }
+
+  private void toDisk(Object key, @Nullable Object value) {
+    if (value != null) {
+      disk.put(key.toString(), value);
+    }
+  }
+}
@@ -1,6 +1,17 @@
 package com.example.bitbucketstats.configuration;
 
+import com.example.bitbucketstats.integration.AdaptiveConcurrencyLimiter;
+import com.example.bitbucketstats.integration.ConditionalGetCache;
+import com.example.bitbucketstats.integration.DiffStatStore;
+import com.example.bitbucketstats.integration.HedgingPolicy;
+import com.example.bitbucketstats.integration.PageStreamDecoder;
+import com.example.bitbucketstats.integration.PullRequestSearchCache;
+import com.example.bitbucketstats.integration.RateLimitScheduler;
+import com.example.bitbucketstats.integration.RepositoryCircuitBreaker;
+import com.example.bitbucketstats.integration.UpstreamWarmup;
+import com.example.bitbucketstats.integration.WorkspaceBulkhead;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import java.net.URI;
 import java.time.Duration;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -15,6 +26,8 @@ import org.springframework.web.reactive.function.client.ExchangeFilterFunction;
 import org.springframework.web.reactive.function.client.ExchangeStrategies;
 import org.springframework.web.reactive.function.client.WebClient;
 import reactor.core.publisher.Mono;
+import reactor.netty.http.HttpProtocol;
+import reactor.netty.http.client.Http2AllocationStrategy;
 import reactor.netty.http.client.HttpClient;
 import reactor.netty.resources.ConnectionProvider;
 
@@ -22,33 +35,116 @@ import reactor.netty.resources.ConnectionProvider;
 public class WebClientConfig {
 
   private static final Logger log = LoggerFactory.getLogger(WebClientConfig.class);
+  private static final int MAX_CONNECTIONS = 200;
+  private static final Duration HTTP11_MAX_LIFE_TIME = Duration.ofMinutes(5);
 
   @Bean
-  public ConnectionProvider connectionProvider() {
-    return ConnectionProvider.builder("http-pool")
-        .maxConnections(200)
+  public ConnectionProvider connectionProvider(BitbucketHttpProperties bitbucketHttpProperties) {
+    var http2 = bitbucketHttpProperties.http2();
+    var builder = ConnectionProvider.builder("http-pool")
+        .maxConnections(MAX_CONNECTIONS)
         .pendingAcquireMaxCount(500)
         .pendingAcquireTimeout(Duration.ofSeconds(10))
         .maxIdleTime(Duration.ofSeconds(30))
-        .maxLifeTime(Duration.ofMinutes(5))
-        .build();
+        .maxLifeTime(maxLifeTime(bitbucketHttpProperties));
+    if (http2.enabled()) {
+      // Streams are packed onto open connections first; the HTTP/1.1 fallback still gets the full pool
+      builder.allocationStrategy(Http2AllocationStrategy.builder()
+              .maxConnections(MAX_CONNECTIONS)
+              .minConnections(http2.minConnections())
+              .maxConcurrentStreams(http2.maxConcurrentStreams())
+              .build());
+    }
+    return builder.build();
   }
 
   @Bean
-  public HttpClient httpClient(ConnectionProvider provider) {
-    return HttpClient.create(provider)
+  public HttpClient httpClient(ConnectionProvider provider, BitbucketHttpProperties bitbucketHttpProperties) {
+    var client = HttpClient.create(provider)
         .compress(true)
         .followRedirect(true)
         .responseTimeout(Duration.ofSeconds(30))
-        .option(io.netty.channel.ChannelOption.CONNECT_TIMEOUT_MILLIS, 5_000)
-        .doOnConnected(conn -> conn
-            .addHandlerLast(new io.netty.handler.timeout.ReadTimeoutHandler(30))
-            .addHandlerLast(new io.netty.handler.timeout.WriteTimeoutHandler(30)));
+        .option(io.netty.channel.ChannelOption.CONNECT_TIMEOUT_MILLIS, 5_000);
+
+    if (!bitbucketHttpProperties.http2().enabled()) {
+      return client.doOnConnected(conn -> conn
+          .addHandlerLast(new io.netty.handler.timeout.ReadTimeoutHandler(30))
+          .addHandlerLast(new io.netty.handler.timeout.WriteTimeoutHandler(30)));
+    }
+    // Idle timeouts on a shared HTTP/2 connection would close it under every stream; responseTimeout covers requests
+    boolean tls = URI.create(bitbucketHttpProperties.apiBase()).getScheme().equalsIgnoreCase("https");
+    return tls
+        ? client.protocol(HttpProtocol.H2, HttpProtocol.HTTP11).secure()
+        : client.protocol(HttpProtocol.H2C, HttpProtocol.HTTP11);
+  }
+
+  @Bean
+  public UpstreamWarmup upstreamWarmup(HttpClient httpClient, BitbucketHttpProperties bitbucketHttpProperties) {
+    return new UpstreamWarmup(httpClient, bitbucketHttpProperties.apiBase(), bitbucketHttpProperties.warmup(),
+        maxLifeTime(bitbucketHttpProperties));
+  }
+
+  private static Duration maxLifeTime(BitbucketHttpProperties bitbucketHttpProperties) {
+    var http2 = bitbucketHttpProperties.http2();
+    return http2.enabled() ? http2.maxLifeTime() : HTTP11_MAX_LIFE_TIME;
+  }
+
+  @Bean
+  public ConditionalGetCache conditionalGetCache(BitbucketHttpProperties bitbucketHttpProperties,
+      CacheMemoryBudget cacheMemoryBudget) {
+    return new ConditionalGetCache(bitbucketHttpProperties.conditionalGet(), bitbucketHttpProperties.tenantCache(),
+        cacheMemoryBudget);
+  }
+
+  @Bean
+  public PullRequestSearchCache pullRequestSearchCache(BitbucketHttpProperties bitbucketHttpProperties,
+      CacheMemoryBudget cacheMemoryBudget) {
+    return new PullRequestSearchCache(bitbucketHttpProperties.searchCache(), bitbucketHttpProperties.tenantCache(),
+        cacheMemoryBudget);
+  }
+
+  @Bean
+  public DiffStatStore diffStatStore(BitbucketHttpProperties bitbucketHttpProperties) {
+    return new DiffStatStore(bitbucketHttpProperties.diffstatCache());
+  }
+
+  @Bean
+  public HedgingPolicy hedgingPolicy(BitbucketHttpProperties bitbucketHttpProperties) {
+    return new HedgingPolicy(bitbucketHttpProperties.hedging());
+  }
+
+  @Bean
+  public PageStreamDecoder pageStreamDecoder(ObjectMapper objectMapper) {
+    return new PageStreamDecoder(objectMapper);
+  }
+
+  @Bean
+  public AdaptiveConcurrencyLimiter adaptiveConcurrencyLimiter(BitbucketHttpProperties bitbucketHttpProperties) {
+    return new AdaptiveConcurrencyLimiter(bitbucketHttpProperties.concurrency());
+  }
+
+  @Bean
+  public RateLimitScheduler rateLimitScheduler(BitbucketHttpProperties bitbucketHttpProperties) {
+    return new RateLimitScheduler(bitbucketHttpProperties.rateLimit());
+  }
+
+  @Bean
+  public RepositoryCircuitBreaker repositoryCircuitBreaker(BitbucketHttpProperties bitbucketHttpProperties) {
+    return new RepositoryCircuitBreaker(bitbucketHttpProperties.circuitBreaker());
+  }
+
+  @Bean
+  public WorkspaceBulkhead workspaceBulkhead(BitbucketHttpProperties bitbucketHttpProperties) {
+    return new WorkspaceBulkhead(bitbucketHttpProperties.bulkhead());
   }
 
   @Bean
   public WebClient webClient(ObjectMapper objectMapper,
-      HttpClient httpClient) {
+      HttpClient httpClient,
+      RepositoryCircuitBreaker repositoryCircuitBreaker,
+      WorkspaceBulkhead workspaceBulkhead,
+      RateLimitScheduler rateLimitScheduler,
+      AdaptiveConcurrencyLimiter adaptiveConcurrencyLimiter) {
     var strategies = ExchangeStrategies.builder()
         .codecs(cfg -> {
           cfg.defaultCodecs().jackson2JsonEncoder(new Jackson2JsonEncoder(objectMapper));
@@ -74,6 +170,13 @@ public class WebClientConfig {
         .defaultHeader(HttpHeaders.ACCEPT, MediaType.APPLICATION_JSON_VALUE)
         .filter(reqLog)
         .filter(resLog)
+        // an open circuit fails before taking a rate budget, workspace slot or concurrency permit
+        .filter(repositoryCircuitBreaker)
+        // requests held for Retry-After or budget must not occupy a workspace slot or concurrency permit,
+        // so the scheduler runs first
+        .filter(rateLimitScheduler)
+        .filter(workspaceBulkhead)
+        .filter(adaptiveConcurrencyLimiter)
         .build();
   }
 }
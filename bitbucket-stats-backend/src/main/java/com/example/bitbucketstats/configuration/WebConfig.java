@@ -1,5 +1,6 @@
 package com.example.bitbucketstats.configuration;
 
+import java.time.Clock;
 import java.util.Arrays;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
@@ -27,4 +28,9 @@ public class WebConfig {
 
     return new CorsWebFilter(source);
   }
+
+  @Bean
+  public RequestDeadlineFilter requestDeadlineFilter(BitbucketHttpProperties bitbucketHttpProperties) {
+    return new RequestDeadlineFilter(bitbucketHttpProperties.deadline(), Clock.systemUTC());
+  }
 }
@@ -6,6 +6,7 @@ import com.example.bitbucketstats.controllers.response.MyPullRequestsResponse;
 import com.example.bitbucketstats.services.MyPullRequestsService;
 import jakarta.validation.Valid;
 import lombok.RequiredArgsConstructor;
+import org.springframework.http.ResponseEntity;
 import org.springframework.validation.annotation.Validated;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.RequestHeader;
@@ -20,13 +21,17 @@ public class MyPullRequestsController {
   private final MyPullRequestsService myPullRequestsService;
 
   @GetMapping("/pull-requests/stats")
-  public Mono<MyPullRequestsResponse> getMyPrStats(
+  public Mono<ResponseEntity<MyPullRequestsResponse>> getMyPrStats(
       @RequestHeader(value = "Authorization", required = false) String authorization,
       @RequestHeader(required = false) String username,
       @RequestHeader(required = false) String appPassword,
       @Valid MyPullRequestsParams params
   ) {
-    return myPullRequestsService.getMyPullRequestsStats(
-        BitbucketAuth.fromHeaders(authorization, username, appPassword), params);
+    var auth = BitbucketAuth.fromHeaders(authorization, username, appPassword);
+    if (!params.isAllowStale()) {
+      return myPullRequestsService.getMyPullRequestsStats(auth, params).map(ResponseEntity::ok);
+    }
+    return myPullRequestsService.getMyPullRequestsStatsAllowingStale(auth, params)
+        .map(served -> ResponseEntity.ok().headers(served.headers()).body(served.value()));
   }
 }
@@ -6,6 +6,7 @@ import com.example.bitbucketstats.controllers.response.PullRequestReviewResponse
 import com.example.bitbucketstats.services.PullRequestsReviewService;
 import jakarta.validation.Valid;
 import lombok.RequiredArgsConstructor;
+import org.springframework.http.ResponseEntity;
 import org.springframework.validation.annotation.Validated;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.RequestHeader;
@@ -20,14 +21,18 @@ class PullRequestsReviewController {
   private final PullRequestsReviewService pullRequestsReviewService;
 
   @GetMapping("/pull-requests/reviews/stats")
-  public Mono<PullRequestReviewResponse> getReviewStats(
+  public Mono<ResponseEntity<PullRequestReviewResponse>> getReviewStats(
       @RequestHeader(value = "Authorization", required = false) String authorization,
       @RequestHeader(required = false) String username,
       @RequestHeader(required = false) String appPassword,
       @Valid PullRequestReviewParams params
   ) {
-    return pullRequestsReviewService.getReviewStats(
-        BitbucketAuth.fromHeaders(authorization, username, appPassword), params);
+    var auth = BitbucketAuth.fromHeaders(authorization, username, appPassword);
+    if (!params.isAllowStale()) {
+      return pullRequestsReviewService.getReviewStats(auth, params).map(ResponseEntity::ok);
+    }
+    return pullRequestsReviewService.getReviewStatsAllowingStale(auth, params)
+        .map(served -> ResponseEntity.ok().headers(served.headers()).body(served.value()));
   }
 }
 
@@ -0,0 +1,61 @@
+package com.example.bitbucketstats.controllers;
+
+import com.example.bitbucketstats.integration.AdaptiveConcurrencyLimiter;
+import com.example.bitbucketstats.integration.HedgingPolicy;
+import com.example.bitbucketstats.integration.RateLimitScheduler;
+import com.example.bitbucketstats.integration.RepositoryCircuitBreaker;
+import com.example.bitbucketstats.integration.WorkspaceBulkhead;
+import com.example.bitbucketstats.models.BitbucketAuth;
+import java.util.Map;
+import lombok.RequiredArgsConstructor;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestHeader;
+import org.springframework.web.bind.annotation.RestController;
+import reactor.core.publisher.Mono;
+
+/**
+ * Operational view of how the backend is talking to Bitbucket.
+ */
+@RestController
+@RequiredArgsConstructor
+public class UpstreamController {
+
+  private final AdaptiveConcurrencyLimiter adaptiveConcurrencyLimiter;
+  private final RateLimitScheduler rateLimitScheduler;
+  private final RepositoryCircuitBreaker repositoryCircuitBreaker;
+  private final WorkspaceBulkhead workspaceBulkhead;
+  private final HedgingPolicy hedgingPolicy;
+
+  @GetMapping("/upstream/concurrency")
+  public Mono<AdaptiveConcurrencyLimiter.Snapshot> getConcurrency() {
+    return Mono.fromSupplier(adaptiveConcurrencyLimiter::snapshot);
+  }
+
+  @GetMapping("/upstream/budget")
+  public Mono<RateLimitScheduler.Budget> getBudget(
+      @RequestHeader(value = "Authorization", required = false) String authorization,
+      @RequestHeader(required = false) String username,
+      @RequestHeader(required = false) String appPassword
+  ) {
+    return Mono.fromSupplier(() -> rateLimitScheduler.budget(
+        BitbucketAuth.fromHeaders(authorization, username, appPassword)));
+  }
+
+  @GetMapping("/upstream/isolation")
+  public Mono<Isolation> getIsolation() {
+    return Mono.fromSupplier(() -> new Isolation(repositoryCircuitBreaker.states(), workspaceBulkhead.inFlight()));
+  }
+
+  @GetMapping("/upstream/hedging")
+  public Mono<HedgingPolicy.Stats> getHedging() {
+    return Mono.fromSupplier(hedgingPolicy::stats);
+  }
+
+  /**
+   * @param circuits circuit state per {@code workspace/repo}
+   * @param inFlight upstream calls in flight per workspace
+   */
+  public record Isolation(Map<String, RepositoryCircuitBreaker.State> circuits, Map<String, Integer> inFlight) {
+
+  }
+}
@@ -8,6 +8,8 @@ import jakarta.validation.constraints.PastOrPresent;
 import java.time.LocalDate;
 import java.time.ZoneId;
 import java.util.List;
+import java.util.Locale;
+import java.util.Objects;
 import lombok.Data;
 import org.springframework.format.annotation.DateTimeFormat;
 import org.springframework.format.annotation.DateTimeFormat.ISO;
@@ -40,9 +42,27 @@ public class BaseParams {
   /** Optional draft filter: queued=true|false */
   private Boolean queued;
 
-  /** Concurrency cap for parallel fetches */
+  /** Concurrency hint for parallel fetches; upstream calls are further bounded by the global adaptive limit */
   private int maxConcurrency = 8;
 
+  /** Answer from the last result for the same parameters, refreshing it in the background when it is old */
+  private boolean allowStale = false;
+
+  /**
+   * The parameters that change a response, normalized: repositories and states sorted, states upper-cased. Execution
+   * hints such as {@code maxConcurrency} are left out.
+   */
+  public String canonicalKey() {
+    return String.join("|",
+        workspace,
+        String.join(",", repo == null ? List.of() : repo.stream().sorted().toList()),
+        String.valueOf(sinceDate),
+        String.valueOf(untilDate),
+        String.join(",", state == null ? List.of() : state.stream()
+            .map(s -> s.toUpperCase(Locale.ROOT)).sorted().toList()),
+        Objects.toString(queued, ""));
+  }
+
   @AssertTrue(message = "sinceDate must be ≤ untilDate")
   public boolean isDateRangeValid() {
     return sinceDate == null || untilDate == null || !sinceDate.isAfter(untilDate);
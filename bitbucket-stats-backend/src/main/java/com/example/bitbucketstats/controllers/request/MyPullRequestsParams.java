@@ -1,5 +1,6 @@
 package com.example.bitbucketstats.controllers.request;
 
+import java.util.Objects;
 import lombok.Data;
 import lombok.EqualsAndHashCode;
 
@@ -15,4 +16,10 @@ public class MyPullRequestsParams extends BaseParams {
 
   /** Optional author nickname filter */
   private String nickname;
+
+  @Override
+  public String canonicalKey() {
+    return String.join("|", super.canonicalKey(), String.valueOf(includePullRequestDetails),
+        String.valueOf(includeDiffDetails), Objects.toString(nickname, ""));
+  }
 }
@@ -2,6 +2,7 @@ package com.example.bitbucketstats.controllers.request;
 
 import static com.example.bitbucketstats.utils.GeneralUtils.addBracesToUuid;
 
+import java.util.Objects;
 import lombok.Data;
 import lombok.EqualsAndHashCode;
 
@@ -15,7 +16,16 @@ public class PullRequestReviewParams extends BaseParams {
   /** Include comment details in response */
   private boolean includeCommentDetails = false;
 
+  /** Include time to first review, time to first approval and review rounds, read from each PR's activity */
+  private boolean includeReviewMetrics = false;
+
   public void setReviewerUuid(String reviewerUuid) {
     this.reviewerUuid = addBracesToUuid(reviewerUuid);
   }
+
+  @Override
+  public String canonicalKey() {
+    return String.join("|", super.canonicalKey(), Objects.toString(reviewerUuid, ""),
+        String.valueOf(includeCommentDetails), String.valueOf(includeReviewMetrics));
+  }
 }
@@ -0,0 +1,16 @@
+package com.example.bitbucketstats.controllers.response;
+
+import java.util.List;
+
+/**
+ * What a response leaves out because the request's deadline was reached or a repository was unavailable.
+ *
+ * @param repos        repositories whose pull requests are missing or only partly counted
+ * @param pullRequests pull requests ({@code repo#id}) whose details are missing
+ */
+public record MissingResults(
+    List<String> repos,
+    List<String> pullRequests
+) {
+
+}
@@ -10,7 +10,9 @@ public record MyPullRequestsResponse(
     Double avgFilesChanged,
     Double avgLinesAdded,
     Double avgLinesRemoved,
-    List<MyPullRequestsSummary> pullRequestDetails
+    List<MyPullRequestsSummary> pullRequestDetails,
+    boolean incomplete,
+    MissingResults missing
 ) {
 
 }
@@ -10,7 +10,10 @@ public record PullRequestReviewResponse(
     Integer totalComments,
     Double approvedPercentage,
     Double commentedPercentage,
-    List<PullRequestCommentSummary> pullRequestsCommented
+    List<PullRequestCommentSummary> pullRequestsCommented,
+    ReviewLatency reviewLatency,
+    boolean incomplete,
+    MissingResults missing
 ) {
 
 }
@@ -0,0 +1,23 @@
+package com.example.bitbucketstats.controllers.response;
+
+/**
+ * How quickly and in how many rounds the reviewed pull requests were reviewed, by anyone other than their author.
+ *
+ * @param avgHoursToFirstReview   from creation to the first comment, approval or change request; PRs never reviewed
+ *                                are left out
+ * @param avgHoursToFirstApproval from creation to the first approval; PRs never approved are left out
+ * @param avgReviewRounds         bursts of review separated by new commits, over all measured PRs
+ * @param pullRequestsMeasured    PRs whose activity could be read
+ * @param pullRequestsUnmeasured  PRs left out of the averages: their activity was not read, either because the
+ *                                deadline or an open circuit cut it short, or because they have comments but the
+ *                                reviewer took no part in them
+ */
+public record ReviewLatency(
+    Double avgHoursToFirstReview,
+    Double avgHoursToFirstApproval,
+    Double avgReviewRounds,
+    int pullRequestsMeasured,
+    int pullRequestsUnmeasured
+) {
+
+}
@@ -0,0 +1,25 @@
+package com.example.bitbucketstats.exceptions;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.web.server.ResponseStatusException;
+
+/**
+ * Raised instead of calling Bitbucket while the circuit for a repository is open.
+ */
+public class CircuitOpenException extends ResponseStatusException {
+
+  private final String repository;
+
+  public CircuitOpenException(String repository) {
+    super(HttpStatus.SERVICE_UNAVAILABLE, "Bitbucket repository " + repository
+        + " is failing, calls are paused until it recovers");
+    this.repository = repository;
+  }
+
+  /**
+   * @return the affected repository as {@code workspace/repo}
+   */
+  public String getRepository() {
+    return repository;
+  }
+}
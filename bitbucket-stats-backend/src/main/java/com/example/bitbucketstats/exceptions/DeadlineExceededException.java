@@ -0,0 +1,14 @@
+package com.example.bitbucketstats.exceptions;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.web.server.ResponseStatusException;
+
+/**
+ * Raised instead of (or while) calling Bitbucket once the request's deadline leaves no time for the call.
+ */
+public class DeadlineExceededException extends ResponseStatusException {
+
+  public DeadlineExceededException(String url) {
+    super(HttpStatus.GATEWAY_TIMEOUT, "Request deadline reached before Bitbucket answered " + url);
+  }
+}
@@ -0,0 +1,124 @@
+package com.example.bitbucketstats.integration;
+
+import com.example.bitbucketstats.configuration.BitbucketHttpProperties;
+import java.util.function.LongSupplier;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.http.HttpStatusCode;
+import org.springframework.web.reactive.function.client.ClientRequest;
+import org.springframework.web.reactive.function.client.ClientResponse;
+import org.springframework.web.reactive.function.client.ExchangeFilterFunction;
+import org.springframework.web.reactive.function.client.ExchangeFunction;
+import reactor.core.publisher.Mono;
+
+/**
+ * Process-wide AIMD limiter for upstream Bitbucket calls, applied as a WebClient filter.
+ * <p>
+ * The in-flight limit grows by {@code 1 / limit} per successful response while at least half of it is in use, so by
+ * about one per round-trip at full use, and is cut by {@code backoffRatio} on 429s, 5xx, transport errors, or when
+ * the short-term latency average rises above {@code latencyTolerance} times the long-term one. A permit is held until
+ * the response body has been consumed; requests over the limit wait in a FIFO queue of at most {@code maxQueue}
+ * entries.
+ */
+public class AdaptiveConcurrencyLimiter implements ExchangeFilterFunction {
+
+  private static final Logger log = LoggerFactory.getLogger(AdaptiveConcurrencyLimiter.class);
+  private static final double SHORT_EWMA_ALPHA = 0.3;
+  private static final double LONG_EWMA_ALPHA = 0.02;
+
+  private final BitbucketHttpProperties.ConcurrencyLimit settings;
+  private final LongSupplier nanoClock;
+  private final PermitQueue permits;
+
+  /** Written under this limiter's lock; read by {@link #permits} under its own. */
+  private volatile double limit;
+  private double shortLatencyNanos;
+  private double longLatencyNanos;
+  private long lastDecreaseNanos;
+
+  public AdaptiveConcurrencyLimiter(BitbucketHttpProperties.ConcurrencyLimit settings) {
+    this(settings, System::nanoTime);
+  }
+
+  AdaptiveConcurrencyLimiter(BitbucketHttpProperties.ConcurrencyLimit settings, LongSupplier nanoClock) {
+    this.settings = settings;
+    this.nanoClock = nanoClock;
+    this.limit = settings.initialLimit();
+    this.permits = new PermitQueue(() -> (int) limit, settings.maxQueue(),
+        () -> "Too many queued upstream requests, try again later");
+  }
+
+  @Override
+  public Mono<ClientResponse> filter(ClientRequest request, ExchangeFunction next) {
+    return permits.acquire().flatMap(permit -> {
+      long start = nanoClock.getAsLong();
+      return PermitQueue.holding(permit, next.exchange(request)
+          .doOnNext(res -> onResponse(res.statusCode(), nanoClock.getAsLong() - start))
+          .doOnError(e -> onDropped("transport error")));
+    });
+  }
+
+  /**
+   * Current in-flight limit, queue depth and latency averages.
+   */
+  public synchronized Snapshot snapshot() {
+    return new Snapshot((int) limit, permits.inFlight(), permits.queued(),
+        Math.round(shortLatencyNanos / 1_000_000), Math.round(longLatencyNanos / 1_000_000));
+  }
+
+  private void onResponse(HttpStatusCode status, long latencyNanos) {
+    int code = status.value();
+    if (code == 429 || status.is5xxServerError()) {
+      onDropped("status " + code);
+      return;
+    }
+
+    boolean raised = false;
+    boolean latencyRising;
+    synchronized (this) {
+      if (longLatencyNanos == 0) {
+        shortLatencyNanos = latencyNanos;
+        longLatencyNanos = latencyNanos;
+      } else {
+        shortLatencyNanos += SHORT_EWMA_ALPHA * (latencyNanos - shortLatencyNanos);
+        longLatencyNanos += LONG_EWMA_ALPHA * (latencyNanos - longLatencyNanos);
+      }
+      latencyRising = shortLatencyNanos > longLatencyNanos * settings.latencyTolerance();
+      if (!latencyRising && permits.inFlight() * 2 >= limit) {
+        limit = Math.min(settings.maxLimit(), limit + 1.0 / limit);
+        raised = true;
+      }
+    }
+    if (raised) {
+      permits.drain();
+    }
+    if (latencyRising) {
+      onDropped("rising latency");
+    }
+  }
+
+  private void onDropped(String reason) {
+    synchronized (this) {
+      long now = nanoClock.getAsLong();
+      // At most one cut per observed round-trip, so a burst of failures does not collapse the limit
+      if (lastDecreaseNanos != 0 && now - lastDecreaseNanos < longLatencyNanos) {
+        return;
+      }
+      lastDecreaseNanos = now;
+      double previous = limit;
+      limit = Math.max(settings.minLimit(), limit * settings.backoffRatio());
+      log.debug("Upstream concurrency limit {} -> {} ({})", (int) previous, (int) limit, reason);
+    }
+  }
+
+  /**
+   * @param limit          current in-flight limit
+   * @param inFlight       requests currently holding a permit
+   * @param queued         requests waiting for a permit
+   * @param shortLatencyMs short-term latency average
+   * @param longLatencyMs  long-term latency average
+   */
+  public record Snapshot(int limit, int inFlight, int queued, long shortLatencyMs, long longLatencyMs) {
+
+  }
+}
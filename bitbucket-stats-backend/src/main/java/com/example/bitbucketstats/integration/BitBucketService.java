@@ -1,14 +1,22 @@
 package com.example.bitbucketstats.integration;
 
 import static com.example.bitbucketstats.configuration.CachingConfig.BITBUCKET_USER_CACHE;
+import static com.example.bitbucketstats.configuration.CachingConfig.PR_ACTIVITY_CACHE;
 import static com.example.bitbucketstats.utils.GeneralUtils.quote;
 import static com.example.bitbucketstats.utils.GeneralUtils.urlEncode;
 
+import com.example.bitbucketstats.exceptions.CircuitOpenException;
+import com.example.bitbucketstats.exceptions.DeadlineExceededException;
+import com.example.bitbucketstats.models.ActivityDigest;
 import com.example.bitbucketstats.models.BitbucketAuth;
+import com.example.bitbucketstats.models.Deadline;
 import com.example.bitbucketstats.models.DiffDetails;
 import com.example.bitbucketstats.models.EnrichedPullRequest;
 import com.example.bitbucketstats.models.FieldFilter;
+import com.example.bitbucketstats.integration.response.Comment;
+import com.example.bitbucketstats.integration.response.PullRequest;
 import com.example.bitbucketstats.integration.response.User;
+import com.example.bitbucketstats.integration.response.page.ActivityPage;
 import com.example.bitbucketstats.integration.response.page.CommentPage;
 import com.example.bitbucketstats.integration.response.page.DiffStatPage;
 import com.example.bitbucketstats.integration.response.page.PullRequestPage;
@@ -16,7 +24,12 @@ import com.example.bitbucketstats.controllers.request.BaseParams;
 import com.example.bitbucketstats.utils.GeneralUtils;
 import com.example.bitbucketstats.utils.PullRequestUtils;
 import java.time.LocalDate;
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.Locale;
+import java.util.Set;
 import java.util.stream.Collectors;
 import lombok.RequiredArgsConstructor;
 import org.slf4j.Logger;
@@ -24,6 +37,7 @@ import org.slf4j.LoggerFactory;
 import org.springframework.cache.annotation.Cacheable;
 import org.springframework.lang.Nullable;
 import org.springframework.stereotype.Service;
+import org.springframework.web.reactive.function.client.WebClientResponseException;
 import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 
@@ -32,19 +46,16 @@ import reactor.core.publisher.Mono;
 public class BitBucketService {
 
   private static final Logger log = LoggerFactory.getLogger(BitBucketService.class);
-  private static final String PR_FIELDS = String.join(",",
-      "next",
-      "values.id",
-      "values.title",
-      "values.author.uuid",
-      "values.created_on",
-      "values.updated_on",
-      "values.comment_count",
-      "values.participants.user.uuid",
-      "values.participants.approved"
-  );
+
+  /** Page size of pull request listings, per repository and per user. */
+  public static final int PULL_REQUEST_PAGE_LEN = 50;
 
   private final BitbucketClient bitbucketClient;
+  private final RateLimitScheduler rateLimitScheduler;
+  private final PullRequestSearchCache pullRequestSearchCache;
+  private final DiffStatStore diffStatStore;
+  private final CommentCountCache commentCountCache;
+  private final CommentQuerySupport commentQuery = new CommentQuerySupport();
 
   /**
    * Fetch the current user from Bitbucket using the provided authentication details.
@@ -64,36 +75,80 @@ public class BitBucketService {
    * Search pull requests across multiple repositories using the given filter.
    *
    * @param filter the filter to apply (e.g. author, reviewer)
+   * @param projection the PR fields the caller reads
    * @param repos list of repository names to search in
    * @param auth authentication details
    * @param params additional parameters like date range and state
-   * @return a Flux of PullRequest objects matching the filter across all specified repositories
+   * @return a Flux of PullRequest objects matching the filter across all specified repositories; fails with 429 up
+   *     front when the credential's remaining hourly quota cannot cover one search per repository. Repositories whose
+   *     circuit is open, or that could not be searched completely before the request's deadline, are recorded as
+   *     missing on the {@link Deadline}; pull requests already fetched from them are kept.
    */
   public Flux<EnrichedPullRequest> searchPullRequestsAcrossRepos(
-      FieldFilter filter, List<String> repos, BitbucketAuth auth, BaseParams params) {
+      FieldFilter filter, FieldProjection projection, List<String> repos, BitbucketAuth auth, BaseParams params) {
     int cc = Math.max(1, params.getMaxConcurrency());
-    return Flux.fromIterable(repos)
-        .flatMap(repo -> searchPullRequestsByFilter(filter, repo, auth, params), cc)
+    return Flux.defer(() -> {
+          rateLimitScheduler.ensureBudget(auth, repos.size());
+          return Flux.fromIterable(repos);
+        })
+        .flatMap(repo -> searchPullRequestsByFilter(filter, projection, repo, auth, params)
+            .onErrorResume(CircuitOpenException.class, e -> {
+              log.warn("Skipping {}: {}", e.getRepository(), e.getReason());
+              return Deadline.skipRepository(repo);
+            })
+            .onErrorResume(DeadlineExceededException.class, e -> {
+              log.warn("Deadline reached while searching {}, returning what was fetched", repo);
+              return Deadline.skipRepository(repo);
+            }), cc)
         .distinct(PullRequestUtils::prKey)
         .doOnError(e -> log.warn("Error while fetching PRs", e));
   }
 
   /**
    * Search pull requests in a specific repository using the given filter.
+   * <p>
+   * Searches for closed pull requests go through the {@link PullRequestSearchCache}: days of the window that have
+   * passed and were searched before are answered from it, and only the remaining ranges are searched, each narrowed
+   * to its own days.
    *
    * @param fieldFilter the filter to apply (e.g. author, reviewer)
+   * @param projection the PR fields the caller reads
    * @param repo the repository name
    * @param auth authentication details
    * @param params additional parameters like date range and state
    * @return a Flux of PullRequest objects matching the filter
    */
   public Flux<EnrichedPullRequest> searchPullRequestsByFilter(
-      FieldFilter fieldFilter, String repo, BitbucketAuth auth, BaseParams params) {
-    String query = buildPullRequestsQuery(fieldFilter ,params.getSinceDate(), params.getUntilDate(),
-        params.getState(), params.getQueued());
+      FieldFilter fieldFilter, FieldProjection projection, String repo, BitbucketAuth auth, BaseParams params) {
+    LocalDate since = params.getSinceDate();
+    LocalDate until = params.getUntilDate();
+    if (!pullRequestSearchCache.covers(params.getState()) || !since.isBefore(until)) {
+      return searchPullRequests(fieldFilter, projection, repo, auth, params,
+          buildPullRequestsQuery(fieldFilter, since, until, false, params.getState(), params.getQueued()));
+    }
+
+    var key = PullRequestSearchCache.SearchKey.of(auth, repo, fieldFilter, projection, params);
+    var lookup = pullRequestSearchCache.lookup(key, since, until);
+    log.debug("Search cache for {}: {} cached PRs, searching {}", repo, lookup.cached().size(), lookup.missing());
 
-    var url = String.format("/repositories/%s/%s/pullrequests?q=%s&pagelen=50&fields=%s",
-        params.getWorkspace(), repo, urlEncode(query), PR_FIELDS);
+    Flux<EnrichedPullRequest> searched = Flux.fromIterable(lookup.missing())
+        .flatMapSequential(range -> Flux.defer(() -> {
+          List<EnrichedPullRequest> found = new ArrayList<>();
+          String query = buildPullRequestsQuery(fieldFilter, range.from(), range.until(), true,
+              params.getState(), params.getQueued());
+          return searchPullRequests(fieldFilter, projection, repo, auth, params, query)
+              .doOnNext(found::add)
+              .doOnComplete(() -> pullRequestSearchCache.store(key, range, lookup.mutableFrom(), found));
+        }));
+    // searched days come first, so a PR updated again since its day was cached is returned in its current form
+    return Flux.concat(searched, Flux.fromIterable(lookup.cached()))
+        .distinct(PullRequestUtils::prKey);
+  }
+
+  private Flux<EnrichedPullRequest> searchPullRequests(FieldFilter fieldFilter, FieldProjection projection,
+      String repo, BitbucketAuth auth, BaseParams params, String query) {
+    var url = String.format("/repositories/%s/%s/pullrequests?q=%s&pagelen=%d&fields=%s",
+        params.getWorkspace(), repo, urlEncode(query), PULL_REQUEST_PAGE_LEN, projection.fields());
 
     log.info("Pull requests url: {}", url);
     log.debug("Search PRs by {}: repo={} value={} states={} queued={} since={} until={} url={}",
@@ -104,39 +159,194 @@ public class BitBucketService {
         .map(p -> EnrichedPullRequest.from(p, repo));
   }
 
+  /**
+   * Count the pull requests a user authored across the workspace, in the requested states, from a one-element page of
+   * the user-level listing.
+   *
+   * @param user the author's username or {@code {uuid}}
+   * @param auth authentication details
+   * @param params workspace and states
+   * @return a Mono containing the total reported by Bitbucket, or {@code -1} when the page carries no size
+   */
+  public Mono<Integer> countUserPullRequests(String user, BitbucketAuth auth, BaseParams params) {
+    String url = String.format("/workspaces/%s/pullrequests/%s?pagelen=1&fields=size%s",
+        params.getWorkspace(), urlEncode(user), stateParams(params.getState()));
+    log.debug("Count PRs of {}: url={}", user, url);
+    return bitbucketClient.retrieveJson(auth, url, PullRequestPage.class)
+        .map(page -> page.size() == null ? -1 : page.size());
+  }
+
+  /**
+   * List the pull requests a user authored across the workspace in one paginated stream, instead of one search per
+   * repository.
+   * <p>
+   * The user-level listing only filters on state, so repositories and the update window are applied locally, with the
+   * same bounds as the per-repository query ({@code updated_on} between the start of {@code sinceDate} and the start
+   * of {@code untilDate}, UTC).
+   *
+   * @param user the author's username or {@code {uuid}}
+   * @param projection the PR fields the caller reads; must include the destination repository
+   * @param auth authentication details
+   * @param params repositories, date range and states
+   * @return a Flux of the user's pull requests in the requested repositories; when the request's deadline passes
+   *     mid-listing, the pull requests fetched so far are kept and every requested repository is recorded as missing
+   *     on the {@link Deadline}, since any of them may lack pull requests
+   */
+  public Flux<EnrichedPullRequest> listUserPullRequests(
+      String user, FieldProjection projection, BitbucketAuth auth, BaseParams params) {
+    Set<String> repos = params.getRepo().stream()
+        .map(r -> r.toLowerCase(Locale.ROOT))
+        .collect(Collectors.toSet());
+    var since = params.getSinceDate().atStartOfDay().atOffset(ZoneOffset.UTC);
+    var until = params.getUntilDate().atStartOfDay().atOffset(ZoneOffset.UTC);
+    String url = String.format("/workspaces/%s/pullrequests/%s?pagelen=%d&fields=%s%s",
+        params.getWorkspace(), urlEncode(user), PULL_REQUEST_PAGE_LEN, projection.fields(),
+        stateParams(params.getState()));
+    log.debug("List PRs of {}: repos={} since={} until={} url={}", user, repos, since, until, url);
+
+    return Flux.defer(() -> {
+          rateLimitScheduler.ensureBudget(auth, 1);
+          return bitbucketClient.fetchAll(auth, url, PullRequestPage.class);
+        })
+        .filter(pr -> pr.updatedOn() != null && !pr.updatedOn().isBefore(since) && !pr.updatedOn().isAfter(until))
+        .flatMap(pr -> {
+          String repo = repositoryOf(pr);
+          return repo != null && repos.contains(repo.toLowerCase(Locale.ROOT))
+              ? Mono.just(EnrichedPullRequest.from(pr, repo))
+              : Mono.empty();
+        })
+        .distinct(PullRequestUtils::prKey)
+        .onErrorResume(DeadlineExceededException.class, e -> {
+          log.warn("Deadline reached while listing PRs of {}, returning what was fetched", user);
+          return Flux.fromIterable(params.getRepo())
+              .flatMap(repo -> Deadline.<EnrichedPullRequest>skipRepository(repo));
+        })
+        .doOnError(e -> log.warn("Error while listing PRs of {}", user, e));
+  }
+
+  @Nullable
+  private static String repositoryOf(PullRequest pr) {
+    if (pr.destination() == null || pr.destination().repository() == null) {
+      return null;
+    }
+    return pr.destination().repository().slug();
+  }
+
   /**
    * Fetch the count of comments made by the current user on a specific pull request.
+   * <p>
+   * The author and deletion filters are pushed to Bitbucket as a BBQL {@code q} parameter, so only the user's own
+   * comments are transferred. The same checks are applied locally as a backstop; if Bitbucket rejects the query (a
+   * 400 about the query, not any 400) or returns comments it should have filtered out, the workspace is filtered
+   * client-side for a while ({@link CommentQuerySupport}).
    *
    * @param auth authentication details
    * @param workspace the Bitbucket workspace
    * @param repo the repository name
    * @param prId the pull request ID
    * @param myUuid the UUID of the current user
+   * @param updatedOn the PR's {@code updated_on} as listed; the count is taken from the {@link CommentCountCache}
+   *     unless it has moved since the last count. Null always counts.
    * @return a Mono containing the count of comments made by the user
    */
-  public Mono<Integer> fetchMyCommentCount(BitbucketAuth auth, String workspace, String repo, int prId, String myUuid) {
-    String url = String.format("/repositories/%s/%s/pullrequests/%d/comments?pagelen=100", workspace, repo, prId);
-    log.trace("Pull request comments url: {}", url);
+  public Mono<Integer> fetchMyCommentCount(BitbucketAuth auth, String workspace, String repo, int prId, String myUuid,
+      @Nullable OffsetDateTime updatedOn) {
+    if (updatedOn == null) {
+      return countMyComments(auth, workspace, repo, prId, myUuid);
+    }
+    return commentCountCache.get(new CommentCountCache.Key(auth.cacheKey(), workspace, repo, prId, myUuid), updatedOn,
+        () -> countMyComments(auth, workspace, repo, prId, myUuid));
+  }
+
+  private Mono<Integer> countMyComments(BitbucketAuth auth, String workspace, String repo, int prId, String myUuid) {
+    boolean serverFiltered = commentQuery.supported(workspace);
 
-    return bitbucketClient.fetchAll(auth, url, CommentPage.class)
+    return fetchComments(auth, workspace, repo, prId, serverFiltered ? myUuid : null)
+        .onErrorResume(WebClientResponseException.BadRequest.class, e -> {
+          if (!serverFiltered || !CommentQuerySupport.rejectsQuery(e)) {
+            return Flux.error(e);
+          }
+          commentQuery.fallBack(workspace, "rejected with 400");
+          return fetchComments(auth, workspace, repo, prId, null);
+        })
         .doOnSubscribe(s -> log.trace("Begin comments paging for {}#{}", repo, prId))
+        .doOnNext(c -> {
+          if (serverFiltered && (!c.authoredBy(myUuid) || !c.isNotDeleted())) {
+            commentQuery.fallBack(workspace, "ignored by the server");
+          }
+        })
         .filter(c -> c.authoredBy(myUuid) && c.isNotDeleted() && c.isPublished() && c.hasText())
         .count()
         .map(Long::intValue)
         .doOnSuccess(c -> log.trace("My comment count for {}#{} = {}", repo, prId, c));
   }
 
+  private Flux<Comment> fetchComments(BitbucketAuth auth, String workspace, String repo, int prId,
+      @Nullable String authorUuid) {
+    String url = String.format("/repositories/%s/%s/pullrequests/%d/comments?pagelen=100&fields=%s",
+        workspace, repo, prId, FieldProjection.COMMENT_COUNT.fields());
+    if (authorUuid != null) {
+      url += "&q=" + urlEncode(buildMyCommentsQuery(authorUuid));
+    }
+    log.trace("Pull request comments url: {}", url);
+    return bitbucketClient.fetchAll(auth, url, CommentPage.class);
+  }
+
+  /**
+   * Digest a pull request's activity stream in one paginated pass: comments per author, first review and approval
+   * times, and review rounds.
+   * <p>
+   * Cached per PR and {@code updated_on}: any new comment, approval or push changes {@code updated_on}, so an
+   * unchanged PR is never fetched again.
+   *
+   * @param auth authentication details
+   * @param workspace the Bitbucket workspace
+   * @param repo the repository name
+   * @param prId the pull request ID
+   * @param authorUuid the PR author, whose own activity is not a review
+   * @param updatedOn the PR's last update, part of the cache key. Null is never cached, since nothing would tell
+   *     when such an entry went stale.
+   * @return a Mono containing the digest
+   */
+  @Cacheable(cacheNames = PR_ACTIVITY_CACHE, condition = "#updatedOn != null",
+      key = "#auth.cacheKey() + ':' + #workspace + '/' + #repo + '#' + #prId + '@' + #updatedOn")
+  public Mono<ActivityDigest> fetchActivityDigest(BitbucketAuth auth, String workspace, String repo, int prId,
+      @Nullable String authorUuid, @Nullable OffsetDateTime updatedOn) {
+    String url = String.format("/repositories/%s/%s/pullrequests/%d/activity?pagelen=50&fields=%s",
+        workspace, repo, prId, FieldProjection.ACTIVITY_DIGEST.fields());
+    log.trace("Pull request activity url: {}", url);
+
+    return bitbucketClient.fetchAll(auth, url, ActivityPage.class)
+        .collectList()
+        .map(activity -> ActivityDigest.of(activity, authorUuid))
+        .doOnSuccess(d -> log.trace("Activity digest for {}#{} => rounds={}, firstReview={}",
+            repo, prId, d.reviewRounds(), d.firstReviewAt()));
+  }
+
   /**
    * Fetch the number of files changed in a pull request, along with lines added and removed.
+   * <p>
+   * With the PR's commits known, the totals are read from and written to the {@link DiffStatStore}, so a diff is
+   * fetched once for as long as its commits stay the same.
    *
    * @param auth authentication details
    * @param workspace the Bitbucket workspace
    * @param repo the repository name
    * @param prId the pull request ID
+   * @param revision the commits the diff is computed from ({@link EnrichedPullRequest#diffRevision()}), or null to
+   *     always fetch
    * @return a Mono containing DiffDetails with files changed, lines added, and lines removed
    */
-  public Mono<DiffDetails> fetchDiffFilesChanged(BitbucketAuth auth, String workspace, String repo, int prId) {
-    String url = String.format("/repositories/%s/%s/pullrequests/%d/diffstat?pagelen=100", workspace, repo, prId);
+  public Mono<DiffDetails> fetchDiffFilesChanged(BitbucketAuth auth, String workspace, String repo, int prId,
+      @Nullable String revision) {
+    String key = revision == null ? null : DiffStatStore.key(workspace, repo, prId, revision);
+    var stored = key == null ? null : diffStatStore.get(key);
+    if (stored != null) {
+      log.trace("Diff summary for {}#{} from store", repo, prId);
+      return Mono.just(stored);
+    }
+    String url = String.format("/repositories/%s/%s/pullrequests/%d/diffstat?pagelen=100&fields=%s",
+        workspace, repo, prId, FieldProjection.DIFFSTAT_TOTALS.fields());
     log.trace("Pull requests diff-stat url: {}", url);
 
     return bitbucketClient.fetchAll(auth, url, DiffStatPage.class)
@@ -145,16 +355,34 @@ public class BitBucketService {
             acc.linesAdded() + (ds.linesAdded() == null ? 0 : ds.linesAdded()),
             acc.linesRemoved() + (ds.linesRemoved() == null ? 0 : ds.linesRemoved())
         ))
-        .doOnSuccess(d -> log.trace("Diff summary for {}#{} => files={}, +{} -{}",
-            repo, prId, d.filesChanged(), d.linesAdded(), d.linesRemoved()));
+        .doOnSuccess(d -> {
+          log.trace("Diff summary for {}#{} => files={}, +{} -{}",
+              repo, prId, d.filesChanged(), d.linesAdded(), d.linesRemoved());
+          if (key != null) {
+            diffStatStore.put(key, d);
+          }
+        });
+  }
+
+  private static String buildMyCommentsQuery(String authorUuid) {
+    return "user.uuid=" + quote(authorUuid) + " AND deleted=false";
+  }
+
+  private static String stateParams(@Nullable List<String> states) {
+    if (states == null) {
+      return "";
+    }
+    return states.stream()
+        .map(state -> "&state=" + urlEncode(state))
+        .collect(Collectors.joining());
   }
 
   private static String buildPullRequestsQuery(FieldFilter filterField, LocalDate since, LocalDate until,
-      @Nullable List<String> states, @Nullable Boolean queued) {
+      boolean untilExclusive, @Nullable List<String> states, @Nullable Boolean queued) {
     StringBuilder q = new StringBuilder()
         .append(filterField.key()).append('=').append(quote(filterField.value()))
         .append(" AND updated_on>=").append(quote(since.toString()))
-        .append(" AND updated_on<=").append(quote(until.toString()));
+        .append(untilExclusive ? " AND updated_on<" : " AND updated_on<=").append(quote(until.toString()));
 
     if (states != null && !states.isEmpty()) {
       if (states.size() == 1) {
@@ -1,16 +1,28 @@
 package com.example.bitbucketstats.integration;
 
 import static com.example.bitbucketstats.utils.GeneralUtils.isUrlAbsolute;
+import static com.example.bitbucketstats.utils.GeneralUtils.withQueryParam;
 
 import com.example.bitbucketstats.configuration.BitbucketHttpProperties;
+import com.example.bitbucketstats.exceptions.DeadlineExceededException;
 import com.example.bitbucketstats.models.BitbucketAuth;
+import com.example.bitbucketstats.models.Deadline;
 import com.example.bitbucketstats.integration.response.page.Page;
 import java.net.URI;
+import java.time.Duration;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
 import lombok.RequiredArgsConstructor;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.core.ResolvableType;
+import org.springframework.core.io.buffer.DataBuffer;
 import org.springframework.http.HttpStatusCode;
 import org.springframework.stereotype.Service;
 import org.springframework.web.reactive.function.client.ClientResponse;
@@ -29,9 +41,22 @@ public class BitbucketClient {
   private final Retry retryPolicy;
   private final WebClient webClient;
   private final BitbucketHttpProperties bitbucketHttpProperties;
+  private final ConditionalGetCache conditionalGetCache;
+  private final PageStreamDecoder pageStreamDecoder;
+  private final HedgingPolicy hedgingPolicy;
+  private final Map<String, Mono<?>> inFlight = new ConcurrentHashMap<>();
+  private final LongAdder coalesced = new LongAdder();
 
   /**
    * Fetch all pages of results from a paginated Bitbucket API endpoint.
+   * <p>
+   * When the first page reports {@code size} and {@code pagelen}, the remaining page URLs are built up front and
+   * fetched concurrently (bounded by {@code bitbucket.page-concurrency}), preserving page order. Otherwise, the
+   * {@code next} links are followed one page at a time.
+   * <p>
+   * With {@code bitbucket.streaming-pages} enabled, page bodies are decoded incrementally instead: elements are
+   * emitted while the page is still arriving and the next page is requested as soon as its {@code next} link has
+   * been parsed. Streamed pages bypass the conditional-GET cache and request coalescing.
    *
    * @param auth the authentication details
    * @param firstUrl the URL of the first page
@@ -42,8 +67,39 @@ public class BitbucketClient {
    */
   public <E, P extends Page<E>> Flux<E> fetchAll(BitbucketAuth auth, String firstUrl, Class<P> pageType) {
     log.trace("fetchAll start: {} (type={})", firstUrl, pageType.getSimpleName());
+    int concurrency = bitbucketHttpProperties.pageConcurrency();
+    Class<?> elementType = ResolvableType.forClass(pageType).as(Page.class).getGeneric(0).resolve();
+    if (bitbucketHttpProperties.streamingPages() && elementType != null) {
+      @SuppressWarnings("unchecked")
+      Flux<E> streamed = streamPages(auth, firstUrl, (Class<E>) elementType);
+      return streamed.doOnComplete(() -> log.trace("fetchAll complete for {}", firstUrl));
+    }
 
     return Mono.defer(() -> retrieveJson(auth, firstUrl, pageType))
+        .flatMapMany(first -> {
+          if (concurrency <= 1) {
+            return followNextLinks(auth, first, pageType);
+          }
+          int totalPages = totalPages(first);
+          if (totalPages < 0) {
+            log.trace("No page size reported for {}, following next links", firstUrl);
+            return followNextLinks(auth, first, pageType);
+          }
+          if (totalPages <= 1) {
+            return Flux.just(first);
+          }
+          log.trace("Fetching {} pages of {} (concurrency={})", totalPages, firstUrl, concurrency);
+          return Flux.range(2, totalPages - 1)
+              .flatMapSequential(n -> retrieveJson(auth, pageUrl(firstUrl, first.pagelen(), n), pageType),
+                  concurrency)
+              .startWith(first);
+        })
+        .flatMapIterable(p -> p.values() == null ? List.of() : p.values())
+        .doOnComplete(() -> log.trace("fetchAll complete for {}", firstUrl));
+  }
+
+  private <P extends Page<?>> Flux<P> followNextLinks(BitbucketAuth auth, P first, Class<P> pageType) {
+    return Mono.just(first)
         .expand(page -> {
           var next = page.next();
           if (next == null) {
@@ -51,13 +107,75 @@ public class BitbucketClient {
           }
           log.trace("Paging next: {}", next);
           return retrieveJson(auth, next, pageType);
-        })
-        .flatMapIterable(p -> p.values() == null ? List.of() : p.values())
-        .doOnComplete(() -> log.trace("fetchAll complete for {}", firstUrl));
+        });
+  }
+
+  /**
+   * Stream the elements of a listing page by page. The next page's request starts as soon as its link is parsed;
+   * its elements are buffered until the current page has been fully emitted, so listing order is preserved.
+   */
+  private <E> Flux<E> streamPages(BitbucketAuth auth, String url, Class<E> elementType) {
+    return streamPage(auth, url, elementType).publish(events -> {
+      Flux<E> elements = events.ofType(PageStreamDecoder.Element.class)
+          .map(e -> elementType.cast(e.value()));
+      Flux<E> rest = events.ofType(PageStreamDecoder.NextLink.class)
+          .next()
+          .doOnNext(n -> log.trace("Paging next (streamed): {}", n.url()))
+          .flatMapMany(n -> streamPages(auth, n.url(), elementType));
+      return Flux.mergeSequential(elements, rest);
+    });
+  }
+
+  private Flux<Object> streamPage(BitbucketAuth auth, String url, Class<?> elementType) {
+    String finalUrl = isUrlAbsolute(url) ? url : bitbucketHttpProperties.apiBase() + url;
+    return beforeDeadline(url, Flux.defer(() -> {
+          var emitted = new AtomicBoolean();
+          log.trace("HTTP GET {} (streamed)", finalUrl);
+          return webClient.get()
+              .uri(URI.create(finalUrl))
+              .headers(auth::apply)
+              .retrieve()
+              .onStatus(HttpStatusCode::isError, ClientResponse::createException)
+              .bodyToFlux(DataBuffer.class)
+              .transform(body -> pageStreamDecoder.decode(body, elementType))
+              .doOnNext(e -> emitted.set(true))
+              // elements already went downstream, so a retry would duplicate them
+              .onErrorMap(e -> emitted.get(),
+                  e -> new IllegalStateException("Page stream for " + url + " failed mid-body", e));
+        }))
+        .doOnError(e -> log.warn("Request failed for {}", url, e))
+        .retryWhen(retryPolicy)
+        .transform(attempts -> beforeDeadline(url, attempts));
+  }
+
+  /**
+   * Number of pages in the listing, or -1 when it cannot be derived from the first page.
+   */
+  private static int totalPages(Page<?> first) {
+    if (first.next() == null) {
+      return 1;
+    }
+    Integer size = first.size();
+    Integer pagelen = first.pagelen();
+    if (size == null || pagelen == null || pagelen <= 0) {
+      return -1;
+    }
+    return (size + pagelen - 1) / pagelen;
+  }
+
+  private static String pageUrl(String firstUrl, int pagelen, int page) {
+    return withQueryParam(withQueryParam(firstUrl, "pagelen", pagelen), "page", page);
   }
 
   /**
    * Retrieve an object from the Bitbucket API.
+   * <p>
+   * Responses carrying an {@code ETag} or {@code Last-Modified} are kept in the {@link ConditionalGetCache}; repeat
+   * calls for the same credential and URL send {@code If-None-Match}/{@code If-Modified-Since} and a 304 is served
+   * from the stored body. Concurrent calls for the same credential, URL and type share a single in-flight request.
+   * With {@code bitbucket.hedging} enabled, an attempt that is slower than usual for its endpoint is raced against a
+   * duplicate (see {@link HedgingPolicy}). Each caller is bounded by its own request's {@link Deadline}, when there is
+   * one; the shared request is cancelled once every caller has given up on it.
    *
    * @param auth the authentication details
    * @param url the URL to fetch
@@ -67,15 +185,91 @@ public class BitbucketClient {
    */
   public <T> Mono<T> retrieveJson(BitbucketAuth auth, String url, Class<T> type) {
     String finalUrl = isUrlAbsolute(url) ? url : bitbucketHttpProperties.apiBase() + url;
-    log.trace("HTTP GET {}", finalUrl);
-    return webClient.get()
-        .uri(URI.create(finalUrl))
-        .headers(auth::apply)
-        .retrieve()
-        .onStatus(HttpStatusCode::isError, ClientResponse::createException)
-        .bodyToMono(type)
-        .doOnSuccess(body -> log.trace("Fetched object type={}", type.getSimpleName()))
-        .doOnError(e -> log.warn("Request failed for {}", url, e))
-        .retryWhen(retryPolicy);
+    String cacheKey = ConditionalGetCache.key(auth, finalUrl);
+    Mono<T> attempt = Mono.defer(() -> {
+      var stored = conditionalGetCache.lookup(cacheKey, type);
+      log.trace("HTTP GET {}{}", finalUrl, stored != null ? " (conditional)" : "");
+      URI uri = URI.create(finalUrl);
+      return hedgingPolicy.hedge(uri, webClient.get()
+          .uri(uri)
+          .headers(h -> {
+            auth.apply(h);
+            ConditionalGetCache.applyValidators(stored, h);
+          })
+          .retrieve()
+          .onStatus(HttpStatusCode::isError, ClientResponse::createException)
+          .toEntity(type)
+          .mapNotNull(entity -> conditionalGetCache.resolve(cacheKey, stored, entity, type)));
+    });
+    // the shared call runs under the retry policy alone: it would otherwise see only the first caller's deadline
+    return beforeDeadline(url, Mono.defer(() -> singleFlight(cacheKey + ' ' + type.getName(),
+        () -> attempt
+            .doOnSuccess(body -> log.trace("Fetched object type={}", type.getSimpleName()))
+            .doOnError(e -> log.warn("Request failed for {}", url, e))
+            .retryWhen(retryPolicy)
+            .contextWrite(Deadline::detach))));
+  }
+
+  /**
+   * Bound a call by the request's {@link Deadline}, if the context carries one: it fails with
+   * {@link DeadlineExceededException} without subscribing when less than {@code bitbucket.deadline.min-remaining} is
+   * left, and is cut off when the deadline passes. Listings apply it per attempt, so retries and further pages are not
+   * started once the budget is spent, and around the retries, so backoff cannot outlast the deadline either.
+   */
+  private <T> Mono<T> beforeDeadline(String url, Mono<T> call) {
+    return Mono.deferContextual(ctx -> Deadline.from(ctx)
+        .map(deadline -> {
+          Duration remaining = deadline.remaining();
+          if (remaining.compareTo(bitbucketHttpProperties.deadline().minRemaining()) < 0) {
+            log.debug("Not calling {}, {}ms left before the deadline", url, remaining.toMillis());
+            return Mono.<T>error(new DeadlineExceededException(url));
+          }
+          return call.timeout(remaining, Mono.error(() -> new DeadlineExceededException(url)));
+        })
+        .orElse(call));
+  }
+
+  private <T> Flux<T> beforeDeadline(String url, Flux<T> call) {
+    return Flux.deferContextual(ctx -> Deadline.from(ctx)
+        .map(deadline -> {
+          Duration remaining = deadline.remaining();
+          if (remaining.compareTo(bitbucketHttpProperties.deadline().minRemaining()) < 0) {
+            log.debug("Not calling {}, {}ms left before the deadline", url, remaining.toMillis());
+            return Flux.<T>error(new DeadlineExceededException(url));
+          }
+          return call.takeUntilOther(Mono.delay(remaining).then(Mono.error(() -> new DeadlineExceededException(url))));
+        })
+        .orElse(call));
+  }
+
+  /**
+   * Number of calls that attached to an identical in-flight request instead of sending their own.
+   */
+  public long coalescedRequests() {
+    return coalesced.sum();
+  }
+
+  /**
+   * Share one in-flight call between all subscribers asking for the same key. The upstream call is cancelled only
+   * when every subscriber has cancelled, and the entry is dropped as soon as the call terminates.
+   */
+  @SuppressWarnings("unchecked")
+  private <T> Mono<T> singleFlight(String key, Supplier<Mono<T>> call) {
+    var created = new AtomicReference<Mono<?>>();
+    Mono<?> flight = inFlight.computeIfAbsent(key, k -> {
+      Mono<T> shared = call.get()
+          .doFinally(s -> inFlight.remove(k, created.get()))
+          .flux()
+          .replay(1)
+          .refCount(1)
+          .singleOrEmpty();
+      created.set(shared);
+      return shared;
+    });
+    if (flight != created.get()) {
+      coalesced.increment();
+      log.trace("Joining in-flight request {}", key);
+    }
+    return (Mono<T>) flight;
   }
 }
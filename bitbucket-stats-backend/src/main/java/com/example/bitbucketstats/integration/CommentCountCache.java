@@ -0,0 +1,196 @@
+package com.example.bitbucketstats.integration;
+
+import com.example.bitbucketstats.configuration.DiskCacheStore;
+import com.example.bitbucketstats.configuration.TenantQuota;
+import com.github.benmanes.caffeine.cache.AsyncCache;
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
+import java.time.OffsetDateTime;
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Predicate;
+import java.util.function.Supplier;
+import org.springframework.lang.Nullable;
+import reactor.core.publisher.Mono;
+
+/**
+ * A reviewer's comment count per pull request, stored with the PR's {@code updated_on} at the time it was counted.
+ * <p>
+ * Any new comment updates the PR, so a count is reused for as long as the listed {@code updated_on} has not moved and
+ * recounted once it has, replacing the stored one. Concurrent misses for the same key share one load; the load runs
+ * in the context (and under the deadline) of the request that started it and is not cancelled when a caller gives up.
+ * Failed loads are not kept.
+ * <p>
+ * With a disk tier, counts missing from memory are looked up there before counting, and fresh counts are written to
+ * it, so they survive a restart.
+ * <p>
+ * With a tenant quota, each stored count is recorded against its tenant; the cache's removal listener must report
+ * removals to the same quota.
+ */
+public class CommentCountCache {
+
+  private final AsyncCache<Key, Counted> counts;
+  @Nullable
+  private final DiskCacheStore disk;
+  @Nullable
+  private final TenantQuota<Key> quota;
+  private final LongAdder hits = new LongAdder();
+  private final LongAdder misses = new LongAdder();
+
+  public CommentCountCache(AsyncCache<Key, Counted> counts) {
+    this(counts, null);
+  }
+
+  public CommentCountCache(AsyncCache<Key, Counted> counts, @Nullable DiskCacheStore disk) {
+    this(counts, disk, null);
+  }
+
+  public CommentCountCache(AsyncCache<Key, Counted> counts, @Nullable DiskCacheStore disk,
+      @Nullable TenantQuota<Key> quota) {
+    this.counts = counts;
+    this.disk = disk;
+    this.quota = quota;
+    if (quota != null) {
+      quota.evictWith(key -> counts.synchronous().invalidate(key));
+      quota.peekWith(key -> counts.synchronous().policy().getIfPresentQuietly(key));
+    }
+  }
+
+  /**
+   * @param credential   cache key of the credential the count was read with
+   * @param workspace    the Bitbucket workspace
+   * @param repo         the repository slug
+   * @param prId         the pull request ID
+   * @param reviewerUuid the reviewer whose comments are counted
+   */
+  public record Key(String credential, String workspace, String repo, int prId, String reviewerUuid) {
+
+  }
+
+  /**
+   * @param count     the reviewer's comments
+   * @param updatedOn the PR's {@code updated_on} when they were counted
+   */
+  public record Counted(int count, OffsetDateTime updatedOn) {
+
+  }
+
+  /**
+   * @param key       the PR and reviewer
+   * @param updatedOn the PR's current {@code updated_on}, as listed
+   * @param loader    counts the comments upstream
+   * @return a Mono containing the stored count if the PR has not been updated since, otherwise a fresh one
+   */
+  public Mono<Integer> get(Key key, OffsetDateTime updatedOn, Supplier<Mono<Integer>> loader) {
+    return Mono.deferContextual(ctx -> {
+      var written = new AtomicBoolean();
+      CompletableFuture<Counted> future = counts.asMap().compute(key, (k, existing) -> {
+        if (existing != null && !existing.isCompletedExceptionally()
+            && (!existing.isDone() || isCurrent(existing.join(), updatedOn))) {
+          hits.increment();
+          return existing;
+        }
+        var stored = existing == null && disk != null ? disk.get(k.toString(), Counted.class) : null;
+        written.set(true);
+        if (isCurrent(stored, updatedOn)) {
+          hits.increment();
+          return CompletableFuture.completedFuture(stored);
+        }
+        misses.increment();
+        return loader.get()
+            .map(count -> new Counted(count, updatedOn))
+            .doOnNext(counted -> {
+              if (disk != null) {
+                disk.put(k.toString(), counted);
+              }
+            })
+            .contextWrite(ctx)
+            .toFuture();
+      });
+      if (quota != null && written.get()) {
+        // outside compute: enforcing the quota may evict other keys of the same map
+        future.thenAccept(counted -> quota.recordWrite(key, counted));
+      }
+      return Mono.fromFuture(future, true).map(Counted::count);
+    });
+  }
+
+  private static boolean isCurrent(@Nullable Counted counted, OffsetDateTime updatedOn) {
+    return counted != null && counted.updatedOn().isEqual(updatedOn);
+  }
+
+  /**
+   * @return lookups answered by a stored or in-flight count
+   */
+  public long hits() {
+    return hits.sum();
+  }
+
+  /**
+   * @return lookups that counted upstream
+   */
+  public long misses() {
+    return misses.sum();
+  }
+
+  @Nullable
+  public TenantQuota<Key> quota() {
+    return quota;
+  }
+
+  public long size() {
+    return counts.synchronous().estimatedSize();
+  }
+
+  /**
+   * @return a read-only view of the stored counts
+   */
+  public Map<Key, Counted> entries() {
+    return Collections.unmodifiableMap(counts.synchronous().asMap());
+  }
+
+  /**
+   * @return hits and misses as counted here, evictions as recorded by the underlying cache
+   */
+  public CacheStats stats() {
+    var underlying = counts.synchronous().stats();
+    return CacheStats.of(hits.sum(), misses.sum(), 0, 0, 0, underlying.evictionCount(), underlying.evictionWeight());
+  }
+
+  /**
+   * Drop the counts whose key matches, and their records in the disk tier. The disk tier is keyed by digests and
+   * cannot be searched, so a matching count held only on disk stays there; it is still checked against the PR's
+   * {@code updated_on} when read back.
+   *
+   * @param matching the keys to drop
+   * @return counts dropped from memory
+   */
+  public long invalidate(Predicate<Key> matching) {
+    var map = counts.synchronous().asMap();
+    long dropped = 0;
+    for (var key : map.keySet()) {
+      if (matching.test(key) && map.remove(key) != null) {
+        dropped++;
+        if (disk != null) {
+          disk.remove(key.toString());
+        }
+      }
+    }
+    return dropped;
+  }
+
+  /**
+   * Drop every stored count, on disk too.
+   */
+  public void clear() {
+    counts.synchronous().invalidateAll();
+    if (quota != null) {
+      quota.clear();
+    }
+    if (disk != null) {
+      disk.clear();
+    }
+  }
+}
@@ -0,0 +1,75 @@
+package com.example.bitbucketstats.integration;
+
+import java.time.Duration;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.LongSupplier;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.web.reactive.function.client.WebClientResponseException;
+
+/**
+ * Whether comment listings are filtered server-side with a BBQL {@code q} parameter, per workspace.
+ * <p>
+ * A workspace falls back to client-side filtering when Bitbucket rejects the query itself, or returns comments the
+ * query should have filtered out. The fallback is not permanent: after {@link #REPROBE_AFTER} the query is tried again,
+ * so one odd response does not bring back full comment scans until restart.
+ */
+class CommentQuerySupport {
+
+  private static final Logger log = LoggerFactory.getLogger(CommentQuerySupport.class);
+  static final Duration REPROBE_AFTER = Duration.ofHours(1);
+
+  private final LongSupplier nanoClock;
+  /** Workspaces filtered client-side, with the {@code nanoClock} time the query is tried again. */
+  private final Map<String, Long> fallbackUntil = new ConcurrentHashMap<>();
+
+  CommentQuerySupport() {
+    this(System::nanoTime);
+  }
+
+  CommentQuerySupport(LongSupplier nanoClock) {
+    this.nanoClock = nanoClock;
+  }
+
+  /**
+   * @param workspace the workspace listed
+   * @return whether to send the {@code q} filter
+   */
+  boolean supported(String workspace) {
+    Long until = fallbackUntil.get(workspace);
+    if (until == null) {
+      return true;
+    }
+    if (nanoClock.getAsLong() - until < 0) {
+      return false;
+    }
+    if (fallbackUntil.remove(workspace, until)) {
+      log.debug("Probing the comment filter query again in {}", workspace);
+    }
+    return true;
+  }
+
+  /**
+   * Filter the workspace's comments client-side until the next probe.
+   *
+   * @param workspace the workspace listed
+   * @param reason    why, for the log
+   */
+  void fallBack(String workspace, String reason) {
+    if (fallbackUntil.put(workspace, nanoClock.getAsLong() + REPROBE_AFTER.toNanos()) == null) {
+      log.info("Comment filter query {} in {}, filtering client-side for {}", reason, workspace, REPROBE_AFTER);
+    }
+  }
+
+  /**
+   * @param e a 400 response to a filtered listing
+   * @return whether the error is about the {@code q} parameter, rather than e.g. an unknown pull request
+   */
+  static boolean rejectsQuery(WebClientResponseException e) {
+    String body = e.getResponseBodyAsString().toLowerCase(Locale.ROOT);
+    return body.contains("query") || body.contains("bbql") || body.contains("\"q\"")
+        || body.contains("invalid field");
+  }
+}
@@ -0,0 +1,234 @@
+package com.example.bitbucketstats.integration;
+
+import com.example.bitbucketstats.configuration.BitbucketHttpProperties;
+import com.example.bitbucketstats.configuration.CacheMemoryBudget;
+import com.example.bitbucketstats.configuration.TenantQuota;
+import com.example.bitbucketstats.models.BitbucketAuth;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.RemovalCause;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Predicate;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.lang.Nullable;
+
+/**
+ * Response-validator cache for upstream GETs. Keeps the {@code ETag}/{@code Last-Modified} validators together with
+ * the decoded body per (credential, URL), so repeat calls can be revalidated with a conditional GET and a
+ * {@code 304 Not Modified} is answered from the stored body without transferring or decoding it again.
+ * <p>
+ * Entries are weighed by the response's {@code Content-Length}, scaled by the {@link CacheMemoryBudget}'s heap
+ * estimate when there is one. Compressed responses are decoded without a length; the budget then estimates the decoded
+ * body by serializing it, and without a budget a fixed weight is used. Entries are bounded by
+ * {@code bitbucket.conditional-get.max-size}, or by the cache's share of the budget when it is enabled; with
+ * {@code bitbucket.tenant-cache} enabled, each tenant holds at most its share of that bound.
+ */
+public class ConditionalGetCache {
+
+  private static final Logger log = LoggerFactory.getLogger(ConditionalGetCache.class);
+  /** Weight used without a budget when the response does not declare a Content-Length (e.g. chunked). */
+  private static final int UNKNOWN_LENGTH_WEIGHT = 16 * 1024;
+  private static final String CACHE_NAME = "conditional-get-cache";
+
+  private final boolean enabled;
+  @Nullable
+  private final CacheMemoryBudget estimator;
+  private final Cache<String, Entry> entries;
+  @Nullable
+  private final TenantQuota<String> quota;
+  private final LongAdder hits = new LongAdder();
+  private final LongAdder notModified = new LongAdder();
+  private final LongAdder misses = new LongAdder();
+
+  public ConditionalGetCache(BitbucketHttpProperties.ConditionalGet settings) {
+    this(settings, null, null);
+  }
+
+  public ConditionalGetCache(BitbucketHttpProperties.ConditionalGet settings,
+      @Nullable BitbucketHttpProperties.TenantCache tenants, @Nullable CacheMemoryBudget budget) {
+    this.enabled = settings.enabled();
+    this.estimator = budget;
+    var bytes = budget != null && budget.enabled() ? budget : null;
+    long maxSize = bytes != null ? bytes.maxWeight(CACHE_NAME) : settings.maxSize().toBytes();
+    this.quota = TenantQuota.forCache(CACHE_NAME, maxSize, tenants, ConditionalGetCache::credentialOf,
+        ConditionalGetCache::workspaceOf);
+    this.entries = Caffeine.newBuilder()
+        .maximumWeight(maxSize)
+        .weigher((String key, Entry e) -> e.weight())
+        .removalListener((String key, Entry e, RemovalCause cause) -> {
+          if (quota != null) {
+            quota.recordRemoval(key, e);
+          }
+        })
+        .build();
+    if (quota != null) {
+      quota.evictWith(entries::invalidate);
+      quota.peekWith(key -> entries.policy().getIfPresentQuietly(key));
+    }
+    if (bytes != null) {
+      bytes.register(CACHE_NAME, entries);
+    }
+  }
+
+  public static String key(BitbucketAuth auth, String absoluteUrl) {
+    return auth.cacheKey() + ' ' + absoluteUrl;
+  }
+
+  @Nullable
+  private static String credentialOf(String key) {
+    int space = key.indexOf(' ');
+    return space < 0 ? null : key.substring(0, space);
+  }
+
+  /**
+   * @return the workspace of a {@code /repositories/{workspace}} or {@code /workspaces/{workspace}} URL, if any
+   */
+  @Nullable
+  private static String workspaceOf(String key) {
+    for (String prefix : new String[] {"/repositories/", "/workspaces/"}) {
+      int at = key.indexOf(prefix);
+      if (at >= 0) {
+        int from = at + prefix.length();
+        int end = from;
+        while (end < key.length() && key.charAt(end) != '/' && key.charAt(end) != '?') {
+          end++;
+        }
+        return end > from ? key.substring(from, end) : null;
+      }
+    }
+    return null;
+  }
+
+  /**
+   * Look up stored validators for a request about to be sent.
+   *
+   * @param key  the (credential, URL) key
+   * @param type the expected body type; entries decoded to another type are ignored
+   * @return the stored entry, or null on a miss
+   */
+  @Nullable
+  public Entry lookup(String key, Class<?> type) {
+    if (!enabled) {
+      return null;
+    }
+    var entry = entries.getIfPresent(key);
+    if (entry == null || !type.isInstance(entry.body())) {
+      misses.increment();
+      return null;
+    }
+    hits.increment();
+    return entry;
+  }
+
+  /**
+   * Add conditional headers for a stored entry, if any.
+   */
+  public static void applyValidators(@Nullable Entry entry, HttpHeaders headers) {
+    if (entry == null) {
+      return;
+    }
+    if (entry.etag() != null) {
+      headers.set(HttpHeaders.IF_NONE_MATCH, entry.etag());
+    }
+    if (entry.lastModified() != null) {
+      headers.set(HttpHeaders.IF_MODIFIED_SINCE, entry.lastModified());
+    }
+  }
+
+  /**
+   * Turn an upstream response into the body to return: the stored body on 304, otherwise the fresh body, which is
+   * stored when the response carries validators.
+   *
+   * @param key    the (credential, URL) key
+   * @param sent   the entry whose validators were sent, or null
+   * @param entity the upstream response
+   * @param type   the expected body type
+   * @param <T>    the body type
+   * @return the body, or null when the response had none
+   */
+  @Nullable
+  public <T> T resolve(String key, @Nullable Entry sent, ResponseEntity<T> entity, Class<T> type) {
+    if (entity.getStatusCode().isSameCodeAs(HttpStatus.NOT_MODIFIED)) {
+      if (sent == null) {
+        throw new IllegalStateException("304 Not Modified without a stored response for " + key);
+      }
+      notModified.increment();
+      log.trace("304 Not Modified, serving stored body ({} bytes)", sent.weight());
+      return type.cast(sent.body());
+    }
+
+    T body = entity.getBody();
+    if (!enabled) {
+      return body;
+    }
+    var headers = entity.getHeaders();
+    String etag = headers.getETag();
+    String lastModified = headers.getFirst(HttpHeaders.LAST_MODIFIED);
+    if (body == null || (etag == null && lastModified == null)) {
+      entries.invalidate(key);
+      return body;
+    }
+    int weight = weigh(key, body, headers.getContentLength());
+    var entry = new Entry(etag, lastModified, body, weight);
+    entries.put(key, entry);
+    if (quota != null) {
+      quota.recordWrite(key, entry, weight);
+    }
+    return body;
+  }
+
+  private int weigh(String key, Object body, long contentLength) {
+    if (estimator == null) {
+      return contentLength > 0 ? (int) Math.min(contentLength, Integer.MAX_VALUE) : UNKNOWN_LENGTH_WEIGHT;
+    }
+    return contentLength > 0 ? estimator.weighJson(key, contentLength) : estimator.weigh(key, body);
+  }
+
+  /**
+   * Drop the entries whose key matches.
+   *
+   * @param matching the (credential, URL) keys to drop
+   * @return entries dropped
+   */
+  public long invalidate(Predicate<String> matching) {
+    long dropped = 0;
+    for (var key : entries.asMap().keySet()) {
+      if (matching.test(key) && entries.asMap().remove(key) != null) {
+        dropped++;
+      }
+    }
+    return dropped;
+  }
+
+  @Nullable
+  public TenantQuota<?> quota() {
+    return quota;
+  }
+
+  public Stats stats() {
+    entries.cleanUp();
+    long weighted = entries.policy().eviction()
+        .map(e -> e.weightedSize().orElse(0L))
+        .orElse(0L);
+    return new Stats(hits.sum(), notModified.sum(), misses.sum(), entries.estimatedSize(), weighted);
+  }
+
+  public record Entry(@Nullable String etag, @Nullable String lastModified, Object body, int weight) {
+
+  }
+
+  /**
+   * @param hits          requests sent with validators from a stored entry
+   * @param notModified   of those, requests answered 304 and served from the store
+   * @param misses        requests with no usable stored entry
+   * @param entries       current number of stored entries
+   * @param weightedBytes current estimated size of the store
+   */
+  public record Stats(long hits, long notModified, long misses, long entries, long weightedBytes) {
+
+  }
+}
@@ -0,0 +1,313 @@
+package com.example.bitbucketstats.integration;
+
+import com.example.bitbucketstats.configuration.BitbucketHttpProperties;
+import com.example.bitbucketstats.models.DiffDetails;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
+import jakarta.annotation.PreDestroy;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.util.Collections;
+import java.util.Map;
+import java.util.function.Predicate;
+import java.util.zip.CRC32;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.lang.Nullable;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+import reactor.core.scheduler.Scheduler;
+import reactor.core.scheduler.Schedulers;
+
+/**
+ * Diffstat totals per (workspace, repository, PR, commits), kept on disk across restarts.
+ * <p>
+ * A diffstat only changes with the commits it is computed from, so an entry keyed by them never goes stale. Entries
+ * are held in memory, bounded by {@code bitbucket.diffstat-cache.max-entries} (least recently used go first), and
+ * appended to a binary log in {@code bitbucket.diffstat-cache.directory}: a header, then one record per entry,
+ * {@code [int length][int crc32][key][three ints]}. The log is replayed at startup up to the first torn or corrupted
+ * record, and rewritten with only the retained entries at startup and whenever it holds twice as many records as the
+ * memory bound, so evicted entries and damaged records leave the disk too.
+ * <p>
+ * The replay and all disk writes run on a dedicated daemon thread, never on the caller's, so startup does not wait for
+ * the log; until it is replayed, lookups of entries only on disk miss. When the directory cannot be used, the store
+ * keeps working from memory only.
+ */
+public class DiffStatStore implements Closeable {
+
+  private static final Logger log = LoggerFactory.getLogger(DiffStatStore.class);
+  static final String FILE_NAME = "diffstats.bin";
+  /** "BSDS", followed by the format version. */
+  private static final int MAGIC = 0x42534453;
+  private static final int VERSION = 2;
+  /** A key of at most 64KB of modified UTF-8, plus its length and three ints. */
+  private static final int MAX_RECORD = 2 + 65535 + 3 * 4;
+
+  private final boolean enabled;
+  private final long maxEntries;
+  private final Path file;
+  private final Cache<String, DiffDetails> entries;
+  private final Scheduler writer = Schedulers.newSingle("diffstat-store", true);
+  private final Sinks.Empty<Void> loaded = Sinks.empty();
+
+  // touched on the writer thread only
+  private DataOutputStream out;
+  private long records;
+  private boolean persistent;
+
+  public DiffStatStore(BitbucketHttpProperties.DiffStatCache settings) {
+    this.enabled = settings.enabled();
+    this.maxEntries = Math.max(1, settings.maxEntries());
+    this.file = Path.of(settings.directory()).resolve(FILE_NAME);
+    this.entries = Caffeine.newBuilder()
+        .maximumSize(maxEntries)
+        .recordStats()
+        .build();
+    if (enabled) {
+      writer.schedule(() -> {
+        persistent = load();
+        loaded.tryEmitEmpty();
+      });
+    } else {
+      loaded.tryEmitEmpty();
+    }
+  }
+
+  /**
+   * @return a Mono that completes once the log has been replayed
+   */
+  public Mono<Void> loaded() {
+    return loaded.asMono();
+  }
+
+  /**
+   * @param workspace the Bitbucket workspace
+   * @param repo      the repository slug
+   * @param prId      the pull request ID
+   * @param revision  the commits the diff is computed from
+   * @return the store key
+   */
+  public static String key(String workspace, String repo, int prId, String revision) {
+    return workspace + '/' + repo + '#' + prId + '@' + revision;
+  }
+
+  /**
+   * @return the stored totals, or null on a miss or when the store is disabled
+   */
+  @Nullable
+  public DiffDetails get(String key) {
+    return enabled ? entries.getIfPresent(key) : null;
+  }
+
+  /**
+   * Keep totals in memory and queue them for the disk log.
+   */
+  public void put(String key, DiffDetails details) {
+    if (!enabled) {
+      return;
+    }
+    entries.put(key, details);
+    writer.schedule(() -> append(key, details));
+  }
+
+  public long size() {
+    entries.cleanUp();
+    return entries.estimatedSize();
+  }
+
+  public CacheStats stats() {
+    return entries.stats();
+  }
+
+  /**
+   * @return a read-only view of the entries held in memory
+   */
+  public Map<String, DiffDetails> entries() {
+    return Collections.unmodifiableMap(entries.asMap());
+  }
+
+  /**
+   * Drop the entries whose key matches, then rewrite the log without them.
+   *
+   * @param matching the store keys to drop
+   * @return entries dropped
+   */
+  public long invalidate(Predicate<String> matching) {
+    long dropped = 0;
+    for (var key : entries.asMap().keySet()) {
+      if (matching.test(key) && entries.asMap().remove(key) != null) {
+        dropped++;
+      }
+    }
+    if (dropped > 0) {
+      // dropped again on the writer thread, in case the replay had not yet read them back from the log
+      writer.schedule(() -> {
+        entries.asMap().keySet().removeIf(matching);
+        rewrite();
+      });
+    }
+    return dropped;
+  }
+
+  /**
+   * Flush pending writes, close the log and stop the writer thread.
+   */
+  @Override
+  @PreDestroy
+  public synchronized void close() {
+    if (writer.isDisposed()) {
+      return;
+    }
+    writer.schedule(this::closeLog);
+    writer.disposeGracefully().block(Duration.ofSeconds(10));
+  }
+
+  private boolean load() {
+    int read = 0;
+    if (Files.exists(file)) {
+      try (var in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+        if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+          log.warn("Ignoring diffstat store {}: unknown format", file);
+        } else {
+          read = readRecords(in);
+        }
+      } catch (IOException e) {
+        log.warn("Could not read diffstat store {}, starting empty: {}", file, e.toString());
+      }
+    }
+    try {
+      compact();
+      log.info("Diffstat store {}: {} records read, {} kept", file, read, entries.estimatedSize());
+      return true;
+    } catch (IOException e) {
+      log.warn("Diffstat store {} not writable, keeping diffstats in memory only: {}", file, e.toString());
+      return false;
+    }
+  }
+
+  private int readRecords(DataInputStream in) throws IOException {
+    int read = 0;
+    while (true) {
+      byte[] record;
+      int crc;
+      try {
+        int length = in.readInt();
+        if (length <= 0 || length > MAX_RECORD) {
+          log.warn("Diffstat store {} damaged after {} records, dropping the rest", file, read);
+          return read;
+        }
+        crc = in.readInt();
+        record = new byte[length];
+        in.readFully(record);
+      } catch (EOFException e) {
+        // end of the log, or a record cut short by a crash; it is dropped by the rewrite
+        return read;
+      }
+      if (crc != crc32(record)) {
+        log.warn("Diffstat store {} damaged after {} records, dropping the rest", file, read);
+        return read;
+      }
+      var fields = new DataInputStream(new ByteArrayInputStream(record));
+      entries.put(fields.readUTF(), new DiffDetails(fields.readInt(), fields.readInt(), fields.readInt()));
+      read++;
+    }
+  }
+
+  private void append(String key, DiffDetails details) {
+    if (!persistent) {
+      return;
+    }
+    try {
+      writeRecord(out, key, details);
+      out.flush();
+      if (++records > 2 * maxEntries) {
+        compact();
+      }
+    } catch (IOException e) {
+      log.warn("Diffstat store {} write failed, keeping diffstats in memory only: {}", file, e.toString());
+      persistent = false;
+      closeLog();
+    }
+  }
+
+  private void rewrite() {
+    if (!persistent) {
+      return;
+    }
+    try {
+      compact();
+    } catch (IOException e) {
+      log.warn("Diffstat store {} write failed, keeping diffstats in memory only: {}", file, e.toString());
+      persistent = false;
+      closeLog();
+    }
+  }
+
+  /**
+   * Rewrite the log with the retained entries only, then reopen it for appends.
+   */
+  private void compact() throws IOException {
+    closeLog();
+    Files.createDirectories(file.toAbsolutePath().getParent());
+    var tmp = file.resolveSibling(FILE_NAME + ".tmp");
+    entries.cleanUp();
+    long written = 0;
+    try (var rewrite = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tmp)))) {
+      rewrite.writeInt(MAGIC);
+      rewrite.writeInt(VERSION);
+      for (Map.Entry<String, DiffDetails> e : entries.asMap().entrySet()) {
+        writeRecord(rewrite, e.getKey(), e.getValue());
+        written++;
+      }
+    }
+    Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    out = new DataOutputStream(new BufferedOutputStream(
+        Files.newOutputStream(file, StandardOpenOption.WRITE, StandardOpenOption.APPEND)));
+    records = written;
+  }
+
+  private static void writeRecord(DataOutputStream out, String key, DiffDetails details) throws IOException {
+    var bytes = new ByteArrayOutputStream(key.length() + 16);
+    try (var fields = new DataOutputStream(bytes)) {
+      fields.writeUTF(key);
+      fields.writeInt(details.filesChanged());
+      fields.writeInt(details.linesAdded());
+      fields.writeInt(details.linesRemoved());
+    }
+    byte[] record = bytes.toByteArray();
+    out.writeInt(record.length);
+    out.writeInt(crc32(record));
+    out.write(record);
+  }
+
+  private static int crc32(byte[] record) {
+    var crc = new CRC32();
+    crc.update(record);
+    return (int) crc.getValue();
+  }
+
+  private void closeLog() {
+    if (out == null) {
+      return;
+    }
+    try {
+      out.close();
+    } catch (IOException e) {
+      log.debug("Closing diffstat store {} failed: {}", file, e.toString());
+    }
+    out = null;
+  }
+}
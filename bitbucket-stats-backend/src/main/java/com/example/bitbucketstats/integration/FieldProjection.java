@@ -0,0 +1,118 @@
+package com.example.bitbucketstats.integration;
+
+import java.util.List;
+import java.util.stream.Stream;
+
+/**
+ * Partial-response projections ({@code fields=}) per use case, so each upstream call only transfers and decodes what
+ * its consumer reads. The page fields ({@code next}, {@code size}, {@code pagelen}) are always included for paging.
+ */
+public enum FieldProjection {
+
+  /**
+   * PRs for {@code /pull-requests/stats}: timings, comment counts and titles, plus the commits that identify each diff
+   * in the diffstat store.
+   */
+  AUTHOR_STATS(
+      "values.id",
+      "values.title",
+      "values.created_on",
+      "values.updated_on",
+      "values.comment_count",
+      "values.source.commit.hash",
+      "values.destination.commit.hash",
+      "values.merge_commit.hash"),
+
+  /**
+   * {@link #AUTHOR_STATS} from the user-level listing, which spans the workspace: the destination repository and
+   * update time are read to filter locally.
+   */
+  AUTHOR_STATS_BY_USER(
+      "values.id",
+      "values.title",
+      "values.created_on",
+      "values.updated_on",
+      "values.comment_count",
+      "values.source.commit.hash",
+      "values.destination.commit.hash",
+      "values.merge_commit.hash",
+      "values.destination.repository.full_name"),
+
+  /**
+   * PRs for {@code /pull-requests/reviews}: approvals, plus comment counts and participation to decide which PRs to
+   * scan. The update time files each PR under its day in the search cache.
+   */
+  REVIEW_STATS(
+      "values.id",
+      "values.title",
+      "values.comment_count",
+      "values.participants.user.uuid",
+      "values.participants.role",
+      "values.participants.approved",
+      "values.participants.participated_on",
+      "values.updated_on"),
+
+  /**
+   * {@link #REVIEW_STATS} plus what the review latency metrics read: creation and update times (the latter keys the
+   * cached activity digest) and the author, whose own activity is not a review.
+   */
+  REVIEW_METRICS(
+      "values.id",
+      "values.title",
+      "values.comment_count",
+      "values.participants.user.uuid",
+      "values.participants.role",
+      "values.participants.approved",
+      "values.participants.participated_on",
+      "values.author.uuid",
+      "values.created_on",
+      "values.updated_on"),
+
+  /** A PR's activity stream: comments, approvals, change requests and source updates, digested together. */
+  ACTIVITY_DIGEST(
+      "values.comment.user.uuid",
+      "values.comment.created_on",
+      "values.comment.deleted",
+      "values.comment.pending",
+      "values.comment.content.raw",
+      "values.approval.date",
+      "values.approval.user.uuid",
+      "values.changes_request.date",
+      "values.changes_request.user.uuid",
+      "values.update.date",
+      "values.update.source.commit.hash"),
+
+  /** Comments, counted per author. */
+  COMMENT_COUNT(
+      "values.user.uuid",
+      "values.deleted",
+      "values.pending",
+      "values.content.raw"),
+
+  /** Diffstat entries, summed into file and line totals. */
+  DIFFSTAT_TOTALS(
+      "values.lines_added",
+      "values.lines_removed");
+
+  private static final List<String> PAGE_FIELDS = List.of("next", "size", "pagelen");
+
+  private final List<String> valueFields;
+
+  FieldProjection(String... valueFields) {
+    this.valueFields = List.of(valueFields);
+  }
+
+  /**
+   * @return every requested field path, page fields included
+   */
+  public List<String> paths() {
+    return Stream.concat(PAGE_FIELDS.stream(), valueFields.stream()).toList();
+  }
+
+  /**
+   * @return the value of the {@code fields} query parameter
+   */
+  public String fields() {
+    return String.join(",", paths());
+  }
+}
@@ -0,0 +1,205 @@
+package com.example.bitbucketstats.integration;
+
+import com.example.bitbucketstats.configuration.BitbucketHttpProperties;
+import java.net.URI;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Optional;
+import java.util.StringJoiner;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.lang.Nullable;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.SignalType;
+import reactor.core.publisher.Sinks;
+
+/**
+ * Hedging for idempotent upstream GETs.
+ * <p>
+ * Latencies are kept in a rolling window per endpoint type (e.g. {@code pullrequests/{id}/diffstat}). When a call has
+ * not answered after the window's {@code percentile} latency, a duplicate is sent; whichever answers first wins and
+ * the other is cancelled. A failed attempt does not win: once the hedge is sent, the call fails only when both
+ * attempts have failed. Every call earns {@code maxHedgeRate} of a hedge, so duplicates never exceed that share of the
+ * traffic, however slow Bitbucket gets.
+ */
+public class HedgingPolicy {
+
+  private static final Logger log = LoggerFactory.getLogger(HedgingPolicy.class);
+  private static final double MAX_BUDGET = 10;
+
+  private final BitbucketHttpProperties.Hedging settings;
+  private final LongSupplier nanoClock;
+  private final Map<String, LatencyWindow> windows = new ConcurrentHashMap<>();
+  private final LongAdder hedgesSent = new LongAdder();
+  private final LongAdder hedgesWon = new LongAdder();
+  private double budget;
+
+  public HedgingPolicy(BitbucketHttpProperties.Hedging settings) {
+    this(settings, System::nanoTime);
+  }
+
+  HedgingPolicy(BitbucketHttpProperties.Hedging settings, LongSupplier nanoClock) {
+    this.settings = settings;
+    this.nanoClock = nanoClock;
+  }
+
+  /**
+   * Wrap one attempt of an idempotent call. The call is subscribed once more if it is still pending after the
+   * endpoint's hedge delay and the hedge budget allows it.
+   *
+   * @param url  request URL, used to pick the endpoint's latency window
+   * @param call the attempt; must be safe to subscribe twice
+   * @param <T>  the type of the response
+   * @return the first answer of either subscription; an error only once both have failed, or when the first fails
+   *     before the hedge is sent
+   */
+  public <T> Mono<T> hedge(URI url, Mono<T> call) {
+    if (!settings.enabled()) {
+      return call;
+    }
+    var window = windows.computeIfAbsent(endpointOf(url), k -> new LatencyWindow());
+    return Mono.defer(() -> {
+      earnBudget();
+      Duration delay = window.hedgeDelay();
+      if (delay == null) {
+        return timed(call, window);
+      }
+      // the first error is kept to be propagated once neither attempt has answered
+      var failure = new AtomicReference<Throwable>();
+      Sinks.One<Boolean> primaryFailed = Sinks.one();
+      Mono<Optional<T>> primary = attempt(call, window).doOnError(e -> {
+        failure.compareAndSet(null, e);
+        primaryFailed.tryEmitValue(true);
+      });
+      // a primary failing before the hedge delay fails the call at once, without spending a hedge
+      Mono<Optional<T>> backup = Mono.delay(delay).takeUntilOther(primaryFailed.asMono()).flatMap(t -> {
+        if (!trySpendBudget()) {
+          return Mono.empty();
+        }
+        hedgesSent.increment();
+        log.debug("No answer from {} after {}ms, sending hedge", url.getPath(), delay.toMillis());
+        return attempt(call, window)
+            .doOnNext(v -> hedgesWon.increment())
+            .doOnError(e -> failure.compareAndSet(null, e));
+      });
+      return Mono.firstWithValue(primary, backup)
+          .onErrorMap(NoSuchElementException.class, e -> failure.get() != null ? failure.get() : e)
+          .flatMap(Mono::justOrEmpty);
+    });
+  }
+
+  /**
+   * Hedges sent and won so far, and the current hedge delay per endpoint type (absent until enough samples).
+   */
+  public Stats stats() {
+    Map<String, Long> delays = new TreeMap<>();
+    windows.forEach((endpoint, w) -> {
+      Duration d = w.hedgeDelay();
+      if (d != null) {
+        delays.put(endpoint, d.toMillis());
+      }
+    });
+    return new Stats(hedgesSent.sum(), hedgesWon.sum(), delays);
+  }
+
+  private <T> Mono<T> timed(Mono<T> call, LatencyWindow window) {
+    return Mono.defer(() -> {
+      long start = nanoClock.getAsLong();
+      // a cancelled call is a lower bound on its latency; dropping it would drag the percentile down as hedges win
+      return call.doFinally(s -> {
+        if (s != SignalType.ON_ERROR) {
+          window.record(nanoClock.getAsLong() - start);
+        }
+      });
+    });
+  }
+
+  /**
+   * One timed subscription, answering {@code Optional.empty()} when the call completes empty, so an empty answer
+   * still wins the race.
+   */
+  private <T> Mono<Optional<T>> attempt(Mono<T> call, LatencyWindow window) {
+    return timed(call, window).map(Optional::of).defaultIfEmpty(Optional.empty());
+  }
+
+  private synchronized void earnBudget() {
+    budget = Math.min(MAX_BUDGET, budget + settings.maxHedgeRate());
+  }
+
+  private synchronized boolean trySpendBudget() {
+    if (budget < 1) {
+      return false;
+    }
+    budget--;
+    return true;
+  }
+
+  /**
+   * Endpoint type of a Bitbucket URL: the path below {@code /repositories/{workspace}/{repo}} (or below the API
+   * version) with numeric ids replaced, e.g. {@code pullrequests/{id}/comments}.
+   */
+  static String endpointOf(URI url) {
+    String[] segments = url.getRawPath().split("/");
+    int from = 0;
+    for (int i = 0; i < segments.length; i++) {
+      if ("repositories".equals(segments[i])) {
+        from = i + 3;
+        break;
+      }
+      if ("2.0".equals(segments[i])) {
+        from = i + 1;
+      }
+    }
+    var joiner = new StringJoiner("/");
+    for (int i = from; i < segments.length; i++) {
+      if (!segments[i].isEmpty()) {
+        joiner.add(segments[i].chars().allMatch(Character::isDigit) ? "{id}" : segments[i]);
+      }
+    }
+    return joiner.length() == 0 ? "/" : joiner.toString();
+  }
+
+  /**
+   * @param hedgesSent  duplicate requests sent
+   * @param hedgesWon   duplicates that answered before the original
+   * @param delayMillis current hedge delay per endpoint type
+   */
+  public record Stats(long hedgesSent, long hedgesWon, Map<String, Long> delayMillis) {
+
+  }
+
+  private final class LatencyWindow {
+
+    private final long[] samples = new long[settings.windowSize()];
+    private int count;
+    private int cursor;
+
+    private synchronized void record(long nanos) {
+      samples[cursor] = nanos;
+      cursor = (cursor + 1) % samples.length;
+      count = Math.min(count + 1, samples.length);
+    }
+
+    @Nullable
+    private Duration hedgeDelay() {
+      long[] sorted;
+      synchronized (this) {
+        if (count < settings.minSamples()) {
+          return null;
+        }
+        sorted = Arrays.copyOf(samples, count);
+      }
+      Arrays.sort(sorted);
+      int index = (int) Math.ceil(settings.percentile() * sorted.length) - 1;
+      long nanos = sorted[Math.max(0, Math.min(index, sorted.length - 1))];
+      return Duration.ofNanos(Math.max(nanos, settings.minDelay().toNanos()));
+    }
+  }
+}
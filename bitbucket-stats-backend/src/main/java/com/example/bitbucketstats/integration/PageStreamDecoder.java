@@ -0,0 +1,171 @@
+package com.example.bitbucketstats.integration;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.core.async.ByteArrayFeeder;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.util.TokenBuffer;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.List;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferUtils;
+import reactor.core.publisher.Flux;
+
+/**
+ * Incremental decoder for Bitbucket page bodies ({@code {"values": [...], "next": "...", ...}}).
+ * <p>
+ * Bytes are fed to Jackson's non-blocking parser as they arrive; each element of {@code values} is decoded and
+ * emitted as soon as its closing token has been read, and the {@code next} link is emitted as soon as it has been
+ * parsed, wherever it appears in the object. Only one element is buffered at a time.
+ */
+public class PageStreamDecoder {
+
+  private final ObjectMapper objectMapper;
+
+  public PageStreamDecoder(ObjectMapper objectMapper) {
+    this.objectMapper = objectMapper;
+  }
+
+  /**
+   * Decode a page body into a stream of {@link Element} and {@link NextLink} events.
+   *
+   * @param body        the raw body; buffers are released once fed to the parser
+   * @param elementType the type of the {@code values} elements
+   * @param <E>         the element type
+   * @return the events, in the order they appear in the body
+   */
+  public <E> Flux<Object> decode(Flux<DataBuffer> body, Class<E> elementType) {
+    return Flux.defer(() -> {
+      var state = new ParserState<>(elementType);
+      return body
+          .concatMapIterable(buffer -> {
+            try {
+              return state.feed(buffer);
+            } finally {
+              DataBufferUtils.release(buffer);
+            }
+          })
+          .concatWith(Flux.defer(() -> Flux.fromIterable(state.endOfInput())))
+          .doFinally(s -> state.close());
+    });
+  }
+
+  public record Element<E>(E value) {
+
+  }
+
+  public record NextLink(String url) {
+
+  }
+
+  private final class ParserState<E> {
+
+    private final Class<E> elementType;
+    private final JsonParser parser;
+    private final ByteArrayFeeder feeder;
+
+    private int depth;
+    private String field;
+    private boolean inValues;
+    private TokenBuffer element;
+    private int elementDepth;
+
+    private ParserState(Class<E> elementType) {
+      this.elementType = elementType;
+      try {
+        this.parser = objectMapper.getFactory().createNonBlockingByteArrayParser();
+      } catch (IOException e) {
+        throw new UncheckedIOException(e);
+      }
+      this.feeder = (ByteArrayFeeder) parser.getNonBlockingInputFeeder();
+    }
+
+    private List<Object> feed(DataBuffer buffer) {
+      byte[] bytes = new byte[buffer.readableByteCount()];
+      buffer.read(bytes);
+      try {
+        feeder.feedInput(bytes, 0, bytes.length);
+        return drain();
+      } catch (IOException e) {
+        throw new UncheckedIOException(e);
+      }
+    }
+
+    private List<Object> endOfInput() {
+      feeder.endOfInput();
+      try {
+        return drain();
+      } catch (IOException e) {
+        throw new UncheckedIOException(e);
+      }
+    }
+
+    private void close() {
+      try {
+        parser.close();
+      } catch (IOException ignored) {
+        // nothing left to release
+      }
+    }
+
+    private List<Object> drain() throws IOException {
+      List<Object> events = new ArrayList<>();
+      JsonToken token;
+      while ((token = parser.nextToken()) != null && token != JsonToken.NOT_AVAILABLE) {
+        if (element != null) {
+          copyElementToken(token, events);
+          continue;
+        }
+        if (inValues && depth == 2 && token != JsonToken.END_ARRAY) {
+          element = new TokenBuffer(parser);
+          elementDepth = 0;
+          copyElementToken(token, events);
+          continue;
+        }
+        switch (token) {
+          case START_OBJECT, START_ARRAY -> {
+            depth++;
+            inValues = depth == 2 && token == JsonToken.START_ARRAY && "values".equals(field);
+          }
+          case END_OBJECT, END_ARRAY -> {
+            if (depth == 2) {
+              inValues = false;
+            }
+            depth--;
+          }
+          case FIELD_NAME -> {
+            if (depth == 1) {
+              field = parser.currentName();
+            }
+          }
+          case VALUE_STRING -> {
+            if (depth == 1 && "next".equals(field)) {
+              events.add(new NextLink(parser.getText()));
+            }
+          }
+          default -> {
+            // other page metadata (size, page, pagelen) is not needed here
+          }
+        }
+      }
+      return events;
+    }
+
+    private void copyElementToken(JsonToken token, List<Object> events) throws IOException {
+      element.copyCurrentEvent(parser);
+      if (token.isStructStart()) {
+        elementDepth++;
+      } else if (token.isStructEnd()) {
+        elementDepth--;
+      }
+      if (elementDepth == 0) {
+        try (JsonParser elementParser = element.asParser(objectMapper)) {
+          events.add(new Element<>(objectMapper.readValue(elementParser, elementType)));
+        }
+        element = null;
+      }
+    }
+  }
+}
@@ -0,0 +1,171 @@
+package com.example.bitbucketstats.integration;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.IntSupplier;
+import java.util.function.Supplier;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.reactive.function.client.ClientResponse;
+import org.springframework.web.server.ResponseStatusException;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.MonoSink;
+
+/**
+ * FIFO queue of permits for upstream calls, shared by the filters that cap concurrency.
+ * <p>
+ * A permit is granted at once while fewer than {@code limit} are held and nobody waits ahead; otherwise the caller
+ * waits, and fails with 503 when {@code maxQueue} callers are waiting already. A caller cancelled while waiting leaves
+ * the queue; one cancelled just as it was granted gives its permit back.
+ */
+class PermitQueue {
+
+  private final IntSupplier limit;
+  private final int maxQueue;
+  private final Supplier<String> rejection;
+  private final Runnable onRelease;
+  private final Deque<Waiter> waiters = new ArrayDeque<>();
+  private int inFlight;
+
+  /**
+   * @param limit     permits that may be held at once; read on every grant, so it may change
+   * @param maxQueue  callers that may wait for a permit
+   * @param rejection the message of the 503 returned when the queue is full
+   * @param onRelease run after a permit is given back
+   */
+  PermitQueue(IntSupplier limit, int maxQueue, Supplier<String> rejection, Runnable onRelease) {
+    this.limit = limit;
+    this.maxQueue = maxQueue;
+    this.rejection = rejection;
+    this.onRelease = onRelease;
+  }
+
+  PermitQueue(IntSupplier limit, int maxQueue, Supplier<String> rejection) {
+    this(limit, maxQueue, rejection, () -> { });
+  }
+
+  /**
+   * @return a Mono of a permit, emitted once one is free
+   */
+  Mono<Permit> acquire() {
+    return Mono.create(sink -> {
+      var waiter = new Waiter(sink);
+      sink.onCancel(() -> cancel(waiter));
+      boolean granted;
+      synchronized (this) {
+        granted = waiters.isEmpty() && inFlight < limit.getAsInt();
+        if (granted) {
+          inFlight++;
+        } else if (waiters.size() >= maxQueue) {
+          sink.error(new ResponseStatusException(HttpStatus.SERVICE_UNAVAILABLE, rejection.get()));
+          return;
+        } else {
+          waiters.addLast(waiter);
+        }
+      }
+      if (granted) {
+        waiter.grant();
+      }
+    });
+  }
+
+  /**
+   * Hold {@code permit} for as long as the response is in use: until its body has been consumed, or the exchange
+   * failed or was cancelled.
+   */
+  static Mono<ClientResponse> holding(Permit permit, Mono<ClientResponse> exchange) {
+    return exchange
+        .map(res -> res.mutate().body(body -> body.doFinally(s -> permit.release())).build())
+        .doOnError(e -> permit.release())
+        .doOnCancel(permit::release);
+  }
+
+  /**
+   * Grant queued permits the limit now allows, e.g. after it was raised.
+   */
+  void drain() {
+    List<Waiter> toGrant = new ArrayList<>();
+    synchronized (this) {
+      drainInto(toGrant);
+    }
+    toGrant.forEach(Waiter::grant);
+  }
+
+  synchronized int inFlight() {
+    return inFlight;
+  }
+
+  synchronized int queued() {
+    return waiters.size();
+  }
+
+  /**
+   * @return whether no permit is held and nobody waits
+   */
+  synchronized boolean idle() {
+    return inFlight == 0 && waiters.isEmpty();
+  }
+
+  private void cancel(Waiter waiter) {
+    boolean wasGranted;
+    synchronized (this) {
+      wasGranted = !waiters.remove(waiter) && waiter.granted.get();
+    }
+    if (wasGranted) {
+      waiter.permit.release();
+    }
+  }
+
+  private void release() {
+    List<Waiter> toGrant = new ArrayList<>();
+    synchronized (this) {
+      inFlight--;
+      drainInto(toGrant);
+    }
+    toGrant.forEach(Waiter::grant);
+    onRelease.run();
+  }
+
+  private void drainInto(List<Waiter> toGrant) {
+    while (!waiters.isEmpty() && inFlight < limit.getAsInt()) {
+      var w = waiters.pollFirst();
+      w.granted.set(true);
+      inFlight++;
+      toGrant.add(w);
+    }
+  }
+
+  private final class Waiter {
+
+    private final MonoSink<Permit> sink;
+    private final AtomicBoolean granted = new AtomicBoolean();
+    private final Permit permit = new Permit(PermitQueue.this);
+
+    private Waiter(MonoSink<Permit> sink) {
+      this.sink = sink;
+    }
+
+    private void grant() {
+      granted.set(true);
+      sink.success(permit);
+    }
+  }
+
+  static final class Permit {
+
+    private final PermitQueue queue;
+    private final AtomicBoolean released = new AtomicBoolean();
+
+    private Permit(PermitQueue queue) {
+      this.queue = queue;
+    }
+
+    void release() {
+      if (released.compareAndSet(false, true)) {
+        queue.release();
+      }
+    }
+  }
+}
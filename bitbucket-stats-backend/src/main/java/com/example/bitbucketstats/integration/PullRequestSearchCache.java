@@ -0,0 +1,268 @@
+package com.example.bitbucketstats.integration;
+
+import com.example.bitbucketstats.configuration.BitbucketHttpProperties;
+import com.example.bitbucketstats.configuration.CacheMemoryBudget;
+import com.example.bitbucketstats.configuration.TenantQuota;
+import com.example.bitbucketstats.controllers.request.BaseParams;
+import com.example.bitbucketstats.models.BitbucketAuth;
+import com.example.bitbucketstats.models.EnrichedPullRequest;
+import com.example.bitbucketstats.models.FieldFilter;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.RemovalCause;
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
+import java.time.Clock;
+import java.time.LocalDate;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Predicate;
+import java.util.stream.Collectors;
+import org.springframework.lang.Nullable;
+
+/**
+ * Pull request search results split by the UTC day of their {@code updated_on}, per (credential, workspace,
+ * repository, filter, projection, states, draft filter).
+ * <p>
+ * A closed pull request only changes by being updated again, which moves it to a later day; a day that has fully
+ * passed therefore keeps its pull requests and can be answered from cache. Only the last
+ * {@code bitbucket.search-cache.mutable-days} days, and days not cached yet, are queried, so moving a window forward by
+ * a day costs one narrowed search instead of the whole window. A pull request updated again after its day was cached
+ * is superseded by the fresh copy when both are returned; if the new update falls outside the requested window, the
+ * old copy is served until the day expires ({@code bitbucket.search-cache.ttl}).
+ * <p>
+ * Searches that include open pull requests are never cached: those move between states without leaving their day.
+ * <p>
+ * Days are bounded by {@code max-days}, or by the estimated bytes of their pull requests under a
+ * {@link CacheMemoryBudget}. With {@code bitbucket.tenant-cache} enabled, each tenant holds at most its share of that
+ * bound.
+ */
+public class PullRequestSearchCache {
+
+  private static final Set<String> CLOSED_STATES = Set.of("MERGED", "DECLINED", "SUPERSEDED");
+  /** More gaps than this are fetched as one range: a few cached days are not worth a search each. */
+  private static final int MAX_RANGES = 4;
+  private static final String CACHE_NAME = "pull-request-search-cache";
+
+  private final BitbucketHttpProperties.SearchCache settings;
+  private final Clock clock;
+  private final Cache<DayKey, List<EnrichedPullRequest>> days;
+  @Nullable
+  private final TenantQuota<DayKey> quota;
+
+  public PullRequestSearchCache(BitbucketHttpProperties.SearchCache settings) {
+    this(settings, null, null, Clock.systemUTC());
+  }
+
+  public PullRequestSearchCache(BitbucketHttpProperties.SearchCache settings,
+      @Nullable BitbucketHttpProperties.TenantCache tenants, @Nullable CacheMemoryBudget budget) {
+    this(settings, tenants, budget, Clock.systemUTC());
+  }
+
+  PullRequestSearchCache(BitbucketHttpProperties.SearchCache settings, Clock clock) {
+    this(settings, null, null, clock);
+  }
+
+  PullRequestSearchCache(BitbucketHttpProperties.SearchCache settings,
+      @Nullable BitbucketHttpProperties.TenantCache tenants, @Nullable CacheMemoryBudget budget, Clock clock) {
+    this.settings = settings;
+    this.clock = clock;
+    var bytes = budget != null && budget.enabled() ? budget : null;
+    this.quota = TenantQuota.forCache(CACHE_NAME, bytes != null ? bytes.maxWeight(CACHE_NAME) : settings.maxDays(),
+        tenants, day -> day.search().credential(), day -> day.search().workspace());
+    Caffeine<DayKey, List<EnrichedPullRequest>> builder = Caffeine.newBuilder()
+        .expireAfterWrite(settings.ttl())
+        .recordStats()
+        .removalListener((DayKey day, List<EnrichedPullRequest> prs, RemovalCause cause) -> {
+          if (quota != null) {
+            quota.recordRemoval(day, prs);
+          }
+        });
+    if (bytes != null) {
+      builder.maximumWeight(bytes.maxWeight(CACHE_NAME))
+          .weigher(bytes::weigh);
+    } else {
+      builder.maximumSize(settings.maxDays());
+    }
+    this.days = builder.build();
+    if (quota != null) {
+      quota.evictWith(days::invalidate);
+      quota.peekWith(key -> days.policy().getIfPresentQuietly(key));
+      if (bytes != null) {
+        quota.weighWith(bytes::weigh);
+      }
+    }
+    if (bytes != null) {
+      bytes.register(CACHE_NAME, days);
+    }
+  }
+
+  /**
+   * Identifies one search; every parameter that changes its results is part of it.
+   */
+  public record SearchKey(
+      String credential,
+      String workspace,
+      String repo,
+      FieldFilter filter,
+      FieldProjection projection,
+      List<String> states,
+      @Nullable Boolean queued
+  ) {
+
+    public static SearchKey of(BitbucketAuth auth, String repo, FieldFilter filter, FieldProjection projection,
+        BaseParams params) {
+      var states = params.getState() == null ? List.<String>of() : params.getState().stream()
+          .map(s -> s.toUpperCase(Locale.ROOT))
+          .sorted()
+          .toList();
+      return new SearchKey(auth.cacheKey(), params.getWorkspace(), repo, filter, projection, states,
+          params.getQueued());
+    }
+  }
+
+  private record DayKey(SearchKey search, LocalDate day) {
+
+  }
+
+  /**
+   * Days {@code [from, until)} to search upstream.
+   */
+  public record Range(LocalDate from, LocalDate until) {
+
+  }
+
+  /**
+   * @param cached      pull requests of the cached days, most recent day first
+   * @param missing     ranges to search, oldest first
+   * @param mutableFrom first day that was still mutable at lookup time; results from it on are not stored
+   */
+  public record Lookup(List<EnrichedPullRequest> cached, List<Range> missing, LocalDate mutableFrom) {
+
+  }
+
+  /**
+   * @param states the requested states
+   * @return whether searches for these states are cached: only closed pull requests are
+   */
+  public boolean covers(@Nullable List<String> states) {
+    return settings.enabled() && states != null && !states.isEmpty()
+        && states.stream().allMatch(s -> s != null && CLOSED_STATES.contains(s.toUpperCase(Locale.ROOT)));
+  }
+
+  /**
+   * Split a window into cached days and ranges still to search.
+   *
+   * @param key   the search
+   * @param since first day of the window
+   * @param until first day after the window
+   * @return the cached pull requests and the uncovered or mutable ranges
+   */
+  public Lookup lookup(SearchKey key, LocalDate since, LocalDate until) {
+    var mutableFrom = LocalDate.ofInstant(clock.instant(), ZoneOffset.UTC)
+        .minusDays(Math.max(1, settings.mutableDays()) - 1L);
+    List<List<EnrichedPullRequest>> hits = new ArrayList<>();
+    List<Range> missing = new ArrayList<>();
+    LocalDate gapStart = null;
+    for (var day = since; day.isBefore(until); day = day.plusDays(1)) {
+      var hit = day.isBefore(mutableFrom) ? days.getIfPresent(new DayKey(key, day)) : null;
+      if (hit == null) {
+        gapStart = gapStart == null ? day : gapStart;
+        continue;
+      }
+      if (gapStart != null) {
+        missing.add(new Range(gapStart, day));
+        gapStart = null;
+      }
+      hits.add(hit);
+    }
+    if (gapStart != null) {
+      missing.add(new Range(gapStart, until));
+    }
+    if (missing.size() > MAX_RANGES) {
+      missing = List.of(new Range(missing.get(0).from(), missing.get(missing.size() - 1).until()));
+    }
+
+    List<EnrichedPullRequest> cached = new ArrayList<>();
+    for (int i = hits.size() - 1; i >= 0; i--) {
+      cached.addAll(hits.get(i));
+    }
+    return new Lookup(cached, missing, mutableFrom);
+  }
+
+  /**
+   * Store the complete results of a searched range, one entry per day that was already immutable at lookup time.
+   * Days without pull requests are stored too, so they are not searched again. Nothing is stored when a pull request
+   * lacks its update time, as its day is unknown.
+   *
+   * @param key         the search
+   * @param range       the range that was searched
+   * @param mutableFrom {@link Lookup#mutableFrom()} of the lookup the range came from
+   * @param prs         every pull request the range's search returned
+   */
+  public void store(SearchKey key, Range range, LocalDate mutableFrom, List<EnrichedPullRequest> prs) {
+    if (prs.stream().anyMatch(pr -> pr.updatedOn() == null)) {
+      return;
+    }
+    Map<LocalDate, List<EnrichedPullRequest>> byDay = prs.stream()
+        .collect(Collectors.groupingBy(pr -> pr.updatedOn().atZoneSameInstant(ZoneOffset.UTC).toLocalDate()));
+    for (var day = range.from(); day.isBefore(range.until()) && day.isBefore(mutableFrom); day = day.plusDays(1)) {
+      var dayKey = new DayKey(key, day);
+      var dayPrs = List.copyOf(byDay.getOrDefault(day, List.of()));
+      days.put(dayKey, dayPrs);
+      if (quota != null) {
+        quota.recordWrite(dayKey, dayPrs);
+      }
+    }
+  }
+
+  public CacheStats stats() {
+    return days.stats();
+  }
+
+  public long size() {
+    return days.estimatedSize();
+  }
+
+  /**
+   * @return a read-only view of the cached days
+   */
+  public Map<?, List<EnrichedPullRequest>> entries() {
+    return Collections.unmodifiableMap(days.asMap());
+  }
+
+  /**
+   * Drop the cached days of matching searches.
+   *
+   * @param matching the searches to drop
+   * @return cached days dropped
+   */
+  public long invalidate(Predicate<SearchKey> matching) {
+    long dropped = 0;
+    for (var day : days.asMap().keySet()) {
+      if (matching.test(day.search()) && days.asMap().remove(day) != null) {
+        dropped++;
+      }
+    }
+    return dropped;
+  }
+
+  /**
+   * Drop every cached day.
+   */
+  public void clear() {
+    days.invalidateAll();
+    if (quota != null) {
+      quota.clear();
+    }
+  }
+
+  @Nullable
+  public TenantQuota<?> quota() {
+    return quota;
+  }
+}
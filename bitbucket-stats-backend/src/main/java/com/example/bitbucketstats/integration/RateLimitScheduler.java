@@ -0,0 +1,220 @@
+package com.example.bitbucketstats.integration;
+
+import com.example.bitbucketstats.configuration.BitbucketHttpProperties;
+import com.example.bitbucketstats.models.BitbucketAuth;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.HttpStatusCode;
+import org.springframework.lang.Nullable;
+import org.springframework.web.reactive.function.client.ClientRequest;
+import org.springframework.web.reactive.function.client.ClientResponse;
+import org.springframework.web.reactive.function.client.ExchangeFilterFunction;
+import org.springframework.web.reactive.function.client.ExchangeFunction;
+import org.springframework.web.server.ResponseStatusException;
+import reactor.core.publisher.Mono;
+
+/**
+ * Per-credential request scheduler for upstream Bitbucket calls, applied as a WebClient filter.
+ * <p>
+ * Every credential (keyed by {@link BitbucketAuth#cacheKey()}) has an hourly request budget. The budget is corrected
+ * from {@code X-RateLimit-*} response headers when Bitbucket sends them, and a 429 or {@code Retry-After} pauses the
+ * credential. Requests for a paused or exhausted credential are held until the window reopens; if that is further
+ * away than {@code maxWait} they fail fast with 429 instead of being sent and retried blindly.
+ */
+public class RateLimitScheduler implements ExchangeFilterFunction {
+
+  private static final Logger log = LoggerFactory.getLogger(RateLimitScheduler.class);
+  private static final Duration WINDOW = Duration.ofHours(1);
+  private static final long REJECTED = -1;
+
+  private final BitbucketHttpProperties.RateLimit settings;
+  private final Clock clock;
+  private final Cache<String, CredentialState> states = Caffeine.newBuilder()
+      .expireAfterAccess(WINDOW.multipliedBy(2))
+      .build();
+
+  public RateLimitScheduler(BitbucketHttpProperties.RateLimit settings) {
+    this(settings, Clock.systemUTC());
+  }
+
+  RateLimitScheduler(BitbucketHttpProperties.RateLimit settings, Clock clock) {
+    this.settings = settings;
+    this.clock = clock;
+  }
+
+  @Override
+  public Mono<ClientResponse> filter(ClientRequest request, ExchangeFunction next) {
+    String key = BitbucketAuth.cacheKeyOf(request.headers());
+    if (!settings.enabled() || key == null) {
+      return next.exchange(request);
+    }
+    return Mono.defer(() -> {
+      var state = state(key);
+      long waitMillis = state.reserve(clock.millis(), settings.maxWait().toMillis());
+      if (waitMillis == REJECTED) {
+        return Mono.error(throttled(state.snapshot(clock.millis())));
+      }
+      var call = next.exchange(request)
+          .doOnNext(res -> state.observe(res.statusCode(), res.headers().asHttpHeaders(), clock.millis()));
+      if (waitMillis == 0) {
+        return call;
+      }
+      log.debug("Holding request to {} for {} ms (credential paused or out of budget)", request.url().getPath(),
+          waitMillis);
+      return Mono.delay(Duration.ofMillis(waitMillis)).then(call);
+    });
+  }
+
+  /**
+   * Forecast of the remaining hourly quota for a credential.
+   */
+  public Budget budget(BitbucketAuth auth) {
+    return state(auth.cacheKey()).snapshot(clock.millis());
+  }
+
+  /**
+   * Refuse a request up front when the credential's remaining quota cannot cover the calls it needs.
+   *
+   * @param auth           the credential
+   * @param estimatedCalls lower bound of upstream calls the request will make
+   * @throws ResponseStatusException with 429 when the forecast is insufficient
+   */
+  public void ensureBudget(BitbucketAuth auth, int estimatedCalls) {
+    if (!settings.enabled()) {
+      return;
+    }
+    var budget = budget(auth);
+    if (budget.remaining() < estimatedCalls) {
+      throw new ResponseStatusException(HttpStatus.TOO_MANY_REQUESTS, String.format(
+          "Request needs at least %d Bitbucket calls but only %d remain until %s",
+          estimatedCalls, budget.remaining(), budget.windowResetsAt()));
+    }
+  }
+
+  private CredentialState state(String key) {
+    return states.get(key, k -> new CredentialState(settings.requestsPerHour(), clock.millis()));
+  }
+
+  private static ResponseStatusException throttled(Budget budget) {
+    Instant until = budget.pausedUntil() != null ? budget.pausedUntil() : budget.windowResetsAt();
+    return new ResponseStatusException(HttpStatus.TOO_MANY_REQUESTS,
+        "Bitbucket rate limit reached for this credential, retry after " + until);
+  }
+
+  @Nullable
+  static Duration parseRetryAfter(@Nullable String value, long nowMillis) {
+    if (value == null || value.isBlank()) {
+      return null;
+    }
+    try {
+      return Duration.ofSeconds(Long.parseLong(value.trim()));
+    } catch (NumberFormatException ignored) {
+      // HTTP-date form
+    }
+    try {
+      var at = ZonedDateTime.parse(value.trim(), DateTimeFormatter.RFC_1123_DATE_TIME).toInstant();
+      return Duration.ofMillis(Math.max(0, at.toEpochMilli() - nowMillis));
+    } catch (DateTimeParseException e) {
+      return null;
+    }
+  }
+
+  @Nullable
+  private static Integer intHeader(HttpHeaders headers, String name) {
+    String v = headers.getFirst(name);
+    if (v == null) {
+      return null;
+    }
+    try {
+      return Integer.parseInt(v.trim());
+    } catch (NumberFormatException e) {
+      return null;
+    }
+  }
+
+  /**
+   * @param limit          requests allowed in the current window
+   * @param used           requests sent (or reported by Bitbucket) in the current window
+   * @param remaining      forecast of requests still available in the window
+   * @param windowResetsAt when the current window ends
+   * @param pausedUntil    when a 429/Retry-After pause ends, or null if not paused
+   */
+  public record Budget(int limit, int used, int remaining, Instant windowResetsAt, @Nullable Instant pausedUntil) {
+
+  }
+
+  private final class CredentialState {
+
+    private int limit;
+    private int used;
+    private long windowStart;
+    private long pausedUntil;
+
+    private CredentialState(int limit, long now) {
+      this.limit = limit;
+      this.windowStart = now;
+    }
+
+    /**
+     * Count a request and return how long it must wait, or {@link #REJECTED} when it would wait longer than allowed.
+     */
+    private synchronized long reserve(long now, long maxWaitMillis) {
+      roll(now);
+      long wait = Math.max(0, pausedUntil - now);
+      if (used >= limit) {
+        wait = Math.max(wait, windowStart + WINDOW.toMillis() - now);
+      }
+      if (wait > maxWaitMillis) {
+        return REJECTED;
+      }
+      used++;
+      return wait;
+    }
+
+    private synchronized void observe(HttpStatusCode status, HttpHeaders headers, long now) {
+      Integer reportedLimit = intHeader(headers, "X-RateLimit-Limit");
+      Integer reportedRemaining = intHeader(headers, "X-RateLimit-Remaining");
+      if (reportedLimit != null && reportedLimit > 0) {
+        limit = reportedLimit;
+      }
+      if (reportedRemaining != null) {
+        used = Math.max(0, limit - reportedRemaining);
+      }
+
+      Duration retryAfter = parseRetryAfter(headers.getFirst(HttpHeaders.RETRY_AFTER), now);
+      if (retryAfter == null && status.value() == 429) {
+        retryAfter = settings.defaultRetryAfter();
+      }
+      if (retryAfter != null) {
+        pausedUntil = Math.max(pausedUntil, now + retryAfter.toMillis());
+        log.info("Bitbucket throttled a credential (status {}), pausing its requests for {}s",
+            status.value(), retryAfter.toSeconds());
+      }
+    }
+
+    private synchronized Budget snapshot(long now) {
+      roll(now);
+      return new Budget(limit, used, Math.max(0, limit - used),
+          Instant.ofEpochMilli(windowStart + WINDOW.toMillis()),
+          pausedUntil > now ? Instant.ofEpochMilli(pausedUntil) : null);
+    }
+
+    private void roll(long now) {
+      if (now - windowStart >= WINDOW.toMillis()) {
+        windowStart = now;
+        used = 0;
+        limit = settings.requestsPerHour();
+      }
+    }
+  }
+}
@@ -0,0 +1,185 @@
+package com.example.bitbucketstats.integration;
+
+import com.example.bitbucketstats.configuration.BitbucketHttpProperties;
+import com.example.bitbucketstats.exceptions.CircuitOpenException;
+import java.net.URI;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.LongSupplier;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.http.HttpStatusCode;
+import org.springframework.lang.Nullable;
+import org.springframework.web.reactive.function.client.ClientRequest;
+import org.springframework.web.reactive.function.client.ClientResponse;
+import org.springframework.web.reactive.function.client.ExchangeFilterFunction;
+import org.springframework.web.reactive.function.client.ExchangeFunction;
+import reactor.core.publisher.Mono;
+
+/**
+ * Per-repository circuit breaker for upstream Bitbucket calls, applied as a WebClient filter.
+ * <p>
+ * Outcomes of calls under {@code /repositories/{workspace}/{repo}} are kept in a sliding window per repository. 5xx
+ * responses, transport errors and calls slower than {@code slowCallThreshold} count as failures; 429 is left to the
+ * rate-limit scheduler. Once the failure rate reaches the threshold the circuit opens and calls fail immediately with
+ * {@link CircuitOpenException}. After {@code openDuration} a few probe calls are let through: if they all succeed the
+ * circuit closes, otherwise it opens again.
+ */
+public class RepositoryCircuitBreaker implements ExchangeFilterFunction {
+
+  private static final Logger log = LoggerFactory.getLogger(RepositoryCircuitBreaker.class);
+
+  private final BitbucketHttpProperties.CircuitBreaker settings;
+  private final LongSupplier nanoClock;
+  private final Map<String, Circuit> circuits = new ConcurrentHashMap<>();
+
+  public RepositoryCircuitBreaker(BitbucketHttpProperties.CircuitBreaker settings) {
+    this(settings, System::nanoTime);
+  }
+
+  RepositoryCircuitBreaker(BitbucketHttpProperties.CircuitBreaker settings, LongSupplier nanoClock) {
+    this.settings = settings;
+    this.nanoClock = nanoClock;
+  }
+
+  @Override
+  public Mono<ClientResponse> filter(ClientRequest request, ExchangeFunction next) {
+    String repository = repositoryOf(request.url());
+    if (!settings.enabled() || repository == null) {
+      return next.exchange(request);
+    }
+    return Mono.defer(() -> {
+      var circuit = circuits.computeIfAbsent(repository, Circuit::new);
+      if (!circuit.tryAcquire(nanoClock.getAsLong())) {
+        return Mono.error(new CircuitOpenException(repository));
+      }
+      long start = nanoClock.getAsLong();
+      return next.exchange(request)
+          .doOnNext(res -> circuit.record(isFailure(res.statusCode(), nanoClock.getAsLong() - start),
+              nanoClock.getAsLong()))
+          .doOnError(e -> circuit.record(true, nanoClock.getAsLong()))
+          .doOnCancel(circuit::releaseProbe);
+    });
+  }
+
+  /**
+   * Current state of every repository circuit that has seen traffic, keyed by {@code workspace/repo}.
+   */
+  public Map<String, State> states() {
+    Map<String, State> out = new TreeMap<>();
+    long now = nanoClock.getAsLong();
+    circuits.forEach((k, c) -> out.put(k, c.state(now)));
+    return out;
+  }
+
+  private boolean isFailure(HttpStatusCode status, long latencyNanos) {
+    return status.is5xxServerError() || latencyNanos > settings.slowCallThreshold().toNanos();
+  }
+
+  /**
+   * @return {@code workspace/repo} for repository URLs, otherwise null
+   */
+  @Nullable
+  static String repositoryOf(URI url) {
+    String[] segments = url.getRawPath().split("/");
+    for (int i = 0; i + 2 < segments.length; i++) {
+      if ("repositories".equals(segments[i]) && !segments[i + 1].isEmpty() && !segments[i + 2].isEmpty()) {
+        return segments[i + 1] + "/" + segments[i + 2];
+      }
+    }
+    return null;
+  }
+
+  public enum State {
+    CLOSED, OPEN, HALF_OPEN
+  }
+
+  private final class Circuit {
+
+    private final String repository;
+    private final boolean[] window = new boolean[settings.windowSize()];
+    private int calls;
+    private int failures;
+    private int cursor;
+    private State state = State.CLOSED;
+    private long openedAt;
+    private int probesInFlight;
+    private int probeSuccesses;
+
+    private Circuit(String repository) {
+      this.repository = repository;
+    }
+
+    private synchronized boolean tryAcquire(long now) {
+      if (state == State.OPEN) {
+        if (now - openedAt < settings.openDuration().toNanos()) {
+          return false;
+        }
+        state = State.HALF_OPEN;
+        probesInFlight = 0;
+        probeSuccesses = 0;
+        log.info("Circuit for {} half-open, probing", repository);
+      }
+      if (state == State.HALF_OPEN) {
+        if (probesInFlight + probeSuccesses >= settings.halfOpenProbes()) {
+          return false;
+        }
+        probesInFlight++;
+      }
+      return true;
+    }
+
+    private synchronized void record(boolean failed, long now) {
+      if (state == State.HALF_OPEN) {
+        probesInFlight = Math.max(0, probesInFlight - 1);
+        if (failed) {
+          open(now);
+        } else if (++probeSuccesses >= settings.halfOpenProbes()) {
+          close();
+        }
+        return;
+      }
+      if (state == State.OPEN) {
+        return;
+      }
+      if (calls == window.length) {
+        failures -= window[cursor] ? 1 : 0;
+      } else {
+        calls++;
+      }
+      window[cursor] = failed;
+      failures += failed ? 1 : 0;
+      cursor = (cursor + 1) % window.length;
+
+      if (calls >= settings.minimumCalls() && failures >= settings.failureRateThreshold() * calls) {
+        open(now);
+      }
+    }
+
+    private synchronized void releaseProbe() {
+      if (state == State.HALF_OPEN) {
+        probesInFlight = Math.max(0, probesInFlight - 1);
+      }
+    }
+
+    private synchronized State state(long now) {
+      return state == State.OPEN && now - openedAt >= settings.openDuration().toNanos() ? State.HALF_OPEN : state;
+    }
+
+    private void open(long now) {
+      log.warn("Circuit for {} opened ({} of {} recent calls failed), pausing calls for {}s", repository, failures,
+          calls, settings.openDuration().toSeconds());
+      state = State.OPEN;
+      openedAt = now;
+    }
+
+    private void close() {
+      log.info("Circuit for {} closed after {} successful probes", repository, probeSuccesses);
+      state = State.CLOSED;
+      calls = 0;
+      failures = 0;
+      cursor = 0;
+    }
+  }
+}
@@ -0,0 +1,168 @@
+package com.example.bitbucketstats.integration;
+
+import com.example.bitbucketstats.configuration.BitbucketHttpProperties;
+import io.netty.channel.Channel;
+import io.netty.util.AttributeKey;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.function.LongSupplier;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.actuate.health.Health;
+import org.springframework.boot.actuate.health.HealthIndicator;
+import org.springframework.context.SmartLifecycle;
+import reactor.core.Disposable;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.netty.Connection;
+import reactor.netty.http.client.HttpClient;
+
+/**
+ * Keeps connections to {@code bitbucket.api-base} open so the first dashboard request after a deploy or an idle
+ * period does not pay for DNS, TCP and TLS on every connection of its fan-out.
+ * <p>
+ * From startup on, {@code minConnections} concurrent unauthenticated {@code HEAD} requests are sent every
+ * {@code keepAliveInterval}. The interval is shorter than the pool's idle timeout, so the connections stay pooled. A
+ * connection a round finds past 80% of the pool's {@code maxLifeTime} (counted from the first round that used it) is
+ * closed and reopened right away, so it is replaced before the pool retires it under a real request. No filters run
+ * for these requests, so they take no rate budget, concurrency permit or bulkhead slot; they do count against
+ * Bitbucket's limit for anonymous requests, which is why the warm-up is off by default.
+ * <p>
+ * Readiness reports {@code OUT_OF_SERVICE} until the first round has finished. An unreachable Bitbucket does not keep
+ * the instance out of service; it only shows in the details.
+ */
+public class UpstreamWarmup implements SmartLifecycle, HealthIndicator {
+
+  private static final Logger log = LoggerFactory.getLogger(UpstreamWarmup.class);
+  private static final double REFRESH_AT = 0.8;
+  /** {@code nanoClock} time a round first used the connection. */
+  private static final AttributeKey<Long> FIRST_USED = AttributeKey.valueOf("upstreamWarmup.firstUsed");
+
+  private final HttpClient httpClient;
+  private final String apiBase;
+  private final BitbucketHttpProperties.Warmup settings;
+  private final long refreshAfterNanos;
+  private final LongSupplier nanoClock;
+
+  private volatile Disposable schedule;
+  private volatile Round lastRound;
+
+  /**
+   * @param maxLifeTime the pool's connection lifetime; connections are reopened at 80% of it
+   */
+  public UpstreamWarmup(HttpClient httpClient, String apiBase, BitbucketHttpProperties.Warmup settings,
+      Duration maxLifeTime) {
+    this(httpClient, apiBase, settings, maxLifeTime, System::nanoTime);
+  }
+
+  UpstreamWarmup(HttpClient httpClient, String apiBase, BitbucketHttpProperties.Warmup settings,
+      Duration maxLifeTime, LongSupplier nanoClock) {
+    this.httpClient = httpClient;
+    this.apiBase = apiBase;
+    this.settings = settings;
+    this.refreshAfterNanos = (long) (maxLifeTime.toNanos() * REFRESH_AT);
+    this.nanoClock = nanoClock;
+  }
+
+  @Override
+  public void start() {
+    if (!settings.enabled() || schedule != null) {
+      return;
+    }
+    log.info("Warming {} connections to {}", settings.minConnections(), apiBase);
+    schedule = Flux.interval(Duration.ZERO, settings.keepAliveInterval())
+        .onBackpressureDrop()
+        .concatMap(tick -> warm())
+        .subscribe();
+  }
+
+  @Override
+  public void stop() {
+    var current = schedule;
+    if (current != null) {
+      current.dispose();
+      schedule = null;
+    }
+  }
+
+  @Override
+  public boolean isRunning() {
+    return schedule != null;
+  }
+
+  /**
+   * Open (or touch) {@code minConnections} pooled connections at once, reopening those close to their lifetime.
+   *
+   * @return the number of connections that answered
+   */
+  Mono<Integer> warm() {
+    int target = settings.minConnections();
+    return Flux.range(0, target)
+        .flatMap(i -> touch().flatMap(touched -> touched == Touch.RETIRED ? touch() : Mono.just(touched)), target)
+        .map(touched -> touched != Touch.FAILED)
+        .filter(Boolean::booleanValue)
+        .count()
+        .map(Long::intValue)
+        .doOnNext(warm -> {
+          if (lastRound == null) {
+            log.info("Upstream pool warm: {}/{} connections to {}", warm, target, apiBase);
+          }
+          lastRound = new Round(warm, Instant.now());
+        });
+  }
+
+  private Mono<Touch> touch() {
+    return httpClient.head()
+        .uri(apiBase)
+        .responseConnection((res, conn) -> Mono.just(retireIfOld(conn)))
+        .next()
+        .timeout(settings.timeout())
+        .onErrorResume(e -> {
+          log.debug("Warm-up request to {} failed: {}", apiBase, e.toString());
+          return Mono.just(Touch.FAILED);
+        });
+  }
+
+  /**
+   * Close the connection the request went over once it is past {@link #REFRESH_AT} of its lifetime. Over HTTP/2 the
+   * request ran on a stream, and closing its parent connection lets the other streams on it finish first.
+   */
+  private Touch retireIfOld(Connection conn) {
+    Channel channel = conn.channel().parent() != null ? conn.channel().parent() : conn.channel();
+    long now = nanoClock.getAsLong();
+    Long firstUsed = channel.attr(FIRST_USED).setIfAbsent(now);
+    if (firstUsed == null || now - firstUsed < refreshAfterNanos) {
+      return Touch.WARM;
+    }
+    log.debug("Reopening connection {} to {} ahead of its max lifetime", channel.id(), apiBase);
+    channel.close();
+    return Touch.RETIRED;
+  }
+
+  @Override
+  public Health health() {
+    if (!settings.enabled()) {
+      return Health.up().withDetail("warmup", "disabled").build();
+    }
+    var round = lastRound;
+    if (round == null) {
+      return Health.outOfService().withDetail("warmup", "in progress").build();
+    }
+    var health = Health.up()
+        .withDetail("warmConnections", round.warm())
+        .withDetail("targetConnections", settings.minConnections())
+        .withDetail("lastRefresh", round.at().toString());
+    if (round.warm() == 0) {
+      health.withDetail("warning", "Bitbucket did not answer the last warm-up round");
+    }
+    return health.build();
+  }
+
+  private record Round(int warm, Instant at) {
+
+  }
+
+  private enum Touch {
+    WARM, RETIRED, FAILED
+  }
+}
@@ -0,0 +1,121 @@
+package com.example.bitbucketstats.integration;
+
+import com.example.bitbucketstats.configuration.BitbucketHttpProperties;
+import java.net.URI;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import org.springframework.lang.Nullable;
+import org.springframework.web.reactive.function.client.ClientRequest;
+import org.springframework.web.reactive.function.client.ClientResponse;
+import org.springframework.web.reactive.function.client.ExchangeFilterFunction;
+import org.springframework.web.reactive.function.client.ExchangeFunction;
+import reactor.core.publisher.Mono;
+
+/**
+ * Caps how many upstream calls (and so pooled connections) a single workspace may hold at once, applied as a
+ * WebClient filter. Calls under {@code /repositories/{workspace}} and {@code /workspaces/{workspace}} count against
+ * their workspace. Calls over the cap wait in a per-workspace FIFO queue; when that is full they fail with 503, so a
+ * slow workspace cannot take the whole connection pool from the others.
+ * <p>
+ * A workspace's compartment is dropped once no call is using it, so the map only holds workspaces with calls in
+ * flight or queued.
+ */
+public class WorkspaceBulkhead implements ExchangeFilterFunction {
+
+  private final BitbucketHttpProperties.Bulkhead settings;
+  private final Map<String, Compartment> compartments = new ConcurrentHashMap<>();
+
+  public WorkspaceBulkhead(BitbucketHttpProperties.Bulkhead settings) {
+    this.settings = settings;
+  }
+
+  @Override
+  public Mono<ClientResponse> filter(ClientRequest request, ExchangeFunction next) {
+    String workspace = workspaceOf(request.url());
+    if (workspace == null) {
+      return next.exchange(request);
+    }
+    return Mono.defer(() -> {
+      var compartment = compartments.compute(workspace, (ws, c) -> (c == null ? new Compartment(ws) : c).enter());
+      return compartment.permits.acquire()
+          .flatMap(permit -> PermitQueue.holding(permit, next.exchange(request)))
+          .doFinally(s -> leave(workspace));
+    });
+  }
+
+  /**
+   * Calls currently holding a slot, keyed by workspace. Workspaces with no calls in flight are omitted.
+   */
+  public Map<String, Integer> inFlight() {
+    Map<String, Integer> out = new TreeMap<>();
+    compartments.forEach((ws, c) -> {
+      int n = c.permits.inFlight();
+      if (n > 0) {
+        out.put(ws, n);
+      }
+    });
+    return out;
+  }
+
+  /**
+   * @return workspaces with a compartment, i.e. with calls in flight, queued or being admitted
+   */
+  int compartments() {
+    return compartments.size();
+  }
+
+  /**
+   * @return the workspace of a {@code /repositories/{workspace}/...} or {@code /workspaces/{workspace}/...} URL
+   */
+  @Nullable
+  static String workspaceOf(URI url) {
+    String repository = RepositoryCircuitBreaker.repositoryOf(url);
+    if (repository != null) {
+      return repository.substring(0, repository.indexOf('/'));
+    }
+    String[] segments = url.getRawPath().split("/");
+    for (int i = 0; i + 1 < segments.length; i++) {
+      if ("workspaces".equals(segments[i]) && !segments[i + 1].isEmpty()) {
+        return segments[i + 1];
+      }
+    }
+    return null;
+  }
+
+  /**
+   * Drop the workspace's compartment when no call is being admitted through it and it holds no permit.
+   */
+  private void leave(String workspace) {
+    compartments.computeIfPresent(workspace, (ws, c) -> {
+      c.users--;
+      return c.unused() ? null : c;
+    });
+  }
+
+  private void releasedIn(String workspace) {
+    compartments.computeIfPresent(workspace, (ws, c) -> c.unused() ? null : c);
+  }
+
+  private final class Compartment {
+
+    private final PermitQueue permits;
+    /** Calls between entering the filter and their Mono terminating; only changed inside {@code compute}. */
+    private int users;
+
+    private Compartment(String workspace) {
+      this.permits = new PermitQueue(settings::maxConcurrentPerWorkspace, settings.maxQueuePerWorkspace(),
+          () -> "Too many queued upstream requests for workspace " + workspace + ", try again later",
+          () -> releasedIn(workspace));
+    }
+
+    private Compartment enter() {
+      users++;
+      return this;
+    }
+
+    private boolean unused() {
+      return users == 0 && permits.idle();
+    }
+  }
+}
@@ -0,0 +1,23 @@
+package com.example.bitbucketstats.integration.response;
+
+import java.time.OffsetDateTime;
+
+/**
+ * One entry of a pull request's activity stream; exactly one of the components is set.
+ */
+public record Activity(Comment comment, Approval approval, Approval changesRequest, Update update) {
+
+  public record Approval(OffsetDateTime date, User user) {
+
+  }
+
+  public record Update(OffsetDateTime date, Source source) {
+
+    /**
+     * @return the source commit the PR pointed at after this update, or {@code null} when not reported
+     */
+    public String sourceCommit() {
+      return source == null ? null : source.commitHash();
+    }
+  }
+}
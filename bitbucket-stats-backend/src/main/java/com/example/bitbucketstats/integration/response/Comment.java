@@ -1,11 +1,14 @@
 package com.example.bitbucketstats.integration.response;
 
+import java.time.OffsetDateTime;
+
 public record Comment(
     Integer id,
     User user,
     Boolean deleted,
     Boolean pending,
-    Content content
+    Content content,
+    OffsetDateTime createdOn
 ) {
 
   public boolean authoredBy(String uuid) {
@@ -0,0 +1,5 @@
+package com.example.bitbucketstats.integration.response;
+
+public record Commit(String hash) {
+
+}
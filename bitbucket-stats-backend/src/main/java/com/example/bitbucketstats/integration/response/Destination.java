@@ -0,0 +1,8 @@
+package com.example.bitbucketstats.integration.response;
+
+public record Destination(Repository repository, Commit commit) {
+
+  public String commitHash() {
+    return commit == null ? null : commit.hash();
+  }
+}
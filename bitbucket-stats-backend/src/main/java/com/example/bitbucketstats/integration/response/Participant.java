@@ -1,3 +1,8 @@
 package com.example.bitbucketstats.integration.response;
 
-public record Participant(User user, Boolean approved) {}
+import java.time.OffsetDateTime;
+
+public record Participant(User user, String role, Boolean approved, OffsetDateTime participatedOn) {
+
+  public static final String ROLE_PARTICIPANT = "PARTICIPANT";
+}
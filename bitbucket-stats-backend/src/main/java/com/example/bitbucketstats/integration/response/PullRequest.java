@@ -10,7 +10,10 @@ public record PullRequest(
     Integer commentCount,
     List<Participant> participants,
     OffsetDateTime createdOn,
-    OffsetDateTime updatedOn
+    OffsetDateTime updatedOn,
+    Source source,
+    Destination destination,
+    Commit mergeCommit
 ) {
 
 }
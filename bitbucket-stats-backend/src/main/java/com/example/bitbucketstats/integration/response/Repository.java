@@ -0,0 +1,15 @@
+package com.example.bitbucketstats.integration.response;
+
+public record Repository(String fullName) {
+
+  /**
+   * @return the repository slug, i.e. {@code full_name} without the {@code workspace/} prefix
+   */
+  public String slug() {
+    if (fullName == null) {
+      return null;
+    }
+    int slash = fullName.indexOf('/');
+    return slash < 0 ? fullName : fullName.substring(slash + 1);
+  }
+}
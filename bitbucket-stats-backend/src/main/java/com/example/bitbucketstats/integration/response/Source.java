@@ -0,0 +1,8 @@
+package com.example.bitbucketstats.integration.response;
+
+public record Source(Commit commit) {
+
+  public String commitHash() {
+    return commit == null ? null : commit.hash();
+  }
+}
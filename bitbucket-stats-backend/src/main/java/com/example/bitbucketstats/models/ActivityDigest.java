@@ -0,0 +1,135 @@
+package com.example.bitbucketstats.models;
+
+import com.example.bitbucketstats.integration.response.Activity;
+import com.example.bitbucketstats.integration.response.Comment;
+import com.example.bitbucketstats.integration.response.Participant;
+import com.example.bitbucketstats.integration.response.User;
+import java.time.OffsetDateTime;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import org.springframework.lang.Nullable;
+
+/**
+ * What the review metrics need from one pull request's activity: comments per author, when reviewers first reacted
+ * and how many review rounds it took. Independent of who asks, so it can be cached per PR.
+ *
+ * @param commentsByUser   published, non-empty, non-deleted comments per user UUID
+ * @param firstReviewAt    first comment, approval or change request by someone other than the author
+ * @param firstApprovalAt  first approval by someone other than the author
+ * @param reviewRounds     bursts of review separated by new commits on the source branch
+ */
+public record ActivityDigest(
+    Map<String, Integer> commentsByUser,
+    @Nullable OffsetDateTime firstReviewAt,
+    @Nullable OffsetDateTime firstApprovalAt,
+    int reviewRounds
+) {
+
+  public int commentsBy(String uuid) {
+    return commentsByUser.getOrDefault(uuid, 0);
+  }
+
+  /**
+   * Digest an activity stream. Bitbucket lists activity newest first; events are replayed oldest first.
+   *
+   * @param activity   every entry of the PR's activity stream
+   * @param authorUuid the PR author, whose own comments are not a review
+   */
+  public static ActivityDigest of(List<Activity> activity, @Nullable String authorUuid) {
+    var events = activity.stream()
+        .filter(Objects::nonNull)
+        .sorted(Comparator.comparing(ActivityDigest::dateOf, Comparator.nullsFirst(Comparator.naturalOrder())))
+        .toList();
+
+    Map<String, Integer> comments = new HashMap<>();
+    OffsetDateTime firstReview = null;
+    OffsetDateTime firstApproval = null;
+    int rounds = 0;
+    boolean awaitingReview = true;
+    String sourceCommit = null;
+
+    for (var event : events) {
+      if (event.update() != null) {
+        String commit = event.update().sourceCommit();
+        if (commit != null && sourceCommit != null && !commit.equals(sourceCommit)) {
+          awaitingReview = true;
+        }
+        sourceCommit = commit != null ? commit : sourceCommit;
+        continue;
+      }
+      var reviewer = reviewerOf(event);
+      if (reviewer == null || reviewer.equals(authorUuid)) {
+        continue;
+      }
+      if (event.comment() != null && countable(event.comment())) {
+        comments.merge(reviewer, 1, Integer::sum);
+      }
+      if (event.comment() != null && !event.comment().isPublished()) {
+        continue;
+      }
+      var at = dateOf(event);
+      if (firstReview == null) {
+        firstReview = at;
+      }
+      if (event.approval() != null && firstApproval == null) {
+        firstApproval = at;
+      }
+      if (awaitingReview) {
+        rounds++;
+        awaitingReview = false;
+      }
+    }
+    return new ActivityDigest(Map.copyOf(comments), firstReview, firstApproval, rounds);
+  }
+
+  /**
+   * Digest a PR without comments from its participants alone: without comments approvals are the only reviews, and
+   * {@code participated_on} of an approver is the time of the approval. Not valid for a PR with comments, whose
+   * participants tell neither when the first comment came nor how many rounds there were.
+   */
+  public static ActivityDigest fromParticipants(EnrichedPullRequest pr) {
+    var firstApproval = Optional.ofNullable(pr.participants()).orElse(List.of()).stream()
+        .filter(Objects::nonNull)
+        .filter(p -> Boolean.TRUE.equals(p.approved()) && p.participatedOn() != null)
+        .filter(p -> p.user() == null || !Objects.equals(p.user().uuid(), pr.authorUuid()))
+        .map(Participant::participatedOn)
+        .min(Comparator.naturalOrder())
+        .orElse(null);
+    return new ActivityDigest(Map.of(), firstApproval, firstApproval, firstApproval == null ? 0 : 1);
+  }
+
+  private static boolean countable(Comment c) {
+    return c.isNotDeleted() && c.isPublished() && c.hasText();
+  }
+
+  @Nullable
+  private static String reviewerOf(Activity event) {
+    User user = null;
+    if (event.comment() != null) {
+      user = event.comment().user();
+    } else if (event.approval() != null) {
+      user = event.approval().user();
+    } else if (event.changesRequest() != null) {
+      user = event.changesRequest().user();
+    }
+    return user == null ? null : user.uuid();
+  }
+
+  @Nullable
+  private static OffsetDateTime dateOf(Activity event) {
+    if (event.comment() != null) {
+      return event.comment().createdOn();
+    }
+    if (event.approval() != null) {
+      return event.approval().date();
+    }
+    if (event.changesRequest() != null) {
+      return event.changesRequest().date();
+    }
+    return event.update() != null ? event.update().date() : null;
+  }
+}
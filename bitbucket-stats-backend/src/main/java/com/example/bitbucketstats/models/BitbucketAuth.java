@@ -1,14 +1,31 @@
 package com.example.bitbucketstats.models;
 
 import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.SecureRandom;
+import java.util.Arrays;
 import java.util.Base64;
+import java.util.HexFormat;
 import java.util.Locale;
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
 import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
+import org.springframework.lang.Nullable;
 import org.springframework.util.StringUtils;
 import org.springframework.web.server.ResponseStatusException;
 
 public record BitbucketAuth(String basicValue, String user, String appPassword) {
+
+  /** Separates the username from the credential digest in a cache key. */
+  private static final char KEY_SEPARATOR = '@';
+  /** Bytes of the HMAC kept in a cache key. */
+  private static final int KEY_DIGEST_BYTES = 16;
+  private static final String KEY_ALGORITHM = "HmacSHA256";
+  /** Secret shared by the instances whose cache keys must match, e.g. across restarts for the disk caches. */
+  static final String KEY_SECRET_ENV = "BITBUCKET_CREDENTIAL_KEY_SECRET";
+  private static final SecretKeySpec KEY_SECRET = keySecret();
+
   public static BitbucketAuth fromHeaders(String authorization, String username, String appPassword) {
     if (authorization != null && authorization.toLowerCase(Locale.ROOT).startsWith("basic ")) {
       return new BitbucketAuth(authorization.substring(6).trim(), null, null);
@@ -25,7 +42,78 @@ public record BitbucketAuth(String basicValue, String user, String appPassword)
     h.set(HttpHeaders.AUTHORIZATION, "Basic " + basicValue);
   }
 
+  /**
+   * Identity of the credential in caches and budgets: the username, {@code @}, and a truncated HMAC-SHA256 of the
+   * Basic value. The HMAC secret is random per process unless {@value #KEY_SECRET_ENV} is set, so a key cannot be used
+   * to check guessed passwords offline. The credential itself never becomes part of a key, nor is it kept; the
+   * username is kept readable so entries can be invalidated per user.
+   *
+   * @return {@code user@digest}, or only the digest when the credential carries no username
+   */
   public String cacheKey() {
-    return basicValue;
+    String name = StringUtils.hasText(user) ? user : decodedUser(basicValue);
+    String digest = digest(basicValue);
+    return name == null ? digest : name + KEY_SEPARATOR + digest;
+  }
+
+  /**
+   * Cache key of the Basic credential carried by an outgoing request.
+   *
+   * @param headers the request headers
+   * @return the same value {@link #cacheKey()} returns for that credential, or null if the request has none
+   */
+  @Nullable
+  public static String cacheKeyOf(HttpHeaders headers) {
+    String authorization = headers.getFirst(HttpHeaders.AUTHORIZATION);
+    if (authorization == null || !authorization.toLowerCase(Locale.ROOT).startsWith("basic ")) {
+      return null;
+    }
+    return new BitbucketAuth(authorization.substring(6).trim(), null, null).cacheKey();
+  }
+
+  private static String digest(String basicValue) {
+    try {
+      var mac = Mac.getInstance(KEY_ALGORITHM);
+      mac.init(KEY_SECRET);
+      byte[] digest = mac.doFinal(basicValue.getBytes(StandardCharsets.UTF_8));
+      return HexFormat.of().formatHex(Arrays.copyOf(digest, KEY_DIGEST_BYTES));
+    } catch (GeneralSecurityException e) {
+      throw new IllegalStateException(KEY_ALGORITHM + " not available", e);
+    }
+  }
+
+  private static SecretKeySpec keySecret() {
+    String configured = System.getenv(KEY_SECRET_ENV);
+    byte[] secret;
+    if (StringUtils.hasText(configured)) {
+      secret = configured.getBytes(StandardCharsets.UTF_8);
+    } else {
+      secret = new byte[32];
+      new SecureRandom().nextBytes(secret);
+    }
+    return new SecretKeySpec(secret, KEY_ALGORITHM);
+  }
+
+  @Nullable
+  private static String decodedUser(String basicValue) {
+    try {
+      String decoded = new String(Base64.getDecoder().decode(basicValue), StandardCharsets.UTF_8);
+      int colon = decoded.indexOf(':');
+      return colon > 0 ? decoded.substring(0, colon) : null;
+    } catch (IllegalArgumentException e) {
+      return null;
+    }
+  }
+
+  /**
+   * Bitbucket username behind a credential's cache key.
+   *
+   * @param cacheKey a value {@link #cacheKey()} returned
+   * @return the username, or null if the key carries none
+   */
+  @Nullable
+  public static String userOf(String cacheKey) {
+    int separator = cacheKey.lastIndexOf(KEY_SEPARATOR);
+    return separator > 0 ? cacheKey.substring(0, separator) : null;
   }
 }
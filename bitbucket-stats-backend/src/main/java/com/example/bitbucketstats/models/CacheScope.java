@@ -0,0 +1,30 @@
+package com.example.bitbucketstats.models;
+
+import org.springframework.lang.Nullable;
+
+/**
+ * Which cached entries to invalidate. Criteria left null match anything; an entry that does not carry the part a
+ * criterion is about (a user lookup has no repository, a diffstat no credential) does not match it.
+ *
+ * @param workspace the Bitbucket workspace
+ * @param repo      the repository slug
+ * @param user      the Bitbucket username of the credential the entries were read with
+ */
+public record CacheScope(@Nullable String workspace, @Nullable String repo, @Nullable String user) {
+
+  public boolean isEmpty() {
+    return workspace == null && repo == null && user == null;
+  }
+
+  /**
+   * @param credentialKey the {@link BitbucketAuth#cacheKey()} an entry was read with, if it has one
+   * @param workspace     the entry's workspace, if it has one
+   * @param repo          the entry's repository slug, if it has one
+   * @return whether the entry is in scope
+   */
+  public boolean matches(@Nullable String credentialKey, @Nullable String workspace, @Nullable String repo) {
+    return (this.workspace == null || this.workspace.equals(workspace))
+        && (this.repo == null || this.repo.equals(repo))
+        && (this.user == null || (credentialKey != null && this.user.equals(BitbucketAuth.userOf(credentialKey))));
+  }
+}
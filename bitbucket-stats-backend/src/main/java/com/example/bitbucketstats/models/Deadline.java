@@ -0,0 +1,98 @@
+package com.example.bitbucketstats.models;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.util.context.Context;
+import reactor.util.context.ContextView;
+
+/**
+ * Time budget of one stats request, carried in the Reactor context. Upstream calls are not started once it is spent,
+ * and the repositories and pull requests left out because of it are recorded so the response can say what is missing.
+ */
+public final class Deadline {
+
+  private static final Class<Deadline> CONTEXT_KEY = Deadline.class;
+
+  private final Instant expiresAt;
+  private final Clock clock;
+  private final Set<String> missingRepositories = ConcurrentHashMap.newKeySet();
+  private final Set<String> missingPullRequests = ConcurrentHashMap.newKeySet();
+
+  private Deadline(Instant expiresAt, Clock clock) {
+    this.expiresAt = expiresAt;
+    this.clock = clock;
+  }
+
+  public static Deadline after(Duration timeout, Clock clock) {
+    return new Deadline(clock.instant().plus(timeout), clock);
+  }
+
+  /**
+   * The deadline of the current request, if one was attached.
+   */
+  public static Optional<Deadline> from(ContextView ctx) {
+    return ctx.getOrEmpty(CONTEXT_KEY);
+  }
+
+  public Context attachTo(Context ctx) {
+    return ctx.put(CONTEXT_KEY, this);
+  }
+
+  /**
+   * Remove the deadline from a context, for work shared by requests that each have their own.
+   */
+  public static Context detach(Context ctx) {
+    return ctx.delete(CONTEXT_KEY);
+  }
+
+  public Instant expiresAt() {
+    return expiresAt;
+  }
+
+  /**
+   * @return time left, or {@link Duration#ZERO} once expired
+   */
+  public Duration remaining() {
+    Duration left = Duration.between(clock.instant(), expiresAt);
+    return left.isNegative() ? Duration.ZERO : left;
+  }
+
+  public boolean incomplete() {
+    return !missingRepositories.isEmpty() || !missingPullRequests.isEmpty();
+  }
+
+  public List<String> missingRepositories() {
+    return missingRepositories.stream().sorted().toList();
+  }
+
+  public List<String> missingPullRequests() {
+    return missingPullRequests.stream().sorted().toList();
+  }
+
+  /**
+   * Record the repository as missing from the current request's result and complete empty.
+   */
+  public static <T> Flux<T> skipRepository(String repo) {
+    return Flux.deferContextual(ctx -> {
+      from(ctx).ifPresent(d -> d.missingRepositories.add(repo));
+      return Flux.empty();
+    });
+  }
+
+  /**
+   * Record the pull request (as {@code repo#id}) as missing from the current request's result and complete empty.
+   */
+  public static <T> Mono<T> skipPullRequest(String prKey) {
+    return Mono.deferContextual(ctx -> {
+      from(ctx).ifPresent(d -> d.missingPullRequests.add(prKey));
+      return Mono.empty();
+    });
+  }
+}
@@ -8,6 +8,9 @@ import java.util.Objects;
 
 /**
  * Enriched PR used internally
+ *
+ * @param diffRevision the commits the PR's diff is computed from, see {@link #diffRevisionOf(PullRequest)}; null when
+ *                     the listing did not include them
  */
 public record EnrichedPullRequest(
     int id,
@@ -17,7 +20,8 @@ public record EnrichedPullRequest(
     List<Participant> participants,
     String repo,
     OffsetDateTime createdOn,
-    OffsetDateTime updatedOn
+    OffsetDateTime updatedOn,
+    String diffRevision
 ) {
 
   public boolean approvedBy(String myUuid) {
@@ -28,6 +32,20 @@ public record EnrichedPullRequest(
         .anyMatch(p -> p.user() != null && myUuid.equals(p.user().uuid()) && Boolean.TRUE.equals(p.approved()));
   }
 
+  /**
+   * Whether the user may have commented: Bitbucket lists commenters as participants and sets {@code participated_on}
+   * when a reviewer comments or approves. Without participant data this cannot be ruled out.
+   */
+  public boolean mayHaveCommentsBy(String uuid) {
+    if (participants == null) {
+      return true;
+    }
+    return participants.stream().filter(Objects::nonNull)
+        .filter(p -> p.user() != null && uuid.equals(p.user().uuid()))
+        .anyMatch(p -> p.participatedOn() != null || Boolean.TRUE.equals(p.approved())
+            || Participant.ROLE_PARTICIPANT.equals(p.role()));
+  }
+
   public static EnrichedPullRequest from(PullRequest r, String repo) {
     return new EnrichedPullRequest(
         r.id(),
@@ -37,7 +55,25 @@ public record EnrichedPullRequest(
         r.participants(),
         repo,
         r.createdOn(),
-        r.updatedOn()
+        r.updatedOn(),
+        diffRevisionOf(r)
     );
   }
+
+  /**
+   * Identify the diff of a PR by its source and destination commits, plus the merge commit once merged: the diffstat
+   * only changes when one of them does.
+   *
+   * @return {@code source..destination[@merge]}, or null when either end is unknown
+   */
+  static String diffRevisionOf(PullRequest r) {
+    String source = r.source() == null ? null : r.source().commitHash();
+    String destination = r.destination() == null ? null : r.destination().commitHash();
+    if (source == null || destination == null) {
+      return null;
+    }
+    String revision = source + ".." + destination;
+    String merge = r.mergeCommit() == null ? null : r.mergeCommit().hash();
+    return merge == null ? revision : revision + '@' + merge;
+  }
 }
@@ -0,0 +1,249 @@
+package com.example.bitbucketstats.services;
+
+import com.example.bitbucketstats.configuration.BitbucketHttpProperties;
+import com.example.bitbucketstats.configuration.RequestDeadlineFilter;
+import com.example.bitbucketstats.controllers.request.BaseParams;
+import com.example.bitbucketstats.controllers.request.MyPullRequestsParams;
+import com.example.bitbucketstats.controllers.request.PullRequestReviewParams;
+import com.example.bitbucketstats.integration.RateLimitScheduler;
+import com.example.bitbucketstats.models.BitbucketAuth;
+import com.example.bitbucketstats.models.Deadline;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZonedDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Supplier;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.actuate.health.Health;
+import org.springframework.boot.actuate.health.HealthIndicator;
+import org.springframework.context.SmartLifecycle;
+import org.springframework.lang.Nullable;
+import org.springframework.scheduling.support.CronExpression;
+import org.springframework.util.StringUtils;
+import reactor.core.Disposable;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+/**
+ * Precomputes the configured team dashboards into the caches off-peak, so the first loads of the day are answered
+ * mostly from cache.
+ * <p>
+ * On the {@code bitbucket.cache-warmup.cron} schedule (and once at startup), the author statistics of every listed
+ * user and the review statistics of every listed reviewer are requested with the service credential, for each period
+ * ending today, with diff details, comment details and review metrics. That fills the search, diffstat, activity and
+ * comment-count caches. Requests run one at a time; before each one the run stops if the credential's hourly forecast
+ * is below {@code min-remaining-budget} or more than {@code max-interactive-requests} stats requests are being
+ * answered. The next scheduled run starts over, mostly from cache.
+ * <p>
+ * Entries keyed by credential are warmed for the service credential; diffstats are shared by everyone.
+ */
+public class CacheWarmup implements SmartLifecycle, HealthIndicator {
+
+  private static final Logger log = LoggerFactory.getLogger(CacheWarmup.class);
+
+  private final BitbucketHttpProperties.CacheWarmup settings;
+  private final MyPullRequestsService myPullRequestsService;
+  private final PullRequestsReviewService pullRequestsReviewService;
+  private final RateLimitScheduler rateLimitScheduler;
+  private final RequestDeadlineFilter requestDeadlineFilter;
+  private final Clock clock;
+
+  private volatile Disposable schedule;
+  private volatile Run lastRun;
+
+  /**
+   * @param description what the request precomputes, for logs
+   * @param request     the stats request
+   */
+  record Job(String description, Supplier<Mono<?>> request) {
+
+  }
+
+  /**
+   * @param completed  requests answered
+   * @param failed     requests that failed
+   * @param skipped    requests not sent because the run stopped
+   * @param stopReason why the run stopped early, or null if it ran to the end
+   * @param finishedAt when the run ended
+   */
+  public record Run(int completed, int failed, int skipped, @Nullable String stopReason, Instant finishedAt) {
+
+  }
+
+  public CacheWarmup(BitbucketHttpProperties.CacheWarmup settings, MyPullRequestsService myPullRequestsService,
+      PullRequestsReviewService pullRequestsReviewService, RateLimitScheduler rateLimitScheduler,
+      RequestDeadlineFilter requestDeadlineFilter, Clock clock) {
+    this.settings = settings;
+    this.myPullRequestsService = myPullRequestsService;
+    this.pullRequestsReviewService = pullRequestsReviewService;
+    this.rateLimitScheduler = rateLimitScheduler;
+    this.requestDeadlineFilter = requestDeadlineFilter;
+    this.clock = clock;
+  }
+
+  @Override
+  public void start() {
+    if (!settings.enabled() || schedule != null) {
+      return;
+    }
+    if (!StringUtils.hasText(settings.username()) || !StringUtils.hasText(settings.appPassword())) {
+      log.warn("Cache warm-up enabled without a service credential (username, app-password); not scheduled");
+      return;
+    }
+    var cron = CronExpression.parse(settings.cron());
+    log.info("Cache warm-up of {} dashboards scheduled at '{}'", settings.targets().size(), settings.cron());
+    Mono<Run> first = settings.runAtStartup() ? run() : Mono.empty();
+    schedule = first
+        .thenMany(Flux.defer(() -> Mono.delay(untilNext(cron)).then(run()))
+            .repeat())
+        .subscribe();
+  }
+
+  @Override
+  public void stop() {
+    var current = schedule;
+    if (current != null) {
+      current.dispose();
+      schedule = null;
+    }
+  }
+
+  @Override
+  public boolean isRunning() {
+    return schedule != null;
+  }
+
+  /**
+   * Send every configured request, one at a time, until done or told to stop.
+   *
+   * @return a Mono containing what the run did
+   */
+  Mono<Run> run() {
+    return Mono.defer(() -> {
+      var auth = BitbucketAuth.fromHeaders(null, settings.username(), settings.appPassword());
+      var jobs = jobs(auth, LocalDate.now(clock));
+      var completed = new AtomicInteger();
+      var failed = new AtomicInteger();
+      var skipped = new AtomicInteger();
+      var stopReason = new AtomicReference<String>();
+      log.info("Cache warm-up started: {} requests", jobs.size());
+      return Flux.fromIterable(jobs)
+          .concatMap(job -> {
+            if (stopReason.get() == null) {
+              stopReason.set(stopReason(auth));
+            }
+            if (stopReason.get() != null) {
+              skipped.incrementAndGet();
+              return Mono.empty();
+            }
+            var deadline = Deadline.after(settings.requestTimeout(), clock);
+            return job.request().get()
+                .contextWrite(deadline::attachTo)
+                .doOnSuccess(result -> completed.incrementAndGet())
+                .onErrorResume(e -> {
+                  failed.incrementAndGet();
+                  log.warn("Cache warm-up of {} failed: {}", job.description(), e.toString());
+                  return Mono.empty();
+                });
+          })
+          .then(Mono.fromSupplier(() -> {
+            var run = new Run(completed.get(), failed.get(), skipped.get(), stopReason.get(), clock.instant());
+            lastRun = run;
+            log.info("Cache warm-up finished: {} done, {} failed, {} skipped{}", run.completed(), run.failed(),
+                run.skipped(), run.stopReason() == null ? "" : " (" + run.stopReason() + ")");
+            return run;
+          }));
+    });
+  }
+
+  List<Job> jobs(BitbucketAuth auth, LocalDate today) {
+    List<Job> jobs = new ArrayList<>();
+    for (var target : settings.targets()) {
+      for (var period : target.periods()) {
+        var since = today.minus(period);
+        for (var user : target.users()) {
+          var params = new MyPullRequestsParams();
+          fill(params, target, since, today);
+          params.setNickname(user);
+          params.setIncludeDiffDetails(true);
+          jobs.add(new Job(String.format("%s stats of %s since %s", target.workspace(), user, since),
+              () -> myPullRequestsService.getMyPullRequestsStats(auth, params)));
+        }
+        for (var reviewer : target.reviewers()) {
+          var params = new PullRequestReviewParams();
+          fill(params, target, since, today);
+          params.setReviewerUuid(reviewer);
+          params.setIncludeCommentDetails(true);
+          params.setIncludeReviewMetrics(true);
+          jobs.add(new Job(String.format("%s reviews of %s since %s", target.workspace(), reviewer, since),
+              () -> pullRequestsReviewService.getReviewStats(auth, params)));
+        }
+      }
+    }
+    return jobs;
+  }
+
+  private void fill(BaseParams params, BitbucketHttpProperties.WarmupTarget target, LocalDate since,
+      LocalDate until) {
+    params.setWorkspace(target.workspace());
+    params.setRepo(target.repos());
+    params.setSinceDate(since);
+    params.setUntilDate(until);
+    params.setState(target.states());
+    params.setMaxConcurrency(settings.maxConcurrency());
+  }
+
+  /**
+   * @return why the run must stop before its next request, or null to go on
+   */
+  @Nullable
+  private String stopReason(BitbucketAuth auth) {
+    int interactive = requestDeadlineFilter.inFlight();
+    if (interactive > settings.maxInteractiveRequests()) {
+      return interactive + " interactive requests in flight";
+    }
+    var budget = rateLimitScheduler.budget(auth);
+    if (budget.pausedUntil() != null || budget.remaining() < settings.minRemainingBudget()) {
+      return "rate budget low: " + budget.remaining() + " calls left";
+    }
+    return null;
+  }
+
+  private Duration untilNext(CronExpression cron) {
+    var now = ZonedDateTime.now(clock);
+    var next = cron.next(now);
+    return next == null ? Duration.ofDays(365) : Duration.between(now, next);
+  }
+
+  @Nullable
+  public Run lastRun() {
+    return lastRun;
+  }
+
+  @Override
+  public Health health() {
+    if (!settings.enabled()) {
+      return Health.up().withDetail("cacheWarmup", "disabled").build();
+    }
+    var run = lastRun;
+    if (run == null) {
+      var health = settings.waitForReadiness() && settings.runAtStartup() ? Health.outOfService() : Health.up();
+      return health.withDetail("cacheWarmup", "not run yet").build();
+    }
+    var health = Health.up()
+        .withDetail("completed", run.completed())
+        .withDetail("failed", run.failed())
+        .withDetail("skipped", run.skipped())
+        .withDetail("finishedAt", run.finishedAt().toString());
+    if (run.stopReason() != null) {
+      health.withDetail("stopReason", run.stopReason());
+    }
+    return health.build();
+  }
+}
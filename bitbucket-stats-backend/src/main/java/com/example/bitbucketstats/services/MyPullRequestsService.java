@@ -5,8 +5,12 @@ import static com.example.bitbucketstats.models.FieldFilter.AUTHOR_USERNAME;
 import static com.example.bitbucketstats.models.FieldFilter.AUTHOR_UUID;
 import static com.example.bitbucketstats.utils.PullRequestUtils.prKey;
 
+import com.example.bitbucketstats.exceptions.CircuitOpenException;
+import com.example.bitbucketstats.exceptions.DeadlineExceededException;
 import com.example.bitbucketstats.integration.BitBucketService;
+import com.example.bitbucketstats.integration.FieldProjection;
 import com.example.bitbucketstats.models.BitbucketAuth;
+import com.example.bitbucketstats.models.Deadline;
 import com.example.bitbucketstats.models.DiffDetails;
 import com.example.bitbucketstats.models.FieldFilter;
 import com.example.bitbucketstats.models.EnrichedPullRequest;
@@ -15,6 +19,8 @@ import com.example.bitbucketstats.controllers.response.MyPullRequestsResponse;
 import java.util.List;
 import java.util.Map;
 import lombok.RequiredArgsConstructor;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.stereotype.Service;
 import org.springframework.util.StringUtils;
 import reactor.core.publisher.Flux;
@@ -24,8 +30,12 @@ import reactor.core.publisher.Mono;
 @RequiredArgsConstructor
 public class MyPullRequestsService {
 
+  private static final Logger log = LoggerFactory.getLogger(MyPullRequestsService.class);
+
   private final BitBucketService bitBucketService;
   private final ResponseAssembler responseAssembler;
+  private final PullRequestListingPlanner pullRequestListingPlanner;
+  private final StatsResultCache statsResultCache;
 
   /**
    * Fetches pull request statistics for a specific author (filtered by nickname) or the authenticated user and based on
@@ -33,21 +43,49 @@ public class MyPullRequestsService {
    *
    * @param auth   The Bitbucket authentication details.
    * @param params The parameters for filtering and fetching pull requests.
-   * @return A Mono containing the summarized pull request statistics.
+   * @return A Mono containing the summarized pull request statistics; flagged incomplete when the request's deadline
+   *     left repositories or diff details out.
+   * @see PullRequestListingPlanner
    */
   public Mono<MyPullRequestsResponse> getMyPullRequestsStats(BitbucketAuth auth, MyPullRequestsParams params) {
     return resolveAuthorFilter(auth, auth.user(), params)
-        .flatMapMany(filter -> bitBucketService.searchPullRequestsAcrossRepos(
-            filter, params.getRepo(), auth, params))
+        .flatMapMany(filter -> pullRequestListingPlanner.plan(filter, auth, params)
+            .flatMapMany(strategy -> listPullRequests(strategy, filter, auth, params)))
         .collectList()
         .flatMap(prs -> {
           Mono<Map<String, DiffDetails>> diffsMono = params.isIncludeDiffDetails()
               ? loadDiffDetailsMap(auth, prs, params)
               : Mono.just(Map.of());
-          return diffsMono.map(diffs -> responseAssembler.toMyPullRequestsResponse(prs, params, diffs));
+          return diffsMono.flatMap(diffs -> Mono.deferContextual(ctx -> Mono.just(
+              responseAssembler.toMyPullRequestsResponse(prs, params, diffs, Deadline.from(ctx).orElse(null)))));
         });
   }
 
+  /**
+   * Same as {@link #getMyPullRequestsStats}, but answered from the last response for the same parameters when there
+   * is one; that response is refreshed in the background once past its soft TTL.
+   *
+   * @param auth   The Bitbucket authentication details.
+   * @param params The parameters for filtering and fetching pull requests.
+   * @return A Mono containing the statistics, with their age and whether they came from cache.
+   * @see StatsResultCache
+   */
+  public Mono<StatsResultCache.Served<MyPullRequestsResponse>> getMyPullRequestsStatsAllowingStale(BitbucketAuth auth,
+      MyPullRequestsParams params) {
+    return statsResultCache.get(StatsResultCache.Key.of(auth, "pull-requests/stats", params),
+        () -> getMyPullRequestsStats(auth, params), response -> !response.incomplete());
+  }
+
+  private Flux<EnrichedPullRequest> listPullRequests(PullRequestListingPlanner.Strategy strategy, FieldFilter filter,
+      BitbucketAuth auth, MyPullRequestsParams params) {
+    return switch (strategy) {
+      case USER_SCOPED -> bitBucketService.listUserPullRequests(
+          filter.value(), FieldProjection.AUTHOR_STATS_BY_USER, auth, params);
+      case PER_REPOSITORY -> bitBucketService.searchPullRequestsAcrossRepos(
+          filter, FieldProjection.AUTHOR_STATS, params.getRepo(), auth, params);
+    };
+  }
+
   private Mono<FieldFilter> resolveAuthorFilter(BitbucketAuth auth, String username, MyPullRequestsParams params) {
     if (StringUtils.hasText(params.getNickname())) {
       return Mono.just(FieldFilter.of(AUTHOR_NICKNAME, params.getNickname()));
@@ -65,7 +103,9 @@ public class MyPullRequestsService {
    * @param auth   The Bitbucket authentication details.
    * @param prs    The list of pull requests to fetch diff details for.
    * @param params The parameters containing the workspace and max concurrency.
-   * @return A Mono containing a map of pull request keyed by "repo#id" and their diff details.
+   * @return A Mono containing a map of pull request keyed by "repo#id" and their diff details. Pull requests whose
+   *     diff could not be fetched before the deadline, or whose repository's circuit is open, are left out and
+   *     recorded as missing.
    */
   private Mono<Map<String, DiffDetails>> loadDiffDetailsMap(
       BitbucketAuth auth, List<EnrichedPullRequest> prs, MyPullRequestsParams params) {
@@ -75,8 +115,13 @@ public class MyPullRequestsService {
 
     return Flux.fromIterable(prs)
         .flatMap(pr -> bitBucketService
-                .fetchDiffFilesChanged(auth, params.getWorkspace(), pr.repo(), pr.id())
-                .map(dd -> Map.entry(prKey(pr), dd)),
+                .fetchDiffFilesChanged(auth, params.getWorkspace(), pr.repo(), pr.id(), pr.diffRevision())
+                .map(dd -> Map.entry(prKey(pr), dd))
+                .onErrorResume(CircuitOpenException.class, e -> {
+                  log.warn("Skipping {}#{}: {}", pr.repo(), pr.id(), e.getReason());
+                  return Deadline.skipPullRequest(prKey(pr));
+                })
+                .onErrorResume(DeadlineExceededException.class, e -> Deadline.skipPullRequest(prKey(pr))),
             Math.max(1, params.getMaxConcurrency()))
         .collectMap(Map.Entry::getKey, Map.Entry::getValue);
   }
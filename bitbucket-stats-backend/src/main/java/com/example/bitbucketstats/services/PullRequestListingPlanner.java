@@ -0,0 +1,78 @@
+package com.example.bitbucketstats.services;
+
+import static com.example.bitbucketstats.models.FieldFilter.AUTHOR_USERNAME;
+import static com.example.bitbucketstats.models.FieldFilter.AUTHOR_UUID;
+
+import com.example.bitbucketstats.configuration.BitbucketHttpProperties;
+import com.example.bitbucketstats.integration.BitBucketService;
+import com.example.bitbucketstats.models.BitbucketAuth;
+import com.example.bitbucketstats.models.FieldFilter;
+import com.example.bitbucketstats.controllers.request.BaseParams;
+import lombok.RequiredArgsConstructor;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Mono;
+
+/**
+ * Picks how an author's pull requests are listed: one search per requested repository, or the author's workspace-wide
+ * listing filtered locally.
+ * <p>
+ * A search costs at least one call per repository, however few pull requests each holds; the user-level listing costs
+ * one call per page of everything the author has in the requested states. It is chosen when that is fewer pages than
+ * there are repositories, as counted by a one-element probe. The listing cannot filter on nickname or draft state, so
+ * those requests always search per repository, as do requests for fewer than {@code bitbucket.listing.min-repos}
+ * repositories, where the probe would not pay for itself.
+ */
+@Component
+@RequiredArgsConstructor
+public class PullRequestListingPlanner {
+
+  private static final Logger log = LoggerFactory.getLogger(PullRequestListingPlanner.class);
+
+  private final BitBucketService bitBucketService;
+  private final BitbucketHttpProperties bitbucketHttpProperties;
+
+  public enum Strategy {
+    PER_REPOSITORY,
+    USER_SCOPED
+  }
+
+  /**
+   * @param author the author filter the pull requests are listed for
+   * @param auth   authentication details
+   * @param params repositories, states and draft filter of the request
+   * @return a Mono containing the cheaper strategy; {@link Strategy#PER_REPOSITORY} whenever the volume is unknown,
+   *     including when the probe fails
+   */
+  public Mono<Strategy> plan(FieldFilter author, BitbucketAuth auth, BaseParams params) {
+    var settings = bitbucketHttpProperties.listing();
+    int repos = params.getRepo().size();
+    if (!settings.userScoped() || !supportsUserListing(author) || params.getQueued() != null
+        || repos < settings.minRepos()) {
+      return Mono.just(Strategy.PER_REPOSITORY);
+    }
+    return bitBucketService.countUserPullRequests(author.value(), auth, params)
+        .map(count -> {
+          if (count < 0) {
+            return Strategy.PER_REPOSITORY;
+          }
+          // an author without pull requests is listed in one empty page
+          int pages = Math.max(1,
+              (count + BitBucketService.PULL_REQUEST_PAGE_LEN - 1) / BitBucketService.PULL_REQUEST_PAGE_LEN);
+          var strategy = pages < repos ? Strategy.USER_SCOPED : Strategy.PER_REPOSITORY;
+          log.debug("Listing plan for {}: {} PRs in {} pages vs {} repositories -> {}",
+              author.value(), count, pages, repos, strategy);
+          return strategy;
+        })
+        .onErrorResume(e -> {
+          log.info("Could not size the PR listing of {}, searching per repository: {}", author.value(), e.toString());
+          return Mono.just(Strategy.PER_REPOSITORY);
+        })
+        .defaultIfEmpty(Strategy.PER_REPOSITORY);
+  }
+
+  private static boolean supportsUserListing(FieldFilter author) {
+    return AUTHOR_UUID.equals(author.key()) || AUTHOR_USERNAME.equals(author.key());
+  }
+}
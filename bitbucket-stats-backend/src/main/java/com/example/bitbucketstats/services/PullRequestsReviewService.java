@@ -1,17 +1,24 @@
 package com.example.bitbucketstats.services;
 
 import static com.example.bitbucketstats.models.FieldFilter.REVIEWERS_UUID;
+import static com.example.bitbucketstats.utils.PullRequestUtils.prKey;
 import static com.example.bitbucketstats.utils.PullRequestUtils.prLink;
 
+import com.example.bitbucketstats.exceptions.CircuitOpenException;
+import com.example.bitbucketstats.exceptions.DeadlineExceededException;
 import com.example.bitbucketstats.integration.BitBucketService;
+import com.example.bitbucketstats.integration.FieldProjection;
+import com.example.bitbucketstats.models.ActivityDigest;
 import com.example.bitbucketstats.models.BitbucketAuth;
 import com.example.bitbucketstats.models.CommentAgg;
+import com.example.bitbucketstats.models.Deadline;
 import com.example.bitbucketstats.models.FieldFilter;
 import com.example.bitbucketstats.models.EnrichedPullRequest;
 import com.example.bitbucketstats.integration.response.User;
 import com.example.bitbucketstats.controllers.request.PullRequestReviewParams;
 import com.example.bitbucketstats.controllers.response.PullRequestCommentSummary;
 import com.example.bitbucketstats.controllers.response.PullRequestReviewResponse;
+import io.micrometer.core.instrument.MeterRegistry;
 import java.util.List;
 import java.util.Map;
 import lombok.RequiredArgsConstructor;
@@ -26,41 +33,130 @@ import reactor.core.publisher.Mono;
 @RequiredArgsConstructor
 public class PullRequestsReviewService {
 
+  /** Counter of per-PR comment scans, tagged {@code outcome=fetched|skipped}. */
+  public static final String COMMENT_SCANS_METRIC = "bitbucket.review.comment.scans";
+
   private static final Logger log = LoggerFactory.getLogger(PullRequestsReviewService.class);
   private final BitBucketService bitBucketService;
   private final ResponseAssembler responseAssembler;
+  private final MeterRegistry meterRegistry;
+  private final StatsResultCache statsResultCache;
 
   /**
    * Fetches pull request review statistics for a specific reviewer or the authenticated user.
    *
    * @param auth   The Bitbucket authentication details.
    * @param params The parameters for filtering and fetching pull requests.
-   * @return A Mono containing the summarized pull request review statistics.
+   * @return A Mono containing the summarized pull request review statistics; flagged incomplete when the request's
+   *     deadline left repositories, comment counts or review metrics out.
    */
   public Mono<PullRequestReviewResponse> getReviewStats(BitbucketAuth auth, PullRequestReviewParams params) {
     log.info(
-        "Pull requests reviews: ws={}, repos={}, includeCommentDetails={}, since={}, until={}, states={}, maxConc={}",
-        params.getWorkspace(), params.getRepo(), params.isIncludeCommentDetails(),
+        "Pull requests reviews: ws={}, repos={}, includeCommentDetails={}, includeReviewMetrics={}, "
+            + "since={}, until={}, states={}, maxConc={}",
+        params.getWorkspace(), params.getRepo(), params.isIncludeCommentDetails(), params.isIncludeReviewMetrics(),
         params.getSinceDate(), params.getUntilDate(), params.getState(), params.getMaxConcurrency());
 
+    var projection = params.isIncludeReviewMetrics()
+        ? FieldProjection.REVIEW_METRICS
+        : FieldProjection.REVIEW_STATS;
     return resolveReviewerUuid(auth, params)
         .flatMap(reviewerUuid ->
             bitBucketService.searchPullRequestsAcrossRepos(FieldFilter.of(REVIEWERS_UUID, reviewerUuid),
-                    params.getRepo(), auth, params)
+                    projection, params.getRepo(), auth, params)
                 .collectList()
                 .doOnNext(prs -> log.info("Fetched {} PRs (deduped)", prs.size()))
-                .flatMap(prs -> {
+                .flatMap(prs -> Mono.deferContextual(ctx -> {
+                  var deadline = Deadline.from(ctx).orElse(null);
+                  if (params.isIncludeReviewMetrics()) {
+                    return loadActivityDigests(prs, params, auth, reviewerUuid).map(digests -> {
+                      var agg = params.isIncludeCommentDetails()
+                          ? commentAggFromDigests(prs, digests, params, reviewerUuid)
+                          : new CommentAgg(List.of(), 0);
+                      return responseAssembler.toPullRequestReviewResponse(
+                          prs, params, reviewerUuid, agg.summaries(), agg.totalComments(), digests, deadline);
+                    });
+                  }
                   if (!params.isIncludeCommentDetails() || prs.isEmpty()) {
                     return Mono.just(responseAssembler.toPullRequestReviewResponse(
-                        prs, params, reviewerUuid, List.of(), null));
+                        prs, params, reviewerUuid, List.of(), null, null, deadline));
                   }
                   return fetchMyCommentAgg(prs, params, auth, reviewerUuid)
                       .map(agg -> responseAssembler.toPullRequestReviewResponse(
-                          prs, params, reviewerUuid, agg.summaries(), agg.totalComments()));
-                })
+                          prs, params, reviewerUuid, agg.summaries(), agg.totalComments(), null, deadline));
+                }))
         );
   }
 
+  /**
+   * Same as {@link #getReviewStats}, but answered from the last response for the same parameters when there is one;
+   * that response is refreshed in the background once past its soft TTL.
+   *
+   * @param auth   The Bitbucket authentication details.
+   * @param params The parameters for filtering and fetching pull requests.
+   * @return A Mono containing the review statistics, with their age and whether they came from cache.
+   * @see StatsResultCache
+   */
+  public Mono<StatsResultCache.Served<PullRequestReviewResponse>> getReviewStatsAllowingStale(BitbucketAuth auth,
+      PullRequestReviewParams params) {
+    return statsResultCache.get(StatsResultCache.Key.of(auth, "pull-requests/reviews/stats", params),
+        () -> getReviewStats(auth, params), response -> !response.incomplete());
+  }
+
+  /**
+   * Digests the activity of each reviewed pull request. PRs with comments that list the reviewer as having
+   * participated take one paginated pass over their activity stream (cached until the PR changes); PRs without
+   * comments are digested from their participants, at no cost. Other PRs with comments are not read, so the review
+   * metrics take no more calls than the comment scans of {@link #fetchMyCommentAgg}, and the scans run and skipped
+   * are counted in {@value #COMMENT_SCANS_METRIC} alike.
+   *
+   * @return A Mono containing the digests keyed by "repo#id". Commented PRs the reviewer took no part in get no
+   *     digest and are counted as unmeasured; PRs whose activity could not be read before the deadline, or whose
+   *     repository's circuit is open, get none either and are also recorded as missing.
+   */
+  private Mono<Map<String, ActivityDigest>> loadActivityDigests(List<EnrichedPullRequest> prs,
+      PullRequestReviewParams params, BitbucketAuth auth, String reviewerUuid) {
+    long commented = prs.stream().filter(PullRequestsReviewService::hasComments).count();
+    long scanned = prs.stream().filter(pr -> hasComments(pr) && pr.mayHaveCommentsBy(reviewerUuid)).count();
+    meterRegistry.counter(COMMENT_SCANS_METRIC, "outcome", "fetched").increment(scanned);
+    meterRegistry.counter(COMMENT_SCANS_METRIC, "outcome", "skipped").increment(commented - scanned);
+    log.debug("Activity scans: {} of {} commented PRs, {} skipped without participation by {}",
+        scanned, commented, commented - scanned, reviewerUuid);
+
+    return Flux.fromIterable(prs)
+        .flatMap(pr -> {
+              if (!hasComments(pr)) {
+                return Mono.just(Map.entry(prKey(pr), ActivityDigest.fromParticipants(pr)));
+              }
+              if (!pr.mayHaveCommentsBy(reviewerUuid)) {
+                return Mono.<Map.Entry<String, ActivityDigest>>empty();
+              }
+              return bitBucketService.fetchActivityDigest(auth, params.getWorkspace(), pr.repo(), pr.id(),
+                      pr.authorUuid(), pr.updatedOn())
+                  .map(digest -> Map.entry(prKey(pr), digest))
+                  .onErrorResume(CircuitOpenException.class, e -> {
+                    log.warn("Skipping {}#{}: {}", pr.repo(), pr.id(), e.getReason());
+                    return Deadline.skipPullRequest(prKey(pr));
+                  })
+                  .onErrorResume(DeadlineExceededException.class, e -> Deadline.skipPullRequest(prKey(pr)));
+            },
+            Math.max(1, params.getMaxConcurrency()))
+        .collectMap(Map.Entry::getKey, Map.Entry::getValue);
+  }
+
+  private static boolean hasComments(EnrichedPullRequest pr) {
+    return pr.commentCount() != null && pr.commentCount() > 0;
+  }
+
+  private CommentAgg commentAggFromDigests(List<EnrichedPullRequest> prs, Map<String, ActivityDigest> digests,
+      PullRequestReviewParams params, String myUuid) {
+    return toCommentAgg(prs.stream()
+        .filter(pr -> digests.containsKey(prKey(pr)))
+        .map(pr -> Map.entry(pr, digests.get(prKey(pr)).commentsBy(myUuid)))
+        .filter(e -> e.getValue() > 0)
+        .toList(), params);
+  }
+
   private Mono<String> resolveReviewerUuid(BitbucketAuth auth, PullRequestReviewParams params) {
     if (StringUtils.hasText(params.getReviewerUuid())) {
       return Mono.just(params.getReviewerUuid());
@@ -72,18 +168,30 @@ public class PullRequestsReviewService {
 
   /**
    * Fetches the count of comments made by the authenticated user on pull requests that have been reviewed.
+   * <p>
+   * Only PRs with comments that list the reviewer as having participated are scanned; the others cannot hold any of
+   * the reviewer's comments. Scans run and skipped are counted in {@value #COMMENT_SCANS_METRIC}.
    *
    * @param allReviewedPrs The list of all reviewed pull requests.
    * @param params         The parameters for filtering and fetching pull requests.
    * @param auth           The Bitbucket authentication details.
    * @param myUuid         The UUID of the authenticated user.
-   * @return A Mono containing a CommentAgg with the summaries and total comment count.
+   * @return A Mono containing a CommentAgg with the summaries and total comment count. PRs whose comments could not
+   *     be read before the deadline, or whose repository's circuit is open, are left out and recorded as missing.
    */
   private Mono<CommentAgg> fetchMyCommentAgg(List<EnrichedPullRequest> allReviewedPrs, PullRequestReviewParams params,
       BitbucketAuth auth, String myUuid) {
-    var needingComments = allReviewedPrs.stream()
+    var commented = allReviewedPrs.stream()
         .filter(pr -> pr.commentCount() != null && pr.commentCount() > 0)
         .toList();
+    var needingComments = commented.stream()
+        .filter(pr -> pr.mayHaveCommentsBy(myUuid))
+        .toList();
+    int skipped = commented.size() - needingComments.size();
+    meterRegistry.counter(COMMENT_SCANS_METRIC, "outcome", "fetched").increment(needingComments.size());
+    meterRegistry.counter(COMMENT_SCANS_METRIC, "outcome", "skipped").increment(skipped);
+    log.debug("Comment scans: {} of {} commented PRs, {} skipped without participation by {}",
+        needingComments.size(), commented.size(), skipped, myUuid);
 
     if (needingComments.isEmpty()) {
       return Mono.just(new CommentAgg(List.of(), 0));
@@ -91,29 +199,38 @@ public class PullRequestsReviewService {
 
     return Flux.fromIterable(needingComments)
         .flatMap(pr ->
-                bitBucketService.fetchMyCommentCount(auth, params.getWorkspace(), pr.repo(), pr.id(), myUuid)
+                bitBucketService
+                    .fetchMyCommentCount(auth, params.getWorkspace(), pr.repo(), pr.id(), myUuid, pr.updatedOn())
                     .doOnSubscribe(s -> log.trace("Fetching comments for {}#{}", pr.repo(), pr.id()))
                     .doOnSuccess(c -> log.debug("My comments on {}#{} = {}", pr.repo(), pr.id(), c))
-                    .map(myComments -> Map.entry(pr, myComments)),
+                    .map(myComments -> Map.entry(pr, myComments))
+                    .onErrorResume(CircuitOpenException.class, e -> {
+                      log.warn("Skipping {}#{}: {}", pr.repo(), pr.id(), e.getReason());
+                      return Deadline.skipPullRequest(prKey(pr));
+                    })
+                    .onErrorResume(DeadlineExceededException.class, e -> Deadline.skipPullRequest(prKey(pr))),
             Math.max(1, params.getMaxConcurrency()))
         .filter(e -> e.getValue() > 0)
         .collectList()
-        .map(entries -> {
-          List<PullRequestCommentSummary> summaries = entries.stream()
-              .map(e -> {
-                var pr = e.getKey();
-                int myComments = e.getValue();
-                return new PullRequestCommentSummary(
-                    pr.id(),
-                    pr.title(),
-                    prLink(params.getWorkspace(), pr.repo(), pr.id()),
-                    myComments,
-                    pr.repo()
-                );
-              }).toList();
-
-          int total = entries.stream().mapToInt(Map.Entry::getValue).sum();
-          return new CommentAgg(summaries, total);
-        });
+        .map(entries -> toCommentAgg(entries, params));
+  }
+
+  private static CommentAgg toCommentAgg(List<Map.Entry<EnrichedPullRequest, Integer>> entries,
+      PullRequestReviewParams params) {
+    List<PullRequestCommentSummary> summaries = entries.stream()
+        .map(e -> {
+          var pr = e.getKey();
+          int myComments = e.getValue();
+          return new PullRequestCommentSummary(
+              pr.id(),
+              pr.title(),
+              prLink(params.getWorkspace(), pr.repo(), pr.id()),
+              myComments,
+              pr.repo()
+          );
+        }).toList();
+
+    int total = entries.stream().mapToInt(Map.Entry::getValue).sum();
+    return new CommentAgg(summaries, total);
   }
 }
@@ -7,15 +7,20 @@ import static com.example.bitbucketstats.utils.GeneralUtils.safeInt;
 import static com.example.bitbucketstats.utils.PullRequestUtils.prKey;
 import static com.example.bitbucketstats.utils.PullRequestUtils.prLink;
 
+import com.example.bitbucketstats.models.ActivityDigest;
+import com.example.bitbucketstats.models.Deadline;
 import com.example.bitbucketstats.models.DiffDetails;
 import com.example.bitbucketstats.models.EnrichedPullRequest;
 import com.example.bitbucketstats.controllers.request.MyPullRequestsParams;
 import com.example.bitbucketstats.controllers.request.PullRequestReviewParams;
+import com.example.bitbucketstats.controllers.response.MissingResults;
 import com.example.bitbucketstats.controllers.response.MyPullRequestsResponse;
 import com.example.bitbucketstats.controllers.response.MyPullRequestsSummary;
 import com.example.bitbucketstats.controllers.response.PullRequestCommentSummary;
 import com.example.bitbucketstats.controllers.response.PullRequestReviewResponse;
+import com.example.bitbucketstats.controllers.response.ReviewLatency;
 import com.example.bitbucketstats.utils.PullRequestUtils;
+import java.time.Duration;
 import java.util.List;
 import java.util.Map;
 import org.springframework.lang.Nullable;
@@ -29,7 +34,9 @@ public class ResponseAssembler {
       PullRequestReviewParams params,
       String reviewerUuid,
       @Nullable List<PullRequestCommentSummary> commentedList,
-      @Nullable Integer totalComments
+      @Nullable Integer totalComments,
+      @Nullable Map<String, ActivityDigest> digestsByKey, // null if not requested
+      @Nullable Deadline deadline
   ) {
     int totalReviewed = prs.size();
     int approvedCount = (int) prs.stream().filter(pr -> pr.approvedBy(reviewerUuid)).count();
@@ -48,14 +55,18 @@ public class ResponseAssembler {
         hasComments ? totalComments : null,
         approvedPct,
         commentedPct,
-        hasComments ? commentedList : null
+        hasComments ? commentedList : null,
+        digestsByKey == null ? null : reviewLatency(prs, digestsByKey),
+        isIncomplete(deadline),
+        missing(deadline)
     );
   }
 
   public MyPullRequestsResponse toMyPullRequestsResponse(
       List<EnrichedPullRequest> prs,
       MyPullRequestsParams params,
-      Map<String, DiffDetails> diffsByKey // empty if not requested
+      Map<String, DiffDetails> diffsByKey, // empty if not requested
+      @Nullable Deadline deadline
   ) {
     int total = prs.size();
 
@@ -86,10 +97,62 @@ public class ResponseAssembler {
         avgFilesChanged,
         avgLinesAdded,
         avgLinesRemoved,
-        details
+        details,
+        isIncomplete(deadline),
+        missing(deadline)
     );
   }
 
+  private static ReviewLatency reviewLatency(List<EnrichedPullRequest> prs, Map<String, ActivityDigest> digestsByKey) {
+    long reviewMinutes = 0;
+    int reviewed = 0;
+    long approvalMinutes = 0;
+    int approved = 0;
+    int rounds = 0;
+    int measured = 0;
+    for (var pr : prs) {
+      var digest = digestsByKey.get(prKey(pr));
+      if (digest == null) {
+        continue;
+      }
+      measured++;
+      rounds += digest.reviewRounds();
+      if (pr.createdOn() == null) {
+        continue;
+      }
+      if (digest.firstReviewAt() != null) {
+        reviewMinutes += Duration.between(pr.createdOn(), digest.firstReviewAt()).toMinutes();
+        reviewed++;
+      }
+      if (digest.firstApprovalAt() != null) {
+        approvalMinutes += Duration.between(pr.createdOn(), digest.firstApprovalAt()).toMinutes();
+        approved++;
+      }
+    }
+    return new ReviewLatency(
+        reviewed == 0 ? null : avgHours(reviewMinutes, reviewed),
+        approved == 0 ? null : avgHours(approvalMinutes, approved),
+        measured == 0 ? null : Math.round(rounds * 100.0 / measured) / 100.0,
+        measured,
+        prs.size() - measured
+    );
+  }
+
+  private static double avgHours(long minutes, int count) {
+    return Math.round(minutes * 100.0 / 60 / count) / 100.0;
+  }
+
+  private static boolean isIncomplete(@Nullable Deadline deadline) {
+    return deadline != null && deadline.incomplete();
+  }
+
+  @Nullable
+  private static MissingResults missing(@Nullable Deadline deadline) {
+    return isIncomplete(deadline)
+        ? new MissingResults(deadline.missingRepositories(), deadline.missingPullRequests())
+        : null;
+  }
+
   private List<MyPullRequestsSummary> buildMyPullRequestsSummaries(
       List<EnrichedPullRequest> prs, String workspace, boolean includeDiffs, Map<String, DiffDetails> diffsByKey) {
 
@@ -0,0 +1,322 @@
+package com.example.bitbucketstats.services;
+
+import com.example.bitbucketstats.configuration.BitbucketHttpProperties;
+import com.example.bitbucketstats.configuration.CacheMemoryBudget;
+import com.example.bitbucketstats.configuration.TenantQuota;
+import com.example.bitbucketstats.controllers.request.BaseParams;
+import com.example.bitbucketstats.models.BitbucketAuth;
+import com.example.bitbucketstats.models.Deadline;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.RemovalCause;
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Predicate;
+import java.util.function.Supplier;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.http.HttpHeaders;
+import org.springframework.lang.Nullable;
+import reactor.core.publisher.Mono;
+import reactor.util.context.Context;
+import reactor.util.context.ContextView;
+
+/**
+ * The last computed stats response per (credential, endpoint, canonical parameters), for requests that would rather
+ * have slightly old data right away ({@code allowStale=true}).
+ * <p>
+ * A response younger than {@code bitbucket.result-cache.soft-ttl} is served as is. An older one is still served at
+ * once, and a refresh is started in the background; one older than {@code hard-ttl} is computed again while the
+ * caller waits. Misses and refreshes of the same key share one computation, so upstream load stays bounded per key
+ * whatever the request rate. A miss is computed under the deadline of the request that caused it; a background
+ * refresh gets one of its own ({@code bitbucket.deadline.default-timeout}). Incomplete responses, cut short by a
+ * deadline, are served but not kept. With {@code bitbucket.tenant-cache} enabled, each tenant holds at most its share
+ * of {@code max-entries}. Under a {@link CacheMemoryBudget}, the cache and the tenant shares are bounded by the
+ * estimated bytes of the responses instead.
+ */
+public class StatsResultCache {
+
+  /** Seconds since the served response was computed. */
+  public static final String AGE_HEADER = HttpHeaders.AGE;
+  /** {@link Status} of the served response. */
+  public static final String STATUS_HEADER = "X-Cache-Status";
+
+  private static final Logger log = LoggerFactory.getLogger(StatsResultCache.class);
+  private static final String CACHE_NAME = "stats-result-cache";
+
+  private final BitbucketHttpProperties.ResultCache settings;
+  private final Duration refreshTimeout;
+  private final Clock clock;
+  private final Cache<Key, Entry> entries;
+  @Nullable
+  private final TenantQuota<Key> quota;
+  private final Map<Key, CompletableFuture<Entry>> computing = new ConcurrentHashMap<>();
+  private final LongAdder hits = new LongAdder();
+  private final LongAdder staleHits = new LongAdder();
+  private final LongAdder misses = new LongAdder();
+  private final LongAdder refreshes = new LongAdder();
+
+  public StatsResultCache(BitbucketHttpProperties.ResultCache settings, Duration refreshTimeout) {
+    this(settings, refreshTimeout, null, null, Clock.systemUTC());
+  }
+
+  public StatsResultCache(BitbucketHttpProperties.ResultCache settings, Duration refreshTimeout,
+      @Nullable BitbucketHttpProperties.TenantCache tenants, @Nullable CacheMemoryBudget budget) {
+    this(settings, refreshTimeout, tenants, budget, Clock.systemUTC());
+  }
+
+  StatsResultCache(BitbucketHttpProperties.ResultCache settings, Duration refreshTimeout, Clock clock) {
+    this(settings, refreshTimeout, null, null, clock);
+  }
+
+  StatsResultCache(BitbucketHttpProperties.ResultCache settings, Duration refreshTimeout,
+      @Nullable BitbucketHttpProperties.TenantCache tenants, @Nullable CacheMemoryBudget budget, Clock clock) {
+    this.settings = settings;
+    this.refreshTimeout = refreshTimeout;
+    this.clock = clock;
+    var bytes = budget != null && budget.enabled() ? budget : null;
+    this.quota = TenantQuota.forCache(CACHE_NAME, bytes != null ? bytes.maxWeight(CACHE_NAME) : settings.maxEntries(),
+        tenants, Key::credential, Key::workspace);
+    Caffeine<Key, Entry> builder = Caffeine.newBuilder()
+        .expireAfterWrite(settings.hardTtl())
+        .recordStats()
+        .removalListener((Key key, Entry entry, RemovalCause cause) -> {
+          if (quota != null) {
+            quota.recordRemoval(key, entry);
+          }
+        });
+    if (bytes != null) {
+      builder.maximumWeight(bytes.maxWeight(CACHE_NAME))
+          .weigher((Key key, Entry entry) -> bytes.weigh(key, entry.value()));
+    } else {
+      builder.maximumSize(settings.maxEntries());
+    }
+    this.entries = builder.build();
+    if (quota != null) {
+      quota.evictWith(entries::invalidate);
+      quota.peekWith(key -> entries.policy().getIfPresentQuietly(key));
+      if (bytes != null) {
+        quota.weighWith((key, entry) -> bytes.weigh(key, ((Entry) entry).value()));
+      }
+    }
+    if (bytes != null) {
+      bytes.register(CACHE_NAME, entries);
+    }
+  }
+
+  /**
+   * Identifies one stats response; every parameter that changes it is part of the key.
+   *
+   * @param credential the caller's credential ({@link BitbucketAuth#cacheKey()})
+   * @param endpoint   which stats are computed
+   * @param workspace  the workspace, for invalidation
+   * @param repos      the repositories, sorted, for invalidation
+   * @param params     the canonical parameters ({@link BaseParams#canonicalKey()})
+   */
+  public record Key(String credential, String endpoint, String workspace, List<String> repos, String params) {
+
+    public static Key of(BitbucketAuth auth, String endpoint, BaseParams params) {
+      var repos = params.getRepo() == null ? List.<String>of() : params.getRepo().stream().sorted().toList();
+      return new Key(auth.cacheKey(), endpoint, params.getWorkspace(), repos, params.canonicalKey());
+    }
+  }
+
+  public enum Status {
+    /** Computed for this request. */
+    MISS,
+    /** Served from cache, younger than the soft TTL. */
+    HIT,
+    /** Served from cache past its soft TTL; a refresh is under way. */
+    STALE
+  }
+
+  private record Entry(Object value, Instant computedAt) {
+
+  }
+
+  /**
+   * A response together with where it came from.
+   *
+   * @param value      the response
+   * @param computedAt when it was computed
+   * @param age        how old it was when served
+   * @param status     whether it was computed, cached or stale
+   */
+  public record Served<T>(T value, Instant computedAt, Duration age, Status status) {
+
+    /**
+     * @return the {@code Age} and {@code X-Cache-Status} headers describing this response
+     */
+    public HttpHeaders headers() {
+      var headers = new HttpHeaders();
+      headers.set(AGE_HEADER, Long.toString(age.toSeconds()));
+      headers.set(STATUS_HEADER, status.name());
+      return headers;
+    }
+  }
+
+  /**
+   * Serve the last response for {@code key}, computing it if there is none and refreshing it if it is past its soft
+   * TTL.
+   *
+   * @param key      identifies the response
+   * @param compute  computes a fresh response, in the caller's reactive context
+   * @param complete whether a response may be kept; incomplete ones are served once and dropped
+   * @return a Mono containing the response and its age
+   */
+  public <T> Mono<Served<T>> get(Key key, Supplier<Mono<T>> compute, Predicate<T> complete) {
+    if (!settings.enabled()) {
+      return Mono.defer(compute)
+          .map(value -> new Served<>(value, clock.instant(), Duration.ZERO, Status.MISS));
+    }
+    return Mono.deferContextual(ctx -> {
+      var now = clock.instant();
+      var entry = entries.getIfPresent(key);
+      if (entry != null && entry.computedAt().plus(settings.hardTtl()).isAfter(now)) {
+        boolean stale = !entry.computedAt().plus(settings.softTtl()).isAfter(now);
+        if (stale) {
+          staleHits.increment();
+          refresh(key, compute, complete);
+        } else {
+          hits.increment();
+        }
+        return Mono.just(served(entry, now, stale ? Status.STALE : Status.HIT));
+      }
+      misses.increment();
+      return Mono.fromFuture(() -> compute(key, compute, complete, ctx), true)
+          .map(computed -> this.<T>served(computed, clock.instant(), Status.MISS));
+    });
+  }
+
+  private void refresh(Key key, Supplier<? extends Mono<?>> compute, Predicate<?> complete) {
+    if (computing.containsKey(key)) {
+      return;
+    }
+    refreshes.increment();
+    var deadline = Deadline.after(refreshTimeout, clock);
+    compute(key, compute, complete, deadline.attachTo(Context.empty()))
+        .exceptionally(e -> {
+          log.warn("Background refresh of {} in {} failed, stale response kept: {}", key.endpoint(),
+              key.workspace(), e.toString());
+          return null;
+        });
+  }
+
+  /**
+   * Start computing {@code key}, or join the computation already running for it. The computation is subscribed on
+   * its own, so it completes (and fills the cache) even when every caller has gone away.
+   */
+  @SuppressWarnings("unchecked")
+  private CompletableFuture<Entry> compute(Key key, Supplier<? extends Mono<?>> compute, Predicate<?> complete,
+      ContextView ctx) {
+    var created = new CompletableFuture<Entry>();
+    var running = computing.putIfAbsent(key, created);
+    if (running != null) {
+      return running;
+    }
+    Mono.defer(compute)
+        .contextWrite(ctx)
+        .subscribe(
+            value -> {
+              var entry = new Entry(value, clock.instant());
+              if (((Predicate<Object>) complete).test(value)) {
+                entries.put(key, entry);
+                if (quota != null) {
+                  quota.recordWrite(key, entry);
+                }
+              }
+              computing.remove(key, created);
+              created.complete(entry);
+            },
+            error -> {
+              computing.remove(key, created);
+              created.completeExceptionally(error);
+            },
+            () -> {
+              if (!created.isDone()) {
+                computing.remove(key, created);
+                created.completeExceptionally(new IllegalStateException("No response computed for " + key.endpoint()));
+              }
+            });
+    return created;
+  }
+
+  @SuppressWarnings("unchecked")
+  private <T> Served<T> served(Entry entry, Instant now, Status status) {
+    var age = Duration.between(entry.computedAt(), now);
+    return new Served<>((T) entry.value(), entry.computedAt(), age.isNegative() ? Duration.ZERO : age, status);
+  }
+
+  /**
+   * Drop every response whose key matches.
+   *
+   * @return how many responses were dropped
+   */
+  public long invalidate(Predicate<Key> matching) {
+    long dropped = 0;
+    for (var key : List.copyOf(entries.asMap().keySet())) {
+      if (matching.test(key) && entries.asMap().remove(key) != null) {
+        dropped++;
+      }
+    }
+    return dropped;
+  }
+
+  public void clear() {
+    entries.invalidateAll();
+    if (quota != null) {
+      quota.clear();
+    }
+  }
+
+  @Nullable
+  public TenantQuota<?> quota() {
+    return quota;
+  }
+
+  public long size() {
+    entries.cleanUp();
+    return entries.estimatedSize();
+  }
+
+  /**
+   * @return the kept responses, read-only
+   */
+  public Map<Key, Object> entries() {
+    Map<Key, Object> values = new LinkedHashMap<>();
+    entries.asMap().forEach((key, entry) -> values.put(key, entry.value()));
+    return Collections.unmodifiableMap(values);
+  }
+
+  /**
+   * @return hits (fresh and stale), misses and evictions; loads are not tracked here
+   */
+  public CacheStats stats() {
+    var evictions = entries.stats();
+    return CacheStats.of(hits.sum() + staleHits.sum(), misses.sum(), 0, 0, 0,
+        evictions.evictionCount(), evictions.evictionWeight());
+  }
+
+  /**
+   * @return responses served past their soft TTL
+   */
+  public long staleHits() {
+    return staleHits.sum();
+  }
+
+  /**
+   * @return background refreshes started
+   */
+  public long refreshes() {
+    return refreshes.sum();
+  }
+}
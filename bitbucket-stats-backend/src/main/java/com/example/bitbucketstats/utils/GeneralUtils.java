@@ -6,6 +6,7 @@ import java.nio.charset.StandardCharsets;
 import java.time.LocalDate;
 import java.util.UUID;
 import lombok.experimental.UtilityClass;
+import org.springframework.web.util.UriComponentsBuilder;
 
 @UtilityClass
 public class GeneralUtils {
@@ -61,4 +62,19 @@ public class GeneralUtils {
       return false;
     }
   }
+
+  /**
+   * Set (or replace) a single query parameter on an already-encoded URL, which may be relative.
+   *
+   * @param url   the encoded URL
+   * @param name  the query parameter name
+   * @param value the new value
+   * @return the URL with the parameter set
+   */
+  public static String withQueryParam(String url, String name, Object value) {
+    return UriComponentsBuilder.fromUriString(url)
+        .replaceQueryParam(name, value)
+        .build(true)
+        .toUriString();
+  }
 }
@@ -0,0 +1,153 @@
+package com.example.bitbucketstats.benchmarks;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import com.example.bitbucketstats.configuration.BitbucketHttpProperties;
+import com.example.bitbucketstats.configuration.WebClientConfig;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.netty.DisposableServer;
+import reactor.netty.http.HttpProtocol;
+import reactor.netty.http.client.HttpClient;
+import reactor.netty.http.server.HttpServer;
+import reactor.netty.resources.ConnectionProvider;
+
+/**
+ * HTTP/1.1 vs HTTP/2 upstream mode for a typical stats run: one PR search per repository followed by one diffstat
+ * call per PR, against a local stub that speaks both protocols and adds a fixed service latency.
+ * <p>
+ * Run with {@code ./gradlew benchmark}; results are logged, and the run fails if HTTP/2 does not reduce the number
+ * of upstream connections.
+ */
+@Tag("benchmark")
+class UpstreamProtocolBenchmark {
+
+  private static final Logger log = LoggerFactory.getLogger(UpstreamProtocolBenchmark.class);
+  private static final int REPOS = 10;
+  private static final int PRS_PER_REPO = 50;
+  private static final int SEARCH_CONCURRENCY = 8;
+  private static final int ENRICH_CONCURRENCY = 32;
+  private static final Duration SERVICE_LATENCY = Duration.ofMillis(15);
+
+  private final WebClientConfig config = new WebClientConfig();
+  private final Set<String> clientSockets = ConcurrentHashMap.newKeySet();
+  private DisposableServer server;
+
+  @BeforeEach
+  void startStub() {
+    String prPage = IntStream.rangeClosed(1, PRS_PER_REPO)
+        .mapToObj(i -> "{\"id\":" + i + ",\"title\":\"PR " + i + "\",\"comment_count\":1}")
+        .collect(Collectors.joining(",", "{\"pagelen\":50,\"size\":50,\"values\":[", "]}"));
+    String diffstat = "{\"pagelen\":100,\"size\":2,\"values\":[{\"lines_added\":3,\"lines_removed\":1},"
+        + "{\"lines_added\":10,\"lines_removed\":0}]}";
+
+    server = HttpServer.create()
+        .host("127.0.0.1")
+        .port(0)
+        .protocol(HttpProtocol.HTTP11, HttpProtocol.H2C)
+        .route(r -> r
+            .get("/repositories/{ws}/{repo}/pullrequests", (req, res) -> {
+              clientSockets.add(req.remoteAddress().toString());
+              return Mono.delay(SERVICE_LATENCY).then(res.sendString(Mono.just(prPage)).then());
+            })
+            .get("/repositories/{ws}/{repo}/pullrequests/{id}/diffstat", (req, res) -> {
+              clientSockets.add(req.remoteAddress().toString());
+              return Mono.delay(SERVICE_LATENCY).then(res.sendString(Mono.just(diffstat)).then());
+            }))
+        .bindNow();
+  }
+
+  @AfterEach
+  void stopStub() {
+    server.disposeNow();
+  }
+
+  @Test
+  void http2_usesFewerConnections_forSearchAndEnrichment() {
+    run(false); // warm-up
+    var http11 = run(false);
+    var http2 = run(true);
+
+    log.info("{}", http11);
+    log.info("{}", http2);
+
+    assertThat(http11.requests()).isEqualTo(http2.requests()).isEqualTo(REPOS + REPOS * PRS_PER_REPO);
+    assertThat(http2.connections()).isLessThan(http11.connections());
+  }
+
+  private Result run(boolean http2) {
+    clientSockets.clear();
+    var props = mock(BitbucketHttpProperties.class);
+    when(props.apiBase()).thenReturn(base());
+    when(props.http2()).thenReturn(new BitbucketHttpProperties.Http2(http2, 100, 1, Duration.ofMinutes(30)));
+    ConnectionProvider provider = config.connectionProvider(props);
+    HttpClient client = config.httpClient(provider, props);
+
+    List<Long> latencies = Collections.synchronizedList(new ArrayList<>());
+    long start = System.nanoTime();
+    try {
+      Long requests = Flux.range(1, REPOS)
+          .flatMap(repo -> timed(client, "/repositories/ws/repo-" + repo + "/pullrequests", latencies)
+              .thenMany(Flux.range(1, PRS_PER_REPO).map(pr -> "/repositories/ws/repo-" + repo
+                  + "/pullrequests/" + pr + "/diffstat")), SEARCH_CONCURRENCY)
+          .flatMap(path -> timed(client, path, latencies), ENRICH_CONCURRENCY)
+          .count()
+          .block(Duration.ofMinutes(2));
+      long wallMs = Duration.ofNanos(System.nanoTime() - start).toMillis();
+      var sorted = latencies.stream().sorted().toList();
+      return new Result(http2 ? "HTTP/2" : "HTTP/1.1", requests + REPOS, clientSockets.size(), wallMs,
+          percentile(sorted, 0.50), percentile(sorted, 0.95));
+    } finally {
+      provider.disposeLater().block();
+    }
+  }
+
+  private Mono<String> timed(HttpClient client, String path, List<Long> latencies) {
+    return Mono.defer(() -> {
+      long t0 = System.nanoTime();
+      return client.get()
+          .uri(base() + path)
+          .responseContent()
+          .aggregate()
+          .asString()
+          .doOnNext(b -> latencies.add(System.nanoTime() - t0));
+    });
+  }
+
+  private String base() {
+    return "http://127.0.0.1:" + server.port();
+  }
+
+  private static double percentile(List<Long> sortedNanos, double p) {
+    if (sortedNanos.isEmpty()) {
+      return 0;
+    }
+    int idx = (int) Math.ceil(p * sortedNanos.size()) - 1;
+    return sortedNanos.get(Math.max(0, idx)) / 1_000_000.0;
+  }
+
+  private record Result(String protocol, long requests, int connections, long wallMs, double p50Ms, double p95Ms) {
+
+    @Override
+    public String toString() {
+      return String.format("%-8s requests=%d connections=%d wall=%dms p50=%.1fms p95=%.1fms",
+          protocol, requests, connections, wallMs, p50Ms, p95Ms);
+    }
+  }
+}
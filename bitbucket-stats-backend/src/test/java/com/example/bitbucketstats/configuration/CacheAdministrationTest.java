@@ -0,0 +1,169 @@
+package com.example.bitbucketstats.configuration;
+
+import static com.example.bitbucketstats.configuration.CachingConfig.BITBUCKET_USER_CACHE;
+import static com.example.bitbucketstats.configuration.CachingConfig.COMMENT_COUNT_CACHE;
+import static com.example.bitbucketstats.configuration.CachingConfig.PR_ACTIVITY_CACHE;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.assertj.core.api.Assertions.entry;
+
+import com.example.bitbucketstats.integration.CommentCountCache;
+import com.example.bitbucketstats.integration.ConditionalGetCache;
+import com.example.bitbucketstats.integration.DiffStatStore;
+import com.example.bitbucketstats.integration.PullRequestSearchCache;
+import com.example.bitbucketstats.integration.response.User;
+import com.example.bitbucketstats.models.ActivityDigest;
+import com.example.bitbucketstats.models.BitbucketAuth;
+import com.example.bitbucketstats.models.CacheScope;
+import com.example.bitbucketstats.models.DiffDetails;
+import com.example.bitbucketstats.services.StatsResultCache;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.OffsetDateTime;
+import java.util.List;
+import java.util.Map;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.boot.actuate.endpoint.InvalidEndpointRequestException;
+import org.springframework.cache.caffeine.CaffeineCacheManager;
+import org.springframework.http.ResponseEntity;
+import org.springframework.util.unit.DataSize;
+import reactor.core.publisher.Mono;
+
+@Tag("unit")
+class CacheAdministrationTest {
+
+  /** alice:pw */
+  private static final BitbucketAuth ALICE_AUTH = new BitbucketAuth("YWxpY2U6cHc=", null, null);
+  /** bob:pw */
+  private static final BitbucketAuth BOB_AUTH = new BitbucketAuth("Ym9iOnB3", null, null);
+  private static final String ALICE = ALICE_AUTH.cacheKey();
+  private static final String BOB = BOB_AUTH.cacheKey();
+  private static final String API = "https://api.bitbucket.org/2.0";
+  private static final OffsetDateTime UPDATED = OffsetDateTime.parse("2025-08-03T10:00:00Z");
+
+  @TempDir
+  Path dir;
+
+  private final ObjectMapper objectMapper = new ObjectMapper().findAndRegisterModules();
+  private final CaffeineCacheManager cacheManager = new CaffeineCacheManager();
+  private final CommentCountCache commentCounts = new CommentCountCache(Caffeine.newBuilder().buildAsync());
+  private final ConditionalGetCache conditionalGets =
+      new ConditionalGetCache(new BitbucketHttpProperties.ConditionalGet(true, DataSize.ofMegabytes(1)));
+  private DiffStatStore diffStats;
+  private CacheAdministration administration;
+
+  @BeforeEach
+  void setUp() {
+    cacheManager.setCaffeine(Caffeine.newBuilder().recordStats());
+    cacheManager.setAsyncCacheMode(true);
+    cacheManager.setCacheNames(List.of(BITBUCKET_USER_CACHE, PR_ACTIVITY_CACHE));
+    diffStats = new DiffStatStore(new BitbucketHttpProperties.DiffStatCache(true, dir.toString(), 100));
+    diffStats.loaded().block(Duration.ofSeconds(5));
+    var searches = new PullRequestSearchCache(
+        new BitbucketHttpProperties.SearchCache(true, 2, Duration.ofDays(30), 1000));
+    var disk = new DiskCacheStores(new BitbucketHttpProperties.DiskCache(false, dir.toString(), Map.of()),
+        objectMapper);
+    var results = new StatsResultCache(new BitbucketHttpProperties.ResultCache(true, Duration.ofMinutes(5),
+        Duration.ofHours(1), 100), Duration.ofMinutes(1));
+    administration = new CacheAdministration(cacheManager, commentCounts, searches, diffStats, conditionalGets,
+        results, disk, objectMapper);
+
+    for (var auth : List.of(ALICE_AUTH, BOB_AUTH)) {
+      String credential = auth.cacheKey();
+      cacheManager.getCache(BITBUCKET_USER_CACHE).put(credential, new User(credential + "-uuid"));
+      for (String repo : List.of("svc-a", "svc-b")) {
+        cacheManager.getCache(PR_ACTIVITY_CACHE).put(credential + ":acme/" + repo + "#1@" + UPDATED,
+            new ActivityDigest(Map.of(), null, null, 1));
+        commentCounts.get(new CommentCountCache.Key(credential, "acme", repo, 1, "me-uuid"), UPDATED,
+            () -> Mono.just(2)).block();
+        conditionalGets.resolve(
+            ConditionalGetCache.key(auth, API + "/repositories/acme/" + repo
+                + "/pullrequests?pagelen=50"),
+            null, ResponseEntity.ok().eTag("\"v1\"").body("page"), String.class);
+      }
+    }
+    results.get(new StatsResultCache.Key(ALICE, "pull-requests/stats", "acme", List.of("svc-a", "svc-b"), "p"),
+        () -> Mono.just("response"), response -> true).block();
+    diffStats.put(DiffStatStore.key("acme", "svc-a", 1, "a..b"), new DiffDetails(1, 2, 3));
+    diffStats.put(DiffStatStore.key("acme", "svc-b", 1, "a..b"), new DiffDetails(1, 2, 3));
+  }
+
+  @AfterEach
+  void tearDown() {
+    diffStats.close();
+  }
+
+  @Test
+  void invalidateRepository_dropsItsEntriesFromEveryCache() {
+    var dropped = administration.invalidate(new CacheScope("acme", "svc-a", null));
+
+    assertThat(dropped).containsExactly(
+        entry(BITBUCKET_USER_CACHE, 0L),
+        entry(PR_ACTIVITY_CACHE, 2L),
+        entry(COMMENT_COUNT_CACHE, 2L),
+        entry(CacheAdministration.PULL_REQUEST_SEARCH_CACHE, 0L),
+        entry(CacheAdministration.DIFFSTAT_CACHE, 1L),
+        entry(CacheAdministration.CONDITIONAL_GET_CACHE, 2L),
+        entry(CacheAdministration.STATS_RESULT_CACHE, 1L));
+    assertThat(diffStats.get(DiffStatStore.key("acme", "svc-b", 1, "a..b"))).isNotNull();
+    assertThat(commentCounts.size()).isEqualTo(2);
+  }
+
+  @Test
+  void invalidateUser_dropsOnlyWhatTheirCredentialRead() {
+    var dropped = administration.invalidate(new CacheScope(null, null, "bob"));
+
+    assertThat(dropped).contains(
+        entry(BITBUCKET_USER_CACHE, 1L),
+        entry(PR_ACTIVITY_CACHE, 2L),
+        entry(COMMENT_COUNT_CACHE, 2L),
+        entry(CacheAdministration.DIFFSTAT_CACHE, 0L),
+        entry(CacheAdministration.CONDITIONAL_GET_CACHE, 2L),
+        entry(CacheAdministration.STATS_RESULT_CACHE, 0L));
+    assertThat(cacheManager.getCache(BITBUCKET_USER_CACHE).get(ALICE)).isNotNull();
+    assertThat(cacheManager.getCache(BITBUCKET_USER_CACHE).get(BOB)).isNull();
+  }
+
+  @Test
+  void reportsAndMetrics_coverEveryCache() {
+    cacheManager.getCache(BITBUCKET_USER_CACHE).retrieve(ALICE);
+    cacheManager.getCache(BITBUCKET_USER_CACHE).retrieve("unknown");
+    var registry = new SimpleMeterRegistry();
+    administration.bindTo(registry);
+
+    var users = administration.report(BITBUCKET_USER_CACHE);
+    assertThat(users.entries()).isEqualTo(2);
+    assertThat(users.hits()).isEqualTo(1);
+    assertThat(users.misses()).isEqualTo(1);
+    assertThat(users.estimatedBytes()).isPositive();
+    assertThat(administration.reports()).hasSize(7);
+    assertThat(administration.report(CacheAdministration.CONDITIONAL_GET_CACHE).entries()).isEqualTo(4);
+    assertThat(administration.report("unknown")).isNull();
+
+    assertThat(registry.get("bitbucket.cache.gets").tags("cache", BITBUCKET_USER_CACHE, "result", "hit")
+        .functionCounter().count()).isEqualTo(1);
+    assertThat(registry.get("bitbucket.cache.size").tag("cache", CacheAdministration.DIFFSTAT_CACHE)
+        .gauge().value()).isEqualTo(2);
+    assertThat(registry.get("bitbucket.cache.bytes").tag("cache", COMMENT_COUNT_CACHE)
+        .gauge().value()).isPositive();
+  }
+
+  @Test
+  void clear_emptiesOneCache_andAnEmptyScopeIsRejected() {
+    assertThat(administration.clear(CacheAdministration.DIFFSTAT_CACHE)).isTrue();
+    assertThat(diffStats.size()).isZero();
+    assertThat(administration.clear("unknown")).isFalse();
+
+    var endpoint = new CacheAdminEndpoint(administration);
+    assertThatThrownBy(() -> endpoint.invalidate(null, null, null))
+        .isInstanceOf(InvalidEndpointRequestException.class);
+    assertThat(endpoint.clear("unknown")).isNull();
+  }
+}
@@ -0,0 +1,103 @@
+package com.example.bitbucketstats.configuration;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import java.time.Duration;
+import java.util.Map;
+import java.util.stream.IntStream;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.springframework.util.unit.DataSize;
+
+@Tag("unit")
+class CacheMemoryBudgetTest {
+
+  private final CacheMemoryBudget budget = new CacheMemoryBudget(new BitbucketHttpProperties.CacheBudget(true,
+      DataSize.ofKilobytes(10), Duration.ofSeconds(2), Map.of(
+      "listings", new BitbucketHttpProperties.CacheShare(1.0, 0, 1),
+      "users", new BitbucketHttpProperties.CacheShare(1.0, 0.2, 2))), new ObjectMapper());
+
+  @Test
+  void maxWeight_isTheCachesShareOfTheBudget() {
+    assertThat(budget.maxWeight("listings")).isEqualTo(10 * 1024);
+    assertThat(budget.maxWeight("unlisted")).isEqualTo(10 * 1024 / 4);
+  }
+
+  @Test
+  void weigh_growsWithTheValue_andFallsBackForValuesThatDoNotSerialize() {
+    int small = budget.weigh("k", "x");
+    int large = budget.weigh("k", "x".repeat(1000));
+
+    assertThat(small).isGreaterThanOrEqualTo(CacheMemoryBudget.ENTRY_OVERHEAD_BYTES);
+    assertThat(large - small).isEqualTo(CacheMemoryBudget.HEAP_PER_JSON_BYTE * 999);
+    assertThat(budget.weigh("k", new Object()))
+        .isEqualTo(CacheMemoryBudget.ENTRY_OVERHEAD_BYTES + 2 + CacheMemoryBudget.UNKNOWN_VALUE_BYTES);
+  }
+
+  @Test
+  void weighJson_matchesWeighingTheValueDecodedFromThatJson() {
+    assertThat(budget.weighJson("k", "\"x\"".length())).isEqualTo(budget.weigh("k", "x"));
+  }
+
+  @Test
+  void weigh_serializesAValueOnce_whenTheCacheAndItsQuotaBothWeighIt() {
+    var value = new Serialized();
+
+    int forCache = budget.weigh("k", value);
+    int forQuota = budget.weigh("k", value);
+
+    assertThat(forQuota).isEqualTo(forCache);
+    assertThat(value.serializations).isEqualTo(1);
+  }
+
+  @Test
+  void overBudget_trimsTheLowestPriorityCacheFirst() {
+    var listings = cache("listings");
+    var users = cache("users");
+    IntStream.range(0, 6).forEach(i -> listings.put("l" + i, "x".repeat(500)));
+    IntStream.range(0, 6).forEach(i -> users.put("u" + i, "x".repeat(500)));
+    assertThat(budget.used()).isGreaterThan(10 * 1024);
+
+    budget.enforce();
+
+    assertThat(budget.used()).isLessThanOrEqualTo(10 * 1024);
+    assertThat(users.estimatedSize()).isEqualTo(6);
+    assertThat(listings.estimatedSize()).isLessThan(6);
+    assertThat(budget.trimmedBytes()).isPositive();
+    assertThat(budget.usage()).containsOnlyKeys("listings", "users");
+  }
+
+  @Test
+  void withinBudget_nothingIsTrimmed() {
+    var listings = cache("listings");
+    listings.put("l0", "x".repeat(500));
+
+    budget.enforce();
+
+    assertThat(listings.estimatedSize()).isEqualTo(1);
+    assertThat(budget.trimmedBytes()).isZero();
+  }
+
+  private Cache<Object, Object> cache(String name) {
+    Cache<Object, Object> cache = Caffeine.newBuilder()
+        .maximumWeight(budget.maxWeight(name))
+        .weigher(budget::weigh)
+        .executor(Runnable::run)
+        .build();
+    budget.register(name, cache);
+    return cache;
+  }
+
+  static final class Serialized {
+
+    private int serializations;
+
+    public String getBody() {
+      serializations++;
+      return "x".repeat(100);
+    }
+  }
+}
@@ -33,6 +33,11 @@ public class CachingOverrideConfig {
     mgr.setCaffeine(caffeine);
     mgr.setCacheNames(java.util.List.of(CachingConfig.BITBUCKET_USER_CACHE));
     mgr.setAsyncCacheMode(true);
+    mgr.registerCustomCache(CachingConfig.PR_ACTIVITY_CACHE, Caffeine.newBuilder()
+        .expireAfterAccess(Duration.ofSeconds(1))
+        .recordStats()
+        .ticker(manualTicker)
+        .buildAsync());
     return mgr;
   }
 
@@ -0,0 +1,178 @@
+package com.example.bitbucketstats.configuration;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import com.example.bitbucketstats.integration.response.User;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.util.unit.DataSize;
+
+@Tag("unit")
+class DiskCacheStoreTest {
+
+  private static final ObjectMapper MAPPER = new ObjectMapper();
+
+  @TempDir
+  Path dir;
+
+  private Clock clock = Clock.fixed(Instant.parse("2025-08-03T10:00:00Z"), ZoneOffset.UTC);
+
+  @Test
+  void storedEntries_surviveARestart_andCredentialsAreNotWritten() throws IOException {
+    var store = store(DataSize.ofKilobytes(64));
+    store.put("Basic c2VjcmV0", new User("me-uuid"));
+    store.put("Basic b3RoZXI=", new User("other-uuid"));
+    store.close();
+
+    var reopened = loaded(DataSize.ofKilobytes(64));
+
+    assertThat(reopened.get("Basic c2VjcmV0", User.class)).isEqualTo(new User("me-uuid"));
+    assertThat(reopened.size()).isEqualTo(2);
+    assertThat(Files.readString(dir.resolve("users.cache"), StandardCharsets.ISO_8859_1))
+        .doesNotContain("c2VjcmV0");
+    reopened.close();
+  }
+
+  @Test
+  void theIndexIsBuiltLazily_lookupsMissUntilItIsReady() {
+    var store = store(DataSize.ofKilobytes(64));
+    store.put("k", new User("me-uuid"));
+    store.close();
+
+    var reopened = store(DataSize.ofKilobytes(64));
+    assertThat(reopened.ready()).isFalse();
+
+    reopened.get("k", User.class);
+    reopened.awaitPending();
+
+    assertThat(reopened.ready()).isTrue();
+    assertThat(reopened.get("k", User.class)).isEqualTo(new User("me-uuid"));
+    reopened.close();
+  }
+
+  @Test
+  void corruptedRecord_isAMiss_andTheScanStopsThere() throws IOException {
+    var store = loaded(DataSize.ofKilobytes(64));
+    store.put("first", new User("a"));
+    store.put("second", new User("b"));
+    store.awaitPending();
+    assertThat(store.get("second", User.class)).isEqualTo(new User("b"));
+    store.close();
+    // flip a byte of the first record's value
+    try (var file = new RandomAccessFile(dir.resolve("users.cache").toFile(), "rw")) {
+      int length = file.readInt();
+      file.seek(length - 3);
+      int b = file.read();
+      file.seek(length - 3);
+      file.write(b ^ 0xFF);
+    }
+
+    var reopened = loaded(DataSize.ofKilobytes(64));
+
+    assertThat(reopened.get("first", User.class)).isNull();
+    assertThat(reopened.get("second", User.class)).isNull();
+    assertThat(reopened.corrupt()).isEqualTo(1);
+    reopened.put("third", new User("c"));
+    reopened.awaitPending();
+    assertThat(reopened.get("third", User.class)).isEqualTo(new User("c"));
+    reopened.close();
+  }
+
+  @Test
+  void expiredAndRemovedEntries_areMisses_alsoAfterARestart() {
+    var store = loaded(DataSize.ofKilobytes(64));
+    store.put("old", new User("a"));
+    store.put("gone", new User("b"));
+    store.remove("gone");
+    clock = Clock.offset(clock, Duration.ofMinutes(30));
+    store.put("fresh", new User("c"));
+    store.close();
+
+    var reopened = loaded(DataSize.ofKilobytes(64));
+    assertThat(reopened.get("gone", User.class)).isNull();
+    assertThat(reopened.get("old", User.class)).isEqualTo(new User("a"));
+
+    clock = Clock.offset(clock, Duration.ofMinutes(40));
+    assertThat(reopened.get("old", User.class)).isNull();
+    assertThat(reopened.get("fresh", User.class)).isEqualTo(new User("c"));
+    reopened.close();
+  }
+
+  @Test
+  void fullFile_isCompacted_keepingTheLatestValues() {
+    var store = loaded(DataSize.ofBytes(2048));
+    for (int i = 0; i < 200; i++) {
+      store.put("key-" + (i % 5), new User("uuid-" + i));
+    }
+    store.awaitPending();
+
+    for (int k = 0; k < 5; k++) {
+      assertThat(store.get("key-" + k, User.class)).isEqualTo(new User("uuid-" + (195 + k)));
+    }
+    assertThat(store.size()).isEqualTo(5);
+    store.close();
+
+    var reopened = loaded(DataSize.ofBytes(2048));
+    assertThat(reopened.get("key-4", User.class)).isEqualTo(new User("uuid-199"));
+    assertThat(reopened.size()).isEqualTo(5);
+    reopened.close();
+  }
+
+  @Test
+  void clear_dropsEverything_alsoAfterARestart() {
+    var store = loaded(DataSize.ofKilobytes(64));
+    store.put("k", new User("a"));
+    store.clear();
+    store.put("other", new User("b"));
+    store.close();
+
+    var reopened = loaded(DataSize.ofKilobytes(64));
+
+    assertThat(reopened.get("k", User.class)).isNull();
+    assertThat(reopened.get("other", User.class)).isEqualTo(new User("b"));
+    reopened.close();
+  }
+
+  private DiskCacheStore store(DataSize maxSize) {
+    var tier = new BitbucketHttpProperties.DiskTier(maxSize, Duration.ofHours(1));
+    return new DiskCacheStore("users", dir, tier, MAPPER, new DelegatingClock());
+  }
+
+  private DiskCacheStore loaded(DataSize maxSize) {
+    var store = store(maxSize);
+    store.get("", User.class);
+    store.awaitPending();
+    return store;
+  }
+
+  /** Reads the test's current clock, so tests can move time for stores already created. */
+  private class DelegatingClock extends Clock {
+
+    @Override
+    public ZoneOffset getZone() {
+      return ZoneOffset.UTC;
+    }
+
+    @Override
+    public Clock withZone(ZoneId zone) {
+      return this;
+    }
+
+    @Override
+    public Instant instant() {
+      return clock.instant();
+    }
+  }
+}
@@ -0,0 +1,87 @@
+package com.example.bitbucketstats.configuration;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import com.example.bitbucketstats.models.Deadline;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.util.concurrent.atomic.AtomicReference;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpStatus;
+import org.springframework.mock.http.server.reactive.MockServerHttpRequest;
+import org.springframework.mock.web.server.MockServerWebExchange;
+import org.springframework.web.server.ResponseStatusException;
+import org.springframework.web.server.WebFilterChain;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+import reactor.test.StepVerifier;
+
+@Tag("unit")
+class RequestDeadlineFilterTest {
+
+  private static final Instant NOW = Instant.parse("2025-08-01T10:00:00Z");
+
+  private final RequestDeadlineFilter filter = new RequestDeadlineFilter(
+      new BitbucketHttpProperties.RequestDeadline(Duration.ofSeconds(60), Duration.ofMinutes(5), Duration.ofSeconds(1)),
+      Clock.fixed(NOW, ZoneOffset.UTC));
+  private final AtomicReference<Deadline> seen = new AtomicReference<>();
+  private final WebFilterChain chain = exchange -> Mono.deferContextual(ctx -> {
+    Deadline.from(ctx).ifPresent(seen::set);
+    return Mono.empty();
+  });
+
+  @Test
+  void statsRequest_getsDefaultDeadline() {
+    run(MockServerHttpRequest.get("/pull-requests/stats?workspace=acme"));
+
+    assertThat(seen.get().expiresAt()).isEqualTo(NOW.plusSeconds(60));
+  }
+
+  @Test
+  void queryParameter_winsOverHeader_andIsCapped() {
+    run(MockServerHttpRequest.get("/pull-requests/stats?timeoutSeconds=20")
+        .header(RequestDeadlineFilter.TIMEOUT_HEADER, "40"));
+    assertThat(seen.get().expiresAt()).isEqualTo(NOW.plusSeconds(20));
+
+    run(MockServerHttpRequest.get("/pull-requests/reviews/stats")
+        .header(RequestDeadlineFilter.TIMEOUT_HEADER, "3600"));
+    assertThat(seen.get().expiresAt()).isEqualTo(NOW.plus(Duration.ofMinutes(5)));
+  }
+
+  @Test
+  void statsRequestsInFlight_areCounted() {
+    var pending = Sinks.<Void>empty();
+    var inFlight = filter.filter(MockServerWebExchange.from(MockServerHttpRequest.get("/pull-requests/stats")),
+        exchange -> pending.asMono()).subscribe();
+    filter.filter(MockServerWebExchange.from(MockServerHttpRequest.get("/actuator/health")),
+        exchange -> Sinks.<Void>empty().asMono()).subscribe();
+
+    assertThat(filter.inFlight()).isEqualTo(1);
+    pending.tryEmitEmpty();
+    assertThat(filter.inFlight()).isZero();
+    inFlight.dispose();
+  }
+
+  @Test
+  void invalidTimeout_isRejected() {
+    StepVerifier.create(filter.filter(
+            MockServerWebExchange.from(MockServerHttpRequest.get("/pull-requests/stats?timeoutSeconds=soon")), chain))
+        .expectErrorSatisfies(e -> assertThat(e).isInstanceOf(ResponseStatusException.class)
+            .extracting(ex -> ((ResponseStatusException) ex).getStatusCode()).isEqualTo(HttpStatus.BAD_REQUEST))
+        .verify();
+  }
+
+  @Test
+  void otherEndpoints_getNoDeadline() {
+    run(MockServerHttpRequest.get("/upstream/budget"));
+
+    assertThat(seen.get()).isNull();
+  }
+
+  private void run(MockServerHttpRequest.BaseBuilder<?> request) {
+    StepVerifier.create(filter.filter(MockServerWebExchange.from(request), chain)).verifyComplete();
+  }
+}
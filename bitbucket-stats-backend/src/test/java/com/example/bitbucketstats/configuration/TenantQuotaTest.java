@@ -0,0 +1,115 @@
+package com.example.bitbucketstats.configuration;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.RemovalCause;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.IntStream;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+
+@Tag("unit")
+class TenantQuotaTest {
+
+  @Test
+  void tenantOverItsMaxShare_evictsItsOwnOldestEntries() {
+    var quota = quota(0.5);
+    var cache = cache(quota);
+
+    put(cache, quota, "b:0");
+    IntStream.range(0, 6).forEach(i -> put(cache, quota, "a:" + i));
+
+    assertThat(cache.getIfPresent("a:0")).isNull();
+    assertThat(cache.getIfPresent("a:5")).isNotNull();
+    assertThat(cache.getIfPresent("b:0")).isNotNull();
+    assertThat(quota.largestTenantWeight()).isEqualTo(5);
+    assertThat(quota.evictions()).isEqualTo(1);
+  }
+
+  @Test
+  void nearlyFullCache_makesTheTenantOverItsFairShareGiveWay() {
+    var quota = quota(1.0);
+    var cache = cache(quota);
+
+    IntStream.range(0, 3).forEach(i -> put(cache, quota, "b:" + i));
+    IntStream.range(0, 7).forEach(i -> put(cache, quota, "a:" + i));
+
+    assertThat(cache.getIfPresent("a:0")).isNull();
+    assertThat(cache.getIfPresent("a:1")).isNotNull();
+    IntStream.range(0, 3).forEach(i -> assertThat(cache.getIfPresent("b:" + i)).isNotNull());
+    assertThat(quota.tenants()).isEqualTo(2);
+  }
+
+  @Test
+  void lateRemovalOfAReplacedValue_isIgnored() {
+    var quota = quota(1.0);
+    quota.recordWrite("a:0", "v1", 1);
+    quota.recordWrite("a:0", "v2", 1);
+
+    quota.recordRemoval("a:0", "v1");
+    assertThat(quota.largestTenantWeight()).isEqualTo(1);
+
+    quota.recordRemoval("a:0", "v2");
+    assertThat(quota.tenants()).isZero();
+  }
+
+  @Test
+  void writeWhoseEntryLeftBeforeItWasRecorded_isNotKept() {
+    var quota = quota(1.0);
+    var cache = cache(quota);
+    quota.peekWith(key -> cache.policy().getIfPresentQuietly(key));
+
+    cache.put("a:0", "v");
+    cache.invalidate("a:0");
+    quota.recordWrite("a:0", "v", 1);
+
+    assertThat(quota.tenants()).isZero();
+  }
+
+  @Test
+  void writeWhoseEntryLeftWhileItWasRecorded_isReleased() {
+    var quota = quota(1.0);
+    var peeks = new AtomicInteger();
+    quota.peekWith(key -> peeks.getAndIncrement() == 0 ? "v" : null);
+
+    quota.recordWrite("a:0", "v", 1);
+
+    assertThat(peeks.get()).isEqualTo(2);
+    assertThat(quota.tenants()).isZero();
+  }
+
+  @Test
+  void tenant_isTheWorkspace_orTheCredentialWithoutOne() {
+    var byWorkspace = BitbucketHttpProperties.PartitionBy.WORKSPACE;
+    var byCredential = BitbucketHttpProperties.PartitionBy.CREDENTIAL;
+
+    assertThat(TenantQuota.tenant(byWorkspace, "alice@1f", "acme")).isEqualTo("workspace:acme");
+    assertThat(TenantQuota.tenant(byWorkspace, "alice@1f", null)).isEqualTo("credential:alice@1f");
+    assertThat(TenantQuota.tenant(byCredential, "alice@1f", "acme")).isEqualTo("credential:alice@1f");
+    assertThat(TenantQuota.forCache("c", 10, new BitbucketHttpProperties.TenantCache(false, byWorkspace, 0.5),
+        key -> null, key -> null)).isNull();
+  }
+
+  /** Budget of ten entries; the tenant is the key's prefix. */
+  private static TenantQuota<String> quota(double maxShare) {
+    return new TenantQuota<>("test", 10, maxShare, key -> key.substring(0, key.indexOf(':')));
+  }
+
+  private static Cache<String, String> cache(TenantQuota<String> quota) {
+    Cache<String, String> cache = Caffeine.newBuilder()
+        .maximumSize(10)
+        .executor(Runnable::run)
+        .removalListener((String key, String value, RemovalCause cause) -> quota.recordRemoval(key, value))
+        .build();
+    quota.evictWith(cache::invalidate);
+    return cache;
+  }
+
+  private static void put(Cache<String, String> cache, TenantQuota<String> quota, String key) {
+    var value = "value of " + key;
+    cache.put(key, value);
+    quota.recordWrite(key, value, 1);
+  }
+}
@@ -0,0 +1,95 @@
+package com.example.bitbucketstats.configuration;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import com.example.bitbucketstats.integration.response.User;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.cache.caffeine.CaffeineCache;
+import org.springframework.util.unit.DataSize;
+
+@Tag("unit")
+class TieredCacheTest {
+
+  private static final BitbucketHttpProperties.DiskTier TIER =
+      new BitbucketHttpProperties.DiskTier(DataSize.ofKilobytes(64), Duration.ofHours(1));
+
+  @TempDir
+  Path dir;
+
+  private DiskCacheStore disk;
+  private final AtomicInteger loads = new AtomicInteger();
+
+  @BeforeEach
+  void openDisk() {
+    disk = new DiskCacheStore("users", dir, TIER, new ObjectMapper());
+    disk.get("", User.class);
+    disk.awaitPending();
+  }
+
+  @AfterEach
+  void closeDisk() {
+    disk.close();
+  }
+
+  @Test
+  void loadedValues_areServedFromDisk_afterMemoryIsLost() {
+    var before = cache();
+    assertThat(before.retrieve("k", () -> load("me-uuid")).join()).isEqualTo(new User("me-uuid"));
+    disk.awaitPending();
+
+    var after = cache();
+
+    assertThat(after.retrieve("k").join()).isEqualTo(new User("me-uuid"));
+    assertThat(after.retrieve("k", () -> load("other")).join()).isEqualTo(new User("me-uuid"));
+    assertThat(after.get("k", User.class)).isEqualTo(new User("me-uuid"));
+    assertThat(loads.get()).isEqualTo(1);
+    assertThat(disk.hits()).isEqualTo(1);
+  }
+
+  @Test
+  void missInBothTiers_loadsOnce() {
+    var cache = cache();
+
+    assertThat(cache.retrieve("k")).isNull();
+    assertThat(cache.retrieve("k", () -> load("me-uuid")).join()).isEqualTo(new User("me-uuid"));
+    assertThat(cache.retrieve("k", () -> load("other")).join()).isEqualTo(new User("me-uuid"));
+    assertThat(loads.get()).isEqualTo(1);
+  }
+
+  @Test
+  void evictAndClear_applyToBothTiers() {
+    var cache = cache();
+    cache.put("a", new User("a"));
+    cache.put("b", new User("b"));
+    cache.evict("a");
+    disk.awaitPending();
+
+    var fresh = cache();
+    assertThat(fresh.retrieve("a")).isNull();
+    assertThat(fresh.retrieve("b")).isNotNull();
+
+    fresh.clear();
+    disk.awaitPending();
+    assertThat(cache().retrieve("b")).isNull();
+  }
+
+  private TieredCache cache() {
+    var memory = new CaffeineCache("users", Caffeine.newBuilder().buildAsync(), false);
+    return new TieredCache(memory, disk, User.class);
+  }
+
+  private CompletableFuture<User> load(String uuid) {
+    loads.incrementAndGet();
+    return CompletableFuture.completedFuture(new User(uuid));
+  }
+}
@@ -0,0 +1,89 @@
+package com.example.bitbucketstats.configuration;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.time.Duration;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import reactor.core.publisher.Mono;
+import reactor.netty.DisposableServer;
+import reactor.netty.http.HttpProtocol;
+import reactor.netty.http.client.HttpClient;
+import reactor.netty.http.server.HttpServer;
+import reactor.netty.resources.ConnectionProvider;
+
+/**
+ * Protocol negotiation of the upstream client against a local server.
+ */
+@Tag("integration")
+class WebClientConfigTest {
+
+  private final WebClientConfig config = new WebClientConfig();
+  private DisposableServer server;
+  private ConnectionProvider provider;
+
+  @AfterEach
+  void tearDown() {
+    if (provider != null) {
+      provider.disposeLater().block();
+    }
+    if (server != null) {
+      server.disposeNow();
+    }
+  }
+
+  @Test
+  void http2Mode_multiplexesOverH2c_whenServerOffersIt() {
+    server = start(HttpProtocol.HTTP11, HttpProtocol.H2C);
+    var client = client(true);
+
+    get(client);
+    assertThat(get(client)).isEqualTo("HTTP/2.0");
+  }
+
+  @Test
+  void http2Mode_fallsBackToHttp11_whenServerDoesNotOfferIt() {
+    server = start(HttpProtocol.HTTP11);
+    var client = client(true);
+
+    assertThat(get(client)).isEqualTo("HTTP/1.1");
+    assertThat(get(client)).isEqualTo("HTTP/1.1");
+  }
+
+  @Test
+  void defaultMode_staysOnHttp11() {
+    server = start(HttpProtocol.HTTP11, HttpProtocol.H2C);
+    var client = client(false);
+
+    assertThat(get(client)).isEqualTo("HTTP/1.1");
+  }
+
+  private static DisposableServer start(HttpProtocol... protocols) {
+    return HttpServer.create()
+        .host("127.0.0.1")
+        .port(0)
+        .protocol(protocols)
+        .route(r -> r.get("/protocol", (req, res) -> res.sendString(Mono.just(req.protocol()))))
+        .bindNow();
+  }
+
+  private HttpClient client(boolean http2) {
+    var props = mock(BitbucketHttpProperties.class);
+    when(props.apiBase()).thenReturn("http://127.0.0.1:" + server.port());
+    when(props.http2()).thenReturn(new BitbucketHttpProperties.Http2(http2, 100, 1, Duration.ofMinutes(30)));
+    provider = config.connectionProvider(props);
+    return config.httpClient(provider, props);
+  }
+
+  private String get(HttpClient client) {
+    return client.get()
+        .uri("http://127.0.0.1:" + server.port() + "/protocol")
+        .responseContent()
+        .aggregate()
+        .asString()
+        .block(Duration.ofSeconds(10));
+  }
+}
@@ -2,6 +2,7 @@ package com.example.bitbucketstats.controllers;
 
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.verifyNoInteractions;
 import static org.mockito.Mockito.verifyNoMoreInteractions;
@@ -10,6 +11,9 @@ import static org.mockito.Mockito.when;
 import com.example.bitbucketstats.controllers.request.MyPullRequestsParams;
 import com.example.bitbucketstats.controllers.response.MyPullRequestsResponse;
 import com.example.bitbucketstats.services.MyPullRequestsService;
+import com.example.bitbucketstats.services.StatsResultCache;
+import java.time.Duration;
+import java.time.Instant;
 import java.time.LocalDate;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Tag;
@@ -36,7 +40,7 @@ class MyPullRequestsControllerTest {
   void setup() {
     when(myPullRequestsService.getMyPullRequestsStats(any(), any()))
         .thenReturn(Mono.just(new MyPullRequestsResponse(null, 0, null,
-            null, null, null)));
+            null, null, null, null, null, false, null)));
   }
 
   @Test
@@ -201,4 +205,31 @@ class MyPullRequestsControllerTest {
 
     verifyNoInteractions(myPullRequestsService);
   }
+
+  @Test
+  void getMyPrStats_allowStale_servesCachedResponseWithAgeHeaders() {
+    var response = new MyPullRequestsResponse(null, 3, null, null, null, null, null, null, false, null);
+    when(myPullRequestsService.getMyPullRequestsStatsAllowingStale(any(), any()))
+        .thenReturn(Mono.just(new StatsResultCache.Served<>(response, Instant.parse("2025-08-10T10:00:00Z"),
+            Duration.ofSeconds(420), StatsResultCache.Status.STALE)));
+
+    webTestClient.get()
+        .uri(uriBuilder -> uriBuilder
+            .path("/pull-requests/stats")
+            .queryParam("workspace", "acme")
+            .queryParam("repo", "svc-a")
+            .queryParam("sinceDate", "2025-08-01")
+            .queryParam("untilDate", "2025-08-10")
+            .queryParam("allowStale", true)
+            .build())
+        .header("Authorization", "Basic abc")
+        .exchange()
+        .expectStatus().isOk()
+        .expectHeader().valueEquals("Age", "420")
+        .expectHeader().valueEquals("X-Cache-Status", "STALE")
+        .expectBody().jsonPath("$.total_pull_requests").isEqualTo(3);
+
+    verify(myPullRequestsService).getMyPullRequestsStatsAllowingStale(any(), any());
+    verify(myPullRequestsService, never()).getMyPullRequestsStats(any(), any());
+  }
 }
@@ -37,7 +37,7 @@ class PullRequestsReviewControllerTest {
     when(pullRequestsReviewService.getReviewStats(any(), any()))
         .thenReturn(Mono.just(new PullRequestReviewResponse(null, 0,
             0, null, null, null,
-            null, null)));
+            null, null, null, false, null)));
   }
 
   @Test
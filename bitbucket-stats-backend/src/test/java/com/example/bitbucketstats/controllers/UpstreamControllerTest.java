@@ -0,0 +1,119 @@
+package com.example.bitbucketstats.controllers;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.verifyNoInteractions;
+import static org.mockito.Mockito.when;
+
+import com.example.bitbucketstats.integration.AdaptiveConcurrencyLimiter;
+import com.example.bitbucketstats.integration.HedgingPolicy;
+import com.example.bitbucketstats.integration.RateLimitScheduler;
+import com.example.bitbucketstats.integration.RepositoryCircuitBreaker;
+import com.example.bitbucketstats.integration.WorkspaceBulkhead;
+import com.example.bitbucketstats.models.BitbucketAuth;
+import java.time.Instant;
+import java.util.Map;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.reactive.WebFluxTest;
+import org.springframework.http.MediaType;
+import org.springframework.test.context.bean.override.mockito.MockitoBean;
+import org.springframework.test.web.reactive.server.WebTestClient;
+
+@Tag("unit")
+@WebFluxTest(UpstreamController.class)
+class UpstreamControllerTest {
+
+  @Autowired
+  WebTestClient webTestClient;
+
+  @MockitoBean
+  AdaptiveConcurrencyLimiter adaptiveConcurrencyLimiter;
+
+  @MockitoBean
+  RateLimitScheduler rateLimitScheduler;
+
+  @MockitoBean
+  RepositoryCircuitBreaker repositoryCircuitBreaker;
+
+  @MockitoBean
+  WorkspaceBulkhead workspaceBulkhead;
+
+  @MockitoBean
+  HedgingPolicy hedgingPolicy;
+
+  @Test
+  void getConcurrency_returnsLimiterSnapshot() {
+    when(adaptiveConcurrencyLimiter.snapshot())
+        .thenReturn(new AdaptiveConcurrencyLimiter.Snapshot(24, 7, 3, 180, 150));
+
+    webTestClient.get()
+        .uri("/upstream/concurrency")
+        .accept(MediaType.APPLICATION_JSON)
+        .exchange()
+        .expectStatus().isOk()
+        .expectBody()
+        .jsonPath("$.limit").isEqualTo(24)
+        .jsonPath("$.in_flight").isEqualTo(7)
+        .jsonPath("$.queued").isEqualTo(3);
+  }
+
+  @Test
+  void getBudget_returnsForecastForCallerCredential() {
+    when(rateLimitScheduler.budget(any(BitbucketAuth.class)))
+        .thenReturn(new RateLimitScheduler.Budget(1000, 400, 600, Instant.parse("2025-08-01T10:00:00Z"), null));
+
+    webTestClient.get()
+        .uri("/upstream/budget")
+        .header("Authorization", "Basic abc")
+        .accept(MediaType.APPLICATION_JSON)
+        .exchange()
+        .expectStatus().isOk()
+        .expectBody()
+        .jsonPath("$.limit").isEqualTo(1000)
+        .jsonPath("$.remaining").isEqualTo(600)
+        .jsonPath("$.paused_until").doesNotExist();
+  }
+
+  @Test
+  void getBudget_missingAuth_returns401() {
+    webTestClient.get()
+        .uri("/upstream/budget")
+        .exchange()
+        .expectStatus().isUnauthorized();
+
+    verifyNoInteractions(rateLimitScheduler);
+  }
+
+  @Test
+  void getIsolation_returnsCircuitsAndWorkspaceLoad() {
+    when(repositoryCircuitBreaker.states())
+        .thenReturn(Map.of("ws/repo-1", RepositoryCircuitBreaker.State.OPEN));
+    when(workspaceBulkhead.inFlight()).thenReturn(Map.of("ws", 12));
+
+    webTestClient.get()
+        .uri("/upstream/isolation")
+        .accept(MediaType.APPLICATION_JSON)
+        .exchange()
+        .expectStatus().isOk()
+        .expectBody()
+        .jsonPath("$.circuits['ws/repo-1']").isEqualTo("OPEN")
+        .jsonPath("$.in_flight.ws").isEqualTo(12);
+  }
+
+  @Test
+  void getHedging_returnsHedgeCountsAndDelays() {
+    when(hedgingPolicy.stats())
+        .thenReturn(new HedgingPolicy.Stats(12, 9, Map.of("pullrequests/{id}/diffstat", 240L)));
+
+    webTestClient.get()
+        .uri("/upstream/hedging")
+        .accept(MediaType.APPLICATION_JSON)
+        .exchange()
+        .expectStatus().isOk()
+        .expectBody()
+        .jsonPath("$.hedges_sent").isEqualTo(12)
+        .jsonPath("$.hedges_won").isEqualTo(9)
+        .jsonPath("$.delay_millis['pullrequests/{id}/diffstat']").isEqualTo(240);
+  }
+}
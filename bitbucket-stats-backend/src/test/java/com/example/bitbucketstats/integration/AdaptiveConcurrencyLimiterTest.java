@@ -0,0 +1,109 @@
+package com.example.bitbucketstats.integration;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import com.example.bitbucketstats.configuration.BitbucketHttpProperties;
+import java.net.URI;
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicLong;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.reactive.function.client.ClientRequest;
+import org.springframework.web.reactive.function.client.ClientResponse;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+import reactor.test.StepVerifier;
+
+@Tag("unit")
+class AdaptiveConcurrencyLimiterTest {
+
+  private final AtomicLong clock = new AtomicLong(1);
+  private final ClientRequest request =
+      ClientRequest.create(HttpMethod.GET, URI.create("https://api.bitbucket.org/2.0/user")).build();
+
+  private AdaptiveConcurrencyLimiter limiter(int initial, int max) {
+    var settings = new BitbucketHttpProperties.ConcurrencyLimit(initial, 1, max, 10, 0.5, 2.0);
+    return new AdaptiveConcurrencyLimiter(settings, clock::get);
+  }
+
+  @Test
+  void success_atHighUtilization_raisesLimit() {
+    var limiter = limiter(1, 10);
+
+    StepVerifier.create(limiter.filter(request, req -> Mono.just(ClientResponse.create(HttpStatus.OK).build()))
+            .flatMap(ClientResponse::releaseBody))
+        .verifyComplete();
+
+    assertThat(limiter.snapshot().limit()).isEqualTo(2);
+    assertThat(limiter.snapshot().inFlight()).isZero();
+  }
+
+  @Test
+  void successes_raiseLimitByAboutOnePerLimitsWorth_notOneEach() {
+    var limiter = limiter(2, 10);
+    var first = limiter.filter(request, req -> Mono.just(ClientResponse.create(HttpStatus.OK).build())).block();
+    var second = limiter.filter(request, req -> Mono.just(ClientResponse.create(HttpStatus.OK).build())).block();
+
+    // 2 -> 2.5 -> 2.9: two successes at a limit of two do not add a permit yet
+    assertThat(limiter.snapshot().limit()).isEqualTo(2);
+
+    first.releaseBody().block();
+    var third = limiter.filter(request, req -> Mono.just(ClientResponse.create(HttpStatus.OK).build())).block();
+    assertThat(limiter.snapshot().limit()).isEqualTo(3);
+
+    Mono.when(second.releaseBody(), third.releaseBody()).block();
+    assertThat(limiter.snapshot().inFlight()).isZero();
+  }
+
+  @Test
+  void throttledResponse_cutsLimit() {
+    var limiter = limiter(10, 10);
+
+    StepVerifier.create(limiter.filter(request,
+                req -> Mono.just(ClientResponse.create(HttpStatus.TOO_MANY_REQUESTS).build()))
+            .flatMap(ClientResponse::releaseBody))
+        .verifyComplete();
+
+    assertThat(limiter.snapshot().limit()).isEqualTo(5);
+  }
+
+  @Test
+  void requestsOverLimit_waitInQueue_untilPermitIsReleased() {
+    var limiter = limiter(1, 1);
+    Sinks.One<ClientResponse> first = Sinks.one();
+
+    var firstCall = limiter.filter(request, req -> first.asMono()).flatMap(ClientResponse::releaseBody);
+    var secondCall = limiter.filter(request, req -> Mono.just(ClientResponse.create(HttpStatus.OK).build()))
+        .flatMap(ClientResponse::releaseBody);
+
+    StepVerifier.create(Mono.when(firstCall, secondCall))
+        .then(() -> {
+          assertThat(limiter.snapshot().inFlight()).isEqualTo(1);
+          assertThat(limiter.snapshot().queued()).isEqualTo(1);
+          first.tryEmitValue(ClientResponse.create(HttpStatus.OK).build());
+        })
+        .expectComplete()
+        .verify(Duration.ofSeconds(5));
+
+    assertThat(limiter.snapshot().inFlight()).isZero();
+    assertThat(limiter.snapshot().queued()).isZero();
+  }
+
+  @Test
+  void cancelledWaiter_leavesQueue() {
+    var limiter = limiter(1, 1);
+    Sinks.One<ClientResponse> first = Sinks.one();
+
+    var held = limiter.filter(request, req -> first.asMono()).subscribe();
+    var waiting = limiter.filter(request, req -> Mono.just(ClientResponse.create(HttpStatus.OK).build())).subscribe();
+    assertThat(limiter.snapshot().queued()).isEqualTo(1);
+
+    waiting.dispose();
+    assertThat(limiter.snapshot().queued()).isZero();
+
+    held.dispose();
+    assertThat(limiter.snapshot().inFlight()).isZero();
+  }
+}
@@ -5,15 +5,23 @@ import static org.mockito.Mockito.any;
 import static org.mockito.Mockito.doReturn;
 import static org.mockito.Mockito.eq;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.same;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 import com.example.bitbucketstats.configuration.BitbucketHttpProperties;
+import com.example.bitbucketstats.configuration.HttpRetryConfig;
+import com.example.bitbucketstats.exceptions.DeadlineExceededException;
 import com.example.bitbucketstats.models.BitbucketAuth;
+import com.example.bitbucketstats.models.Deadline;
 import com.example.bitbucketstats.integration.response.User;
 import com.example.bitbucketstats.integration.response.page.Page;
 import java.net.URI;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneOffset;
 import java.util.List;
 import org.junit.jupiter.api.Tag;
 import org.junit.jupiter.api.Test;
@@ -22,11 +30,17 @@ import org.mockito.ArgumentCaptor;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.Mockito;
+import org.mockito.Spy;
 import org.mockito.junit.jupiter.MockitoExtension;
 import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.util.unit.DataSize;
 import org.springframework.web.reactive.function.client.WebClient;
 import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
 import reactor.test.StepVerifier;
+import reactor.test.scheduler.VirtualTimeScheduler;
 import reactor.util.retry.Retry;
 
 @Tag("unit")
@@ -40,6 +54,12 @@ class BitbucketClientTest {
   private BitbucketHttpProperties bitbucketHttpProperties;
   @Mock
   private Retry retryPolicy;
+  @Spy
+  private ConditionalGetCache conditionalGetCache =
+      new ConditionalGetCache(new BitbucketHttpProperties.ConditionalGet(true, DataSize.ofMegabytes(1)));
+  @Spy
+  private HedgingPolicy hedgingPolicy = new HedgingPolicy(
+      new BitbucketHttpProperties.Hedging(false, 0.95, 200, 20, Duration.ofMillis(50), 0.05));
 
   @InjectMocks
   private BitbucketClient client;
@@ -98,6 +118,70 @@ class BitbucketClientTest {
     verify(spy).retrieveJson(same(auth), eq(firstUrl), any());
   }
 
+  @Test
+  void fetchAll_withReportedSize_fetchesRemainingPagesConcurrently_inPageOrder() {
+    var spy = Mockito.spy(client);
+    when(bitbucketHttpProperties.pageConcurrency()).thenReturn(4);
+
+    var auth = new BitbucketAuth("abc123==", "user", "app");
+    String firstUrl = "/repositories/acme/svc-a/pullrequests?pagelen=50";
+    String page2Url = "/repositories/acme/svc-a/pullrequests?pagelen=2&page=2";
+    String page3Url = "/repositories/acme/svc-a/pullrequests?pagelen=2&page=3";
+
+    Page<String> page1 = mock(Page.class);
+    when(page1.next()).thenReturn(page2Url);
+    when(page1.size()).thenReturn(5);
+    when(page1.pagelen()).thenReturn(2);
+    when(page1.values()).thenReturn(List.of("A", "B"));
+
+    Page<String> page2 = mock(Page.class);
+    when(page2.values()).thenReturn(List.of("C", "D"));
+
+    Page<String> page3 = mock(Page.class);
+    when(page3.values()).thenReturn(List.of("E"));
+
+    doReturn(Mono.just(page1)).when(spy).retrieveJson(same(auth), eq(firstUrl), any());
+    // page 2 answers after page 3; order must still follow page numbers
+    doReturn(Mono.just(page2).delayElement(Duration.ofMillis(50)))
+        .when(spy).retrieveJson(same(auth), eq(page2Url), any());
+    doReturn(Mono.just(page3)).when(spy).retrieveJson(same(auth), eq(page3Url), any());
+
+    StepVerifier.create(spy.fetchAll(auth, firstUrl, Page.class))
+        .expectNext("A", "B", "C", "D", "E")
+        .verifyComplete();
+
+    verify(spy).retrieveJson(same(auth), eq(page2Url), any());
+    verify(spy).retrieveJson(same(auth), eq(page3Url), any());
+  }
+
+  @Test
+  void fetchAll_withoutReportedSize_fallsBackToNextLinks() {
+    var spy = Mockito.spy(client);
+    when(bitbucketHttpProperties.pageConcurrency()).thenReturn(4);
+
+    var auth = new BitbucketAuth("abc123==", "user", "app");
+    String firstUrl = "/diffstat?pagelen=100";
+    String nextUrl = "/diffstat?pagelen=100&page=2";
+
+    Page<String> page1 = mock(Page.class);
+    when(page1.next()).thenReturn(nextUrl);
+    when(page1.size()).thenReturn(null);
+    when(page1.values()).thenReturn(List.of("A"));
+
+    Page<String> page2 = mock(Page.class);
+    when(page2.next()).thenReturn(null);
+    when(page2.values()).thenReturn(List.of("B"));
+
+    doReturn(Mono.just(page1)).when(spy).retrieveJson(same(auth), eq(firstUrl), any());
+    doReturn(Mono.just(page2)).when(spy).retrieveJson(same(auth), eq(nextUrl), any());
+
+    StepVerifier.create(spy.fetchAll(auth, firstUrl, Page.class))
+        .expectNext("A", "B")
+        .verifyComplete();
+
+    verify(spy).retrieveJson(same(auth), eq(nextUrl), any());
+  }
+
   @Test
   void retrieveJson_buildsGet_withUri_appliesAuthHeader_registersOnStatus_and_mapsBody() {
     var auth = new BitbucketAuth("abc123==", "user", "app");
@@ -116,7 +200,7 @@ class BitbucketClientTest {
     when(responseSpec.onStatus(any(), any())).thenReturn(responseSpec);
 
     var body = mock(User.class);
-    when(responseSpec.bodyToMono(User.class)).thenReturn(Mono.just(body));
+    when(responseSpec.toEntity(User.class)).thenReturn(Mono.just(ResponseEntity.ok(body)));
     when(retryPolicy.generateCompanion(any()))
         .thenAnswer(inv -> Retry.max(0).generateCompanion(inv.getArgument(0)));
 
@@ -135,6 +219,172 @@ class BitbucketClientTest {
     assertThat(applied.getFirst(HttpHeaders.AUTHORIZATION)).isEqualTo("Basic abc123==");
 
     verify(responseSpec).onStatus(any(), any());
-    verify(responseSpec).bodyToMono(User.class);
+    verify(responseSpec).toEntity(User.class);
+  }
+
+  @Test
+  void retrieveJson_revalidatesWithEtag_and_servesStoredBodyOn304() {
+    var auth = new BitbucketAuth("abc123==", "user", "app");
+    String url = "https://api.bitbucket.org/2.0/user";
+
+    var getSpec = mock(WebClient.RequestHeadersUriSpec.class);
+    when(webClient.get()).thenReturn(getSpec);
+    var headersSpec = mock(WebClient.RequestHeadersSpec.class);
+    doReturn(getSpec).when(getSpec).uri(any(URI.class));
+    doReturn(headersSpec).when(getSpec).headers(any());
+    var responseSpec = mock(WebClient.ResponseSpec.class);
+    when(headersSpec.retrieve()).thenReturn(responseSpec);
+    when(responseSpec.onStatus(any(), any())).thenReturn(responseSpec);
+    when(retryPolicy.generateCompanion(any()))
+        .thenAnswer(inv -> Retry.max(0).generateCompanion(inv.getArgument(0)));
+
+    var body = new User("{me}");
+    when(responseSpec.toEntity(User.class)).thenReturn(
+        Mono.just(ResponseEntity.ok().eTag("\"v1\"").body(body)),
+        Mono.just(ResponseEntity.status(HttpStatus.NOT_MODIFIED).build()));
+
+    StepVerifier.create(client.retrieveJson(auth, url, User.class)).expectNext(body).verifyComplete();
+    StepVerifier.create(client.retrieveJson(auth, url, User.class)).expectNext(body).verifyComplete();
+
+    var headersCap = ArgumentCaptor.forClass(java.util.function.Consumer.class);
+    verify(getSpec, Mockito.times(2)).headers(headersCap.capture());
+
+    var first = new HttpHeaders();
+    headersCap.getAllValues().get(0).accept(first);
+    assertThat(first.getIfNoneMatch()).isEmpty();
+
+    var second = new HttpHeaders();
+    headersCap.getAllValues().get(1).accept(second);
+    assertThat(second.getFirst(HttpHeaders.IF_NONE_MATCH)).isEqualTo("\"v1\"");
+
+    var stats = conditionalGetCache.stats();
+    assertThat(stats.misses()).isEqualTo(1);
+    assertThat(stats.hits()).isEqualTo(1);
+    assertThat(stats.notModified()).isEqualTo(1);
+  }
+
+  @Test
+  void retrieveJson_identicalConcurrentCalls_shareOneRequest_andSurviveOneCancellation() {
+    var auth = new BitbucketAuth("abc123==", "user", "app");
+    String url = "https://api.bitbucket.org/2.0/user";
+
+    var getSpec = mock(WebClient.RequestHeadersUriSpec.class);
+    when(webClient.get()).thenReturn(getSpec);
+    var headersSpec = mock(WebClient.RequestHeadersSpec.class);
+    doReturn(getSpec).when(getSpec).uri(any(URI.class));
+    doReturn(headersSpec).when(getSpec).headers(any());
+    var responseSpec = mock(WebClient.ResponseSpec.class);
+    when(headersSpec.retrieve()).thenReturn(responseSpec);
+    when(responseSpec.onStatus(any(), any())).thenReturn(responseSpec);
+    when(retryPolicy.generateCompanion(any()))
+        .thenAnswer(inv -> Retry.max(0).generateCompanion(inv.getArgument(0)));
+
+    Sinks.One<ResponseEntity<User>> upstream = Sinks.one();
+    when(responseSpec.toEntity(User.class)).thenReturn(upstream.asMono());
+
+    var leaving = client.retrieveJson(auth, url, User.class).subscribe();
+    var received = new java.util.concurrent.atomic.AtomicReference<User>();
+    client.retrieveJson(auth, url, User.class).subscribe(received::set);
+
+    leaving.dispose();
+    var body = new User("{me}");
+    upstream.tryEmitValue(ResponseEntity.ok(body));
+
+    assertThat(received.get()).isSameAs(body);
+    assertThat(client.coalescedRequests()).isEqualTo(1);
+    verify(webClient).get();
+
+    // the flight is gone once it terminated; a later call goes upstream again
+    when(responseSpec.toEntity(User.class)).thenReturn(Mono.just(ResponseEntity.ok(body)));
+    StepVerifier.create(client.retrieveJson(auth, url, User.class)).expectNext(body).verifyComplete();
+    verify(webClient, Mockito.times(2)).get();
+  }
+
+  @Test
+  void retrieveJson_sharedRequest_isBoundedByEachCallersOwnDeadline() {
+    when(bitbucketHttpProperties.deadline()).thenReturn(new BitbucketHttpProperties.RequestDeadline(
+        Duration.ofSeconds(60), Duration.ofMinutes(5), Duration.ofSeconds(1)));
+    var auth = new BitbucketAuth("abc123==", "user", "app");
+    String url = "https://api.bitbucket.org/2.0/user";
+
+    var getSpec = mock(WebClient.RequestHeadersUriSpec.class);
+    when(webClient.get()).thenReturn(getSpec);
+    var headersSpec = mock(WebClient.RequestHeadersSpec.class);
+    doReturn(getSpec).when(getSpec).uri(any(URI.class));
+    doReturn(headersSpec).when(getSpec).headers(any());
+    var responseSpec = mock(WebClient.ResponseSpec.class);
+    when(headersSpec.retrieve()).thenReturn(responseSpec);
+    when(responseSpec.onStatus(any(), any())).thenReturn(responseSpec);
+    when(retryPolicy.generateCompanion(any()))
+        .thenAnswer(inv -> Retry.max(0).generateCompanion(inv.getArgument(0)));
+    Sinks.One<ResponseEntity<User>> upstream = Sinks.one();
+    when(responseSpec.toEntity(User.class)).thenReturn(upstream.asMono());
+
+    var clock = Clock.fixed(Instant.parse("2025-08-01T10:00:00Z"), ZoneOffset.UTC);
+    var scheduler = VirtualTimeScheduler.getOrSet();
+    try {
+      var shortError = new java.util.concurrent.atomic.AtomicReference<Throwable>();
+      client.retrieveJson(auth, url, User.class)
+          .contextWrite(Deadline.after(Duration.ofSeconds(2), clock)::attachTo)
+          .subscribe(v -> { }, shortError::set);
+      var received = new java.util.concurrent.atomic.AtomicReference<User>();
+      client.retrieveJson(auth, url, User.class)
+          .contextWrite(Deadline.after(Duration.ofSeconds(30), clock)::attachTo)
+          .subscribe(received::set);
+
+      scheduler.advanceTimeBy(Duration.ofSeconds(3));
+      var body = new User("{me}");
+      upstream.tryEmitValue(ResponseEntity.ok(body));
+
+      assertThat(shortError.get()).isInstanceOf(DeadlineExceededException.class);
+      assertThat(received.get()).isSameAs(body);
+      assertThat(client.coalescedRequests()).isEqualTo(1);
+      verify(webClient).get();
+    } finally {
+      VirtualTimeScheduler.reset();
+    }
+  }
+
+  @Test
+  void retrieveJson_doesNotCallUpstream_whenDeadlineLeavesTooLittleTime() {
+    when(bitbucketHttpProperties.deadline()).thenReturn(new BitbucketHttpProperties.RequestDeadline(
+        Duration.ofSeconds(60), Duration.ofMinutes(5), Duration.ofSeconds(1)));
+    var deadline = Deadline.after(Duration.ofMillis(500), Clock.systemUTC());
+
+    StepVerifier.create(client.retrieveJson(new BitbucketAuth("abc123==", "user", "app"),
+                "https://api.bitbucket.org/2.0/user", User.class)
+            .contextWrite(deadline::attachTo))
+        .verifyError(DeadlineExceededException.class);
+
+    verify(webClient, never()).get();
+  }
+
+  @Test
+  void retrieveJson_isCutOff_whenDeadlinePassesWhileWaiting() {
+    when(bitbucketHttpProperties.deadline()).thenReturn(new BitbucketHttpProperties.RequestDeadline(
+        Duration.ofSeconds(60), Duration.ofMinutes(5), Duration.ofSeconds(1)));
+    var getSpec = mock(WebClient.RequestHeadersUriSpec.class);
+    when(webClient.get()).thenReturn(getSpec);
+    var headersSpec = mock(WebClient.RequestHeadersSpec.class);
+    doReturn(getSpec).when(getSpec).uri(any(URI.class));
+    doReturn(headersSpec).when(getSpec).headers(any());
+    var responseSpec = mock(WebClient.ResponseSpec.class);
+    when(headersSpec.retrieve()).thenReturn(responseSpec);
+    when(responseSpec.onStatus(any(), any())).thenReturn(responseSpec);
+    when(responseSpec.toEntity(User.class)).thenReturn(Mono.never());
+    when(retryPolicy.generateCompanion(any()))
+        .thenAnswer(inv -> Retry.max(3).filter(HttpRetryConfig::isRetryable).generateCompanion(inv.getArgument(0)));
+    var deadline = Deadline.after(Duration.ofSeconds(5),
+        Clock.fixed(Instant.parse("2025-08-01T10:00:00Z"), ZoneOffset.UTC));
+
+    StepVerifier.withVirtualTime(() -> client.retrieveJson(new BitbucketAuth("abc123==", "user", "app"),
+                "https://api.bitbucket.org/2.0/user", User.class)
+            .contextWrite(deadline::attachTo))
+        .expectSubscription()
+        .thenAwait(Duration.ofSeconds(5))
+        .verifyError(DeadlineExceededException.class);
+
+    // the timeout is not retried
+    verify(webClient).get();
   }
 }
@@ -2,26 +2,45 @@ package com.example.bitbucketstats.integration;
 
 
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.tuple;
 import static org.mockito.Mockito.any;
 import static org.mockito.Mockito.anyString;
 import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.doThrow;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.mockStatic;
+import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
+import com.example.bitbucketstats.configuration.BitbucketHttpProperties;
+import com.example.bitbucketstats.exceptions.CircuitOpenException;
+import com.example.bitbucketstats.exceptions.DeadlineExceededException;
 import com.example.bitbucketstats.models.BitbucketAuth;
+import com.example.bitbucketstats.models.Deadline;
+import com.example.bitbucketstats.models.DiffDetails;
 import com.example.bitbucketstats.models.EnrichedPullRequest;
 import com.example.bitbucketstats.models.FieldFilter;
+import com.example.bitbucketstats.integration.response.Activity;
 import com.example.bitbucketstats.integration.response.Comment;
+import com.example.bitbucketstats.integration.response.Destination;
 import com.example.bitbucketstats.integration.response.DiffStat;
 import com.example.bitbucketstats.integration.response.PullRequest;
+import com.example.bitbucketstats.integration.response.Repository;
 import com.example.bitbucketstats.integration.response.User;
 import com.example.bitbucketstats.integration.response.page.PullRequestPage;
 import com.example.bitbucketstats.controllers.request.BaseParams;
+import com.example.bitbucketstats.utils.GeneralUtils;
 import com.example.bitbucketstats.utils.PullRequestUtils;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import java.nio.charset.StandardCharsets;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
 import java.time.LocalDate;
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
 import java.util.List;
 import org.junit.jupiter.api.Tag;
 import org.junit.jupiter.api.Test;
@@ -32,6 +51,9 @@ import org.mockito.Mock;
 import org.mockito.MockedStatic;
 import org.mockito.Mockito;
 import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.reactive.function.client.WebClientResponseException;
+import org.springframework.web.server.ResponseStatusException;
 import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 import reactor.test.StepVerifier;
@@ -43,6 +65,14 @@ class BitbucketServiceTest {
 
   @Mock
   private BitbucketClient bitbucketClient;
+  @Mock
+  private RateLimitScheduler rateLimitScheduler;
+  @Mock
+  private PullRequestSearchCache pullRequestSearchCache;
+  @Mock
+  private DiffStatStore diffStatStore;
+  @Mock
+  private CommentCountCache commentCountCache;
 
   @InjectMocks
   private BitBucketService service;
@@ -100,7 +130,7 @@ class BitbucketServiceTest {
       mocked.when(() -> EnrichedPullRequest.from(page1, "svc-a")).thenReturn(pr1);
       mocked.when(() -> EnrichedPullRequest.from(page2, "svc-a")).thenReturn(pr2);
 
-      var flux = service.searchPullRequestsByFilter(filter, "svc-a", auth, params);
+      var flux = service.searchPullRequestsByFilter(filter, FieldProjection.AUTHOR_STATS, "svc-a", auth, params);
 
       StepVerifier.create(flux.collectList())
           .expectNext(List.of(pr1, pr2))
@@ -115,7 +145,9 @@ class BitbucketServiceTest {
     assertThat(aCap.getValue()).isSameAs(auth);
     String url = urlCap.getValue();
     assertThat(url).contains("/repositories/acme/svc-a/pullrequests")
-        .contains("q=").contains("pagelen=50").contains("fields=").contains("2025-08-01").contains("2025-08-10");
+        .contains("q=").contains("pagelen=50").contains("2025-08-01").contains("2025-08-10")
+        .contains("fields=" + FieldProjection.AUTHOR_STATS.fields())
+        .doesNotContain("participants");
     assertThat(clsCap.getValue()).isEqualTo(PullRequestPage.class);
   }
 
@@ -143,18 +175,19 @@ class BitbucketServiceTest {
       utils.when(() -> PullRequestUtils.prKey(prb1Dup)).thenReturn("K1");
       utils.when(() -> PullRequestUtils.prKey(pra2)).thenReturn("K2");
 
-      // Single stub that branches on the repo argument (index 1)
+      // Single stub that branches on the repo argument (index 2)
       doAnswer(inv -> {
-        String repo = inv.getArgument(1, String.class);
+        String repo = inv.getArgument(2, String.class);
         if ("svc-a".equals(repo)) {
           return Flux.just(pra1, pra2);
         } else if ("svc-b".equals(repo)) {
           return Flux.just(prb1Dup);
         }
         return Flux.empty();
-      }).when(spySvc).searchPullRequestsByFilter(any(), anyString(), any(), any());
+      }).when(spySvc).searchPullRequestsByFilter(any(), any(), anyString(), any(), any());
 
-      var flux = spySvc.searchPullRequestsAcrossRepos(filter, List.of("svc-a", "svc-b"), auth, params);
+      var flux = spySvc.searchPullRequestsAcrossRepos(
+          filter, FieldProjection.AUTHOR_STATS, List.of("svc-a", "svc-b"), auth, params);
 
       StepVerifier.create(flux.collectList())
           .assertNext(list -> {
@@ -166,7 +199,80 @@ class BitbucketServiceTest {
     }
 
     // called once per repo
-    verify(spySvc, times(2)).searchPullRequestsByFilter(any(), anyString(), any(), any());
+    verify(spySvc, times(2)).searchPullRequestsByFilter(any(), any(), anyString(), any(), any());
+    verify(rateLimitScheduler).ensureBudget(auth, 2);
+  }
+
+  @Test
+  void searchPullRequestsAcrossRepos_skipsReposWithOpenCircuit() {
+    var auth = new BitbucketAuth("tok", "alice", "pwd");
+    var params = new BaseParams();
+    params.setWorkspace("acme");
+    params.setSinceDate(LocalDate.of(2025, 8, 1));
+    params.setUntilDate(LocalDate.of(2025, 8, 10));
+
+    var spySvc = Mockito.spy(service);
+    var healthy = mock(EnrichedPullRequest.class);
+    doAnswer(inv -> "svc-a".equals(inv.getArgument(2, String.class))
+        ? Flux.just(healthy)
+        : Flux.error(new CircuitOpenException("acme/svc-b")))
+        .when(spySvc).searchPullRequestsByFilter(any(), any(), anyString(), any(), any());
+
+    StepVerifier.create(spySvc.searchPullRequestsAcrossRepos(FieldFilter.of(FieldFilter.AUTHOR_USERNAME, "alice"),
+            FieldProjection.AUTHOR_STATS, List.of("svc-a", "svc-b"), auth, params))
+        .expectNext(healthy)
+        .verifyComplete();
+  }
+
+  @Test
+  void searchPullRequestsAcrossRepos_keepsPartialRepo_andRecordsIt_whenDeadlineHits() {
+    var auth = new BitbucketAuth("tok", "alice", "pwd");
+    var params = new BaseParams();
+    params.setWorkspace("acme");
+    params.setSinceDate(LocalDate.of(2025, 8, 1));
+    params.setUntilDate(LocalDate.of(2025, 8, 10));
+
+    var spySvc = Mockito.spy(service);
+    var first = mock(EnrichedPullRequest.class);
+    when(first.repo()).thenReturn("svc-a");
+    var other = mock(EnrichedPullRequest.class);
+    when(other.repo()).thenReturn("svc-b");
+    doAnswer(inv -> "svc-a".equals(inv.getArgument(2, String.class))
+        ? Flux.just(first).concatWith(Flux.error(new DeadlineExceededException("/repositories/acme/svc-a")))
+        : Flux.just(other))
+        .when(spySvc).searchPullRequestsByFilter(any(), any(), anyString(), any(), any());
+    var deadline = Deadline.after(Duration.ofSeconds(30), Clock.systemUTC());
+
+    StepVerifier.create(spySvc.searchPullRequestsAcrossRepos(FieldFilter.of(FieldFilter.AUTHOR_USERNAME, "alice"),
+                FieldProjection.AUTHOR_STATS, List.of("svc-a", "svc-b"), auth, params)
+            .contextWrite(deadline::attachTo))
+        .expectNextCount(2)
+        .verifyComplete();
+
+    assertThat(deadline.incomplete()).isTrue();
+    assertThat(deadline.missingRepositories()).containsExactly("svc-a");
+  }
+
+  @Test
+  void searchPullRequestsAcrossRepos_refusesUpFront_whenBudgetIsInsufficient() {
+    var auth = new BitbucketAuth("tok", "alice", "pwd");
+    var params = new BaseParams();
+    params.setWorkspace("acme");
+    params.setSinceDate(LocalDate.of(2025, 8, 1));
+    params.setUntilDate(LocalDate.of(2025, 8, 10));
+
+    doThrow(new ResponseStatusException(HttpStatus.TOO_MANY_REQUESTS))
+        .when(rateLimitScheduler).ensureBudget(auth, 3);
+
+    var flux = service.searchPullRequestsAcrossRepos(
+        FieldFilter.of(FieldFilter.AUTHOR_USERNAME, "alice"), FieldProjection.AUTHOR_STATS,
+        List.of("a", "b", "c"), auth, params);
+
+    StepVerifier.create(flux)
+        .expectError(ResponseStatusException.class)
+        .verify();
+
+    verify(bitbucketClient, never()).fetchAll(any(), anyString(), any());
   }
 
   @Test
@@ -193,7 +299,7 @@ class BitbucketServiceTest {
     when(bitbucketClient.fetchAll(any(), anyString(), any()))
         .thenReturn(Flux.just(c1, c2, c3));
 
-    var mono = service.fetchMyCommentCount(auth, "acme", "svc-a", 123, "me-uuid");
+    var mono = service.fetchMyCommentCount(auth, "acme", "svc-a", 123, "me-uuid", null);
 
     StepVerifier.create(mono)
         .expectNext(1) // only c1 passes all filters
@@ -201,7 +307,106 @@ class BitbucketServiceTest {
 
     ArgumentCaptor<String> urlCap = ArgumentCaptor.forClass(String.class);
     verify(bitbucketClient).fetchAll(any(), urlCap.capture(), any());
-    assertThat(urlCap.getValue()).contains("/repositories/acme/svc-a/pullrequests/123/comments");
+    assertThat(urlCap.getValue()).contains("/repositories/acme/svc-a/pullrequests/123/comments")
+        .contains("fields=" + FieldProjection.COMMENT_COUNT.fields())
+        .contains("q=" + GeneralUtils.urlEncode("user.uuid=\"me-uuid\" AND deleted=false"));
+  }
+
+  @Test
+  void fetchMyCommentCount_withUpdateTime_countsAgainOnlyWhenThePrMoved() {
+    var auth = new BitbucketAuth("tok", "alice", "pwd");
+    var counting = new BitBucketService(bitbucketClient, rateLimitScheduler, pullRequestSearchCache, diffStatStore,
+        new CommentCountCache(Caffeine.newBuilder().buildAsync()));
+    var mine = new Comment(1, new User("me-uuid"), false, false, new Comment.Content("nit"), null);
+    when(bitbucketClient.fetchAll(any(), anyString(), any())).thenReturn(Flux.just(mine));
+    var updated = OffsetDateTime.parse("2025-08-03T10:00:00Z");
+
+    StepVerifier.create(counting.fetchMyCommentCount(auth, "acme", "svc-a", 1, "me-uuid", updated))
+        .expectNext(1)
+        .verifyComplete();
+    StepVerifier.create(counting.fetchMyCommentCount(auth, "acme", "svc-a", 1, "me-uuid", updated))
+        .expectNext(1)
+        .verifyComplete();
+    verify(bitbucketClient, times(1)).fetchAll(any(), anyString(), any());
+
+    when(bitbucketClient.fetchAll(any(), anyString(), any())).thenReturn(Flux.just(mine, mine));
+    StepVerifier.create(counting.fetchMyCommentCount(auth, "acme", "svc-a", 1, "me-uuid", updated.plusHours(1)))
+        .expectNext(2)
+        .verifyComplete();
+    verify(bitbucketClient, times(2)).fetchAll(any(), anyString(), any());
+  }
+
+  @Test
+  void fetchMyCommentCount_fallsBackToClientFiltering_whenServerIgnoresQuery() {
+    var auth = new BitbucketAuth("tok", "alice", "pwd");
+    var mine = new Comment(1, new User("me-uuid"), false, false, new Comment.Content("lgtm"), null);
+    var theirs = new Comment(2, new User("bot-uuid"), false, false, new Comment.Content("build passed"), null);
+
+    when(bitbucketClient.fetchAll(any(), anyString(), any()))
+        .thenReturn(Flux.just(mine, theirs));
+
+    StepVerifier.create(service.fetchMyCommentCount(auth, "acme", "svc-a", 1, "me-uuid", null))
+        .expectNext(1)
+        .verifyComplete();
+    StepVerifier.create(service.fetchMyCommentCount(auth, "acme", "svc-a", 2, "me-uuid", null))
+        .expectNext(1)
+        .verifyComplete();
+
+    ArgumentCaptor<String> urlCap = ArgumentCaptor.forClass(String.class);
+    verify(bitbucketClient, times(2)).fetchAll(any(), urlCap.capture(), any());
+    assertThat(urlCap.getAllValues().get(0)).contains("q=");
+    assertThat(urlCap.getAllValues().get(1)).doesNotContain("q=");
+  }
+
+  @Test
+  void fetchMyCommentCount_retriesWithoutQuery_whenServerRejectsIt() {
+    var auth = new BitbucketAuth("tok", "alice", "pwd");
+    var mine = new Comment(1, new User("me-uuid"), false, false, new Comment.Content("lgtm"), null);
+    var badRequest = WebClientResponseException.create(400, "Bad Request", null,
+        "{\"type\":\"error\",\"error\":{\"message\":\"Invalid query\"}}".getBytes(StandardCharsets.UTF_8),
+        StandardCharsets.UTF_8);
+
+    when(bitbucketClient.fetchAll(any(), anyString(), any()))
+        .thenReturn(Flux.error(badRequest))
+        .thenReturn(Flux.just(mine));
+
+    StepVerifier.create(service.fetchMyCommentCount(auth, "acme", "svc-a", 1, "me-uuid", null))
+        .expectNext(1)
+        .verifyComplete();
+    StepVerifier.create(service.fetchMyCommentCount(auth, "other", "svc-a", 1, "me-uuid", null))
+        .expectNext(1)
+        .verifyComplete();
+
+    ArgumentCaptor<String> urlCap = ArgumentCaptor.forClass(String.class);
+    verify(bitbucketClient, times(3)).fetchAll(any(), urlCap.capture(), any());
+    assertThat(urlCap.getAllValues().get(0)).contains("q=");
+    assertThat(urlCap.getAllValues().get(1)).doesNotContain("q=");
+    assertThat(urlCap.getAllValues().get(2)).as("other workspaces keep the query")
+        .contains("/repositories/other/").contains("q=");
+  }
+
+  @Test
+  void fetchMyCommentCount_keepsTheQuery_whenA400IsNotAboutIt() {
+    var auth = new BitbucketAuth("tok", "alice", "pwd");
+    var mine = new Comment(1, new User("me-uuid"), false, false, new Comment.Content("lgtm"), null);
+    var deleted = WebClientResponseException.create(400, "Bad Request", null,
+        "{\"type\":\"error\",\"error\":{\"message\":\"Pull request is gone\"}}".getBytes(StandardCharsets.UTF_8),
+        StandardCharsets.UTF_8);
+
+    when(bitbucketClient.fetchAll(any(), anyString(), any()))
+        .thenReturn(Flux.error(deleted))
+        .thenReturn(Flux.just(mine));
+
+    StepVerifier.create(service.fetchMyCommentCount(auth, "acme", "svc-a", 1, "me-uuid", null))
+        .expectErrorMatches(e -> e == deleted)
+        .verify();
+    StepVerifier.create(service.fetchMyCommentCount(auth, "acme", "svc-a", 2, "me-uuid", null))
+        .expectNext(1)
+        .verifyComplete();
+
+    ArgumentCaptor<String> urlCap = ArgumentCaptor.forClass(String.class);
+    verify(bitbucketClient, times(2)).fetchAll(any(), urlCap.capture(), any());
+    assertThat(urlCap.getAllValues()).allSatisfy(url -> assertThat(url).contains("q="));
   }
 
   @Test
@@ -223,7 +428,7 @@ class BitbucketServiceTest {
     when(bitbucketClient.fetchAll(any(), anyString(), any()))
         .thenReturn(Flux.just(ds1, ds2, ds3));
 
-    var mono = service.fetchDiffFilesChanged(auth, "acme", "svc-b", 456);
+    var mono = service.fetchDiffFilesChanged(auth, "acme", "svc-b", 456, null);
 
     StepVerifier.create(mono)
         .assertNext(d -> {
@@ -233,8 +438,145 @@ class BitbucketServiceTest {
         })
         .verifyComplete();
 
+    verify(diffStatStore, never()).put(anyString(), any());
+    ArgumentCaptor<String> urlCap = ArgumentCaptor.forClass(String.class);
+    verify(bitbucketClient).fetchAll(any(), urlCap.capture(), any());
+    assertThat(urlCap.getValue()).contains("/repositories/acme/svc-b/pullrequests/456/diffstat")
+        .contains("fields=" + FieldProjection.DIFFSTAT_TOTALS.fields());
+  }
+
+  @Test
+  void fetchDiffFilesChanged_withKnownCommits_readsTheStoreFirst_andStoresWhatItFetches() {
+    var auth = new BitbucketAuth("tok", "alice", "pwd");
+    var stored = new DiffDetails(4, 40, 2);
+    when(diffStatStore.get("acme/svc-b#456@a1..b2@c3")).thenReturn(stored);
+
+    StepVerifier.create(service.fetchDiffFilesChanged(auth, "acme", "svc-b", 456, "a1..b2@c3"))
+        .expectNext(stored)
+        .verifyComplete();
+    verify(bitbucketClient, never()).fetchAll(any(), anyString(), any());
+
+    when(bitbucketClient.fetchAll(any(), anyString(), any())).thenReturn(Flux.just(new DiffStat("modified", 7, 1)));
+    StepVerifier.create(service.fetchDiffFilesChanged(auth, "acme", "svc-b", 457, "d4..e5"))
+        .expectNext(new DiffDetails(1, 7, 1))
+        .verifyComplete();
+    verify(diffStatStore).put("acme/svc-b#457@d4..e5", new DiffDetails(1, 7, 1));
+  }
+
+  @Test
+  void listUserPullRequests_filtersReposAndUpdateWindowLocally() {
+    var auth = new BitbucketAuth("tok", "alice", "pwd");
+    var params = new BaseParams();
+    params.setWorkspace("acme");
+    params.setRepo(List.of("svc-a", "SVC-B"));
+    params.setSinceDate(LocalDate.of(2025, 8, 1));
+    params.setUntilDate(LocalDate.of(2025, 8, 10));
+    params.setState(List.of("OPEN", "MERGED"));
+
+    when(bitbucketClient.fetchAll(any(), anyString(), any())).thenReturn(Flux.just(
+        pr(1, "acme/svc-a", "2025-08-03T12:00:00Z"),
+        pr(2, "acme/svc-b", "2025-08-01T00:00:00Z"),
+        pr(3, "acme/svc-c", "2025-08-03T12:00:00Z"),
+        pr(4, "acme/svc-a", "2025-07-31T23:59:59Z"),
+        pr(5, "acme/svc-a", "2025-08-10T00:00:01Z"),
+        pr(6, null, "2025-08-03T12:00:00Z")));
+
+    StepVerifier.create(service.listUserPullRequests(
+            "{alice}", FieldProjection.AUTHOR_STATS_BY_USER, auth, params).collectList())
+        .assertNext(list -> assertThat(list).extracting(EnrichedPullRequest::id, EnrichedPullRequest::repo)
+            .containsExactly(tuple(1, "svc-a"),
+                tuple(2, "svc-b")))
+        .verifyComplete();
+
+    ArgumentCaptor<String> urlCap = ArgumentCaptor.forClass(String.class);
+    verify(bitbucketClient).fetchAll(any(), urlCap.capture(), any());
+    assertThat(urlCap.getValue()).startsWith("/workspaces/acme/pullrequests/%7Balice%7D?pagelen=50")
+        .contains("values.destination.repository.full_name")
+        .endsWith("&state=OPEN&state=MERGED");
+    verify(rateLimitScheduler).ensureBudget(auth, 1);
+  }
+
+  @Test
+  void searchPullRequestsByFilter_closedStates_searchOnlyDaysNotCachedYet() {
+    var auth = new BitbucketAuth("tok", "alice", "pwd");
+    var cache = new PullRequestSearchCache(new BitbucketHttpProperties.SearchCache(true, 1, Duration.ofDays(30), 1000),
+        Clock.fixed(Instant.parse("2025-08-20T08:00:00Z"), ZoneOffset.UTC));
+    var cachingService = new BitBucketService(bitbucketClient, rateLimitScheduler, cache, diffStatStore,
+        commentCountCache);
+    var filter = FieldFilter.of(FieldFilter.AUTHOR_USERNAME, "alice");
+    var params = new BaseParams();
+    params.setWorkspace("acme");
+    params.setSinceDate(LocalDate.of(2025, 8, 1));
+    params.setUntilDate(LocalDate.of(2025, 8, 10));
+
+    when(bitbucketClient.fetchAll(any(), anyString(), any())).thenReturn(Flux.just(
+        pr(1, null, "2025-08-02T12:00:00Z"),
+        pr(2, null, "2025-08-09T23:00:00Z")));
+    StepVerifier.create(cachingService.searchPullRequestsByFilter(filter, FieldProjection.AUTHOR_STATS, "svc-a", auth,
+            params).collectList())
+        .assertNext(list -> assertThat(list).extracting(EnrichedPullRequest::id).containsExactly(1, 2))
+        .verifyComplete();
+
+    // the window moves forward by a day: only that day is searched, PR 1 is answered from cache
+    params.setSinceDate(LocalDate.of(2025, 8, 2));
+    params.setUntilDate(LocalDate.of(2025, 8, 11));
+    when(bitbucketClient.fetchAll(any(), anyString(), any()))
+        .thenReturn(Flux.just(pr(3, null, "2025-08-10T09:00:00Z")));
+    StepVerifier.create(cachingService.searchPullRequestsByFilter(filter, FieldProjection.AUTHOR_STATS, "svc-a", auth,
+            params).collectList())
+        .assertNext(list -> assertThat(list).extracting(EnrichedPullRequest::id).containsExactly(3, 2, 1))
+        .verifyComplete();
+
+    ArgumentCaptor<String> urlCap = ArgumentCaptor.forClass(String.class);
+    verify(bitbucketClient, times(2)).fetchAll(any(), urlCap.capture(), any());
+    assertThat(urlCap.getAllValues().get(0))
+        .contains(GeneralUtils.urlEncode("updated_on>=\"2025-08-01\" AND updated_on<\"2025-08-10\""));
+    assertThat(urlCap.getAllValues().get(1))
+        .contains(GeneralUtils.urlEncode("updated_on>=\"2025-08-10\" AND updated_on<\"2025-08-11\""));
+  }
+
+  @Test
+  void countUserPullRequests_readsTheReportedSize() {
+    var auth = new BitbucketAuth("tok", "alice", "pwd");
+    var params = new BaseParams();
+    params.setWorkspace("acme");
+    when(bitbucketClient.retrieveJson(any(), anyString(), any()))
+        .thenReturn(Mono.just(new PullRequestPage(null, 137, 1, List.of())));
+
+    StepVerifier.create(service.countUserPullRequests("alice", auth, params))
+        .expectNext(137)
+        .verifyComplete();
+
+    ArgumentCaptor<String> urlCap = ArgumentCaptor.forClass(String.class);
+    verify(bitbucketClient).retrieveJson(any(), urlCap.capture(), any());
+    assertThat(urlCap.getValue()).isEqualTo("/workspaces/acme/pullrequests/alice?pagelen=1&fields=size&state=MERGED");
+  }
+
+  @Test
+  void fetchActivityDigest_readsTheActivityStreamOnce_andDigestsIt() {
+    var auth = new BitbucketAuth("tok", "alice", "pwd");
+    var at = OffsetDateTime.parse("2025-08-02T10:00:00Z");
+    when(bitbucketClient.fetchAll(any(), anyString(), any())).thenReturn(Flux.just(
+        new Activity(new Comment(1, new User("me-uuid"), false, false, new Comment.Content("nit"), at), null, null,
+            null),
+        new Activity(null, new Activity.Approval(at.plusHours(1), new User("me-uuid")), null, null)));
+
+    StepVerifier.create(service.fetchActivityDigest(auth, "acme", "svc-a", 7, "author-uuid", at))
+        .assertNext(d -> {
+          assertThat(d.commentsBy("me-uuid")).isEqualTo(1);
+          assertThat(d.firstReviewAt()).isEqualTo(at);
+          assertThat(d.firstApprovalAt()).isEqualTo(at.plusHours(1));
+        })
+        .verifyComplete();
+
     ArgumentCaptor<String> urlCap = ArgumentCaptor.forClass(String.class);
     verify(bitbucketClient).fetchAll(any(), urlCap.capture(), any());
-    assertThat(urlCap.getValue()).contains("/repositories/acme/svc-b/pullrequests/456/diffstat");
+    assertThat(urlCap.getValue()).startsWith("/repositories/acme/svc-a/pullrequests/7/activity")
+        .contains("fields=" + FieldProjection.ACTIVITY_DIGEST.fields());
+  }
+
+  private static PullRequest pr(int id, String repository, String updatedOn) {
+    return new PullRequest(id, "PR " + id, null, 0, null, null, OffsetDateTime.parse(updatedOn),
+        repository == null ? null : new Destination(new Repository(repository), null), null);
   }
 }
@@ -0,0 +1,98 @@
+package com.example.bitbucketstats.integration;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+
+import com.example.bitbucketstats.configuration.DiskCacheStore;
+import com.example.bitbucketstats.integration.CommentCountCache.Key;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import java.time.OffsetDateTime;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+import reactor.test.StepVerifier;
+
+@Tag("unit")
+class CommentCountCacheTest {
+
+  private static final Key KEY = new Key("cred", "acme", "svc-a", 7, "me-uuid");
+  private static final OffsetDateTime UPDATED = OffsetDateTime.parse("2025-08-03T10:00:00Z");
+
+  private final CommentCountCache cache = new CommentCountCache(Caffeine.newBuilder().buildAsync());
+  private final AtomicInteger loads = new AtomicInteger();
+
+  @Test
+  void unchangedPr_reusesTheCount_movedPr_isCountedAgain() {
+    StepVerifier.create(cache.get(KEY, UPDATED, () -> load(3))).expectNext(3).verifyComplete();
+    StepVerifier.create(cache.get(KEY, UPDATED, () -> load(4))).expectNext(3).verifyComplete();
+    // same instant, other offset: not an update
+    StepVerifier.create(cache.get(KEY, OffsetDateTime.parse("2025-08-03T12:00:00+02:00"), () -> load(4)))
+        .expectNext(3)
+        .verifyComplete();
+    StepVerifier.create(cache.get(KEY, UPDATED.plusMinutes(5), () -> load(5))).expectNext(5).verifyComplete();
+
+    assertThat(loads.get()).isEqualTo(2);
+    assertThat(cache.hits()).isEqualTo(2);
+    assertThat(cache.misses()).isEqualTo(2);
+    assertThat(cache.size()).isEqualTo(1);
+  }
+
+  @Test
+  void concurrentMisses_shareOneLoad() {
+    Sinks.One<Integer> upstream = Sinks.one();
+    var first = cache.get(KEY, UPDATED, () -> {
+      loads.incrementAndGet();
+      return upstream.asMono();
+    }).toFuture();
+    var second = cache.get(KEY, UPDATED, () -> load(9)).toFuture();
+
+    upstream.tryEmitValue(6);
+
+    assertThat(first.join()).isEqualTo(6);
+    assertThat(second.join()).isEqualTo(6);
+    assertThat(loads.get()).isEqualTo(1);
+  }
+
+  @Test
+  void failedLoad_isNotKept() {
+    StepVerifier.create(cache.get(KEY, UPDATED, () -> Mono.error(new IllegalStateException("boom"))))
+        .verifyError(IllegalStateException.class);
+
+    StepVerifier.create(cache.get(KEY, UPDATED, () -> load(2))).expectNext(2).verifyComplete();
+  }
+
+  @Test
+  void loadRunsInTheCallersContext() {
+    var loaded = cache.get(KEY, UPDATED, () -> Mono.deferContextual(ctx -> Mono.just(ctx.<Integer>get("n"))))
+        .contextWrite(ctx -> ctx.put("n", 11));
+
+    StepVerifier.create(loaded).expectNext(11).verifyComplete();
+  }
+
+  @Test
+  void invalidate_removesOnlyTheMatchingRecordsFromDisk() {
+    var disk = mock(DiskCacheStore.class);
+    var tiered = new CommentCountCache(Caffeine.newBuilder().buildAsync(), disk);
+    var other = new Key("cred", "acme", "svc-b", 8, "me-uuid");
+    StepVerifier.create(tiered.get(KEY, UPDATED, () -> load(3))).expectNext(3).verifyComplete();
+    StepVerifier.create(tiered.get(other, UPDATED, () -> load(4))).expectNext(4).verifyComplete();
+
+    assertThat(tiered.invalidate(k -> "svc-a".equals(k.repo()))).isEqualTo(1);
+
+    verify(disk).remove(KEY.toString());
+    verify(disk, never()).remove(other.toString());
+    verify(disk, never()).clear();
+    assertThat(tiered.size()).isEqualTo(1);
+  }
+
+  private Mono<Integer> load(int count) {
+    return Mono.fromCallable(() -> {
+      loads.incrementAndGet();
+      return count;
+    });
+  }
+}
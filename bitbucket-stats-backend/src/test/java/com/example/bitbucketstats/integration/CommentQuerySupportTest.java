@@ -0,0 +1,45 @@
+package com.example.bitbucketstats.integration;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.atomic.AtomicLong;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.springframework.web.reactive.function.client.WebClientResponseException;
+
+@Tag("unit")
+class CommentQuerySupportTest {
+
+  private final AtomicLong clock = new AtomicLong(1);
+  private final CommentQuerySupport support = new CommentQuerySupport(clock::get);
+
+  @Test
+  void fallBack_onlyAffectsItsWorkspace_untilTheQueryIsProbedAgain() {
+    support.fallBack("acme", "ignored by the server");
+
+    assertThat(support.supported("acme")).isFalse();
+    assertThat(support.supported("other")).isTrue();
+
+    clock.addAndGet(CommentQuerySupport.REPROBE_AFTER.toNanos() - 1);
+    assertThat(support.supported("acme")).isFalse();
+
+    clock.addAndGet(1);
+    assertThat(support.supported("acme")).isTrue();
+    assertThat(support.supported("acme")).as("stays on until it fails again").isTrue();
+  }
+
+  @Test
+  void rejectsQuery_onlyFor400sAboutTheQuery() {
+    assertThat(CommentQuerySupport.rejectsQuery(badRequest("{\"error\":{\"message\":\"Invalid query: user.uuid\"}}")))
+        .isTrue();
+    assertThat(CommentQuerySupport.rejectsQuery(badRequest("{\"error\":{\"message\":\"Malformed UUID\"}}")))
+        .isFalse();
+    assertThat(CommentQuerySupport.rejectsQuery(badRequest(""))).isFalse();
+  }
+
+  private static WebClientResponseException badRequest(String body) {
+    return WebClientResponseException.create(400, "Bad Request", null, body.getBytes(StandardCharsets.UTF_8),
+        StandardCharsets.UTF_8);
+  }
+}
@@ -0,0 +1,122 @@
+package com.example.bitbucketstats.integration;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import com.example.bitbucketstats.configuration.BitbucketHttpProperties;
+import com.example.bitbucketstats.configuration.CacheMemoryBudget;
+import com.example.bitbucketstats.integration.response.User;
+import com.example.bitbucketstats.models.BitbucketAuth;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import java.time.Duration;
+import java.util.Map;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.util.unit.DataSize;
+
+@Tag("unit")
+class ConditionalGetCacheTest {
+
+  private static final String URL = "https://api.bitbucket.org/2.0/user";
+
+  private final ConditionalGetCache cache =
+      new ConditionalGetCache(new BitbucketHttpProperties.ConditionalGet(true, DataSize.ofKilobytes(64)));
+
+  @Test
+  void key_separatesCredentials() {
+    var a = new BitbucketAuth("a", null, null);
+    var b = new BitbucketAuth("b", null, null);
+    assertThat(ConditionalGetCache.key(a, URL)).isNotEqualTo(ConditionalGetCache.key(b, URL));
+  }
+
+  @Test
+  void storesValidators_and_appliesThemOnNextLookup() {
+    var body = new User("{me}");
+    var response = ResponseEntity.ok()
+        .eTag("\"abc\"")
+        .header(HttpHeaders.LAST_MODIFIED, "Wed, 01 Oct 2025 10:00:00 GMT")
+        .body(body);
+
+    assertThat(cache.lookup("k", User.class)).isNull();
+    assertThat(cache.resolve("k", null, response, User.class)).isSameAs(body);
+
+    var entry = cache.lookup("k", User.class);
+    assertThat(entry).isNotNull();
+
+    var headers = new HttpHeaders();
+    ConditionalGetCache.applyValidators(entry, headers);
+    assertThat(headers.getFirst(HttpHeaders.IF_NONE_MATCH)).isEqualTo("\"abc\"");
+    assertThat(headers.getFirst(HttpHeaders.IF_MODIFIED_SINCE)).isEqualTo("Wed, 01 Oct 2025 10:00:00 GMT");
+
+    ResponseEntity<User> notModified = ResponseEntity.status(HttpStatus.NOT_MODIFIED).build();
+    assertThat(cache.resolve("k", entry, notModified, User.class)).isSameAs(body);
+
+    var stats = cache.stats();
+    assertThat(stats.misses()).isEqualTo(1);
+    assertThat(stats.hits()).isEqualTo(1);
+    assertThat(stats.notModified()).isEqualTo(1);
+    assertThat(stats.entries()).isEqualTo(1);
+  }
+
+  @Test
+  void responseWithoutValidators_isNotStored_andDropsPreviousEntry() {
+    cache.resolve("k", null, ResponseEntity.ok().eTag("\"1\"").body(new User("{me}")), User.class);
+    cache.resolve("k", null, ResponseEntity.ok(new User("{me}")), User.class);
+
+    assertThat(cache.lookup("k", User.class)).isNull();
+  }
+
+  @Test
+  void lookup_ignoresEntriesOfAnotherType() {
+    cache.resolve("k", null, ResponseEntity.ok().eTag("\"1\"").body(new User("{me}")), User.class);
+
+    assertThat(cache.lookup("k", String.class)).isNull();
+  }
+
+  @Test
+  void notModified_withoutStoredEntry_fails() {
+    ResponseEntity<User> notModified = ResponseEntity.status(HttpStatus.NOT_MODIFIED).build();
+
+    assertThatThrownBy(() -> cache.resolve("k", null, notModified, User.class))
+        .isInstanceOf(IllegalStateException.class);
+  }
+
+  @Test
+  void withBudget_entriesWithoutALength_areWeighedByTheDecodedBody_notTheDefaultLength() {
+    var budget = new CacheMemoryBudget(new BitbucketHttpProperties.CacheBudget(true, DataSize.ofMegabytes(1),
+        Duration.ofSeconds(2), Map.of()), new ObjectMapper());
+    var budgeted = new ConditionalGetCache(new BitbucketHttpProperties.ConditionalGet(true, DataSize.ofKilobytes(64)),
+        null, budget);
+    var body = new User("{me}");
+
+    budgeted.resolve("k", null, ResponseEntity.ok().eTag("\"1\"").body(body), User.class);
+
+    assertThat(budgeted.stats().weightedBytes()).isEqualTo(budget.weigh("k", body)).isLessThan(1024);
+  }
+
+  @Test
+  void withBudget_entriesWithALength_areWeighedByIt_withoutSerializingTheBody() {
+    var budget = new CacheMemoryBudget(new BitbucketHttpProperties.CacheBudget(true, DataSize.ofMegabytes(1),
+        Duration.ofSeconds(2), Map.of()), new ObjectMapper());
+    var budgeted = new ConditionalGetCache(new BitbucketHttpProperties.ConditionalGet(true, DataSize.ofKilobytes(64)),
+        null, budget);
+
+    budgeted.resolve("k", null, ResponseEntity.ok().eTag("\"1\"").contentLength(2000).body(new User("{me}")),
+        User.class);
+
+    assertThat(budgeted.stats().weightedBytes()).isEqualTo(budget.weighJson("k", 2000))
+        .isGreaterThan(2 * 2000);
+  }
+
+  @Test
+  void disabled_neverStores() {
+    var disabled = new ConditionalGetCache(new BitbucketHttpProperties.ConditionalGet(false, DataSize.ofKilobytes(64)));
+    disabled.resolve("k", null, ResponseEntity.ok().eTag("\"1\"").body(new User("{me}")), User.class);
+
+    assertThat(disabled.lookup("k", User.class)).isNull();
+    assertThat(disabled.stats().entries()).isZero();
+  }
+}
@@ -0,0 +1,131 @@
+package com.example.bitbucketstats.integration;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import com.example.bitbucketstats.configuration.BitbucketHttpProperties;
+import com.example.bitbucketstats.models.DiffDetails;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.Arrays;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+@Tag("unit")
+class DiffStatStoreTest {
+
+  private static final String KEY = DiffStatStore.key("acme", "svc-a", 7, "a1..b2@c3");
+
+  @TempDir
+  Path dir;
+
+  @Test
+  void storedDiffstats_surviveARestart() {
+    var store = store(100);
+    store.put(KEY, new DiffDetails(3, 40, 2));
+    store.put(DiffStatStore.key("acme", "svc-a", 8, "d4..e5"), new DiffDetails(1, 1, 0));
+    store.close();
+
+    var reopened = store(100);
+
+    assertThat(reopened.get(KEY)).isEqualTo(new DiffDetails(3, 40, 2));
+    assertThat(reopened.size()).isEqualTo(2);
+    reopened.close();
+  }
+
+  @Test
+  void differentCommits_areDifferentEntries() {
+    var store = store(100);
+    store.put(KEY, new DiffDetails(3, 40, 2));
+
+    assertThat(store.get(DiffStatStore.key("acme", "svc-a", 7, "a1..b2"))).isNull();
+    assertThat(store.get(DiffStatStore.key("acme", "svc-b", 7, "a1..b2@c3"))).isNull();
+    store.close();
+  }
+
+  @Test
+  void recordCutShortByACrash_isDropped_andTheRestIsKept() throws IOException {
+    var store = store(100);
+    store.put(KEY, new DiffDetails(3, 40, 2));
+    store.put(DiffStatStore.key("acme", "svc-a", 8, "d4..e5"), new DiffDetails(1, 1, 0));
+    store.close();
+    var file = dir.resolve(DiffStatStore.FILE_NAME);
+    var bytes = Files.readAllBytes(file);
+    Files.write(file, Arrays.copyOf(bytes, bytes.length - 5));
+
+    var reopened = store(100);
+
+    assertThat(reopened.size()).isEqualTo(1);
+    reopened.put(DiffStatStore.key("acme", "svc-a", 9, "f6..g7"), new DiffDetails(2, 2, 2));
+    reopened.close();
+    var again = store(100);
+    assertThat(again.size()).isEqualTo(2);
+    again.close();
+  }
+
+  @Test
+  void corruptedRecord_failsItsChecksum_andIsNotReadBack() throws IOException {
+    var store = store(100);
+    store.put(KEY, new DiffDetails(3, 40, 2));
+    store.put(DiffStatStore.key("acme", "svc-a", 8, "d4..e5"), new DiffDetails(1, 1, 0));
+    store.close();
+    var file = dir.resolve(DiffStatStore.FILE_NAME);
+    var bytes = Files.readAllBytes(file);
+    bytes[bytes.length - 1] ^= 0x7f;
+    Files.write(file, bytes);
+
+    var reopened = store(100);
+
+    assertThat(reopened.size()).isEqualTo(1);
+    assertThat(reopened.get(DiffStatStore.key("acme", "svc-a", 8, "d4..e5"))).isNull();
+    reopened.close();
+  }
+
+  @Test
+  void theLogIsBoundedByMaxEntries() throws IOException {
+    var store = store(10);
+    for (int i = 0; i < 100; i++) {
+      store.put(DiffStatStore.key("acme", "svc-a", i, "rev"), new DiffDetails(i, i, i));
+    }
+    store.close();
+
+    var reopened = store(10);
+    assertThat(reopened.size()).isLessThanOrEqualTo(10);
+    reopened.close();
+    // rewritten whenever it holds twice the bound: header plus at most 20 small records
+    assertThat(Files.size(dir.resolve(DiffStatStore.FILE_NAME))).isLessThan(8 + 21 * 40);
+  }
+
+  @Test
+  void unknownFile_isReplaced_andDisabledStoreKeepsNothing() throws IOException {
+    Files.writeString(dir.resolve(DiffStatStore.FILE_NAME), "not a diffstat store");
+    var store = store(100);
+    assertThat(store.size()).isZero();
+    store.close();
+
+    var disabled = new DiffStatStore(new BitbucketHttpProperties.DiffStatCache(false, dir.toString(), 100));
+    disabled.put(KEY, new DiffDetails(3, 40, 2));
+    assertThat(disabled.get(KEY)).isNull();
+    disabled.close();
+  }
+
+  @Test
+  void close_canBeCalledAgain_onceTheWriterIsStopped() {
+    var store = store(100);
+    store.put(KEY, new DiffDetails(3, 40, 2));
+    store.close();
+    store.close();
+
+    var reopened = store(100);
+    assertThat(reopened.get(KEY)).isEqualTo(new DiffDetails(3, 40, 2));
+    reopened.close();
+  }
+
+  private DiffStatStore store(long maxEntries) {
+    var store = new DiffStatStore(new BitbucketHttpProperties.DiffStatCache(true, dir.toString(), maxEntries));
+    store.loaded().block(Duration.ofSeconds(5));
+    return store;
+  }
+}
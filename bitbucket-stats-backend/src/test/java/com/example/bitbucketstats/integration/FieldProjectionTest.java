@@ -0,0 +1,169 @@
+package com.example.bitbucketstats.integration;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.tuple;
+
+import com.example.bitbucketstats.controllers.request.MyPullRequestsParams;
+import com.example.bitbucketstats.controllers.request.PullRequestReviewParams;
+import com.example.bitbucketstats.integration.response.Comment;
+import com.example.bitbucketstats.integration.response.DiffStat;
+import com.example.bitbucketstats.integration.response.page.CommentPage;
+import com.example.bitbucketstats.integration.response.page.DiffStatPage;
+import com.example.bitbucketstats.integration.response.page.PullRequestPage;
+import com.example.bitbucketstats.models.EnrichedPullRequest;
+import com.example.bitbucketstats.services.ResponseAssembler;
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.PropertyNamingStrategies;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+import java.io.IOException;
+import java.io.InputStream;
+import java.time.LocalDate;
+import java.util.List;
+import java.util.Map;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Decodes the recorded upstream responses once in full and once pruned to a projection's fields, the way Bitbucket
+ * would serve them, and checks that everything built from them comes out the same.
+ */
+@Tag("unit")
+class FieldProjectionTest {
+
+  private static final String ME = "{1a2b3c4d-0000-1111-2222-333344445555}";
+
+  private final ObjectMapper mapper = new ObjectMapper()
+      .registerModule(new JavaTimeModule())
+      .setPropertyNamingStrategy(PropertyNamingStrategies.SNAKE_CASE)
+      .configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false);
+  private final ResponseAssembler assembler = new ResponseAssembler();
+
+  @Test
+  void authorStats_requestsEverythingTheStatsResponseReads() throws IOException {
+    var body = body("pullrequests/get-my-prs-page1.json");
+    var params = new MyPullRequestsParams();
+    params.setWorkspace("ws");
+    params.setSinceDate(LocalDate.of(2025, 7, 1));
+    params.setUntilDate(LocalDate.of(2025, 7, 31));
+    params.setIncludePullRequestDetails(true);
+
+    var full = prs(body);
+    var projected = prs(prune(body, FieldProjection.AUTHOR_STATS.paths()));
+
+    assertThat(assembler.toMyPullRequestsResponse(projected, params, Map.of(), null))
+        .isEqualTo(assembler.toMyPullRequestsResponse(full, params, Map.of(), null));
+  }
+
+  @Test
+  void reviewStats_requestsApprovalsAndCommentCounts() throws IOException {
+    var body = body("pullrequests/get-prs-reviewed.json");
+    var params = new PullRequestReviewParams();
+    params.setWorkspace("ws");
+    params.setSinceDate(LocalDate.of(2025, 7, 1));
+    params.setUntilDate(LocalDate.of(2025, 7, 31));
+
+    var full = prs(body);
+    var projected = prs(prune(body, FieldProjection.REVIEW_STATS.paths()));
+
+    assertThat(assembler.toPullRequestReviewResponse(projected, params, ME, List.of(), null, null, null))
+        .isEqualTo(assembler.toPullRequestReviewResponse(full, params, ME, List.of(), null, null, null));
+    // the review flow decides which PRs need a comment scan from these
+    assertThat(projected).extracting(EnrichedPullRequest::id, EnrichedPullRequest::title,
+            EnrichedPullRequest::commentCount)
+        .isEqualTo(full.stream().map(pr -> tuple(pr.id(), pr.title(), pr.commentCount())).toList());
+  }
+
+  @Test
+  void commentCount_requestsEverythingTheCommentFilterReads() throws IOException {
+    var body = body("comments/get-pr-201-comments.json");
+
+    var full = mapper.treeToValue(body, CommentPage.class).values();
+    var projected = mapper.treeToValue(prune(body, FieldProjection.COMMENT_COUNT.paths()), CommentPage.class)
+        .values();
+
+    assertThat(projected).isEqualTo(full.stream()
+        .map(c -> new Comment(null, c.user(), c.deleted(), c.pending(), c.content(), null))
+        .toList());
+    assertThat(projected.stream().filter(FieldProjectionTest::countedForMe).count())
+        .isEqualTo(full.stream().filter(FieldProjectionTest::countedForMe).count())
+        .isPositive();
+  }
+
+  @Test
+  void diffstatTotals_requestsLineCounts() throws IOException {
+    var body = body("diffstats/get-pr-101-diffstat.json");
+
+    var full = mapper.treeToValue(body, DiffStatPage.class).values();
+    var projected = mapper.treeToValue(prune(body, FieldProjection.DIFFSTAT_TOTALS.paths()), DiffStatPage.class)
+        .values();
+
+    assertThat(projected).hasSameSizeAs(full)
+        .extracting(DiffStat::linesAdded, DiffStat::linesRemoved)
+        .isEqualTo(full.stream().map(d -> tuple(d.linesAdded(), d.linesRemoved())).toList());
+  }
+
+  @Test
+  void authorStatsByUser_addsTheDestinationRepository() {
+    assertThat(FieldProjection.AUTHOR_STATS_BY_USER.paths())
+        .containsAll(FieldProjection.AUTHOR_STATS.paths())
+        .contains("values.destination.repository.full_name");
+  }
+
+  @Test
+  void everyProjectionKeepsPagingFields() {
+    for (var projection : FieldProjection.values()) {
+      assertThat(projection.paths()).contains("next", "size", "pagelen");
+      assertThat(projection.fields()).doesNotContain(" ");
+    }
+  }
+
+  private static boolean countedForMe(Comment c) {
+    return c.authoredBy(ME) && c.isNotDeleted() && c.isPublished() && c.hasText();
+  }
+
+  private List<EnrichedPullRequest> prs(JsonNode body) throws IOException {
+    return mapper.treeToValue(body, PullRequestPage.class).values().stream()
+        .map(pr -> EnrichedPullRequest.from(pr, "repo-1"))
+        .toList();
+  }
+
+  private JsonNode body(String mapping) throws IOException {
+    try (InputStream in = getClass().getResourceAsStream("/mappings/" + mapping)) {
+      return mapper.readTree(in).path("response").path("jsonBody");
+    }
+  }
+
+  /**
+   * Keep only the given dotted paths, applying them to every element of arrays on the way.
+   */
+  private static JsonNode prune(JsonNode node, List<String> paths) {
+    if (node instanceof ArrayNode array) {
+      var out = array.arrayNode();
+      array.forEach(e -> out.add(prune(e, paths)));
+      return out;
+    }
+    if (!(node instanceof ObjectNode object)) {
+      return node;
+    }
+    var out = object.objectNode();
+    object.fields().forEachRemaining(f -> {
+      String name = f.getKey();
+      if (paths.contains(name)) {
+        out.set(name, f.getValue());
+        return;
+      }
+      var nested = paths.stream()
+          .filter(p -> p.startsWith(name + "."))
+          .map(p -> p.substring(name.length() + 1))
+          .toList();
+      if (!nested.isEmpty()) {
+        out.set(name, prune(f.getValue(), nested));
+      }
+    });
+    return out;
+  }
+}
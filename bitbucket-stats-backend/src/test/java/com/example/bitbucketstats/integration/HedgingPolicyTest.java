@@ -0,0 +1,166 @@
+package com.example.bitbucketstats.integration;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import com.example.bitbucketstats.configuration.BitbucketHttpProperties;
+import java.net.URI;
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+import reactor.test.StepVerifier;
+
+@Tag("unit")
+class HedgingPolicyTest {
+
+  private static final URI DIFFSTAT =
+      URI.create("https://api.bitbucket.org/2.0/repositories/ws/repo/pullrequests/7/diffstat?pagelen=100");
+  private static final Duration USUAL = Duration.ofMillis(100);
+
+  private final AtomicInteger attempts = new AtomicInteger();
+
+  @Test
+  void endpointOf_groupsUrlsByEndpointType() {
+    assertThat(HedgingPolicy.endpointOf(DIFFSTAT)).isEqualTo("pullrequests/{id}/diffstat");
+    assertThat(HedgingPolicy.endpointOf(
+        URI.create("https://api.bitbucket.org/2.0/repositories/other/svc/pullrequests/12/comments?page=3")))
+        .isEqualTo("pullrequests/{id}/comments");
+    assertThat(HedgingPolicy.endpointOf(URI.create("https://api.bitbucket.org/2.0/user"))).isEqualTo("user");
+  }
+
+  @Test
+  void slowCall_isHedged_andFirstAnswerWins() {
+    var policy = policy(1.0);
+
+    StepVerifier.withVirtualTime(() -> warmUp(policy).then(policy.hedge(DIFFSTAT, Mono.defer(() ->
+            attempts.incrementAndGet() == 1 ? Mono.<String>never() : Mono.just("hedged")))))
+        .thenAwait(Duration.ofSeconds(1))
+        .expectNext("hedged")
+        .verifyComplete();
+
+    assertThat(attempts.get()).isEqualTo(2);
+    assertThat(policy.stats().hedgesSent()).isEqualTo(1);
+    assertThat(policy.stats().hedgesWon()).isEqualTo(1);
+    assertThat(policy.stats().delayMillis()).containsEntry("pullrequests/{id}/diffstat", 100L);
+  }
+
+  @Test
+  void primaryFailingAfterTheHedgeIsSent_doesNotWin() {
+    var policy = policy(1.0);
+
+    StepVerifier.withVirtualTime(() -> warmUp(policy).then(policy.hedge(DIFFSTAT, Mono.defer(() ->
+            attempts.incrementAndGet() == 1
+                ? Mono.delay(Duration.ofMillis(150)).then(Mono.<String>error(new IllegalStateException("reset")))
+                : Mono.delay(Duration.ofMillis(200)).thenReturn("hedged")))))
+        .thenAwait(Duration.ofSeconds(1))
+        .expectNext("hedged")
+        .verifyComplete();
+
+    assertThat(attempts.get()).isEqualTo(2);
+    assertThat(policy.stats().hedgesWon()).isEqualTo(1);
+  }
+
+  @Test
+  void bothAttemptsFailing_propagatesTheFirstError() {
+    var policy = policy(1.0);
+
+    StepVerifier.withVirtualTime(() -> warmUp(policy).then(policy.hedge(DIFFSTAT, Mono.defer(() -> {
+          int attempt = attempts.incrementAndGet();
+          return Mono.delay(Duration.ofMillis(150))
+              .then(Mono.<String>error(new IllegalStateException("attempt " + attempt)));
+        }))))
+        .thenAwait(Duration.ofSeconds(1))
+        .expectErrorSatisfies(e -> assertThat(e).isInstanceOf(IllegalStateException.class).hasMessage("attempt 1"))
+        .verify();
+
+    assertThat(attempts.get()).isEqualTo(2);
+  }
+
+  @Test
+  void primaryFailingBeforeTheHedgeDelay_failsWithoutHedging() {
+    var policy = policy(1.0);
+
+    StepVerifier.withVirtualTime(() -> warmUp(policy).then(policy.hedge(DIFFSTAT, Mono.defer(() -> {
+          attempts.incrementAndGet();
+          return Mono.delay(Duration.ofMillis(20)).then(Mono.<String>error(new IllegalStateException("404")));
+        }))))
+        .thenAwait(Duration.ofSeconds(1))
+        .expectErrorMessage("404")
+        .verify();
+
+    assertThat(attempts.get()).isEqualTo(1);
+    assertThat(policy.stats().hedgesSent()).isZero();
+  }
+
+  @Test
+  void callAnsweringWithinUsualLatency_isNotHedged() {
+    var policy = policy(1.0);
+
+    StepVerifier.withVirtualTime(() -> warmUp(policy).then(policy.hedge(DIFFSTAT, Mono.defer(() -> {
+          attempts.incrementAndGet();
+          return Mono.delay(Duration.ofMillis(60)).thenReturn("fast");
+        }))))
+        .thenAwait(Duration.ofSeconds(1))
+        .expectNext("fast")
+        .verifyComplete();
+
+    assertThat(attempts.get()).isEqualTo(1);
+    assertThat(policy.stats().hedgesSent()).isZero();
+  }
+
+  @Test
+  void noHedge_untilEnoughLatenciesAreKnown() {
+    var policy = policy(1.0);
+
+    StepVerifier.withVirtualTime(() -> policy.hedge(DIFFSTAT, Mono.defer(() -> {
+          attempts.incrementAndGet();
+          return Mono.delay(Duration.ofSeconds(5)).thenReturn("slow");
+        })))
+        .thenAwait(Duration.ofSeconds(10))
+        .expectNext("slow")
+        .verifyComplete();
+
+    assertThat(attempts.get()).isEqualTo(1);
+  }
+
+  @Test
+  void hedgeRateCap_suppressesHedges_whenBudgetIsSpent() {
+    // five warm-up calls earn half a hedge at a 10% rate
+    var policy = policy(0.1);
+
+    StepVerifier.withVirtualTime(() -> warmUp(policy).then(policy.hedge(DIFFSTAT, Mono.defer(() -> {
+          attempts.incrementAndGet();
+          return Mono.delay(Duration.ofSeconds(5)).thenReturn("slow");
+        }))))
+        .thenAwait(Duration.ofSeconds(10))
+        .expectNext("slow")
+        .verifyComplete();
+
+    assertThat(attempts.get()).isEqualTo(1);
+    assertThat(policy.stats().hedgesSent()).isZero();
+  }
+
+  @Test
+  void disabled_passesCallThrough() {
+    var policy = new HedgingPolicy(
+        new BitbucketHttpProperties.Hedging(false, 0.95, 20, 5, Duration.ofMillis(10), 1.0));
+    Mono<String> call = Mono.just("ok");
+
+    assertThat(policy.hedge(DIFFSTAT, call)).isSameAs(call);
+  }
+
+  private static HedgingPolicy policy(double maxHedgeRate) {
+    return new HedgingPolicy(new BitbucketHttpProperties.Hedging(true, 0.95, 20, 5, Duration.ofMillis(10),
+        maxHedgeRate), () -> Schedulers.parallel().now(TimeUnit.NANOSECONDS));
+  }
+
+  private static Mono<Void> warmUp(HedgingPolicy policy) {
+    return Flux.range(0, 5)
+        .concatMap(i -> policy.hedge(DIFFSTAT, Mono.delay(USUAL).thenReturn("warm")))
+        .then();
+  }
+}
@@ -0,0 +1,80 @@
+package com.example.bitbucketstats.integration;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import com.example.bitbucketstats.integration.PageStreamDecoder.Element;
+import com.example.bitbucketstats.integration.PageStreamDecoder.NextLink;
+import com.example.bitbucketstats.integration.response.User;
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DefaultDataBufferFactory;
+import reactor.core.publisher.Flux;
+import reactor.test.StepVerifier;
+
+@Tag("unit")
+class PageStreamDecoderTest {
+
+  private final PageStreamDecoder decoder = new PageStreamDecoder(
+      new ObjectMapper().configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false));
+
+  @Test
+  void emitsNextLinkBeforeElements_whenItComesFirst() {
+    String json = """
+        {"next": "https://x/p?page=2", "pagelen": 2,
+         "values": [{"uuid": "{a}", "extra": {"nested": [1, 2]}}, {"uuid": "{b}"}]}
+        """;
+
+    StepVerifier.create(decoder.decode(chunks(json, 1), User.class))
+        .expectNext(new NextLink("https://x/p?page=2"))
+        .expectNext(new Element<>(new User("{a}")))
+        .expectNext(new Element<>(new User("{b}")))
+        .verifyComplete();
+  }
+
+  @Test
+  void emitsElementsAsTheyComplete_andIgnoresNestedNextFields() {
+    String json = """
+        {"values": [{"uuid": "{a}", "next": "not-a-page-link"}], "page": 1, "next": "https://x/p?page=2"}
+        """;
+
+    StepVerifier.create(decoder.decode(chunks(json, 7), User.class))
+        .expectNext(new Element<>(new User("{a}")))
+        .expectNext(new NextLink("https://x/p?page=2"))
+        .verifyComplete();
+  }
+
+  @Test
+  void lastPage_hasNoNextLink() {
+    String json = "{\"values\": [], \"next\": null, \"size\": 0}";
+
+    StepVerifier.create(decoder.decode(chunks(json, 3), User.class))
+        .verifyComplete();
+  }
+
+  @Test
+  void truncatedBody_fails() {
+    String json = "{\"values\": [{\"uuid\": \"{a}\"}, {\"uu";
+
+    StepVerifier.create(decoder.decode(chunks(json, 5), User.class))
+        .expectNext(new Element<>(new User("{a}")))
+        .verifyError();
+  }
+
+  private static Flux<DataBuffer> chunks(String json, int size) {
+    byte[] bytes = json.getBytes(StandardCharsets.UTF_8);
+    List<DataBuffer> buffers = new ArrayList<>();
+    for (int i = 0; i < bytes.length; i += size) {
+      int len = Math.min(size, bytes.length - i);
+      buffers.add(DefaultDataBufferFactory.sharedInstance.wrap(Arrays.copyOfRange(bytes, i, i + len)));
+    }
+    assertThat(buffers).isNotEmpty();
+    return Flux.fromIterable(buffers);
+  }
+}
@@ -0,0 +1,120 @@
+package com.example.bitbucketstats.integration;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import com.example.bitbucketstats.configuration.BitbucketHttpProperties;
+import com.example.bitbucketstats.controllers.request.BaseParams;
+import com.example.bitbucketstats.integration.PullRequestSearchCache.Range;
+import com.example.bitbucketstats.integration.PullRequestSearchCache.SearchKey;
+import com.example.bitbucketstats.models.BitbucketAuth;
+import com.example.bitbucketstats.models.EnrichedPullRequest;
+import com.example.bitbucketstats.models.FieldFilter;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import java.util.List;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+
+@Tag("unit")
+class PullRequestSearchCacheTest {
+
+  private static final LocalDate TODAY = LocalDate.of(2025, 8, 20);
+  private static final SearchKey KEY = key("alice", List.of("MERGED"));
+
+  private final PullRequestSearchCache cache = new PullRequestSearchCache(
+      new BitbucketHttpProperties.SearchCache(true, 2, Duration.ofDays(30), 1000),
+      Clock.fixed(Instant.parse("2025-08-20T10:00:00Z"), ZoneOffset.UTC));
+
+  @Test
+  void emptyCache_searchesTheWholeWindow() {
+    var lookup = cache.lookup(KEY, day(1), day(11));
+
+    assertThat(lookup.cached()).isEmpty();
+    assertThat(lookup.missing()).containsExactly(new Range(day(1), day(11)));
+    assertThat(lookup.mutableFrom()).isEqualTo(TODAY.minusDays(1));
+  }
+
+  @Test
+  void storedDays_areAnsweredFromCache_newestFirst_andGapsAreMerged() {
+    var lookup = cache.lookup(KEY, day(1), day(11));
+    cache.store(KEY, lookup.missing().get(0), lookup.mutableFrom(),
+        List.of(pr(1, "2025-08-02T12:00:00Z"), pr(2, "2025-08-09T23:59:59Z")));
+
+    var next = cache.lookup(KEY, day(2), day(13));
+
+    assertThat(next.cached()).extracting(EnrichedPullRequest::id).containsExactly(2, 1);
+    assertThat(next.missing()).containsExactly(new Range(day(11), day(13)));
+  }
+
+  @Test
+  void mutableDays_areNeverStored() {
+    var lookup = cache.lookup(KEY, TODAY.minusDays(3), TODAY.plusDays(1));
+    cache.store(KEY, lookup.missing().get(0), lookup.mutableFrom(),
+        List.of(pr(1, "2025-08-17T10:00:00Z"), pr(2, "2025-08-19T10:00:00Z"), pr(3, "2025-08-20T09:00:00Z")));
+
+    var next = cache.lookup(KEY, TODAY.minusDays(3), TODAY.plusDays(1));
+
+    assertThat(next.cached()).extracting(EnrichedPullRequest::id).containsExactly(1);
+    assertThat(next.missing()).containsExactly(new Range(TODAY.minusDays(1), TODAY.plusDays(1)));
+  }
+
+  @Test
+  void uncachedDayInTheMiddle_isSearchedOnItsOwn() {
+    cache.store(KEY, new Range(day(1), day(3)), TODAY, List.of());
+    cache.store(KEY, new Range(day(4), day(6)), TODAY, List.of(pr(5, "2025-08-05T08:00:00Z")));
+
+    var lookup = cache.lookup(KEY, day(1), day(6));
+
+    assertThat(lookup.missing()).containsExactly(new Range(day(3), day(4)));
+    assertThat(lookup.cached()).extracting(EnrichedPullRequest::id).containsExactly(5);
+  }
+
+  @Test
+  void resultsWithoutUpdateTime_areNotStored() {
+    cache.store(KEY, new Range(day(1), day(3)), TODAY, List.of(pr(1, null)));
+
+    assertThat(cache.lookup(KEY, day(1), day(3)).missing()).containsExactly(new Range(day(1), day(3)));
+  }
+
+  @Test
+  void searchesDifferingInAnyParameter_doNotShareDays() {
+    cache.store(KEY, new Range(day(1), day(3)), TODAY, List.of(pr(1, "2025-08-01T08:00:00Z")));
+
+    assertThat(cache.lookup(key("bob", List.of("MERGED")), day(1), day(3)).cached()).isEmpty();
+    assertThat(cache.lookup(key("alice", List.of("MERGED", "DECLINED")), day(1), day(3)).cached()).isEmpty();
+    assertThat(cache.lookup(KEY, day(1), day(3)).cached()).hasSize(1);
+  }
+
+  @Test
+  void covers_onlyClosedStates_whenEnabled() {
+    assertThat(cache.covers(List.of("MERGED", "declined"))).isTrue();
+    assertThat(cache.covers(List.of("MERGED", "OPEN"))).isFalse();
+    assertThat(cache.covers(List.of())).isFalse();
+    assertThat(cache.covers(null)).isFalse();
+
+    var disabled = new PullRequestSearchCache(new BitbucketHttpProperties.SearchCache(false, 2, Duration.ofDays(30),
+        1000));
+    assertThat(disabled.covers(List.of("MERGED"))).isFalse();
+  }
+
+  private static SearchKey key(String author, List<String> states) {
+    var params = new BaseParams();
+    params.setWorkspace("acme");
+    params.setState(states);
+    return SearchKey.of(new BitbucketAuth("tok", author, "pwd"), "svc-a",
+        FieldFilter.of(FieldFilter.AUTHOR_USERNAME, author), FieldProjection.AUTHOR_STATS, params);
+  }
+
+  private static LocalDate day(int dayOfMonth) {
+    return LocalDate.of(2025, 8, dayOfMonth);
+  }
+
+  private static EnrichedPullRequest pr(int id, String updatedOn) {
+    return new EnrichedPullRequest(id, "PR " + id, null, 0, null, "svc-a", null,
+        updatedOn == null ? null : OffsetDateTime.parse(updatedOn), null);
+  }
+}
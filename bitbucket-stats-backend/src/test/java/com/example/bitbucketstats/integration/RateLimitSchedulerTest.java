@@ -0,0 +1,133 @@
+package com.example.bitbucketstats.integration;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import com.example.bitbucketstats.configuration.BitbucketHttpProperties;
+import com.example.bitbucketstats.models.BitbucketAuth;
+import java.net.URI;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.reactive.function.client.ClientRequest;
+import org.springframework.web.reactive.function.client.ClientResponse;
+import org.springframework.web.reactive.function.client.ExchangeFunction;
+import org.springframework.web.server.ResponseStatusException;
+import reactor.core.publisher.Mono;
+import reactor.test.StepVerifier;
+
+@Tag("unit")
+class RateLimitSchedulerTest {
+
+  private static final Instant NOW = Instant.parse("2025-08-01T09:00:00Z");
+
+  private final BitbucketAuth auth = new BitbucketAuth("abc123==", null, null);
+  private final AtomicInteger sent = new AtomicInteger();
+
+  private RateLimitScheduler scheduler(int perHour) {
+    var settings = new BitbucketHttpProperties.RateLimit(true, perHour, Duration.ofSeconds(30), Duration.ofSeconds(60));
+    return new RateLimitScheduler(settings, Clock.fixed(NOW, ZoneOffset.UTC));
+  }
+
+  private ClientRequest request() {
+    return ClientRequest.create(HttpMethod.GET, URI.create("https://api.bitbucket.org/2.0/user"))
+        .headers(auth::apply)
+        .build();
+  }
+
+  private ExchangeFunction respond(ClientResponse response) {
+    return req -> {
+      sent.incrementAndGet();
+      return Mono.just(response);
+    };
+  }
+
+  @Test
+  void countsRequestsAgainstHourlyBudget() {
+    var scheduler = scheduler(10);
+
+    StepVerifier.create(scheduler.filter(request(), respond(ClientResponse.create(HttpStatus.OK).build())))
+        .expectNextCount(1)
+        .verifyComplete();
+
+    var budget = scheduler.budget(auth);
+    assertThat(budget.used()).isEqualTo(1);
+    assertThat(budget.remaining()).isEqualTo(9);
+    assertThat(budget.windowResetsAt()).isEqualTo(NOW.plus(Duration.ofHours(1)));
+  }
+
+  @Test
+  void reportedRateLimitHeaders_overrideTheLocalForecast() {
+    var scheduler = scheduler(1000);
+    var response = ClientResponse.create(HttpStatus.OK)
+        .header("X-RateLimit-Limit", "500")
+        .header("X-RateLimit-Remaining", "120")
+        .build();
+
+    StepVerifier.create(scheduler.filter(request(), respond(response))).expectNextCount(1).verifyComplete();
+
+    var budget = scheduler.budget(auth);
+    assertThat(budget.limit()).isEqualTo(500);
+    assertThat(budget.remaining()).isEqualTo(120);
+  }
+
+  @Test
+  void retryAfterBeyondMaxWait_failsFast_withoutSending() {
+    var scheduler = scheduler(1000);
+    var throttled = ClientResponse.create(HttpStatus.TOO_MANY_REQUESTS)
+        .header(HttpHeaders.RETRY_AFTER, "120")
+        .build();
+
+    StepVerifier.create(scheduler.filter(request(), respond(throttled))).expectNextCount(1).verifyComplete();
+    assertThat(scheduler.budget(auth).pausedUntil()).isEqualTo(NOW.plusSeconds(120));
+
+    StepVerifier.create(scheduler.filter(request(), respond(ClientResponse.create(HttpStatus.OK).build())))
+        .expectErrorSatisfies(e -> assertThat(e)
+            .isInstanceOf(ResponseStatusException.class)
+            .hasMessageContaining("429"))
+        .verify();
+
+    assertThat(sent).hasValue(1);
+  }
+
+  @Test
+  void exhaustedBudget_failsFast() {
+    var scheduler = scheduler(1);
+
+    StepVerifier.create(scheduler.filter(request(), respond(ClientResponse.create(HttpStatus.OK).build())))
+        .expectNextCount(1)
+        .verifyComplete();
+    StepVerifier.create(scheduler.filter(request(), respond(ClientResponse.create(HttpStatus.OK).build())))
+        .expectError(ResponseStatusException.class)
+        .verify();
+
+    assertThat(sent).hasValue(1);
+  }
+
+  @Test
+  void ensureBudget_refusesWhenForecastIsInsufficient() {
+    var scheduler = scheduler(2);
+
+    scheduler.ensureBudget(auth, 2);
+    assertThatThrownBy(() -> scheduler.ensureBudget(auth, 3))
+        .isInstanceOf(ResponseStatusException.class)
+        .hasMessageContaining("only 2 remain");
+  }
+
+  @Test
+  void parseRetryAfter_acceptsSecondsAndHttpDate() {
+    long now = NOW.toEpochMilli();
+    assertThat(RateLimitScheduler.parseRetryAfter("30", now)).isEqualTo(Duration.ofSeconds(30));
+    assertThat(RateLimitScheduler.parseRetryAfter("Fri, 01 Aug 2025 09:01:00 GMT", now))
+        .isEqualTo(Duration.ofMinutes(1));
+    assertThat(RateLimitScheduler.parseRetryAfter("soon", now)).isNull();
+    assertThat(RateLimitScheduler.parseRetryAfter(null, now)).isNull();
+  }
+}
@@ -0,0 +1,149 @@
+package com.example.bitbucketstats.integration;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import com.example.bitbucketstats.configuration.BitbucketHttpProperties;
+import com.example.bitbucketstats.exceptions.CircuitOpenException;
+import java.io.IOException;
+import java.net.URI;
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.reactive.function.client.ClientRequest;
+import org.springframework.web.reactive.function.client.ClientResponse;
+import org.springframework.web.reactive.function.client.ExchangeFunction;
+import reactor.core.publisher.Mono;
+import reactor.test.StepVerifier;
+
+@Tag("unit")
+class RepositoryCircuitBreakerTest {
+
+  private static final Duration OPEN_FOR = Duration.ofSeconds(30);
+
+  private final AtomicLong clock = new AtomicLong(1);
+  private final AtomicInteger sent = new AtomicInteger();
+  private final RepositoryCircuitBreaker breaker = new RepositoryCircuitBreaker(
+      new BitbucketHttpProperties.CircuitBreaker(true, 10, 4, 0.5, Duration.ofSeconds(10), OPEN_FOR, 2),
+      clock::get);
+
+  @Test
+  void repositoryOf_extractsWorkspaceAndRepo() {
+    assertThat(RepositoryCircuitBreaker.repositoryOf(
+        URI.create("https://api.bitbucket.org/2.0/repositories/ws/repo-1/pullrequests/7/comments?page=2")))
+        .isEqualTo("ws/repo-1");
+    assertThat(RepositoryCircuitBreaker.repositoryOf(URI.create("https://api.bitbucket.org/2.0/user"))).isNull();
+  }
+
+  @Test
+  void opensAfterFailureRate_andFailsFastWithoutCallingUpstream() {
+    call("ws/repo-1", HttpStatus.OK);
+    call("ws/repo-1", HttpStatus.BAD_GATEWAY);
+    call("ws/repo-1", HttpStatus.OK);
+    call("ws/repo-1", HttpStatus.SERVICE_UNAVAILABLE);
+    assertThat(breaker.states()).containsEntry("ws/repo-1", RepositoryCircuitBreaker.State.OPEN);
+
+    int before = sent.get();
+    StepVerifier.create(breaker.filter(request("ws/repo-1"), exchange(HttpStatus.OK)))
+        .expectErrorSatisfies(e -> assertThat(e).isInstanceOf(CircuitOpenException.class)
+            .extracting("repository").isEqualTo("ws/repo-1"))
+        .verify();
+    assertThat(sent.get()).isEqualTo(before);
+
+    // other repositories are unaffected
+    call("ws/repo-2", HttpStatus.OK);
+    assertThat(breaker.states()).containsEntry("ws/repo-2", RepositoryCircuitBreaker.State.CLOSED);
+  }
+
+  @Test
+  void throttlingAndClientErrors_doNotCountAsFailures() {
+    for (int i = 0; i < 6; i++) {
+      call("ws/repo-1", i % 2 == 0 ? HttpStatus.TOO_MANY_REQUESTS : HttpStatus.NOT_FOUND);
+    }
+
+    assertThat(breaker.states()).containsEntry("ws/repo-1", RepositoryCircuitBreaker.State.CLOSED);
+  }
+
+  @Test
+  void transportErrors_andSlowCalls_countAsFailures() {
+    for (int i = 0; i < 2; i++) {
+      StepVerifier.create(breaker.filter(request("ws/repo-1"), req -> Mono.error(new IOException("reset"))))
+          .verifyError(IOException.class);
+    }
+    call("ws/repo-1", HttpStatus.OK);
+    StepVerifier.create(breaker.filter(request("ws/repo-1"), req -> {
+          clock.addAndGet(Duration.ofSeconds(11).toNanos());
+          return Mono.just(ClientResponse.create(HttpStatus.OK).build());
+        }))
+        .expectNextCount(1)
+        .verifyComplete();
+
+    assertThat(breaker.states()).containsEntry("ws/repo-1", RepositoryCircuitBreaker.State.OPEN);
+  }
+
+  @Test
+  void halfOpen_closesAfterSuccessfulProbes_orReopensOnFailure() {
+    openCircuit();
+    clock.addAndGet(OPEN_FOR.toNanos());
+    assertThat(breaker.states()).containsEntry("ws/repo-1", RepositoryCircuitBreaker.State.HALF_OPEN);
+
+    call("ws/repo-1", HttpStatus.BAD_GATEWAY);
+    assertThat(breaker.states()).containsEntry("ws/repo-1", RepositoryCircuitBreaker.State.OPEN);
+
+    clock.addAndGet(OPEN_FOR.toNanos());
+    call("ws/repo-1", HttpStatus.OK);
+    call("ws/repo-1", HttpStatus.OK);
+    assertThat(breaker.states()).containsEntry("ws/repo-1", RepositoryCircuitBreaker.State.CLOSED);
+  }
+
+  @Test
+  void halfOpen_limitsConcurrentProbes() {
+    openCircuit();
+    clock.addAndGet(OPEN_FOR.toNanos());
+
+    // two probes are admitted and left pending
+    breaker.filter(request("ws/repo-1"), req -> Mono.never()).subscribe();
+    breaker.filter(request("ws/repo-1"), req -> Mono.never()).subscribe();
+
+    StepVerifier.create(breaker.filter(request("ws/repo-1"), exchange(HttpStatus.OK)))
+        .verifyError(CircuitOpenException.class);
+  }
+
+  @Test
+  void nonRepositoryCalls_passThrough() {
+    var req = ClientRequest.create(HttpMethod.GET, URI.create("https://api.bitbucket.org/2.0/user")).build();
+    for (int i = 0; i < 6; i++) {
+      StepVerifier.create(breaker.filter(req, exchange(HttpStatus.BAD_GATEWAY))).expectNextCount(1).verifyComplete();
+    }
+
+    assertThat(breaker.states()).isEmpty();
+  }
+
+  private void openCircuit() {
+    for (int i = 0; i < 4; i++) {
+      call("ws/repo-1", HttpStatus.BAD_GATEWAY);
+    }
+    assertThat(breaker.states()).containsEntry("ws/repo-1", RepositoryCircuitBreaker.State.OPEN);
+  }
+
+  private void call(String repository, HttpStatus status) {
+    StepVerifier.create(breaker.filter(request(repository), exchange(status)))
+        .expectNextCount(1)
+        .verifyComplete();
+  }
+
+  private ExchangeFunction exchange(HttpStatus status) {
+    return req -> {
+      sent.incrementAndGet();
+      return Mono.just(ClientResponse.create(status).build());
+    };
+  }
+
+  private static ClientRequest request(String repository) {
+    return ClientRequest.create(HttpMethod.GET,
+        URI.create("https://api.bitbucket.org/2.0/repositories/" + repository + "/pullrequests")).build();
+  }
+}
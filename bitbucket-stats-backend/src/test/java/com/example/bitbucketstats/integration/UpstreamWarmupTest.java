@@ -0,0 +1,113 @@
+package com.example.bitbucketstats.integration;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import com.example.bitbucketstats.configuration.BitbucketHttpProperties;
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.actuate.health.Status;
+import reactor.core.publisher.Mono;
+import reactor.netty.DisposableServer;
+import reactor.netty.http.client.HttpClient;
+import reactor.netty.http.server.HttpServer;
+import reactor.netty.resources.ConnectionProvider;
+
+/**
+ * Connection warm-up against a local server.
+ */
+@Tag("integration")
+class UpstreamWarmupTest {
+
+  private static final Duration MAX_LIFE_TIME = Duration.ofMinutes(5);
+
+  private final AtomicInteger connections = new AtomicInteger();
+  private final AtomicLong clock = new AtomicLong();
+  private final ConnectionProvider provider = ConnectionProvider.builder("warmup-test")
+      .maxConnections(20)
+      .maxIdleTime(Duration.ofSeconds(30))
+      .build();
+  private DisposableServer server;
+
+  @AfterEach
+  void tearDown() {
+    provider.disposeLater().block();
+    if (server != null) {
+      server.disposeNow();
+    }
+  }
+
+  @Test
+  void warm_opensMinConnections_andReusesThemOnRefresh() {
+    server = HttpServer.create()
+        .host("127.0.0.1")
+        .port(0)
+        .doOnConnection(c -> connections.incrementAndGet())
+        // hold each answer briefly so the requests of a round overlap and need their own connection
+        .handle((req, res) -> Mono.delay(Duration.ofMillis(200)).then(res.send()))
+        .bindNow();
+    var warmup = warmup();
+
+    assertThat(warmup.health().getStatus()).isEqualTo(Status.OUT_OF_SERVICE);
+    assertThat(warmup.warm().block(Duration.ofSeconds(10))).isEqualTo(4);
+    assertThat(connections.get()).isEqualTo(4);
+
+    assertThat(warmup.warm().block(Duration.ofSeconds(10))).isEqualTo(4);
+    assertThat(connections.get()).isEqualTo(4);
+    assertThat(warmup.health().getStatus()).isEqualTo(Status.UP);
+    assertThat(warmup.health().getDetails()).containsEntry("warmConnections", 4);
+  }
+
+  @Test
+  void warm_reopensConnections_aheadOfTheirMaxLifetime() {
+    server = HttpServer.create()
+        .host("127.0.0.1")
+        .port(0)
+        .doOnConnection(c -> connections.incrementAndGet())
+        .handle((req, res) -> Mono.delay(Duration.ofMillis(200)).then(res.send()))
+        .bindNow();
+    var warmup = warmup();
+    assertThat(warmup.warm().block(Duration.ofSeconds(10))).isEqualTo(4);
+
+    clock.addAndGet(MAX_LIFE_TIME.multipliedBy(4).dividedBy(5).toNanos());
+    assertThat(warmup.warm().block(Duration.ofSeconds(10))).isEqualTo(4);
+    assertThat(connections.get()).isEqualTo(8);
+
+    assertThat(warmup.warm().block(Duration.ofSeconds(10))).isEqualTo(4);
+    assertThat(connections.get()).isEqualTo(8);
+  }
+
+  @Test
+  void unreachableUpstream_stillBecomesReady_withWarning() {
+    server = HttpServer.create().host("127.0.0.1").port(0).handle((req, res) -> res.send()).bindNow();
+    int port = server.port();
+    server.disposeNow();
+    server = null;
+    var warmup = new UpstreamWarmup(HttpClient.create(provider), "http://127.0.0.1:" + port,
+        new BitbucketHttpProperties.Warmup(true, 2, Duration.ofSeconds(25), Duration.ofSeconds(2)), MAX_LIFE_TIME);
+
+    assertThat(warmup.warm().block(Duration.ofSeconds(10))).isZero();
+    assertThat(warmup.health().getStatus()).isEqualTo(Status.UP);
+    assertThat(warmup.health().getDetails()).containsKey("warning");
+  }
+
+  @Test
+  void disabled_isReadyWithoutWarming() {
+    var warmup = new UpstreamWarmup(HttpClient.create(provider), "http://127.0.0.1:1",
+        new BitbucketHttpProperties.Warmup(false, 4, Duration.ofSeconds(25), Duration.ofSeconds(2)), MAX_LIFE_TIME);
+
+    warmup.start();
+
+    assertThat(warmup.isRunning()).isFalse();
+    assertThat(warmup.health().getStatus()).isEqualTo(Status.UP);
+  }
+
+  private UpstreamWarmup warmup() {
+    return new UpstreamWarmup(HttpClient.create(provider), "http://127.0.0.1:" + server.port(),
+        new BitbucketHttpProperties.Warmup(true, 4, Duration.ofSeconds(25), Duration.ofSeconds(5)), MAX_LIFE_TIME,
+        clock::get);
+  }
+}
@@ -0,0 +1,109 @@
+package com.example.bitbucketstats.integration;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import com.example.bitbucketstats.configuration.BitbucketHttpProperties;
+import java.net.URI;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.reactive.function.client.ClientRequest;
+import org.springframework.web.reactive.function.client.ClientResponse;
+import org.springframework.web.server.ResponseStatusException;
+import reactor.core.publisher.Mono;
+import reactor.test.StepVerifier;
+
+@Tag("unit")
+class WorkspaceBulkheadTest {
+
+  private final WorkspaceBulkhead bulkhead = new WorkspaceBulkhead(new BitbucketHttpProperties.Bulkhead(2, 1));
+  private final AtomicInteger sent = new AtomicInteger();
+
+  @Test
+  void capsCallsPerWorkspace_andQueuesTheRest() {
+    var held = new AtomicReference<ClientResponse>();
+    bulkhead.filter(request("busy"), req -> send(Mono.just(ok()))).subscribe(held::set);
+    bulkhead.filter(request("busy"), req -> send(Mono.never())).subscribe();
+
+    var queued = bulkhead.filter(request("busy"), req -> send(Mono.just(ok())))
+        .flatMap(ClientResponse::releaseBody);
+    StepVerifier.create(queued)
+        .then(() -> {
+          assertThat(sent.get()).isEqualTo(2);
+          assertThat(bulkhead.inFlight()).containsEntry("busy", 2);
+          // the slot is held until the first response body has been consumed
+          held.get().releaseBody().subscribe();
+        })
+        .verifyComplete();
+
+    assertThat(sent.get()).isEqualTo(3);
+  }
+
+  @Test
+  void rejectsWhenWorkspaceQueueIsFull_withoutAffectingOtherWorkspaces() {
+    bulkhead.filter(request("busy"), req -> Mono.never()).subscribe();
+    bulkhead.filter(request("busy"), req -> Mono.never()).subscribe();
+    bulkhead.filter(request("busy"), req -> Mono.never()).subscribe(); // queued
+
+    StepVerifier.create(bulkhead.filter(request("busy"), req -> Mono.never()))
+        .expectErrorSatisfies(e -> assertThat(e).isInstanceOf(ResponseStatusException.class)
+            .hasMessageContaining("busy"))
+        .verify();
+
+    StepVerifier.create(bulkhead.filter(request("quiet"), req -> Mono.just(ok()))
+            .flatMap(ClientResponse::releaseBody))
+        .verifyComplete();
+  }
+
+  @Test
+  void releasesSlot_onErrorAndCancel() {
+    StepVerifier.create(bulkhead.filter(request("ws"), req -> Mono.error(new IllegalStateException("boom"))))
+        .verifyError(IllegalStateException.class);
+    StepVerifier.create(bulkhead.filter(request("ws"), req -> Mono.never()))
+        .thenCancel()
+        .verify();
+
+    assertThat(bulkhead.inFlight()).doesNotContainKey("ws");
+  }
+
+  @Test
+  void workspaceListings_countAgainstTheirWorkspace() {
+    var listing = ClientRequest.create(HttpMethod.GET,
+        URI.create("https://api.bitbucket.org/2.0/workspaces/busy/pullrequests/%7Bme%7D?pagelen=50")).build();
+    bulkhead.filter(request("busy"), req -> Mono.never()).subscribe();
+    bulkhead.filter(listing, req -> Mono.never()).subscribe();
+
+    assertThat(bulkhead.inFlight()).containsEntry("busy", 2);
+    assertThat(WorkspaceBulkhead.workspaceOf(URI.create("https://api.bitbucket.org/2.0/user"))).isNull();
+  }
+
+  @Test
+  void compartments_areDroppedOnceIdle() {
+    var held = new AtomicReference<ClientResponse>();
+    bulkhead.filter(request("a"), req -> Mono.just(ok())).subscribe(held::set);
+    StepVerifier.create(bulkhead.filter(request("b"), req -> Mono.just(ok())).flatMap(ClientResponse::releaseBody))
+        .verifyComplete();
+
+    assertThat(bulkhead.compartments()).as("only the workspace still holding a slot").isEqualTo(1);
+
+    held.get().releaseBody().block();
+    assertThat(bulkhead.compartments()).isZero();
+  }
+
+  private static ClientResponse ok() {
+    return ClientResponse.create(HttpStatus.OK).build();
+  }
+
+  private Mono<ClientResponse> send(Mono<ClientResponse> response) {
+    sent.incrementAndGet();
+    return response;
+  }
+
+  private static ClientRequest request(String workspace) {
+    return ClientRequest.create(HttpMethod.GET,
+        URI.create("https://api.bitbucket.org/2.0/repositories/" + workspace + "/repo/pullrequests")).build();
+  }
+}
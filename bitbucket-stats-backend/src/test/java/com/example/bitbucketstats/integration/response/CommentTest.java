@@ -22,7 +22,7 @@ class CommentTest {
   void authoredBy_handlesNullsAndMatch(String userUuid, String inputUuid, boolean expected) {
     User u = "NULL".equals(userUuid) ? null : user(userUuid);
     String in = "NULL".equals(inputUuid) ? null : inputUuid;
-    var c = new Comment(1, u, null, null, null);
+    var c = new Comment(1, u, null, null, null, null);
     assertThat(c.authoredBy(in)).isEqualTo(expected);
   }
 
@@ -32,7 +32,7 @@ class CommentTest {
       nullValues = {"null"}
   )
   void isPublished_checksPending(Boolean pending, boolean expected) {
-    var c = new Comment(1, null, null, pending, null);
+    var c = new Comment(1, null, null, pending, null, null);
     assertThat(c.isPublished()).isEqualTo(expected);
   }
 
@@ -42,7 +42,7 @@ class CommentTest {
       nullValues = {"null"}
   )
   void isNotDeleted_checksDeleted(Boolean deleted, boolean expected) {
-    var c = new Comment(1, null, deleted, null, null);
+    var c = new Comment(1, null, deleted, null, null, null);
     assertThat(c.isNotDeleted()).isEqualTo(expected);
   }
 
@@ -55,7 +55,7 @@ class CommentTest {
   })
   void hasText_checksContent(String raw, boolean expected) {
     Comment.Content content = raw == null || "NULL".equals(raw) ? null : new Comment.Content(raw);
-    var c = new Comment(1, null, null, null, content);
+    var c = new Comment(1, null, null, null, content, null);
     assertThat(c.hasText()).isEqualTo(expected);
   }
 
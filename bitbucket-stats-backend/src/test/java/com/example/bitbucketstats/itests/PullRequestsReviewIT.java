@@ -1,15 +1,26 @@
 package com.example.bitbucketstats.itests;
 
 import static com.github.tomakehurst.wiremock.client.WireMock.exactly;
+import static com.github.tomakehurst.wiremock.client.WireMock.findAll;
 import static com.github.tomakehurst.wiremock.client.WireMock.getRequestedFor;
+import static com.github.tomakehurst.wiremock.client.WireMock.resetAllRequests;
 import static com.github.tomakehurst.wiremock.client.WireMock.urlPathEqualTo;
+import static com.github.tomakehurst.wiremock.client.WireMock.urlPathMatching;
 import static com.github.tomakehurst.wiremock.client.WireMock.verify;
+import static org.assertj.core.api.Assertions.assertThat;
 import static org.springframework.http.MediaType.APPLICATION_JSON;
 
+import com.example.bitbucketstats.configuration.CachingConfig;
+import com.example.bitbucketstats.integration.BitBucketService;
+import com.example.bitbucketstats.integration.CommentCountCache;
+import com.example.bitbucketstats.models.BitbucketAuth;
+import java.util.Objects;
 import org.junit.jupiter.api.Tag;
 import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.cache.CacheManager;
 import org.springframework.test.web.reactive.server.WebTestClient;
+import reactor.test.StepVerifier;
 
 @Tag("integration")
 class PullRequestsReviewIT extends BaseIT {
@@ -17,6 +28,15 @@ class PullRequestsReviewIT extends BaseIT {
   @Autowired
   WebTestClient webTestClient;
 
+  @Autowired
+  CacheManager cacheManager;
+
+  @Autowired
+  CommentCountCache commentCountCache;
+
+  @Autowired
+  BitBucketService bitBucketService;
+
   @Test
   void prReviewStats_basic() {
     webTestClient.get()
@@ -85,4 +105,87 @@ class PullRequestsReviewIT extends BaseIT {
     // Verify that the request to the user endpoint is not made when reviewer uuid provided
     verify(0, getRequestedFor(urlPathEqualTo("/user")));
   }
+
+  @Test
+  void prReviewStats_repeatedCommentDetails_countCommentsOnlyOnce() {
+    commentCountCache.clear();
+    var comments = getRequestedFor(urlPathMatching("/repositories/ws/repo-1/pullrequests/\\d+/comments"));
+
+    for (int i = 0; i < 2; i++) {
+      webTestClient.get()
+          .uri(b -> b.path("/pull-requests/reviews/stats")
+              .queryParam("workspace", "ws")
+              .queryParam("repo", "repo-1")
+              .queryParam("sinceDate", "2025-07-01")
+              .queryParam("untilDate", "2025-08-01")
+              .queryParam("reviewerUuid", "1a2b3c4d-0000-1111-2222-333344445555")
+              .queryParam("includeCommentDetails", true)
+              .build())
+          .header("username", "john-doe")
+          .header("appPassword", "password")
+          .exchange()
+          .expectStatus().isOk()
+          .expectBody()
+          .jsonPath("$.total_pull_requests_commented").isEqualTo(2)
+          .jsonPath("$.total_comments").isEqualTo(2);
+      if (i == 0) {
+        assertThat(findAll(comments)).isNotEmpty();
+        resetAllRequests();
+      }
+    }
+
+    // the PRs' updated_on did not move, so the second request reuses every count
+    verify(0, comments);
+  }
+
+  @Test
+  void prReviewStats_includeReviewMetrics_readsEachActivityStreamOnce() {
+    Objects.requireNonNull(cacheManager.getCache(CachingConfig.PR_ACTIVITY_CACHE)).clear();
+
+    for (int i = 0; i < 2; i++) {
+      webTestClient.get()
+          .uri(b -> b.path("/pull-requests/reviews/stats")
+              .queryParam("workspace", "ws")
+              .queryParam("repo", "repo-1")
+              .queryParam("sinceDate", "2025-07-01")
+              .queryParam("untilDate", "2025-08-01")
+              .queryParam("reviewerUuid", "1a2b3c4d-0000-1111-2222-333344445555")
+              .queryParam("includeCommentDetails", true)
+              .queryParam("includeReviewMetrics", true)
+              .build())
+          .header("username", "john-doe")
+          .header("appPassword", "password")
+          .exchange()
+          .expectStatus().isOk()
+          .expectBody()
+          .jsonPath("$.total_pull_requests_commented").isEqualTo(2)
+          .jsonPath("$.total_comments").isEqualTo(2)
+          .jsonPath("$.review_latency.avg_hours_to_first_review").isEqualTo(1.67)
+          .jsonPath("$.review_latency.avg_hours_to_first_approval").isEqualTo(17.67)
+          .jsonPath("$.review_latency.avg_review_rounds").isEqualTo(1.0)
+          .jsonPath("$.review_latency.pull_requests_measured").isEqualTo(4)
+          .jsonPath("$.review_latency.pull_requests_unmeasured").isEqualTo(0);
+    }
+
+    // comments come from the activity stream, which is read once per commented PR and then served from the cache
+    verify(0, getRequestedFor(urlPathMatching("/repositories/ws/repo-1/pullrequests/\\d+/comments")));
+    verify(exactly(3), getRequestedFor(urlPathMatching("/repositories/ws/repo-1/pullrequests/\\d+/activity")));
+    verify(exactly(1), getRequestedFor(urlPathEqualTo("/repositories/ws/repo-1/pullrequests/201/activity")));
+  }
+
+  @Test
+  void fetchActivityDigest_withoutUpdatedOn_isNotCached() {
+    var cache = Objects.requireNonNull(cacheManager.getCache(CachingConfig.PR_ACTIVITY_CACHE));
+    cache.clear();
+    resetAllRequests();
+    var auth = new BitbucketAuth("Basic am9obi1kb2U6cGFzc3dvcmQ=", "john-doe", "password");
+
+    for (int i = 0; i < 2; i++) {
+      StepVerifier.create(bitBucketService.fetchActivityDigest(auth, "ws", "repo-1", 201, null, null))
+          .expectNextCount(1)
+          .verifyComplete();
+    }
+
+    verify(exactly(2), getRequestedFor(urlPathEqualTo("/repositories/ws/repo-1/pullrequests/201/activity")));
+  }
 }
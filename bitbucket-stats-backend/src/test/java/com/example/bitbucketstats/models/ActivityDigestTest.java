@@ -0,0 +1,103 @@
+package com.example.bitbucketstats.models;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import com.example.bitbucketstats.integration.response.Activity;
+import com.example.bitbucketstats.integration.response.Comment;
+import com.example.bitbucketstats.integration.response.Commit;
+import com.example.bitbucketstats.integration.response.Participant;
+import com.example.bitbucketstats.integration.response.Source;
+import com.example.bitbucketstats.integration.response.User;
+import java.time.OffsetDateTime;
+import java.util.List;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+
+@Tag("unit")
+class ActivityDigestTest {
+
+  private static final String AUTHOR = "author-uuid";
+  private static final String ME = "me-uuid";
+  private static final String OTHER = "other-uuid";
+
+  @Test
+  void of_derivesFirstReviewFirstApprovalAndRounds_fromNewestFirstStream() {
+    // as Bitbucket lists it: newest first
+    var activity = List.of(
+        approval(OTHER, "2025-08-04T09:00:00Z"),
+        comment(ME, "2025-08-03T16:00:00Z", "looks good now"),
+        update("c2", "2025-08-03T12:00:00Z"),
+        comment(AUTHOR, "2025-08-02T11:00:00Z", "fixed"),
+        comment(ME, "2025-08-02T10:00:00Z", "please rename"),
+        comment(OTHER, "2025-08-02T10:30:00Z", "+1"),
+        update("c1", "2025-08-01T09:00:00Z"));
+
+    var digest = ActivityDigest.of(activity, AUTHOR);
+
+    assertThat(digest.firstReviewAt()).isEqualTo(OffsetDateTime.parse("2025-08-02T10:00:00Z"));
+    assertThat(digest.firstApprovalAt()).isEqualTo(OffsetDateTime.parse("2025-08-04T09:00:00Z"));
+    assertThat(digest.reviewRounds()).isEqualTo(2);
+    assertThat(digest.commentsBy(ME)).isEqualTo(2);
+    assertThat(digest.commentsBy(OTHER)).isEqualTo(1);
+    assertThat(digest.commentsBy(AUTHOR)).isZero();
+  }
+
+  @Test
+  void of_skipsDeletedAndPendingComments() {
+    var deleted = new Comment(1, new User(ME), true, false, new Comment.Content("x"),
+        OffsetDateTime.parse("2025-08-02T10:00:00Z"));
+    var pending = new Comment(2, new User(ME), false, true, new Comment.Content("draft"),
+        OffsetDateTime.parse("2025-08-02T09:00:00Z"));
+
+    var digest = ActivityDigest.of(List.of(new Activity(deleted, null, null, null),
+        new Activity(pending, null, null, null)), AUTHOR);
+
+    assertThat(digest.commentsBy(ME)).isZero();
+    // a deleted comment was still a reaction; a pending one was never visible
+    assertThat(digest.firstReviewAt()).isEqualTo(OffsetDateTime.parse("2025-08-02T10:00:00Z"));
+    assertThat(digest.reviewRounds()).isEqualTo(1);
+  }
+
+  @Test
+  void of_pushesWithoutReviewInBetween_doNotAddRounds() {
+    var digest = ActivityDigest.of(List.of(
+        update("c1", "2025-08-01T09:00:00Z"),
+        update("c2", "2025-08-01T10:00:00Z"),
+        update("c3", "2025-08-01T11:00:00Z"),
+        approval(ME, "2025-08-01T12:00:00Z")), AUTHOR);
+
+    assertThat(digest.reviewRounds()).isEqualTo(1);
+    assertThat(digest.firstReviewAt()).isEqualTo(digest.firstApprovalAt());
+  }
+
+  @Test
+  void fromParticipants_usesTheEarliestApprovalOfSomeoneElse() {
+    var pr = new EnrichedPullRequest(7, "t", AUTHOR, 0, List.of(
+        new Participant(new User(AUTHOR), "PARTICIPANT", true, OffsetDateTime.parse("2025-08-01T10:00:00Z")),
+        new Participant(new User(ME), "REVIEWER", true, OffsetDateTime.parse("2025-08-03T10:00:00Z")),
+        new Participant(new User(OTHER), "REVIEWER", true, OffsetDateTime.parse("2025-08-02T10:00:00Z")),
+        new Participant(new User("idle"), "REVIEWER", false, null)),
+        "repo", OffsetDateTime.parse("2025-08-01T08:00:00Z"), OffsetDateTime.parse("2025-08-03T10:00:00Z"), null);
+
+    var digest = ActivityDigest.fromParticipants(pr);
+
+    assertThat(digest.firstApprovalAt()).isEqualTo(OffsetDateTime.parse("2025-08-02T10:00:00Z"));
+    assertThat(digest.firstReviewAt()).isEqualTo(digest.firstApprovalAt());
+    assertThat(digest.reviewRounds()).isEqualTo(1);
+    assertThat(digest.commentsByUser()).isEmpty();
+  }
+
+  private static Activity comment(String user, String at, String text) {
+    return new Activity(new Comment(null, new User(user), false, false, new Comment.Content(text),
+        OffsetDateTime.parse(at)), null, null, null);
+  }
+
+  private static Activity approval(String user, String at) {
+    return new Activity(null, new Activity.Approval(OffsetDateTime.parse(at), new User(user)), null, null);
+  }
+
+  private static Activity update(String commit, String at) {
+    return new Activity(null, null, null, new Activity.Update(OffsetDateTime.parse(at),
+        new Source(new Commit(commit))));
+  }
+}
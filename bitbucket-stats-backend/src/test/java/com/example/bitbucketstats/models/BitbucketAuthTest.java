@@ -23,7 +23,7 @@ class BitbucketAuthTest {
     var headers = new HttpHeaders();
     auth.apply(headers);
     assertThat(headers.getFirst(HttpHeaders.AUTHORIZATION)).isEqualTo("Basic abc123==");
-    assertThat(auth.cacheKey()).isEqualTo("abc123==");
+    assertThat(auth.cacheKey()).matches("[0-9a-f]{32}");
   }
 
   @Test
@@ -35,7 +35,37 @@ class BitbucketAuthTest {
     assertThat(auth.basicValue()).isEqualTo(expected);
     assertThat(auth.user()).isEqualTo("alice");
     assertThat(auth.appPassword()).isEqualTo("s3cr3t");
-    assertThat(auth.cacheKey()).isEqualTo(expected);
+    assertThat(auth.cacheKey()).startsWith("alice@").doesNotContain(expected).doesNotContain("s3cr3t");
+    assertThat(BitbucketAuth.userOf(auth.cacheKey())).isEqualTo("alice");
+  }
+
+  @Test
+  void cacheKey_isStablePerCredential_andNamesTheUserOfABasicHeader() {
+    var header = BitbucketAuth.fromHeaders("Basic " + encode("alice:s3cr3t"), null, null);
+    var headers = BitbucketAuth.fromHeaders(null, "alice", "s3cr3t");
+    var otherPassword = BitbucketAuth.fromHeaders(null, "alice", "other");
+
+    assertThat(header.cacheKey()).isEqualTo(headers.cacheKey());
+    assertThat(otherPassword.cacheKey()).isNotEqualTo(headers.cacheKey());
+    assertThat(BitbucketAuth.userOf(otherPassword.cacheKey())).isEqualTo("alice");
+
+    var outgoing = new HttpHeaders();
+    header.apply(outgoing);
+    assertThat(BitbucketAuth.cacheKeyOf(outgoing)).isEqualTo(header.cacheKey());
+  }
+
+  @Test
+  void cacheKey_isKeyed_soItCannotBeRecomputedFromAGuessedPassword() throws Exception {
+    var auth = BitbucketAuth.fromHeaders(null, "alice", "s3cr3t");
+    var sha = java.security.MessageDigest.getInstance("SHA-256").digest(auth.basicValue()
+        .getBytes(StandardCharsets.UTF_8));
+    var unkeyed = java.util.HexFormat.of().formatHex(java.util.Arrays.copyOf(sha, 16));
+
+    assertThat(auth.cacheKey()).matches("alice@[0-9a-f]{32}").doesNotEndWith(unkeyed);
+  }
+
+  private static String encode(String credentials) {
+    return Base64.getEncoder().encodeToString(credentials.getBytes(StandardCharsets.UTF_8));
   }
 
   @Test
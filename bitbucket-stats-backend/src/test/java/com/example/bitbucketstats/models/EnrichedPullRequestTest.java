@@ -6,8 +6,11 @@ import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.when;
 
 import com.example.bitbucketstats.integration.response.Author;
+import com.example.bitbucketstats.integration.response.Commit;
+import com.example.bitbucketstats.integration.response.Destination;
 import com.example.bitbucketstats.integration.response.Participant;
 import com.example.bitbucketstats.integration.response.PullRequest;
+import com.example.bitbucketstats.integration.response.Source;
 import com.example.bitbucketstats.integration.response.User;
 import java.time.OffsetDateTime;
 import java.util.List;
@@ -62,11 +65,26 @@ class EnrichedPullRequestTest {
   void approvedBy_handlesCommonCases(List<Participant> participants, String myUuid, boolean expected) {
     var pr = new EnrichedPullRequest(
         1, "t", "a", 0, participants, "repo",
-        OffsetDateTime.now(), OffsetDateTime.now()
+        OffsetDateTime.now(), OffsetDateTime.now(), null
     );
     assertThat(pr.approvedBy(myUuid)).isEqualTo(expected);
   }
 
+  @Test
+  void mayHaveCommentsBy_requiresAParticipationRecord() {
+    var commented = OffsetDateTime.parse("2025-08-02T09:00:00Z");
+    var me = new User("me-uuid");
+
+    assertThat(pr(null).mayHaveCommentsBy("me-uuid")).isTrue();
+    assertThat(pr(List.of()).mayHaveCommentsBy("me-uuid")).isFalse();
+    assertThat(pr(List.of(new Participant(me, "REVIEWER", false, null))).mayHaveCommentsBy("me-uuid")).isFalse();
+    assertThat(pr(List.of(new Participant(new User("other"), "PARTICIPANT", false, commented)))
+        .mayHaveCommentsBy("me-uuid")).isFalse();
+    assertThat(pr(List.of(new Participant(me, "REVIEWER", false, commented))).mayHaveCommentsBy("me-uuid")).isTrue();
+    assertThat(pr(List.of(new Participant(me, "PARTICIPANT", false, null))).mayHaveCommentsBy("me-uuid")).isTrue();
+    assertThat(pr(List.of(new Participant(me, "REVIEWER", true, null))).mayHaveCommentsBy("me-uuid")).isTrue();
+  }
+
   @Test
   void from_mapsAllFields_whenAuthorPresent() {
     var pull = mock(PullRequest.class);
@@ -112,4 +130,22 @@ class EnrichedPullRequestTest {
     assertThat(enriched.authorUuid()).isNull();
     assertThat(enriched.repo()).isEqualTo("svc-b");
   }
+
+  @Test
+  void from_identifiesTheDiffByItsCommits() {
+    var open = new PullRequest(1, "t", null, 0, null, null, null, new Source(new Commit("a1")),
+        new Destination(null, new Commit("b2")), null);
+    var merged = new PullRequest(1, "t", null, 0, null, null, null, new Source(new Commit("a1")),
+        new Destination(null, new Commit("b2")), new Commit("c3"));
+    var unknown = new PullRequest(1, "t", null, 0, null, null, null, null, null, null);
+
+    assertThat(EnrichedPullRequest.from(open, "svc-a").diffRevision()).isEqualTo("a1..b2");
+    assertThat(EnrichedPullRequest.from(merged, "svc-a").diffRevision()).isEqualTo("a1..b2@c3");
+    assertThat(EnrichedPullRequest.from(unknown, "svc-a").diffRevision()).isNull();
+  }
+
+  private static EnrichedPullRequest pr(List<Participant> participants) {
+    return new EnrichedPullRequest(1, "t", "a", 3, participants, "repo", OffsetDateTime.now(), OffsetDateTime.now(),
+        null);
+  }
 }
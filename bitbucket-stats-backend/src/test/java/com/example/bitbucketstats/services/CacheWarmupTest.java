@@ -0,0 +1,123 @@
+package com.example.bitbucketstats.services;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import com.example.bitbucketstats.configuration.BitbucketHttpProperties;
+import com.example.bitbucketstats.configuration.RequestDeadlineFilter;
+import com.example.bitbucketstats.controllers.request.MyPullRequestsParams;
+import com.example.bitbucketstats.controllers.request.PullRequestReviewParams;
+import com.example.bitbucketstats.controllers.response.MyPullRequestsResponse;
+import com.example.bitbucketstats.controllers.response.PullRequestReviewResponse;
+import com.example.bitbucketstats.integration.RateLimitScheduler;
+import com.example.bitbucketstats.models.Deadline;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.Period;
+import java.time.ZoneOffset;
+import java.util.List;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.boot.actuate.health.Status;
+import reactor.core.publisher.Mono;
+
+@Tag("unit")
+class CacheWarmupTest {
+
+  private static final Instant NOW = Instant.parse("2025-08-04T05:00:00Z");
+  private static final BitbucketHttpProperties.WarmupTarget TARGET = new BitbucketHttpProperties.WarmupTarget(
+      "acme", List.of("svc-a", "svc-b"), List.of("jdoe"), List.of("{reviewer-uuid}"),
+      List.of(Period.ofDays(7), Period.ofDays(30)), List.of("MERGED"));
+
+  private final MyPullRequestsService myPullRequestsService = mock(MyPullRequestsService.class);
+  private final PullRequestsReviewService pullRequestsReviewService = mock(PullRequestsReviewService.class);
+  private final RateLimitScheduler rateLimitScheduler = mock(RateLimitScheduler.class);
+  private final RequestDeadlineFilter requestDeadlineFilter = mock(RequestDeadlineFilter.class);
+
+  @BeforeEach
+  void setUp() {
+    when(rateLimitScheduler.budget(any())).thenReturn(budget(900));
+    when(myPullRequestsService.getMyPullRequestsStats(any(), any()))
+        .thenReturn(Mono.deferContextual(ctx -> {
+          assertThat(Deadline.from(ctx)).isPresent();
+          return Mono.just(mock(MyPullRequestsResponse.class));
+        }));
+    when(pullRequestsReviewService.getReviewStats(any(), any()))
+        .thenReturn(Mono.just(mock(PullRequestReviewResponse.class)));
+  }
+
+  @Test
+  void run_requestsEveryDashboardPerPeriod_withDetails() {
+    var run = warmup(true).run().block();
+
+    assertThat(run.completed()).isEqualTo(4);
+    assertThat(run.stopReason()).isNull();
+    var authorParams = ArgumentCaptor.forClass(MyPullRequestsParams.class);
+    verify(myPullRequestsService, times(2)).getMyPullRequestsStats(any(), authorParams.capture());
+    assertThat(authorParams.getAllValues()).extracting(MyPullRequestsParams::getSinceDate)
+        .containsExactly(LocalDate.parse("2025-07-28"), LocalDate.parse("2025-07-05"));
+    assertThat(authorParams.getValue().getNickname()).isEqualTo("jdoe");
+    assertThat(authorParams.getValue().isIncludeDiffDetails()).isTrue();
+    assertThat(authorParams.getValue().getRepo()).containsExactly("svc-a", "svc-b");
+    var reviewParams = ArgumentCaptor.forClass(PullRequestReviewParams.class);
+    verify(pullRequestsReviewService, times(2)).getReviewStats(any(), reviewParams.capture());
+    assertThat(reviewParams.getValue().isIncludeCommentDetails()).isTrue();
+    assertThat(reviewParams.getValue().isIncludeReviewMetrics()).isTrue();
+  }
+
+  @Test
+  void interactiveLoad_stopsTheRun() {
+    when(requestDeadlineFilter.inFlight()).thenReturn(3);
+
+    var run = warmup(true).run().block();
+
+    assertThat(run.completed()).isZero();
+    assertThat(run.skipped()).isEqualTo(4);
+    assertThat(run.stopReason()).contains("interactive");
+    verify(myPullRequestsService, never()).getMyPullRequestsStats(any(), any());
+  }
+
+  @Test
+  void lowBudget_stopsTheRun_andFailuresDoNot() {
+    when(rateLimitScheduler.budget(any())).thenReturn(budget(900), budget(900), budget(100));
+    when(myPullRequestsService.getMyPullRequestsStats(any(), any()))
+        .thenReturn(Mono.error(new IllegalStateException("boom")));
+
+    var run = warmup(true).run().block();
+
+    assertThat(run.failed()).isEqualTo(1);
+    assertThat(run.completed()).isEqualTo(1);
+    assertThat(run.skipped()).isEqualTo(2);
+    assertThat(run.stopReason()).contains("rate budget");
+  }
+
+  @Test
+  void readiness_waitsForTheStartupRun_whenAsked() {
+    var waiting = warmup(true);
+    assertThat(waiting.health().getStatus()).isEqualTo(Status.OUT_OF_SERVICE);
+    waiting.run().block();
+    assertThat(waiting.health().getStatus()).isEqualTo(Status.UP);
+
+    assertThat(warmup(false).health().getStatus()).isEqualTo(Status.UP);
+  }
+
+  private CacheWarmup warmup(boolean waitForReadiness) {
+    var settings = new BitbucketHttpProperties.CacheWarmup(true, "0 0 5 * * MON-FRI", true, waitForReadiness,
+        "svc-user", "secret", 500, 2, Duration.ofMinutes(2), 2, List.of(TARGET));
+    return new CacheWarmup(settings, myPullRequestsService, pullRequestsReviewService, rateLimitScheduler,
+        requestDeadlineFilter, Clock.fixed(NOW, ZoneOffset.UTC));
+  }
+
+  private static RateLimitScheduler.Budget budget(int remaining) {
+    return new RateLimitScheduler.Budget(1000, 1000 - remaining, remaining, NOW.plusSeconds(3600), null);
+  }
+}
@@ -6,20 +6,28 @@ import static org.mockito.ArgumentMatchers.anyInt;
 import static org.mockito.ArgumentMatchers.anyMap;
 import static org.mockito.ArgumentMatchers.anyString;
 import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.ArgumentMatchers.isNull;
+import static org.mockito.ArgumentMatchers.same;
 import static org.mockito.Mockito.inOrder;
+import static org.mockito.Mockito.lenient;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
+import com.example.bitbucketstats.exceptions.CircuitOpenException;
 import com.example.bitbucketstats.integration.BitBucketService;
+import com.example.bitbucketstats.integration.FieldProjection;
 import com.example.bitbucketstats.models.BitbucketAuth;
+import com.example.bitbucketstats.models.Deadline;
 import com.example.bitbucketstats.models.DiffDetails;
 import com.example.bitbucketstats.models.EnrichedPullRequest;
 import com.example.bitbucketstats.models.FieldFilter;
 import com.example.bitbucketstats.integration.response.User;
 import com.example.bitbucketstats.controllers.request.MyPullRequestsParams;
 import com.example.bitbucketstats.controllers.response.MyPullRequestsResponse;
+import java.time.Clock;
+import java.time.Duration;
 import java.time.LocalDate;
 import java.util.List;
 import java.util.Map;
@@ -50,6 +58,9 @@ class MyPullRequestsServiceTest {
   @Mock
   private ResponseAssembler responseAssembler;
 
+  @Mock
+  private PullRequestListingPlanner pullRequestListingPlanner;
+
   private MyPullRequestsParams baseParams(boolean includeDiffs) {
     var p = new MyPullRequestsParams();
     p.setWorkspace("acme");
@@ -67,7 +78,9 @@ class MyPullRequestsServiceTest {
 
   @BeforeEach
   void resetAll() {
-    Mockito.reset(bitBucketService, responseAssembler);
+    Mockito.reset(bitBucketService, responseAssembler, pullRequestListingPlanner);
+    lenient().when(pullRequestListingPlanner.plan(any(), any(), any()))
+        .thenReturn(Mono.just(PullRequestListingPlanner.Strategy.PER_REPOSITORY));
   }
 
   @Test
@@ -78,12 +91,12 @@ class MyPullRequestsServiceTest {
     // one PR instance (mock); service will read repo() and id() ONLY when diffs=true (here it's false)
     var pr = mock(EnrichedPullRequest.class);
 
-    when(bitBucketService.searchPullRequestsAcrossRepos(any(FieldFilter.class), eq(params.getRepo()),
-        any(BitbucketAuth.class), eq(params)))
+    when(bitBucketService.searchPullRequestsAcrossRepos(any(FieldFilter.class), eq(FieldProjection.AUTHOR_STATS),
+        eq(params.getRepo()), any(BitbucketAuth.class), eq(params)))
         .thenReturn(Flux.just(pr));
 
     var expected = mock(MyPullRequestsResponse.class);
-    when(responseAssembler.toMyPullRequestsResponse(List.of(pr), params, Map.of()))
+    when(responseAssembler.toMyPullRequestsResponse(List.of(pr), params, Map.of(), null))
         .thenReturn(expected);
 
     var mono = service.getMyPullRequestsStats(auth("ignoredUser"), params);
@@ -95,7 +108,7 @@ class MyPullRequestsServiceTest {
     // Nickname path should not hit current user
     verify(bitBucketService, never()).getCurrentUser(any());
     // No diffs when flag is false
-    verify(bitBucketService, never()).fetchDiffFilesChanged(any(), anyString(), anyString(), anyInt());
+    verify(bitBucketService, never()).fetchDiffFilesChanged(any(), anyString(), anyString(), anyInt(), any());
   }
 
   @Test
@@ -103,12 +116,12 @@ class MyPullRequestsServiceTest {
     var params = baseParams(false);
 
     var pr = mock(EnrichedPullRequest.class);
-    when(bitBucketService.searchPullRequestsAcrossRepos(any(FieldFilter.class), eq(params.getRepo()),
-        any(BitbucketAuth.class), eq(params)))
+    when(bitBucketService.searchPullRequestsAcrossRepos(any(FieldFilter.class), eq(FieldProjection.AUTHOR_STATS),
+        eq(params.getRepo()), any(BitbucketAuth.class), eq(params)))
         .thenReturn(Flux.just(pr));
 
     var expected = mock(MyPullRequestsResponse.class);
-    when(responseAssembler.toMyPullRequestsResponse(eq(List.of(pr)), eq(params), anyMap()))
+    when(responseAssembler.toMyPullRequestsResponse(eq(List.of(pr)), eq(params), anyMap(), isNull()))
         .thenReturn(expected);
 
     var mono = service.getMyPullRequestsStats(auth("alice"), params);
@@ -118,7 +131,7 @@ class MyPullRequestsServiceTest {
         .verifyComplete();
 
     verify(bitBucketService, never()).getCurrentUser(any());
-    verify(bitBucketService, never()).fetchDiffFilesChanged(any(), anyString(), anyString(), anyInt());
+    verify(bitBucketService, never()).fetchDiffFilesChanged(any(), anyString(), anyString(), anyInt(), any());
   }
 
   @Test
@@ -129,11 +142,11 @@ class MyPullRequestsServiceTest {
     when(bitBucketService.getCurrentUser(any(BitbucketAuth.class))).thenReturn(Mono.just(me));
 
     var pr = mock(EnrichedPullRequest.class);
-    when(bitBucketService.searchPullRequestsAcrossRepos(any(FieldFilter.class), eq(params.getRepo()),
-        any(BitbucketAuth.class), eq(params)))
+    when(bitBucketService.searchPullRequestsAcrossRepos(any(FieldFilter.class), eq(FieldProjection.AUTHOR_STATS),
+        eq(params.getRepo()), any(BitbucketAuth.class), eq(params)))
         .thenReturn(Flux.just(pr));
 
-    when(responseAssembler.toMyPullRequestsResponse(eq(List.of(pr)), eq(params), anyMap()))
+    when(responseAssembler.toMyPullRequestsResponse(eq(List.of(pr)), eq(params), anyMap(), isNull()))
         .thenReturn(mock(MyPullRequestsResponse.class));
 
     var mono = service.getMyPullRequestsStats(auth(null), params);
@@ -145,8 +158,8 @@ class MyPullRequestsServiceTest {
     InOrder inOrder = inOrder(bitBucketService);
     inOrder.verify(bitBucketService).getCurrentUser(any(BitbucketAuth.class));
     inOrder.verify(bitBucketService)
-        .searchPullRequestsAcrossRepos(any(FieldFilter.class), eq(params.getRepo()), any(BitbucketAuth.class),
-            eq(params));
+        .searchPullRequestsAcrossRepos(any(FieldFilter.class), eq(FieldProjection.AUTHOR_STATS), eq(params.getRepo()),
+            any(BitbucketAuth.class), eq(params));
   }
 
   @Test
@@ -158,26 +171,28 @@ class MyPullRequestsServiceTest {
     var pr1 = mock(EnrichedPullRequest.class);
     when(pr1.repo()).thenReturn("svc-a");
     when(pr1.id()).thenReturn(100);
+    when(pr1.diffRevision()).thenReturn("src1..dst1@merge1");
 
     var pr2 = mock(EnrichedPullRequest.class);
     when(pr2.repo()).thenReturn("svc-b");
     when(pr2.id()).thenReturn(200);
 
-    when(bitBucketService.searchPullRequestsAcrossRepos(any(FieldFilter.class), eq(params.getRepo()),
-        any(BitbucketAuth.class), eq(params)))
+    when(bitBucketService.searchPullRequestsAcrossRepos(any(FieldFilter.class), eq(FieldProjection.AUTHOR_STATS),
+        eq(params.getRepo()), any(BitbucketAuth.class), eq(params)))
         .thenReturn(Flux.just(pr1, pr2));
 
     var dd1 = mock(DiffDetails.class);
     var dd2 = mock(DiffDetails.class);
 
-    when(bitBucketService.fetchDiffFilesChanged(any(BitbucketAuth.class), eq("acme"), eq("svc-a"), eq(100)))
+    when(bitBucketService.fetchDiffFilesChanged(any(BitbucketAuth.class), eq("acme"), eq("svc-a"), eq(100),
+        eq("src1..dst1@merge1")))
         .thenReturn(Mono.just(dd1));
-    when(bitBucketService.fetchDiffFilesChanged(any(BitbucketAuth.class), eq("acme"), eq("svc-b"), eq(200)))
+    when(bitBucketService.fetchDiffFilesChanged(any(BitbucketAuth.class), eq("acme"), eq("svc-b"), eq(200), isNull()))
         .thenReturn(Mono.just(dd2));
 
     ArgumentCaptor<Map<String, DiffDetails>> diffsCap = ArgumentCaptor.forClass(Map.class);
     var expected = mock(MyPullRequestsResponse.class);
-    when(responseAssembler.toMyPullRequestsResponse(eq(List.of(pr1, pr2)), eq(params), anyMap()))
+    when(responseAssembler.toMyPullRequestsResponse(eq(List.of(pr1, pr2)), eq(params), anyMap(), isNull()))
         .thenReturn(expected);
 
     var mono = service.getMyPullRequestsStats(auth("alice"), params);
@@ -187,26 +202,66 @@ class MyPullRequestsServiceTest {
         .verifyComplete();
 
     // verify each diff call
-    verify(bitBucketService).fetchDiffFilesChanged(any(BitbucketAuth.class), eq("acme"), eq("svc-a"), eq(100));
-    verify(bitBucketService).fetchDiffFilesChanged(any(BitbucketAuth.class), eq("acme"), eq("svc-b"), eq(200));
+    verify(bitBucketService).fetchDiffFilesChanged(any(BitbucketAuth.class), eq("acme"), eq("svc-a"), eq(100),
+        eq("src1..dst1@merge1"));
+    verify(bitBucketService).fetchDiffFilesChanged(any(BitbucketAuth.class), eq("acme"), eq("svc-b"), eq(200),
+        isNull());
 
     // capture and assert the assembled map contains our values (keys are internal; we assert size & values)
-    verify(responseAssembler).toMyPullRequestsResponse(eq(List.of(pr1, pr2)), eq(params), diffsCap.capture());
+    verify(responseAssembler).toMyPullRequestsResponse(eq(List.of(pr1, pr2)), eq(params), diffsCap.capture(),
+        isNull());
     Map<String, DiffDetails> diffs = diffsCap.getValue();
     assertThat(diffs).hasSize(2);
     assertThat(diffs.values()).containsExactlyInAnyOrder(dd1, dd2);
   }
 
+  @Test
+  @SuppressWarnings("unchecked")
+  void includeDiffDetails_skipsPrsWhoseRepositoryCircuitIsOpen_andRecordsThemMissing() {
+    var params = baseParams(true);
+    var pr1 = mock(EnrichedPullRequest.class);
+    when(pr1.repo()).thenReturn("svc-a");
+    when(pr1.id()).thenReturn(100);
+    var pr2 = mock(EnrichedPullRequest.class);
+    when(pr2.repo()).thenReturn("svc-b");
+    when(pr2.id()).thenReturn(200);
+
+    when(bitBucketService.searchPullRequestsAcrossRepos(any(FieldFilter.class), eq(FieldProjection.AUTHOR_STATS),
+        eq(params.getRepo()), any(BitbucketAuth.class), eq(params)))
+        .thenReturn(Flux.just(pr1, pr2));
+    var dd1 = mock(DiffDetails.class);
+    when(bitBucketService.fetchDiffFilesChanged(any(BitbucketAuth.class), eq("acme"), eq("svc-a"), eq(100), isNull()))
+        .thenReturn(Mono.just(dd1));
+    when(bitBucketService.fetchDiffFilesChanged(any(BitbucketAuth.class), eq("acme"), eq("svc-b"), eq(200), isNull()))
+        .thenReturn(Mono.error(new CircuitOpenException("acme/svc-b")));
+
+    var deadline = Deadline.after(Duration.ofMinutes(1), Clock.systemUTC());
+    var expected = mock(MyPullRequestsResponse.class);
+    when(responseAssembler.toMyPullRequestsResponse(eq(List.of(pr1, pr2)), eq(params), anyMap(), same(deadline)))
+        .thenReturn(expected);
+
+    StepVerifier.create(service.getMyPullRequestsStats(auth("alice"), params)
+            .contextWrite(deadline::attachTo))
+        .expectNext(expected)
+        .verifyComplete();
+
+    ArgumentCaptor<Map<String, DiffDetails>> diffsCap = ArgumentCaptor.forClass(Map.class);
+    verify(responseAssembler).toMyPullRequestsResponse(eq(List.of(pr1, pr2)), eq(params), diffsCap.capture(),
+        same(deadline));
+    assertThat(diffsCap.getValue()).containsOnlyKeys("svc-a#100");
+    assertThat(deadline.missingPullRequests()).containsExactly("svc-b#200");
+  }
+
   @Test
   void includeDiffDetails_true_but_no_prs_skips_diff_fetch_and_passes_empty_map() {
     var params = baseParams(true);
 
-    when(bitBucketService.searchPullRequestsAcrossRepos(any(FieldFilter.class), eq(params.getRepo()),
-        any(BitbucketAuth.class), eq(params)))
+    when(bitBucketService.searchPullRequestsAcrossRepos(any(FieldFilter.class), eq(FieldProjection.AUTHOR_STATS),
+        eq(params.getRepo()), any(BitbucketAuth.class), eq(params)))
         .thenReturn(Flux.empty());
 
     var expected = mock(MyPullRequestsResponse.class);
-    when(responseAssembler.toMyPullRequestsResponse(List.of(), params, Map.of()))
+    when(responseAssembler.toMyPullRequestsResponse(List.of(), params, Map.of(), null))
         .thenReturn(expected);
 
     var mono = service.getMyPullRequestsStats(auth("alice"), params);
@@ -215,7 +270,29 @@ class MyPullRequestsServiceTest {
         .expectNext(expected)
         .verifyComplete();
 
-    verify(bitBucketService, never()).fetchDiffFilesChanged(any(), anyString(), anyString(), anyInt());
-    verify(responseAssembler).toMyPullRequestsResponse(List.of(), params, Map.of());
+    verify(bitBucketService, never()).fetchDiffFilesChanged(any(), anyString(), anyString(), anyInt(), any());
+    verify(responseAssembler).toMyPullRequestsResponse(List.of(), params, Map.of(), null);
+  }
+
+  @Test
+  void userScopedPlan_listsThroughTheUserListing() {
+    var params = baseParams(false);
+    when(pullRequestListingPlanner.plan(eq(FieldFilter.of(FieldFilter.AUTHOR_USERNAME, "alice")), any(), eq(params)))
+        .thenReturn(Mono.just(PullRequestListingPlanner.Strategy.USER_SCOPED));
+
+    var pr = mock(EnrichedPullRequest.class);
+    when(bitBucketService.listUserPullRequests(eq("alice"), eq(FieldProjection.AUTHOR_STATS_BY_USER),
+        any(BitbucketAuth.class), eq(params)))
+        .thenReturn(Flux.just(pr));
+
+    var expected = mock(MyPullRequestsResponse.class);
+    when(responseAssembler.toMyPullRequestsResponse(eq(List.of(pr)), eq(params), anyMap(), isNull()))
+        .thenReturn(expected);
+
+    StepVerifier.create(service.getMyPullRequestsStats(auth("alice"), params))
+        .expectNext(expected)
+        .verifyComplete();
+
+    verify(bitBucketService, never()).searchPullRequestsAcrossRepos(any(), any(), any(), any(), any());
   }
 }
@@ -0,0 +1,133 @@
+package com.example.bitbucketstats.services;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.lenient;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import com.example.bitbucketstats.configuration.BitbucketHttpProperties;
+import com.example.bitbucketstats.controllers.request.BaseParams;
+import com.example.bitbucketstats.integration.BitBucketService;
+import com.example.bitbucketstats.models.BitbucketAuth;
+import com.example.bitbucketstats.models.FieldFilter;
+import com.example.bitbucketstats.services.PullRequestListingPlanner.Strategy;
+import java.time.LocalDate;
+import java.util.List;
+import java.util.stream.IntStream;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.web.reactive.function.client.WebClientResponseException;
+import reactor.core.publisher.Mono;
+import reactor.test.StepVerifier;
+
+@Tag("unit")
+@ExtendWith(MockitoExtension.class)
+class PullRequestListingPlannerTest {
+
+  private static final BitbucketAuth AUTH = new BitbucketAuth("tok", "alice", "pwd");
+  private static final FieldFilter ALICE = FieldFilter.of(FieldFilter.AUTHOR_USERNAME, "alice");
+
+  @Mock
+  private BitBucketService bitBucketService;
+  @Mock
+  private BitbucketHttpProperties bitbucketHttpProperties;
+
+  @InjectMocks
+  private PullRequestListingPlanner planner;
+
+  @BeforeEach
+  void setUp() {
+    lenient().when(bitbucketHttpProperties.listing()).thenReturn(new BitbucketHttpProperties.Listing(true, 4));
+  }
+
+  @Test
+  void fewPagesAcrossManyRepos_listsByUser() {
+    var params = params(10);
+    when(bitBucketService.countUserPullRequests("alice", AUTH, params)).thenReturn(Mono.just(120));
+
+    StepVerifier.create(planner.plan(ALICE, AUTH, params))
+        .expectNext(Strategy.USER_SCOPED)
+        .verifyComplete();
+  }
+
+  @Test
+  void noPullRequests_listsByUser_inOneEmptyPage() {
+    var params = params(10);
+    when(bitBucketService.countUserPullRequests("alice", AUTH, params)).thenReturn(Mono.just(0));
+
+    StepVerifier.create(planner.plan(ALICE, AUTH, params))
+        .expectNext(Strategy.USER_SCOPED)
+        .verifyComplete();
+  }
+
+  @Test
+  void moreUserPagesThanRepos_searchesPerRepository() {
+    var params = params(5);
+    when(bitBucketService.countUserPullRequests("alice", AUTH, params)).thenReturn(Mono.just(1000));
+
+    StepVerifier.create(planner.plan(ALICE, AUTH, params))
+        .expectNext(Strategy.PER_REPOSITORY)
+        .verifyComplete();
+  }
+
+  @Test
+  void fewRepos_nickname_orDraftFilter_skipTheProbe() {
+    StepVerifier.create(planner.plan(ALICE, AUTH, params(3)))
+        .expectNext(Strategy.PER_REPOSITORY)
+        .verifyComplete();
+    StepVerifier.create(planner.plan(FieldFilter.of(FieldFilter.AUTHOR_NICKNAME, "al"), AUTH, params(10)))
+        .expectNext(Strategy.PER_REPOSITORY)
+        .verifyComplete();
+    var drafts = params(10);
+    drafts.setQueued(true);
+    StepVerifier.create(planner.plan(ALICE, AUTH, drafts))
+        .expectNext(Strategy.PER_REPOSITORY)
+        .verifyComplete();
+
+    verify(bitBucketService, never()).countUserPullRequests(anyString(), any(), any());
+  }
+
+  @Test
+  void disabled_searchesPerRepository() {
+    when(bitbucketHttpProperties.listing()).thenReturn(new BitbucketHttpProperties.Listing(false, 4));
+
+    StepVerifier.create(planner.plan(ALICE, AUTH, params(10)))
+        .expectNext(Strategy.PER_REPOSITORY)
+        .verifyComplete();
+
+    verify(bitBucketService, never()).countUserPullRequests(anyString(), any(), any());
+  }
+
+  @Test
+  void unknownSize_orFailedProbe_searchesPerRepository() {
+    var params = params(10);
+    when(bitBucketService.countUserPullRequests(eq("alice"), any(), any())).thenReturn(Mono.just(-1));
+    StepVerifier.create(planner.plan(ALICE, AUTH, params))
+        .expectNext(Strategy.PER_REPOSITORY)
+        .verifyComplete();
+
+    when(bitBucketService.countUserPullRequests(eq("alice"), any(), any()))
+        .thenReturn(Mono.error(WebClientResponseException.create(404, "Not Found", null, null, null)));
+    StepVerifier.create(planner.plan(ALICE, AUTH, params))
+        .expectNext(Strategy.PER_REPOSITORY)
+        .verifyComplete();
+  }
+
+  private static BaseParams params(int repos) {
+    var params = new BaseParams();
+    params.setWorkspace("acme");
+    params.setRepo(IntStream.range(0, repos).mapToObj(i -> "svc-" + i).toList());
+    params.setSinceDate(LocalDate.of(2025, 8, 1));
+    params.setUntilDate(LocalDate.of(2025, 8, 10));
+    params.setState(List.of("MERGED"));
+    return params;
+  }
+}
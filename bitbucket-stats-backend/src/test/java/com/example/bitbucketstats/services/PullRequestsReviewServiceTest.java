@@ -5,6 +5,7 @@ import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.ArgumentMatchers.anyInt;
 import static org.mockito.ArgumentMatchers.anyList;
 import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.ArgumentMatchers.isNull;
 import static org.mockito.ArgumentMatchers.same;
 import static org.mockito.Mockito.inOrder;
@@ -14,16 +15,27 @@ import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
+import com.example.bitbucketstats.exceptions.CircuitOpenException;
 import com.example.bitbucketstats.integration.BitBucketService;
+import com.example.bitbucketstats.integration.FieldProjection;
+import com.example.bitbucketstats.models.ActivityDigest;
 import com.example.bitbucketstats.models.BitbucketAuth;
+import com.example.bitbucketstats.models.Deadline;
 import com.example.bitbucketstats.models.EnrichedPullRequest;
 import com.example.bitbucketstats.models.FieldFilter;
+import com.example.bitbucketstats.integration.response.Participant;
 import com.example.bitbucketstats.integration.response.User;
 import com.example.bitbucketstats.controllers.request.PullRequestReviewParams;
 import com.example.bitbucketstats.controllers.response.PullRequestCommentSummary;
 import com.example.bitbucketstats.controllers.response.PullRequestReviewResponse;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import java.time.Clock;
+import java.time.Duration;
 import java.time.LocalDate;
+import java.time.OffsetDateTime;
 import java.util.List;
+import java.util.Map;
 import org.junit.jupiter.api.Tag;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
@@ -31,6 +43,7 @@ import org.mockito.ArgumentCaptor;
 import org.mockito.InOrder;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
+import org.mockito.Spy;
 import org.mockito.junit.jupiter.MockitoExtension;
 import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
@@ -46,6 +59,7 @@ class PullRequestsReviewServiceTest {
 
   @Mock private BitBucketService bitBucketService;
   @Mock private ResponseAssembler responseAssembler;
+  @Spy private MeterRegistry meterRegistry = new SimpleMeterRegistry();
 
   private PullRequestReviewParams baseParams() {
     var p = new PullRequestReviewParams();
@@ -70,12 +84,13 @@ class PullRequestsReviewServiceTest {
     var pr1 = mock(EnrichedPullRequest.class);
     var pr2 = mock(EnrichedPullRequest.class);
 
-    when(bitBucketService.searchPullRequestsAcrossRepos(any(FieldFilter.class), anyList(), any(BitbucketAuth.class),
-        same(params)))
+    when(bitBucketService.searchPullRequestsAcrossRepos(any(FieldFilter.class), eq(FieldProjection.REVIEW_STATS),
+        anyList(), any(BitbucketAuth.class), same(params)))
         .thenReturn(Flux.just(pr1, pr2));
 
     var expected = mock(PullRequestReviewResponse.class);
-    when(responseAssembler.toPullRequestReviewResponse(anyList(), same(params), anyString(), anyList(), isNull()))
+    when(responseAssembler.toPullRequestReviewResponse(anyList(), same(params), anyString(), anyList(), isNull(),
+        isNull(), isNull()))
         .thenReturn(expected);
 
     var mono = service.getReviewStats(auth(), params);
@@ -93,7 +108,7 @@ class PullRequestsReviewServiceTest {
     ArgumentCaptor<List<PullRequestCommentSummary>> sumsCap = ArgumentCaptor.forClass(List.class);
 
     verify(responseAssembler).toPullRequestReviewResponse(
-        prsCap.capture(), same(params), reviewerUuidCap.capture(), sumsCap.capture(), isNull());
+        prsCap.capture(), same(params), reviewerUuidCap.capture(), sumsCap.capture(), isNull(), isNull(), isNull());
 
     assertThat(prsCap.getValue()).containsExactly(pr1, pr2);
     assertThat(reviewerUuidCap.getValue()).isEqualTo("rev-uuid");
@@ -110,12 +125,13 @@ class PullRequestsReviewServiceTest {
     when(bitBucketService.getCurrentUser(any(BitbucketAuth.class))).thenReturn(Mono.just(me));
 
     var pr = mock(EnrichedPullRequest.class);
-    when(bitBucketService.searchPullRequestsAcrossRepos(any(FieldFilter.class), anyList(), any(BitbucketAuth.class),
-        same(params)))
+    when(bitBucketService.searchPullRequestsAcrossRepos(any(FieldFilter.class), eq(FieldProjection.REVIEW_STATS),
+        anyList(), any(BitbucketAuth.class), same(params)))
         .thenReturn(Flux.just(pr));
 
     var expected = mock(PullRequestReviewResponse.class);
-    when(responseAssembler.toPullRequestReviewResponse(anyList(), same(params), anyString(), anyList(), isNull()))
+    when(responseAssembler.toPullRequestReviewResponse(anyList(), same(params), anyString(), anyList(), isNull(),
+        isNull(), isNull()))
         .thenReturn(expected);
 
     var mono = service.getReviewStats(auth(), params);
@@ -128,12 +144,13 @@ class PullRequestsReviewServiceTest {
     InOrder inOrder = inOrder(bitBucketService);
     inOrder.verify(bitBucketService).getCurrentUser(any(BitbucketAuth.class));
     inOrder.verify(bitBucketService)
-        .searchPullRequestsAcrossRepos(any(FieldFilter.class), anyList(), any(BitbucketAuth.class), same(params));
+        .searchPullRequestsAcrossRepos(any(FieldFilter.class), eq(FieldProjection.REVIEW_STATS), anyList(),
+            any(BitbucketAuth.class), same(params));
 
     // verify assembler reviewer UUID is me-uuid
     ArgumentCaptor<String> reviewerUuidCap = ArgumentCaptor.forClass(String.class);
     verify(responseAssembler).toPullRequestReviewResponse(anyList(), same(params), reviewerUuidCap.capture(), anyList(),
-        isNull());
+        isNull(), isNull(), isNull());
     assertThat(reviewerUuidCap.getValue()).isEqualTo("me-uuid");
   }
 
@@ -156,18 +173,21 @@ class PullRequestsReviewServiceTest {
 
     when(prB.repo()).thenReturn("svc-b");
     when(prB.id()).thenReturn(200);
+    when(prA.mayHaveCommentsBy("me-uuid")).thenReturn(true);
+    when(prB.mayHaveCommentsBy("me-uuid")).thenReturn(true);
 
     var me = mock(User.class);
     when(me.uuid()).thenReturn("me-uuid");
     when(bitBucketService.getCurrentUser(any(BitbucketAuth.class))).thenReturn(Mono.just(me));
 
-    when(bitBucketService.searchPullRequestsAcrossRepos(any(FieldFilter.class), anyList(), any(BitbucketAuth.class),
-        same(params)))
+    when(bitBucketService.searchPullRequestsAcrossRepos(any(FieldFilter.class), eq(FieldProjection.REVIEW_STATS),
+        anyList(), any(BitbucketAuth.class), same(params)))
         .thenReturn(Flux.just(pr0, prA, prB));
 
     // Only PRs with commentCount()>0 get fetched; one returns 1, the other 0 (filtered out)
     when(
-        bitBucketService.fetchMyCommentCount(any(BitbucketAuth.class), anyString(), anyString(), anyInt(), anyString()))
+        bitBucketService.fetchMyCommentCount(any(BitbucketAuth.class), anyString(), anyString(), anyInt(), anyString(),
+            any()))
         .thenAnswer(inv -> {
           String repo = inv.getArgument(2);
           Integer id = inv.getArgument(3);
@@ -184,7 +204,8 @@ class PullRequestsReviewServiceTest {
     ArgumentCaptor<List<PullRequestCommentSummary>> sumsCap = ArgumentCaptor.forClass(List.class);
     ArgumentCaptor<Integer> totalCap = ArgumentCaptor.forClass(Integer.class);
     var expected = mock(PullRequestReviewResponse.class);
-    when(responseAssembler.toPullRequestReviewResponse(anyList(), same(params), anyString(), anyList(), any()))
+    when(responseAssembler.toPullRequestReviewResponse(anyList(), same(params), anyString(), anyList(), any(),
+        isNull(), isNull()))
         .thenReturn(expected);
 
     var mono = service.getReviewStats(auth(), params);
@@ -195,13 +216,13 @@ class PullRequestsReviewServiceTest {
 
     // verify counts fetched for prA and prB only (not pr0)
     verify(bitBucketService, never()).fetchMyCommentCount(any(), anyString(), isNull(), anyInt(),
-        anyString()); // sanity
+        anyString(), any()); // sanity
     verify(bitBucketService, times(2)).fetchMyCommentCount(any(BitbucketAuth.class), anyString(), anyString(), anyInt(),
-        anyString());
+        anyString(), any());
 
     // verify assembler got exactly one summary (for prA) and total=1
     verify(responseAssembler).toPullRequestReviewResponse(anyList(), same(params), anyString(), sumsCap.capture(),
-        totalCap.capture());
+        totalCap.capture(), isNull(), isNull());
     var summaries = sumsCap.getValue();
     assertThat(summaries).hasSize(1);
     PullRequestCommentSummary s = summaries.get(0);
@@ -211,6 +232,163 @@ class PullRequestsReviewServiceTest {
     assertThat(totalCap.getValue()).isEqualTo(1);
   }
 
+  @Test
+  void includeCommentDetailsTrue_skipsPrsWithoutReviewerParticipation() {
+    var params = baseParams();
+    params.setReviewerUuid("rev-uuid");
+    params.setIncludeCommentDetails(true);
+
+    var joined = mock(EnrichedPullRequest.class);
+    when(joined.commentCount()).thenReturn(4);
+    when(joined.mayHaveCommentsBy("rev-uuid")).thenReturn(true);
+    when(joined.repo()).thenReturn("svc-a");
+    when(joined.id()).thenReturn(100);
+    var updated = OffsetDateTime.parse("2025-08-03T10:00:00Z");
+    when(joined.updatedOn()).thenReturn(updated);
+    var silent = mock(EnrichedPullRequest.class);
+    when(silent.commentCount()).thenReturn(9);
+    when(silent.mayHaveCommentsBy("rev-uuid")).thenReturn(false);
+
+    when(bitBucketService.searchPullRequestsAcrossRepos(any(FieldFilter.class), eq(FieldProjection.REVIEW_STATS),
+        anyList(), any(BitbucketAuth.class), same(params)))
+        .thenReturn(Flux.just(joined, silent));
+    when(bitBucketService.fetchMyCommentCount(any(BitbucketAuth.class), eq("acme"), eq("svc-a"), eq(100),
+        eq("rev-uuid"), eq(updated)))
+        .thenReturn(Mono.just(2));
+    var expected = mock(PullRequestReviewResponse.class);
+    when(responseAssembler.toPullRequestReviewResponse(anyList(), same(params), anyString(), anyList(), eq(2),
+        isNull(), isNull()))
+        .thenReturn(expected);
+
+    StepVerifier.create(service.getReviewStats(auth(), params))
+        .expectNext(expected)
+        .verifyComplete();
+
+    verify(bitBucketService, times(1)).fetchMyCommentCount(any(), anyString(), anyString(), anyInt(), anyString(),
+        any());
+    assertThat(meterRegistry.counter(PullRequestsReviewService.COMMENT_SCANS_METRIC, "outcome", "fetched").count())
+        .isEqualTo(1);
+    assertThat(meterRegistry.counter(PullRequestsReviewService.COMMENT_SCANS_METRIC, "outcome", "skipped").count())
+        .isEqualTo(1);
+  }
+
+  @Test
+  void includeCommentDetailsTrue_skipsPrsWhoseRepositoryCircuitIsOpen_andRecordsThemMissing() {
+    var params = baseParams();
+    params.setReviewerUuid("rev-uuid");
+    params.setIncludeCommentDetails(true);
+
+    var updated = OffsetDateTime.parse("2025-08-03T10:00:00Z");
+    var healthy = mock(EnrichedPullRequest.class);
+    when(healthy.commentCount()).thenReturn(4);
+    when(healthy.mayHaveCommentsBy("rev-uuid")).thenReturn(true);
+    when(healthy.repo()).thenReturn("svc-a");
+    when(healthy.id()).thenReturn(100);
+    when(healthy.updatedOn()).thenReturn(updated);
+    var failing = mock(EnrichedPullRequest.class);
+    when(failing.commentCount()).thenReturn(2);
+    when(failing.mayHaveCommentsBy("rev-uuid")).thenReturn(true);
+    when(failing.repo()).thenReturn("svc-b");
+    when(failing.id()).thenReturn(200);
+    when(failing.updatedOn()).thenReturn(updated);
+
+    when(bitBucketService.searchPullRequestsAcrossRepos(any(FieldFilter.class), eq(FieldProjection.REVIEW_STATS),
+        anyList(), any(BitbucketAuth.class), same(params)))
+        .thenReturn(Flux.just(healthy, failing));
+    when(bitBucketService.fetchMyCommentCount(any(BitbucketAuth.class), eq("acme"), eq("svc-a"), eq(100),
+        eq("rev-uuid"), eq(updated)))
+        .thenReturn(Mono.just(2));
+    when(bitBucketService.fetchMyCommentCount(any(BitbucketAuth.class), eq("acme"), eq("svc-b"), eq(200),
+        eq("rev-uuid"), eq(updated)))
+        .thenReturn(Mono.error(new CircuitOpenException("acme/svc-b")));
+    var deadline = Deadline.after(Duration.ofMinutes(1), Clock.systemUTC());
+    var expected = mock(PullRequestReviewResponse.class);
+    when(responseAssembler.toPullRequestReviewResponse(anyList(), same(params), anyString(), anyList(), eq(2),
+        isNull(), same(deadline)))
+        .thenReturn(expected);
+
+    StepVerifier.create(service.getReviewStats(auth(), params).contextWrite(deadline::attachTo))
+        .expectNext(expected)
+        .verifyComplete();
+
+    assertThat(deadline.missingPullRequests()).containsExactly("svc-b#200");
+  }
+
+  @Test
+  void includeReviewMetrics_digestsActivityOnce_andCountsCommentsFromIt() {
+    var params = baseParams();
+    params.setReviewerUuid("rev-uuid");
+    params.setIncludeCommentDetails(true);
+    params.setIncludeReviewMetrics(true);
+
+    var updated = OffsetDateTime.parse("2025-08-05T10:00:00Z");
+    var commented = new EnrichedPullRequest(100, "Fix A", "au", 3, null, "svc-a", updated.minusDays(2), updated, null);
+    var quiet = new EnrichedPullRequest(200, "Fix B", "au", 0, List.of(), "svc-b", updated.minusDays(1), updated, null);
+    var digest = new ActivityDigest(Map.of("rev-uuid", 2), updated.minusDays(1), updated, 1);
+
+    when(bitBucketService.searchPullRequestsAcrossRepos(any(FieldFilter.class), eq(FieldProjection.REVIEW_METRICS),
+        anyList(), any(BitbucketAuth.class), same(params)))
+        .thenReturn(Flux.just(commented, quiet));
+    when(bitBucketService.fetchActivityDigest(any(BitbucketAuth.class), eq("acme"), eq("svc-a"), eq(100), eq("au"),
+        eq(updated)))
+        .thenReturn(Mono.just(digest));
+    var expected = mock(PullRequestReviewResponse.class);
+    when(responseAssembler.toPullRequestReviewResponse(anyList(), same(params), anyString(), anyList(), eq(2),
+        any(), isNull()))
+        .thenReturn(expected);
+
+    StepVerifier.create(service.getReviewStats(auth(), params))
+        .expectNext(expected)
+        .verifyComplete();
+
+    verify(bitBucketService, never()).fetchMyCommentCount(any(), anyString(), anyString(), anyInt(), anyString(),
+        any());
+    verify(bitBucketService, times(1))
+        .fetchActivityDigest(any(), anyString(), anyString(), anyInt(), any(), any());
+    ArgumentCaptor<List<PullRequestCommentSummary>> sumsCap = ArgumentCaptor.forClass(List.class);
+    ArgumentCaptor<Map<String, ActivityDigest>> digestsCap = ArgumentCaptor.forClass(Map.class);
+    verify(responseAssembler).toPullRequestReviewResponse(anyList(), same(params), anyString(), sumsCap.capture(),
+        eq(2), digestsCap.capture(), isNull());
+    assertThat(sumsCap.getValue()).extracting(PullRequestCommentSummary::id).containsExactly(100);
+    assertThat(digestsCap.getValue()).containsEntry("svc-a#100", digest).containsKey("svc-b#200");
+  }
+
+  @Test
+  void includeReviewMetrics_leavesCommentedPrsWithoutReviewerParticipation_undigested() {
+    var params = baseParams();
+    params.setReviewerUuid("rev-uuid");
+    params.setIncludeReviewMetrics(true);
+
+    var updated = OffsetDateTime.parse("2025-08-05T10:00:00Z");
+    var approvedAt = updated.minusHours(3);
+    var others = List.of(new Participant(new User("other-uuid"), Participant.ROLE_PARTICIPANT, true, approvedAt),
+        new Participant(new User("rev-uuid"), "REVIEWER", false, null));
+    var silent = new EnrichedPullRequest(100, "Fix A", "au", 5, others, "svc-a", updated.minusDays(2), updated, null);
+    var quiet = new EnrichedPullRequest(200, "Fix B", "au", 0, others, "svc-b", updated.minusDays(1), updated, null);
+
+    when(bitBucketService.searchPullRequestsAcrossRepos(any(FieldFilter.class), eq(FieldProjection.REVIEW_METRICS),
+        anyList(), any(BitbucketAuth.class), same(params)))
+        .thenReturn(Flux.just(silent, quiet));
+    var expected = mock(PullRequestReviewResponse.class);
+    when(responseAssembler.toPullRequestReviewResponse(anyList(), same(params), anyString(), anyList(), eq(0),
+        any(), isNull()))
+        .thenReturn(expected);
+
+    StepVerifier.create(service.getReviewStats(auth(), params))
+        .expectNext(expected)
+        .verifyComplete();
+
+    verify(bitBucketService, never())
+        .fetchActivityDigest(any(), anyString(), anyString(), anyInt(), any(), any());
+    ArgumentCaptor<Map<String, ActivityDigest>> digestsCap = ArgumentCaptor.forClass(Map.class);
+    verify(responseAssembler).toPullRequestReviewResponse(anyList(), same(params), anyString(), anyList(), eq(0),
+        digestsCap.capture(), isNull());
+    assertThat(digestsCap.getValue()).doesNotContainKey("svc-a#100")
+        .containsEntry("svc-b#200", ActivityDigest.fromParticipants(quiet));
+    assertThat(meterRegistry.counter(PullRequestsReviewService.COMMENT_SCANS_METRIC, "outcome", "skipped").count())
+        .isEqualTo(1);
+  }
+
   @Test
   void includeCommentDetailsTrue_butNoPrs_earlyReturn_emptySummaries_nullTotal() {
     var params = baseParams();
@@ -220,12 +398,13 @@ class PullRequestsReviewServiceTest {
     when(me.uuid()).thenReturn("me-uuid");
     when(bitBucketService.getCurrentUser(any(BitbucketAuth.class))).thenReturn(Mono.just(me));
 
-    when(bitBucketService.searchPullRequestsAcrossRepos(any(FieldFilter.class), anyList(), any(BitbucketAuth.class),
-        same(params)))
+    when(bitBucketService.searchPullRequestsAcrossRepos(any(FieldFilter.class), eq(FieldProjection.REVIEW_STATS),
+        anyList(), any(BitbucketAuth.class), same(params)))
         .thenReturn(Flux.empty());
 
     var expected = mock(PullRequestReviewResponse.class);
-    when(responseAssembler.toPullRequestReviewResponse(anyList(), same(params), anyString(), anyList(), isNull()))
+    when(responseAssembler.toPullRequestReviewResponse(anyList(), same(params), anyString(), anyList(), isNull(),
+        isNull(), isNull()))
         .thenReturn(expected);
 
     var mono = service.getReviewStats(auth(), params);
@@ -234,13 +413,14 @@ class PullRequestsReviewServiceTest {
         .expectNext(expected)
         .verifyComplete();
 
-    verify(bitBucketService, never()).fetchMyCommentCount(any(), anyString(), anyString(), anyInt(), anyString());
+    verify(bitBucketService, never()).fetchMyCommentCount(any(), anyString(), anyString(), anyInt(), anyString(),
+        any());
 
     ArgumentCaptor<List<EnrichedPullRequest>> prsCap = ArgumentCaptor.forClass(List.class);
     ArgumentCaptor<List<PullRequestCommentSummary>> sumsCap = ArgumentCaptor.forClass(List.class);
 
     verify(responseAssembler).toPullRequestReviewResponse(prsCap.capture(), same(params), anyString(),
-        sumsCap.capture(), isNull());
+        sumsCap.capture(), isNull(), isNull(), isNull());
     assertThat(prsCap.getValue()).isEmpty();
     assertThat(sumsCap.getValue()).isEmpty();
   }
@@ -5,13 +5,19 @@ import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.mockStatic;
 import static org.mockito.Mockito.when;
 
+import com.example.bitbucketstats.models.ActivityDigest;
+import com.example.bitbucketstats.models.Deadline;
 import com.example.bitbucketstats.models.DiffDetails;
 import com.example.bitbucketstats.models.EnrichedPullRequest;
 import com.example.bitbucketstats.controllers.request.MyPullRequestsParams;
 import com.example.bitbucketstats.controllers.request.PullRequestReviewParams;
 import com.example.bitbucketstats.controllers.response.PullRequestCommentSummary;
+import com.example.bitbucketstats.controllers.response.ReviewLatency;
 import com.example.bitbucketstats.utils.PullRequestUtils;
+import java.time.Clock;
+import java.time.Duration;
 import java.time.LocalDate;
+import java.time.OffsetDateTime;
 import java.util.List;
 import java.util.Map;
 import org.junit.jupiter.api.Tag;
@@ -19,6 +25,7 @@ import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
 import org.mockito.MockedStatic;
 import org.mockito.junit.jupiter.MockitoExtension;
+import reactor.core.publisher.Flux;
 
 @Tag("unit")
 @ExtendWith(MockitoExtension.class)
@@ -65,6 +72,8 @@ class ResponseAssemblerTest {
         params,
         reviewerUuid,
         null,
+        null,
+        null,
         null
     );
 
@@ -107,7 +116,7 @@ class ResponseAssemblerTest {
     var totalComments = 7;
 
     var resp = assembler.toPullRequestReviewResponse(
-        prs, params, reviewerUuid, commentedList, totalComments
+        prs, params, reviewerUuid, commentedList, totalComments, null, null
     );
 
     assertThat(resp.totalPullRequestsReviewed()).isEqualTo(3);
@@ -142,7 +151,8 @@ class ResponseAssemblerTest {
       var resp = assembler.toMyPullRequestsResponse(
           List.of(pr1, pr2, pr3),
           params,
-          Map.of() // diffs ignored because includeDiffs=false
+          Map.of(), // diffs ignored because includeDiffs=false
+          null
       );
 
       assertThat(resp).isNotNull();
@@ -189,7 +199,8 @@ class ResponseAssemblerTest {
       var resp = assembler.toMyPullRequestsResponse(
           List.of(pr1, pr2),
           params,
-          diffs
+          diffs,
+          null
       );
 
       assertThat(resp.totalPullRequests()).isEqualTo(2);
@@ -224,7 +235,8 @@ class ResponseAssemblerTest {
       var resp = assembler.toMyPullRequestsResponse(
           List.of(pr1, pr2),
           params,
-          Map.of() // no diffs
+          Map.of(), // no diffs
+          null
       );
 
       assertThat(resp.pullRequestDetails()).isNotNull();
@@ -251,4 +263,65 @@ class ResponseAssemblerTest {
       assertThat(s2.timeOpenHours()).isEqualTo(8);
     }
   }
+
+  // ---------- deadline ----------
+
+  @Test
+  void responses_areComplete_whenDeadlineSkippedNothing() {
+    var deadline = Deadline.after(Duration.ofSeconds(30), Clock.systemUTC());
+    var params = myParams(LocalDate.of(2025, 8, 1), LocalDate.of(2025, 8, 10), false, false);
+
+    var resp = assembler.toMyPullRequestsResponse(List.of(), params, Map.of(), deadline);
+
+    assertThat(resp.incomplete()).isFalse();
+    assertThat(resp.missing()).isNull();
+  }
+
+  @Test
+  void responses_listWhatTheDeadlineLeftOut() {
+    var deadline = Deadline.after(Duration.ofSeconds(30), Clock.systemUTC());
+    Flux.concat(Deadline.<Void>skipRepository("svc-b"), Deadline.<Void>skipPullRequest("svc-a#7"),
+            Deadline.<Void>skipPullRequest("svc-a#3"))
+        .contextWrite(deadline::attachTo)
+        .blockLast();
+    var pr = mock(EnrichedPullRequest.class);
+
+    var mine = assembler.toMyPullRequestsResponse(List.of(pr),
+        myParams(LocalDate.of(2025, 8, 1), LocalDate.of(2025, 8, 10), false, false), Map.of(), deadline);
+    var reviews = assembler.toPullRequestReviewResponse(List.of(pr),
+        reviewParams(LocalDate.of(2025, 8, 1), LocalDate.of(2025, 8, 10)), "rev-uuid", null, null, null, deadline);
+
+    assertThat(mine.totalPullRequests()).isEqualTo(1);
+    assertThat(mine.incomplete()).isTrue();
+    assertThat(mine.missing().repos()).containsExactly("svc-b");
+    assertThat(mine.missing().pullRequests()).containsExactly("svc-a#3", "svc-a#7");
+    assertThat(reviews.incomplete()).isTrue();
+    assertThat(reviews.missing()).isEqualTo(mine.missing());
+  }
+
+  @Test
+  void toPullRequestReviewResponse_averagesReviewLatency_overPrsWithThatEvent() {
+    var created = OffsetDateTime.parse("2025-08-01T08:00:00Z");
+    var reviewedAndApproved = new EnrichedPullRequest(1, "a", "au", 2, null, "svc-a", created, created, null);
+    var reviewedOnly = new EnrichedPullRequest(2, "b", "au", 1, null, "svc-a", created, created, null);
+    var untouched = new EnrichedPullRequest(3, "c", "au", 0, null, "svc-b", created, created, null);
+    var notRead = new EnrichedPullRequest(4, "d", "au", 5, null, "svc-b", created, created, null);
+    var digests = Map.of(
+        "svc-a#1", new ActivityDigest(Map.of(), created.plusHours(2), created.plusHours(6), 2),
+        "svc-a#2", new ActivityDigest(Map.of(), created.plusMinutes(90), null, 1),
+        "svc-b#3", new ActivityDigest(Map.of(), null, null, 0));
+
+    var resp = assembler.toPullRequestReviewResponse(List.of(reviewedAndApproved, reviewedOnly, untouched, notRead),
+        reviewParams(LocalDate.of(2025, 8, 1), LocalDate.of(2025, 8, 10)), "rev-uuid", List.of(), null, digests, null);
+
+    assertThat(resp.reviewLatency()).isEqualTo(new ReviewLatency(1.75, 6.0, 1.0, 3, 1));
+  }
+
+  @Test
+  void toPullRequestReviewResponse_leavesReviewLatencyOut_whenNotRequested() {
+    var resp = assembler.toPullRequestReviewResponse(List.of(),
+        reviewParams(LocalDate.of(2025, 8, 1), LocalDate.of(2025, 8, 10)), "rev-uuid", null, null, null, null);
+
+    assertThat(resp.reviewLatency()).isNull();
+  }
 }
@@ -0,0 +1,147 @@
+package com.example.bitbucketstats.services;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import com.example.bitbucketstats.configuration.BitbucketHttpProperties;
+import com.example.bitbucketstats.models.Deadline;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+
+@Tag("unit")
+class StatsResultCacheTest {
+
+  private static final StatsResultCache.Key KEY =
+      new StatsResultCache.Key("Basic abc", "pull-requests/stats", "acme", List.of("svc-a"), "params");
+
+  private Instant now = Instant.parse("2025-08-10T10:00:00Z");
+  private final AtomicInteger computations = new AtomicInteger();
+  private final StatsResultCache cache = new StatsResultCache(
+      new BitbucketHttpProperties.ResultCache(true, Duration.ofMinutes(5), Duration.ofHours(1), 100),
+      Duration.ofMinutes(1), new MovingClock());
+
+  @Test
+  void firstRequestComputes_andRepeatsAreServedFromCache() {
+    var first = cache.get(KEY, () -> compute("v1"), v -> true).block();
+    now = now.plusSeconds(30);
+    var second = cache.get(KEY, () -> compute("v2"), v -> true).block();
+
+    assertThat(first.status()).isEqualTo(StatsResultCache.Status.MISS);
+    assertThat(second.status()).isEqualTo(StatsResultCache.Status.HIT);
+    assertThat(second.value()).isEqualTo("v1");
+    assertThat(second.age()).isEqualTo(Duration.ofSeconds(30));
+    assertThat(second.headers().getFirst("Age")).isEqualTo("30");
+    assertThat(computations.get()).isEqualTo(1);
+  }
+
+  @Test
+  void staleResponse_isServedAtOnce_andRefreshedOnceInTheBackground() {
+    cache.get(KEY, () -> compute("v1"), v -> true).block();
+    now = now.plus(Duration.ofMinutes(6));
+    Sinks.One<String> refresh = Sinks.one();
+
+    var stale = cache.get(KEY, () -> computeLater(refresh), v -> true).block();
+    var alsoStale = cache.get(KEY, () -> computeLater(refresh), v -> true).block();
+
+    assertThat(stale.status()).isEqualTo(StatsResultCache.Status.STALE);
+    assertThat(stale.value()).isEqualTo("v1");
+    assertThat(alsoStale.value()).isEqualTo("v1");
+    assertThat(computations.get()).isEqualTo(2);
+    assertThat(cache.refreshes()).isEqualTo(1);
+
+    refresh.tryEmitValue("v2");
+    var fresh = cache.get(KEY, () -> compute("v3"), v -> true).block();
+
+    assertThat(fresh.status()).isEqualTo(StatsResultCache.Status.HIT);
+    assertThat(fresh.value()).isEqualTo("v2");
+    assertThat(fresh.age()).isZero();
+  }
+
+  @Test
+  void concurrentMisses_shareOneComputation() {
+    Sinks.One<String> result = Sinks.one();
+    var first = cache.get(KEY, () -> computeLater(result), v -> true).toFuture();
+    var second = cache.get(KEY, () -> computeLater(result), v -> true).toFuture();
+
+    result.tryEmitValue("v1");
+
+    assertThat(first.join().value()).isEqualTo("v1");
+    assertThat(second.join().value()).isEqualTo("v1");
+    assertThat(computations.get()).isEqualTo(1);
+  }
+
+  @Test
+  void backgroundRefresh_runsUnderItsOwnDeadline() {
+    cache.get(KEY, () -> compute("v1"), v -> true).block();
+    now = now.plus(Duration.ofMinutes(6));
+    var refreshDeadline = new AtomicReference<Instant>();
+
+    cache.get(KEY, () -> Mono.deferContextual(ctx -> {
+      refreshDeadline.set(Deadline.from(ctx).map(Deadline::expiresAt).orElse(null));
+      return Mono.just("v2");
+    }), v -> true).block();
+
+    assertThat(refreshDeadline.get()).isEqualTo(now.plus(Duration.ofMinutes(1)));
+  }
+
+  @Test
+  void incompleteResponses_areNotKept_andOldOnesExpire() {
+    var incomplete = cache.get(KEY, () -> compute("partial"), v -> false).block();
+    var next = cache.get(KEY, () -> compute("v1"), v -> true).block();
+    now = now.plus(Duration.ofHours(2));
+    var expired = cache.get(KEY, () -> compute("v2"), v -> true).block();
+
+    assertThat(incomplete.value()).isEqualTo("partial");
+    assertThat(next.status()).isEqualTo(StatsResultCache.Status.MISS);
+    assertThat(expired.status()).isEqualTo(StatsResultCache.Status.MISS);
+    assertThat(expired.value()).isEqualTo("v2");
+    assertThat(computations.get()).isEqualTo(3);
+  }
+
+  @Test
+  void invalidate_dropsMatchingResponses() {
+    cache.get(KEY, () -> compute("v1"), v -> true).block();
+
+    assertThat(cache.invalidate(key -> key.repos().contains("svc-b"))).isZero();
+    assertThat(cache.invalidate(key -> key.repos().contains("svc-a"))).isEqualTo(1);
+    assertThat(cache.size()).isZero();
+  }
+
+  private Mono<String> compute(String value) {
+    computations.incrementAndGet();
+    return Mono.just(value);
+  }
+
+  private Mono<String> computeLater(Sinks.One<String> result) {
+    computations.incrementAndGet();
+    return result.asMono();
+  }
+
+  /** Reads the test's current instant, so tests can move time for the cache already created. */
+  private class MovingClock extends Clock {
+
+    @Override
+    public ZoneOffset getZone() {
+      return ZoneOffset.UTC;
+    }
+
+    @Override
+    public Clock withZone(ZoneId zone) {
+      return this;
+    }
+
+    @Override
+    public Instant instant() {
+      return now;
+    }
+  }
+}
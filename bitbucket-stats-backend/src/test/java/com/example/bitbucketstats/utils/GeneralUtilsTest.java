@@ -68,4 +68,12 @@ class GeneralUtilsTest {
     assertFalse(GeneralUtils.isUrlAbsolute("/test"));
     assertFalse(GeneralUtils.isUrlAbsolute("/https://example.com/has a space"));
   }
+
+  @Test
+  void withQueryParam_replacesExistingOrAppends() {
+    assertThat(GeneralUtils.withQueryParam("/prs?q=a%3D%22b%22&pagelen=50", "page", 3))
+        .isEqualTo("/prs?q=a%3D%22b%22&pagelen=50&page=3");
+    assertThat(GeneralUtils.withQueryParam("https://host/prs?page=1&fields=next,size", "page", 2))
+        .isEqualTo("https://host/prs?fields=next,size&page=2");
+  }
 }
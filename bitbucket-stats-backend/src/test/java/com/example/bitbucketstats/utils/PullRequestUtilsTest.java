@@ -13,7 +13,7 @@ class PullRequestUtilsTest {
   // helper to build only what we need for each case
   private static EnrichedPullRequest pr(String repo, int id, OffsetDateTime created, OffsetDateTime updated) {
     return new EnrichedPullRequest(id, null, null, null, null,
-        repo, created, updated
+        repo, created, updated, null
     );
   }
 
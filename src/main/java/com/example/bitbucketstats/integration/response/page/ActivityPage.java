@@ -0,0 +1,9 @@
+package com.example.bitbucketstats.integration.response.page;
+
+import com.example.bitbucketstats.integration.response.Activity;
+import java.util.List;
+
+public record ActivityPage(String next, Integer size, Integer pagelen, List<Activity> values)
+    implements Page<Activity> {
+
+}
@@ -3,4 +3,5 @@ package com.example.bitbucketstats.integration.response.page;
 import com.example.bitbucketstats.integration.response.Comment;
 import java.util.List;
 
-public record CommentPage(String next, List<Comment> values) implements Page<Comment> {}
+public record CommentPage(String next, Integer size, Integer pagelen, List<Comment> values)
+    implements Page<Comment> {}
@@ -3,6 +3,7 @@ package com.example.bitbucketstats.integration.response.page;
 import com.example.bitbucketstats.integration.response.DiffStat;
 import java.util.List;
 
-public record DiffStatPage(String next, List<DiffStat> values) implements Page<DiffStat> {
+public record DiffStatPage(String next, Integer size, Integer pagelen, List<DiffStat> values)
+    implements Page<DiffStat> {
 
 }
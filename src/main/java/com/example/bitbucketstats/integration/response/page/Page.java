@@ -7,4 +7,10 @@ public interface Page<E> {
   List<E> values();
 
   String next();
+
+  /** Total number of elements across all pages; optional, Bitbucket omits it when expensive to compute. */
+  Integer size();
+
+  /** Number of elements per page as applied by Bitbucket. */
+  Integer pagelen();
 }